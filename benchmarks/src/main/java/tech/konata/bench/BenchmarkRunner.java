@@ -0,0 +1,27 @@
+package tech.konata.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of the benchmark jar.
+ *
+ * <p>Accepts the regular JMH command line (benchmark regex, {@code -p}, {@code -f},
+ * …) and always attaches the GC profiler, so every result is reported together
+ * with its allocation rate ({@code gc.alloc.rate.norm} bytes per operation).
+ */
+public final class BenchmarkRunner {
+
+    private BenchmarkRunner() { /* entry point only */ }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,79 @@
+package tech.konata.bench;
+
+import org.openjdk.jmh.annotations.*;
+import tech.konata.convert.Note;
+import tech.konata.convert.ProjectConverter;
+import tech.konata.convert.Tempo;
+import tech.konata.convert.impl.SVP;
+import tech.konata.convert.impl.VPR;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * End-to-end benchmark for a full converter run: template load, tempo / note /
+ * pitch-bend insertion, pitch processing, JSON serialisation and file write.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConverterSaveBenchmark {
+
+    @Param({ "svp", "vpr" })
+    public String format;
+
+    @Param({ "100", "1000", "10000" })
+    public int noteCount;
+
+    @Param({ "1", "8", "32" })
+    public int bendsPerBeat;
+
+    private SyntheticScore score;
+    private Path           outputDir;
+    private String         baseName;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        score     = new SyntheticScore(noteCount, bendsPerBeat);
+        outputDir = Files.createTempDirectory("plg-bench");
+        baseName  = outputDir.resolve("bench").toString();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(outputDir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public ProjectConverter save() {
+        ProjectConverter converter = "svp".equals(format) ? new SVP() : new VPR();
+        converter.load();
+
+        for (Tempo tempo : score.tempos) {
+            converter.insertTempo(tempo.tickPosition, tempo.bpm);
+        }
+
+        // Interleave notes and pitch bends in tick order, as MidiParser does
+        int bend = 0;
+        for (Note note : score.notes) {
+            while (bend < score.rawBendValues.length
+                    && score.relativeBends.get(bend).first < note.getTickOff()) {
+                converter.onPitchBend(score.rawBendValues[bend], score.relativeBends.get(bend).first);
+                bend++;
+            }
+            converter.insertNote(note.getLyric(), note.getTickOn(), note.getTickOff(), note.getKey());
+        }
+
+        converter.save(baseName);
+        return converter;
+    }
+}
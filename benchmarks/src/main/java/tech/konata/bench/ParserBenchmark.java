@@ -0,0 +1,108 @@
+package tech.konata.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import tech.konata.parser.PhoneSeqParser;
+import tech.konata.parser.SgData;
+import tech.konata.parser.SgTableLoader;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for SG table loading and PhoneSEQ SysEx resolution.
+ *
+ * <p>The parser logs every message it sees; console output is redirected to a
+ * discarding stream for the duration of the trial so the formatting cost is
+ * still measured but the terminal is not flooded.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParserBenchmark {
+
+    private static final String SYSEX_HEADER = "F0 43 10 5D 03 00 00";
+    private static final String SYSEX_END    = " F7";
+    private static final String BREATH_CODE  = " 7E";
+
+    /** Number of PhoneSEQ messages resolved per invocation. */
+    @Param({ "100", "1000", "10000" })
+    public int noteCount;
+
+    private PrintStream    originalOut;
+    private PhoneSeqParser parser;
+    private String[]       messages;
+    private byte[][]       rawMessages;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        originalOut = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        List<SgData> table = SgTableLoader.load();
+        parser = new PhoneSeqParser(table);
+
+        List<String> rowMessages = new ArrayList<>(table.size());
+        for (SgData row : table) {
+            if (!row.getPhoneSeqCodes().isEmpty()) rowMessages.add(buildPhoneSeq(row));
+        }
+
+        messages = new String[noteCount];
+        for (int i = 0; i < noteCount; i++) {
+            String message = rowMessages.get((i * 31) % rowMessages.size());
+            // Every eighth syllable carries a breath mark
+            messages[i] = (i % 8 == 7)
+                    ? message.substring(0, message.length() - SYSEX_END.length()) + BREATH_CODE + SYSEX_END
+                    : message;
+        }
+
+        rawMessages = new byte[noteCount][];
+        for (int i = 0; i < noteCount; i++) {
+            String[] hex = messages[i].split(" ");
+            rawMessages[i] = new byte[hex.length];
+            for (int j = 0; j < hex.length; j++) {
+                rawMessages[i][j] = (byte) Integer.parseInt(hex[j], 16);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.setOut(originalOut);
+    }
+
+    @Benchmark
+    public void parsePhoneSeq(Blackhole bh) {
+        for (String message : messages) {
+            bh.consume(parser.parse(message));
+        }
+    }
+
+    /** Raw-byte path used by {@code MidiParser}, served from the PhoneSEQ cache. */
+    @Benchmark
+    public void parsePhoneSeqBytes(Blackhole bh) {
+        for (byte[] message : rawMessages) {
+            bh.consume(parser.parse(message));
+        }
+    }
+
+    @Benchmark
+    public List<SgData> loadSgTable() {
+        return SgTableLoader.load();
+    }
+
+    /** Builds the PhoneSEQ message a PLG100-SG would receive for a table row. */
+    private static String buildPhoneSeq(SgData row) {
+        StringBuilder sb = new StringBuilder(SYSEX_HEADER);
+        for (String code : row.getPhoneSeqCodes()) {
+            sb.append(' ').append(code);
+        }
+        return sb.append(SYSEX_END).toString();
+    }
+}
@@ -0,0 +1,103 @@
+package tech.konata.bench;
+
+import org.openjdk.jmh.annotations.*;
+import tech.konata.convert.Pair;
+import tech.konata.convert.Pitch;
+import tech.konata.convert.pitch.InterpolationUtils;
+import tech.konata.convert.pitch.PitchConverter;
+import tech.konata.convert.pitch.SvpPitchProcessor;
+import tech.konata.convert.pitch.SvpPitchProcessor.SvpNoteWithVibrato;
+import tech.konata.convert.pitch.VocaloidPitchConverter;
+import tech.konata.convert.pitch.VocaloidPitchConverter.VocaloidPartPitchData;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for the pitch pipeline: relative-pitch conversion, interpolation,
+ * SVP-input processing and VOCALOID PIT/PBS generation.
+ *
+ * <p>Every benchmark is parameterised by the number of notes in the synthetic
+ * score and by the pitch-bend density (points per beat). The
+ * {@code *Sequential} variants run in a JVM with
+ * {@code -Dplg.pitch.forkJoin=false}, as the single-threaded baseline of the
+ * section-parallel stages.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PitchBenchmark {
+
+    /** Samples between control points, matching the converters' own interval. */
+    private static final long SAMPLING_INTERVAL_TICK = 4L;
+
+    /** Border-append radius used by the VOCALOID converter. */
+    private static final long BORDER_APPEND_RADIUS = 5L;
+
+    @Param({ "100", "1000", "10000" })
+    public int noteCount;
+
+    @Param({ "1", "8", "32" })
+    public int bendsPerBeat;
+
+    private SyntheticScore           score;
+    private Pitch                    absolutePitch;
+    private Pitch                    relativePitch;
+    private List<SvpNoteWithVibrato> notesWithVibrato;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        score            = new SyntheticScore(noteCount, bendsPerBeat);
+        absolutePitch    = new Pitch(score.absoluteBends, /* absolute */ true);
+        relativePitch    = new Pitch(score.relativeBends, /* absolute */ false);
+        notesWithVibrato = score.notesWithVibrato();
+    }
+
+    @Benchmark
+    public List<Pair<Long, Double>> relativeData() {
+        return PitchConverter.getRelativeData(absolutePitch, score.notes);
+    }
+
+    @Benchmark
+    public List<Pair<Long, Double>> relativeDataWithBorderRadius() {
+        return PitchConverter.getRelativeData(absolutePitch, score.notes, BORDER_APPEND_RADIUS);
+    }
+
+    @Benchmark
+    public List<Pair<Long, Double>> interpolateLinear() {
+        return InterpolationUtils.interpolateLinear(score.relativeBends, SAMPLING_INTERVAL_TICK);
+    }
+
+    @Benchmark
+    public List<Pair<Long, Double>> interpolateCosine() {
+        return InterpolationUtils.interpolateCosineEaseInOut(score.relativeBends, SAMPLING_INTERVAL_TICK);
+    }
+
+    @Benchmark
+    public List<Pair<Long, Double>> processSvpInputPitchData() {
+        return SvpPitchProcessor.processSvpInputPitchData(
+                score.relativeBends, "cosine", notesWithVibrato, score.tempos,
+                Collections.emptyList(), "cosine", null);
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = "-Dplg.pitch.forkJoin=false")
+    public List<Pair<Long, Double>> processSvpInputPitchDataSequential() {
+        return processSvpInputPitchData();
+    }
+
+    @Benchmark
+    public VocaloidPartPitchData generateForVocaloid() {
+        return VocaloidPitchConverter.generateForVocaloid(relativePitch, score.notes);
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = "-Dplg.pitch.forkJoin=false")
+    public VocaloidPartPitchData generateForVocaloidSequential() {
+        return generateForVocaloid();
+    }
+}
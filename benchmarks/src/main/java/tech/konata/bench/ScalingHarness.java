@@ -0,0 +1,183 @@
+package tech.konata.bench;
+
+import tech.konata.LyricsExtractor;
+import tech.konata.parser.SgTableLoader;
+import tech.konata.tools.SyntheticMidiGenerator;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * End-to-end scaling harness: generates synthetic PLG100-SG files of growing
+ * length, converts each one through {@link LyricsExtractor} and reports wall
+ * time, peak heap and output size against input size.
+ *
+ * <p>For every pair of consecutive sizes the harness prints the scaling
+ * exponent {@code log(t2 / t1) / log(n2 / n1)} of wall time and peak heap
+ * versus input bytes; anything noticeably above 1 is flagged as non-linear.
+ *
+ * <p>Usage:
+ * <pre>
+ *   java -cp benchmarks/target/benchmarks.jar tech.konata.bench.ScalingHarness \
+ *        [--bends=8] [--budget=1800] [1m 10m 1h 10h]
+ * </pre>
+ * {@code --budget} (seconds) stops escalating to larger sizes once a single
+ * conversion has taken longer than that.
+ */
+public final class ScalingHarness {
+
+    private static final String[] DEFAULT_SIZES       = { "1m", "10m", "1h", "10h" };
+    private static final long     DEFAULT_BUDGET_SEC  = 1800L;
+    private static final double   NON_LINEAR_EXPONENT = 1.2;
+
+    private ScalingHarness() { /* entry point only */ }
+
+    private static final class Result {
+        final String label;
+        final long   inputBytes;
+        final long   notes;
+        final long   wallNanos;
+        final long   peakHeapBytes;
+        final long   outputBytes;
+
+        Result(String label, long inputBytes, long notes, long wallNanos, long peakHeapBytes, long outputBytes) {
+            this.label         = label;
+            this.inputBytes    = inputBytes;
+            this.notes         = notes;
+            this.wallNanos     = wallNanos;
+            this.peakHeapBytes = peakHeapBytes;
+            this.outputBytes   = outputBytes;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int          bendsPerBeat = SyntheticMidiGenerator.DEFAULT_BENDS_PER_BEAT;
+        long         budgetSec    = DEFAULT_BUDGET_SEC;
+        List<String> sizes        = new ArrayList<>();
+
+        for (String arg : args) {
+            if (arg.startsWith("--bends="))       bendsPerBeat = Integer.parseInt(arg.substring(8));
+            else if (arg.startsWith("--budget=")) budgetSec    = Long.parseLong(arg.substring(9));
+            else                                  sizes.add(arg);
+        }
+        if (sizes.isEmpty()) sizes = List.of(DEFAULT_SIZES);
+
+        SyntheticMidiGenerator generator = new SyntheticMidiGenerator(
+                SgTableLoader.load(), SyntheticMidiGenerator.DEFAULT_SEED,
+                bendsPerBeat, SyntheticMidiGenerator.DEFAULT_BREATH_CHANCE);
+
+        Path         workDir = Files.createTempDirectory("plg-scaling");
+        List<Result> results = new ArrayList<>();
+        PrintStream  console = System.out;
+
+        try {
+            for (String size : sizes) {
+                File midi = workDir.resolve("song-" + size + ".mid").toFile();
+                SyntheticMidiGenerator.Summary summary =
+                        generator.write(midi, SyntheticMidiGenerator.parseDurationSec(size));
+                console.printf("%-6s generated: %,d bytes, %s%n", size, midi.length(), summary);
+
+                Result result = convert(size, midi, summary.notes, workDir.toFile(), console);
+                results.add(result);
+                console.printf("%-6s converted in %,.1f s, peak heap %,.1f MB%n",
+                        size, result.wallNanos / 1e9, result.peakHeapBytes / 1048576.0);
+
+                cleanDirectory(workDir);
+                if (result.wallNanos / 1_000_000_000L > budgetSec) {
+                    console.println("Time budget of " + budgetSec + " s exceeded; skipping larger sizes");
+                    break;
+                }
+            }
+        } finally {
+            cleanDirectory(workDir);
+            Files.deleteIfExists(workDir);
+        }
+
+        printReport(console, results);
+    }
+
+    private static Result convert(String label, File midi, long notes, File outputDir, PrintStream console) {
+        List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) heapPools.add(pool);
+        }
+
+        System.gc();
+        heapPools.forEach(MemoryPoolMXBean::resetPeakUsage);
+
+        // The converters log every event; discard it but keep the formatting cost
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        long start = System.nanoTime();
+        try {
+            new LyricsExtractor().run(midi, outputDir);
+        } finally {
+            System.setOut(console);
+        }
+        long wall = System.nanoTime() - start;
+
+        // Sum of per-pool peaks: an upper bound on the true peak heap occupancy
+        long peakHeap = 0L;
+        for (MemoryPoolMXBean pool : heapPools) {
+            peakHeap += pool.getPeakUsage().getUsed();
+        }
+
+        String name   = midi.getName().substring(0, midi.getName().lastIndexOf('.'));
+        long   output = new File(outputDir, name + ".svp").length()
+                      + new File(outputDir, name + ".vpr").length();
+
+        return new Result(label, midi.length(), notes, wall, peakHeap, output);
+    }
+
+    private static void printReport(PrintStream out, List<Result> results) {
+        out.println();
+        out.printf("%-6s %14s %10s %12s %12s %14s %10s %10s%n",
+                "size", "input bytes", "notes", "wall ms", "peak heap MB", "output bytes",
+                "time exp", "heap exp");
+
+        Result previous = null;
+        List<String> warnings = new ArrayList<>();
+        for (Result r : results) {
+            String timeExp = "-", heapExp = "-";
+            if (previous != null) {
+                double t = exponent(previous.wallNanos,     r.wallNanos,     previous.inputBytes, r.inputBytes);
+                double h = exponent(previous.peakHeapBytes, r.peakHeapBytes, previous.inputBytes, r.inputBytes);
+                timeExp = String.format("%.2f", t);
+                heapExp = String.format("%.2f", h);
+                if (t > NON_LINEAR_EXPONENT) warnings.add("wall time grows non-linearly from " + previous.label + " to " + r.label);
+                if (h > NON_LINEAR_EXPONENT) warnings.add("peak heap grows non-linearly from " + previous.label + " to " + r.label);
+            }
+            out.printf("%-6s %,14d %,10d %,12d %,12.1f %,14d %10s %10s%n",
+                    r.label, r.inputBytes, r.notes, r.wallNanos / 1_000_000L,
+                    r.peakHeapBytes / 1048576.0, r.outputBytes, timeExp, heapExp);
+            previous = r;
+        }
+
+        for (String warning : warnings) {
+            out.println("[Warn] " + warning);
+        }
+    }
+
+    private static double exponent(double y1, double y2, double x1, double x2) {
+        if (y1 <= 0 || y2 <= 0 || x1 <= 0 || x2 <= x1) return Double.NaN;
+        return Math.log(y2 / y1) / Math.log(x2 / x1);
+    }
+
+    private static void cleanDirectory(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder())
+                 .filter(p -> !p.equals(dir))
+                 .forEach(p -> p.toFile().delete());
+        }
+    }
+}
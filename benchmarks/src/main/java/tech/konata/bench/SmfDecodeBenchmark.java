@@ -0,0 +1,76 @@
+package tech.konata.bench;
+
+import org.openjdk.jmh.annotations.*;
+import tech.konata.parser.SmfDecoder;
+
+import javax.sound.midi.*;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks decoding of wide type-1 files: {@link SmfDecoder} with a given
+ * number of worker threads against the sequential Java Sound reader.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SmfDecodeBenchmark {
+
+    private static final int RESOLUTION       = 480;
+    private static final int EVENTS_PER_TRACK = 20_000;
+
+    @Param({ "2", "16", "64" })
+    public int tracks;
+
+    @Param({ "1", "4" })
+    public int threads;
+
+    private byte[]       file;
+    private ForkJoinPool pool;
+    private SmfDecoder   decoder;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        Random   random   = new Random(SyntheticScore.SEED);
+        Sequence sequence = new Sequence(Sequence.PPQ, RESOLUTION);
+        for (int t = 0; t < tracks; t++) {
+            Track track   = sequence.createTrack();
+            int   channel = t % 16;
+            long  tick    = 0L;
+            for (int i = 0; i < EVENTS_PER_TRACK / 3; i++) {
+                int key = 48 + random.nextInt(24);
+                track.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_ON, channel, key, 100), tick));
+                track.add(new MidiEvent(new ShortMessage(ShortMessage.PITCH_BEND, channel, random.nextInt(128), 64), tick + 60));
+                track.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_ON, channel, key, 0), tick + 200));
+                tick += 240;
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MidiSystem.write(sequence, 1, out);
+        file = out.toByteArray();
+
+        pool    = new ForkJoinPool(threads);
+        decoder = new SmfDecoder(pool);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public SmfDecoder.Result decodeForkJoin() {
+        return decoder.decode(file);
+    }
+
+    @Benchmark
+    public Sequence decodeJavaSound() throws Exception {
+        return MidiSystem.getSequence(new ByteArrayInputStream(file));
+    }
+}
@@ -0,0 +1,181 @@
+package tech.konata.bench;
+
+import tech.konata.parser.SgTableLoader;
+import tech.konata.tools.SyntheticMidiGenerator;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Cold-start latency of a whole {@code LyricsExtractor} conversion, launched as
+ * a fresh process for every run, across the ways the CLI can be started.
+ *
+ * <h2>Launchers</h2>
+ * <ul>
+ *   <li><b>jvm-noshare</b> – {@code java -Xshare:off -jar plg.jar}: no class
+ *       data sharing at all.</li>
+ *   <li><b>jvm</b> – {@code java -jar plg.jar}: the JDK's default CDS archive
+ *       only.</li>
+ *   <li><b>appcds</b> – {@code java -XX:SharedArchiveFile=plg.jsa -jar plg.jar}:
+ *       plus the dynamic archive recorded by the {@code cds} profile (Gson,
+ *       the converters and the parsers).</li>
+ *   <li><b>native</b> – the executable built by the {@code native} profile.</li>
+ * </ul>
+ * Launchers whose artefact is missing are skipped. Every run converts the
+ * same song into an empty directory; the first run of each launcher is a
+ * discarded warm-up so the OS file cache is equally warm for all of them.
+ *
+ * <p>Usage, after {@code mvn -B -Pcds package} (and optionally
+ * {@code mvn -B -Pnative package}):
+ * <pre>
+ *   java -cp benchmarks/target/benchmarks.jar tech.konata.bench.StartupBenchmark \
+ *        [--runs=10] [--target=target] [--length=30s] [song.mid]
+ * </pre>
+ * Without a song, a synthetic one of {@code --length} is generated.
+ */
+public final class StartupBenchmark {
+
+    private static final int    DEFAULT_RUNS    = 10;
+    private static final String DEFAULT_TARGET  = "target";
+    private static final String DEFAULT_LENGTH  = "30s";
+    private static final long   RUN_TIMEOUT_SEC = 600L;
+
+    private StartupBenchmark() { /* entry point only */ }
+
+    private static final class Launcher {
+        final String       name;
+        final List<String> command;
+
+        Launcher(String name, List<String> command) {
+            this.name    = name;
+            this.command = command;
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int    runs   = DEFAULT_RUNS;
+        Path   target = Paths.get(DEFAULT_TARGET);
+        String length = DEFAULT_LENGTH;
+        File   song   = null;
+
+        for (String arg : args) {
+            if (arg.startsWith("--runs="))        runs   = Integer.parseInt(arg.substring(7));
+            else if (arg.startsWith("--target=")) target = Paths.get(arg.substring(9));
+            else if (arg.startsWith("--length=")) length = arg.substring(9);
+            else                                  song   = new File(arg);
+        }
+        if (runs < 1) throw new IllegalArgumentException("--runs must be positive: " + runs);
+
+        target = target.toAbsolutePath();
+        List<Launcher> launchers = launchers(target);
+        if (launchers.isEmpty()) {
+            System.out.println("[Err] No runnable jar in " + target + "; build it with mvn -B -Pcds package");
+            System.exit(1);
+        }
+
+        PrintStream out     = System.out;
+        Path        workDir = Files.createTempDirectory("plg-startup");
+        try {
+            if (song == null) {
+                song = workDir.resolve("song.mid").toFile();
+                SyntheticMidiGenerator.Summary summary = new SyntheticMidiGenerator(
+                        SgTableLoader.load(), SyntheticMidiGenerator.DEFAULT_SEED,
+                        SyntheticMidiGenerator.DEFAULT_BENDS_PER_BEAT, SyntheticMidiGenerator.DEFAULT_BREATH_CHANCE)
+                        .write(song, SyntheticMidiGenerator.parseDurationSec(length));
+                out.printf("Generated %s song: %,d bytes, %s%n", length, song.length(), summary);
+            }
+            song = song.getAbsoluteFile();
+
+            out.printf("%n%-12s %10s %10s %10s %10s %10s%n", "launcher", "min ms", "median ms", "p90 ms", "max ms", "vs jvm");
+            Double jvmMedian = null;
+            for (Launcher launcher : launchers) {
+                long[] nanos = new long[runs];
+                time(launcher, song, workDir);   // warm-up
+                for (int i = 0; i < runs; i++) {
+                    nanos[i] = time(launcher, song, workDir);
+                }
+                Arrays.sort(nanos);
+
+                double median = millis(nanos[runs / 2]);
+                if (launcher.name.equals("jvm")) jvmMedian = median;
+                out.printf("%-12s %,10.1f %,10.1f %,10.1f %,10.1f %10s%n",
+                        launcher.name, millis(nanos[0]), median,
+                        millis(nanos[Math.min(runs - 1, (int) Math.ceil(runs * 0.9) - 1)]), millis(nanos[runs - 1]),
+                        jvmMedian != null ? String.format("%.2fx", jvmMedian / median) : "-");
+            }
+        } finally {
+            deleteRecursively(workDir);
+        }
+    }
+
+    private static List<Launcher> launchers(Path target) {
+        String java    = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        Path   jar     = target.resolve("plg.jar");
+        Path   archive = target.resolve("plg.jsa");
+        Path   image   = target.resolve(System.getProperty("os.name").startsWith("Windows") ? "plg.exe" : "plg");
+
+        List<Launcher> launchers = new ArrayList<>();
+        if (Files.isRegularFile(jar)) {
+            launchers.add(new Launcher("jvm-noshare", List.of(java, "-Xshare:off", "-jar", jar.toString())));
+            launchers.add(new Launcher("jvm",         List.of(java, "-jar", jar.toString())));
+            if (Files.isRegularFile(archive)) {
+                launchers.add(new Launcher("appcds", List.of(java, "-XX:SharedArchiveFile=" + archive, "-jar", jar.toString())));
+            } else {
+                System.out.println("[Warn] No AppCDS archive at " + archive + "; skipping appcds");
+            }
+        }
+        if (Files.isExecutable(image)) {
+            launchers.add(new Launcher("native", List.of(image.toString())));
+        } else {
+            System.out.println("[Warn] No native executable at " + image + "; skipping native");
+        }
+        return launchers;
+    }
+
+    /** Wall time of one conversion of {@code song} in a fresh process and output directory. */
+    private static long time(Launcher launcher, File song, Path workDir) throws IOException, InterruptedException {
+        Path runDir = Files.createTempDirectory(workDir, launcher.name);
+        List<String> command = new ArrayList<>(launcher.command);
+        command.add(song.getPath());
+
+        ProcessBuilder builder = new ProcessBuilder(command)
+                .directory(runDir.toFile())
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD);
+
+        long start = System.nanoTime();
+        Process process = builder.start();
+        if (!process.waitFor(RUN_TIMEOUT_SEC, TimeUnit.SECONDS)) {
+            process.destroyForcibly();
+            throw new IllegalStateException(launcher.name + " did not finish within " + RUN_TIMEOUT_SEC + " s");
+        }
+        long wall = System.nanoTime() - start;
+
+        if (process.exitValue() != 0) {
+            throw new IllegalStateException(launcher.name + " exited with status " + process.exitValue()
+                    + ": " + String.join(" ", command));
+        }
+        deleteRecursively(runDir);
+        return wall;
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package tech.konata.bench;
+
+import tech.konata.convert.Note;
+import tech.konata.convert.Pair;
+import tech.konata.convert.Tempo;
+import tech.konata.convert.pitch.PitchConverter;
+import tech.konata.convert.pitch.SvpPitchProcessor.SvpNoteWithVibrato;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Deterministic synthetic score used as benchmark input.
+ *
+ * <p>Notes are laid out back-to-back with an occasional rest, and pitch-bend
+ * points are placed on a regular grid of {@code bendsPerBeat} points per beat
+ * across every note. The same {@code (noteCount, bendsPerBeat)} pair always
+ * produces the same score.
+ */
+final class SyntheticScore {
+
+    static final long           SEED          = 0x504C47313030L; // "PLG100"
+    private static final long[] DURATIONS     = { 240L, 480L, 480L, 960L };
+    private static final int    LOWEST_KEY    = 55;
+    private static final int    KEY_RANGE     = 20;
+    private static final double REST_CHANCE   = 0.15;
+    private static final double MAX_BEND_SEMI = 1.5;
+
+    final List<Note>               notes;
+    final List<Tempo>              tempos;
+
+    /** Pitch-bend points as semitone offsets from the current note. */
+    final List<Pair<Long, Double>> relativeBends;
+
+    /** The same pitch-bend points as absolute MIDI key values. */
+    final List<Pair<Long, Double>> absoluteBends;
+
+    /** Centred pitch-bend values (±8192, 768 per semitone) matching {@link #relativeBends}. */
+    final int[]                    rawBendValues;
+
+    SyntheticScore(int noteCount, int bendsPerBeat) {
+        Random random = new Random(SEED);
+
+        List<Note> noteList = new ArrayList<>(noteCount);
+        long tick = 0L;
+        for (int i = 0; i < noteCount; i++) {
+            if (i > 0 && random.nextDouble() < REST_CHANCE) {
+                tick += DURATIONS[random.nextInt(DURATIONS.length)];
+            }
+            long duration = DURATIONS[random.nextInt(DURATIONS.length)];
+            int  key      = LOWEST_KEY + random.nextInt(KEY_RANGE);
+            noteList.add(new Note(key, tick, tick + duration, PitchConverter.DEFAULT_LYRIC));
+            tick += duration;
+        }
+
+        List<Pair<Long, Double>> relative = new ArrayList<>();
+        List<Pair<Long, Double>> absolute = new ArrayList<>();
+        if (bendsPerBeat > 0) {
+            long step = Math.max(1L, PitchConverter.TICKS_IN_BEAT / bendsPerBeat);
+            for (Note note : noteList) {
+                for (long t = note.getTickOn(); t < note.getTickOff(); t += step) {
+                    double offset = MAX_BEND_SEMI * Math.sin(t / 97.0) * random.nextDouble();
+                    relative.add(new Pair<>(t, offset));
+                    absolute.add(new Pair<>(t, note.getKey() + offset));
+                }
+            }
+        }
+
+        int[] raw = new int[relative.size()];
+        for (int i = 0; i < raw.length; i++) {
+            raw[i] = (int) Math.round(relative.get(i).second * 768.0);
+        }
+
+        this.notes         = Collections.unmodifiableList(noteList);
+        this.tempos        = List.of(new Tempo(0L, PitchConverter.DEFAULT_BPM),
+                                     new Tempo(tick / 2L, 150.0));
+        this.relativeBends = Collections.unmodifiableList(relative);
+        this.absoluteBends = Collections.unmodifiableList(absolute);
+        this.rawBendValues = raw;
+    }
+
+    /**
+     * Returns one vibrato descriptor per note, with every parameter left at its
+     * default so {@code SvpPitchProcessor} resolves them itself.
+     */
+    List<SvpNoteWithVibrato> notesWithVibrato() {
+        List<SvpNoteWithVibrato> result = new ArrayList<>(notes.size());
+        for (Note note : notes) {
+            result.add(new SvpNoteWithVibrato(note.getTickOn(), note.getDurationTicks(),
+                    null, null, null, null, null, null));
+        }
+        return result;
+    }
+}
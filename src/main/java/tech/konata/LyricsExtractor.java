@@ -1,23 +1,108 @@
 package tech.konata;
 
+import tech.konata.cache.OutputCache;
+import tech.konata.convert.ConverterSettings;
 import tech.konata.convert.ProjectConverter;
-import tech.konata.convert.impl.SVP;
-import tech.konata.convert.impl.VPR;
+import tech.konata.convert.RecordingConverter;
+import tech.konata.convert.ScoreFile;
+import tech.konata.convert.impl.SvpStreamWriter;
+import tech.konata.engine.ConversionEngine;
+import tech.konata.output.AsyncFileOutput;
 import tech.konata.parser.MidiParser;
-import tech.konata.parser.SgData;
-import tech.konata.parser.SgTableLoader;
+import tech.konata.parser.PhoneSeqParser;
 
 import java.io.File;
+import java.nio.file.Paths;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.function.Consumer;
 
 public final class LyricsExtractor {
 
-    private static final String DEFAULT_MIDI_PATH = "D:\\MidiTest\\tokinona.MID";
+    /** System property naming the output cache directory; caching is off when unset. */
+    private static final String CACHE_DIR_PROPERTY       = "plg.cache.dir";
+    private static final String CACHE_MAX_BYTES_PROPERTY = "plg.cache.maxBytes";
+    private static final String CACHE_HARD_LINK_PROPERTY = "plg.cache.hardLink";
+    private static final long   DEFAULT_CACHE_MAX_BYTES  = 1L << 30;
 
+    /**
+     * System property selecting the constant-memory mode: only the {@code .svp}
+     * is written, by {@link SvpStreamWriter}, and the output cache is bypassed.
+     */
+    private static final String STREAMING_PROPERTY = "plg.streaming";
+
+    /**
+     * System property that makes {@link #run} also write the parsed song as a
+     * {@link ScoreFile} ({@code <name>.plgs}); score files are accepted as input
+     * in place of MIDI files.
+     */
+    private static final String SNAPSHOT_PROPERTY = "plg.snapshot";
+
+    /** Output cache, or {@code null} to always convert. */
+    private final OutputCache cache;
+
+    /** Shared SG table, templates and converters, created on the first {@link #run}. */
+    private ConversionEngine engine;
+
+    public LyricsExtractor() {
+        this(null);
+    }
+
+    public LyricsExtractor(OutputCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * An extractor that converts on {@code engine}, e.g. one shared by several
+     * extractors with different caches.
+     */
+    public LyricsExtractor(OutputCache cache, ConversionEngine engine) {
+        this.cache  = cache;
+        this.engine = engine;
+    }
+
+    /**
+     * Usage: {@code LyricsExtractor <input.mid|input.plgs>...}; converts every
+     * file named on the command line. For a batch of files without an output
+     * cache, each song's files are written in the background while the next
+     * song converts.
+     */
     public static void main(String[] args) {
-        String midiPath = (args.length > 0) ? args[0] : DEFAULT_MIDI_PATH;
-        new LyricsExtractor().run(new File(midiPath));
+        if (args.length < 1) {
+            System.err.println("Usage: LyricsExtractor <input.mid|input.plgs>...");
+            System.exit(1);
+        }
+        List<String> midiPaths = Arrays.asList(args);
+        OutputCache  cache     = cacheFromSystemProperties();
+
+        // The cache publishes the files as soon as a conversion returns, so it needs them written by then
+        if (midiPaths.size() == 1 || cache != null) {
+            LyricsExtractor extractor = new LyricsExtractor(cache);
+            midiPaths.forEach(path -> extractor.run(new File(path)));
+            return;
+        }
+
+        try (AsyncFileOutput output = new AsyncFileOutput()) {
+            ConversionEngine engine = new ConversionEngine(
+                    ConverterSettings.fromSystemProperties(), 1, true, output);
+            LyricsExtractor extractor = new LyricsExtractor(null, engine);
+            midiPaths.forEach(path -> extractor.run(new File(path)));
+        }
+    }
+
+    /**
+     * Builds the output cache configured through {@code -Dplg.cache.dir},
+     * {@code -Dplg.cache.maxBytes} and {@code -Dplg.cache.hardLink}, or returns
+     * {@code null} if no cache directory is set.
+     */
+    static OutputCache cacheFromSystemProperties() {
+        String dir = System.getProperty(CACHE_DIR_PROPERTY);
+        if (dir == null || dir.isBlank()) return null;
+
+        long    maxBytes = Long.getLong(CACHE_MAX_BYTES_PROPERTY, DEFAULT_CACHE_MAX_BYTES);
+        boolean hardLink = Boolean.getBoolean(CACHE_HARD_LINK_PROPERTY);
+        return new OutputCache(Paths.get(dir), maxBytes, hardLink);
     }
 
     /**
@@ -27,23 +112,68 @@ public final class LyricsExtractor {
      * @param midiFile the PLG100-SG MIDI file to convert
      */
     public void run(File midiFile) {
-        List<SgData> sgTable = SgTableLoader.load();
+        run(midiFile, null);
+    }
 
-        // initialize converters
-        List<ProjectConverter> converters = Arrays.asList(new SVP(), new VPR());
-        converters.forEach(ProjectConverter::load);
+    /**
+     * Same as {@link #run(File)}, but writes the project files into
+     * {@code outputDir} instead of the working directory.
+     *
+     * @param midiFile  the PLG100-SG MIDI file to convert
+     * @param outputDir directory for the output files, or {@code null} for the
+     *                  working directory
+     */
+    public void run(File midiFile, File outputDir) {
+        String name     = stripExtension(midiFile.getName());
+        String baseName = (outputDir != null) ? new File(outputDir, name).getPath() : name;
 
-        // parse the MIDI file and dispatch events to every converter
-        MidiParser parser = new MidiParser(converters, sgTable);
-        parser.parse(midiFile);
+        ConversionEngine engine = engine();
+        if (Boolean.getBoolean(STREAMING_PROPERTY)) {
+            new SvpStreamWriter(engine.getPhoneSeqParser(), engine.getSettings()).convert(midiFile, baseName);
+            System.out.println("Conversion complete: " + baseName);
+            return;
+        }
 
-        // save each converter's output
-        String baseName = stripExtension(midiFile.getName());
-        converters.forEach(c -> c.save(baseName));
+        try (ConversionEngine.Session session = engine.openSession()) {
+            Consumer<String> conversion;
+            if (midiFile.getName().endsWith(ScoreFile.EXTENSION)) {
+                ScoreFile score = ScoreFile.map(midiFile);
+                conversion = target -> session.replay(score, target);
+            } else if (Boolean.getBoolean(SNAPSHOT_PROPERTY)) {
+                ScoreFile score = writeSnapshot(midiFile, baseName + ScoreFile.EXTENSION, engine.getPhoneSeqParser());
+                conversion = target -> session.replay(score, target);
+            } else {
+                conversion = target -> session.convert(midiFile, target);
+            }
+
+            if (cache == null) {
+                conversion.accept(baseName);
+            } else {
+                List<ProjectConverter> converters = session.getConverters();
+                boolean hit = cache.getOrConvert(midiFile, converters, baseName, conversion);
+                System.out.println((hit ? "Cache hit: " : "Cache miss: ") + midiFile.getName());
+            }
+        }
 
         System.out.println("Conversion complete: " + baseName);
     }
 
+    /** The engine, created with the {@code -D} converter settings on first use. */
+    private ConversionEngine engine() {
+        if (engine == null) engine = new ConversionEngine(ConverterSettings.fromSystemProperties());
+        return engine;
+    }
+
+    /** Parses {@code midiFile} once, writes it to {@code scorePath} and maps the result. */
+    private static ScoreFile writeSnapshot(File midiFile, String scorePath, PhoneSeqParser phoneSeqParser) {
+        RecordingConverter recorder = new RecordingConverter();
+        new MidiParser(Collections.singletonList(recorder), phoneSeqParser).parse(midiFile);
+
+        ScoreFile.write(recorder.snapshot(), Paths.get(scorePath));
+        System.out.println("Score snapshot written: " + scorePath);
+        return ScoreFile.map(new File(scorePath));
+    }
+
     private static String stripExtension(String filename) {
         int dot = filename.lastIndexOf('.');
         return (dot > 0) ? filename.substring(0, dot) : filename;
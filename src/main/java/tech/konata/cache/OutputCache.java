@@ -0,0 +1,387 @@
+package tech.konata.cache;
+
+import tech.konata.convert.ProjectConverter;
+import tech.konata.parser.SgTableLoader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Content-addressed on-disk cache of converter output files.
+ *
+ * <h2>Key</h2>
+ * The SHA-256 of the input file bytes, the {@linkplain SgTableLoader#version()
+ * SG table version}, the project templates, every converter's
+ * {@linkplain ProjectConverter#getSettingsFingerprint() settings fingerprint}
+ * and the code version (a hash of the jar, class directory or native executable
+ * this class was loaded from). Changing any of them yields a different key.
+ *
+ * <h2>Layout</h2>
+ * <pre>
+ *   root/
+ *     ab/abcdef…/output.svp      ← one directory per key, sharded by the
+ *     ab/abcdef…/output.vpr        first two hex digits
+ *     staging/&lt;uuid&gt;/             ← in-progress conversions and evictions
+ * </pre>
+ * Entries are written into a private staging directory and published with a
+ * single atomic directory rename, and evicted by renaming them back into
+ * staging before deletion. Readers therefore never see a partial entry, and any
+ * number of processes can share one cache directory without locks: if two
+ * processes convert the same input concurrently, the first rename wins and the
+ * other copy is discarded.
+ *
+ * <h2>Eviction</h2>
+ * Least-recently-used by directory modification time, which is refreshed on
+ * every hit. After each store, the oldest entries are removed until the cache
+ * is within {@code maxBytes}.
+ */
+public final class OutputCache {
+
+    private static final String KEY_FORMAT_VERSION = "plg-output-cache/1";
+    private static final String STAGING_DIR        = "staging";
+    private static final String OUTPUT_BASE_NAME   = "output";
+    private static final String[] TEMPLATE_RESOURCES = {
+            "/SynthesizerV_Project_Template.json",
+            "/VOCALOID6_Project_Template.json"
+    };
+
+    /** Set by GraalVM in native images. */
+    private static final String NATIVE_IMAGE_PROPERTY = "org.graalvm.nativeimage.imagecode";
+
+    private static volatile String codeVersion;
+
+    private final Path    root;
+    private final long    maxBytes;
+    private final boolean hardLink;
+
+    private final AtomicLong hits   = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param root     cache directory (created if missing)
+     * @param maxBytes size bound for all entries together
+     * @param hardLink {@code true} to hard-link cached files into place on a hit
+     *                 (falls back to copying when the file system refuses);
+     *                 {@code false} to always copy. Only enable linking when
+     *                 nothing rewrites output files in place.
+     */
+    public OutputCache(Path root, long maxBytes, boolean hardLink) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes must be positive: " + maxBytes);
+        }
+        this.root     = root;
+        this.maxBytes = maxBytes;
+        this.hardLink = hardLink;
+        try {
+            Files.createDirectories(root.resolve(STAGING_DIR));
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to create cache directory: " + root, e);
+        }
+    }
+
+    /**
+     * Produces the output files for {@code input} at {@code baseName}, either from
+     * the cache or by running {@code conversion}.
+     *
+     * <p>On a miss, {@code conversion} receives a staging base name and must make
+     * the converters save there; the results are then published to the cache and
+     * placed at {@code baseName}.
+     *
+     * @param input      the input file whose bytes are part of the key
+     * @param converters the converters that will produce the output (only their
+     *                   settings fingerprints are read on a hit)
+     * @param baseName   output file base name (without extension)
+     * @param conversion performs the actual conversion into the given base name
+     * @return {@code true} on a cache hit
+     */
+    public boolean getOrConvert(File input, List<ProjectConverter> converters,
+                                String baseName, Consumer<String> conversion) {
+        String key   = keyFor(input, converters);
+        Path   entry = entryPath(key);
+
+        if (restore(entry, baseName)) {
+            hits.incrementAndGet();
+            return true;
+        }
+        misses.incrementAndGet();
+
+        Path staging = newStagingDirectory();
+        try {
+            conversion.accept(staging.resolve(OUTPUT_BASE_NAME).toString());
+            publish(staging, entry);
+        } finally {
+            deleteRecursively(staging);
+        }
+
+        if (!restore(entry, baseName)) {
+            throw new IllegalStateException("Cache entry vanished right after publishing: " + entry);
+        }
+        evictIfNeeded();
+        return false;
+    }
+
+    /** Number of cache hits served by this instance. */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /** Number of cache misses seen by this instance. */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Computes the cache key for converting {@code input} with {@code converters}.
+     */
+    public String keyFor(File input, List<ProjectConverter> converters) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            update(digest, KEY_FORMAT_VERSION);
+            update(digest, codeVersion());
+            update(digest, SgTableLoader.version());
+            for (String template : TEMPLATE_RESOURCES) {
+                try (InputStream in = OutputCache.class.getResourceAsStream(template)) {
+                    if (in != null) digest.update(in.readAllBytes());
+                }
+            }
+            for (ProjectConverter converter : converters) {
+                update(digest, converter.getSettingsFingerprint());
+            }
+            try (InputStream in = Files.newInputStream(input.toPath())) {
+                byte[] buffer = new byte[1 << 16];
+                int read;
+                while ((read = in.read(buffer)) > 0) {
+                    digest.update(buffer, 0, read);
+                }
+            }
+            return toHex(digest.digest());
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to compute cache key for " + input, e);
+        }
+    }
+
+    private Path entryPath(String key) {
+        return root.resolve(key.substring(0, 2)).resolve(key);
+    }
+
+    /**
+     * Places every file of {@code entry} at {@code baseName}; returns {@code false}
+     * if the entry does not exist or disappears mid-way (e.g. evicted by another
+     * process).
+     */
+    private boolean restore(Path entry, String baseName) {
+        if (!Files.isDirectory(entry)) return false;
+        try {
+            List<Path> files;
+            try (Stream<Path> s = Files.list(entry)) {
+                files = s.collect(Collectors.toList());
+            }
+            if (files.isEmpty()) return false;
+
+            for (Path cached : files) {
+                String name = cached.getFileName().toString();
+                String ext  = name.substring(OUTPUT_BASE_NAME.length());   // ".svp", ".vpr"
+                Path   target = Paths.get(baseName + ext);
+                placeFile(cached, target);
+            }
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void placeFile(Path cached, Path target) throws IOException {
+        Path parent = target.toAbsolutePath().getParent();
+        if (parent != null) Files.createDirectories(parent);
+
+        if (hardLink) {
+            try {
+                Files.deleteIfExists(target);
+                Files.createLink(target, cached);
+                return;
+            } catch (UnsupportedOperationException | IOException e) {
+                // Different file store or no link support: fall back to copying
+            }
+        }
+        Files.copy(cached, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Renames {@code staging} to {@code entry}. Losing the race to another
+     * process is not an error: renaming onto its non-empty directory fails
+     * (on Linux with a plain {@link FileSystemException}, "Directory not
+     * empty"), and its files are identical to ours. The caller deletes the
+     * staging copy.
+     */
+    private void publish(Path staging, Path entry) {
+        try {
+            Files.createDirectories(entry.getParent());
+            Files.move(staging, entry, StandardCopyOption.ATOMIC_MOVE);
+        } catch (FileSystemException e) {
+            if (!isPublished(entry)) {
+                throw new RuntimeException("Failed to publish cache entry: " + entry, e);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to publish cache entry: " + entry, e);
+        }
+    }
+
+    /** Whether {@code entry} is a published entry; entries appear by an atomic rename, so one with files is complete. */
+    private static boolean isPublished(Path entry) {
+        if (!Files.isDirectory(entry)) return false;
+        try (Stream<Path> s = Files.list(entry)) {
+            return s.findAny().isPresent();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private Path newStagingDirectory() {
+        try {
+            return Files.createDirectory(root.resolve(STAGING_DIR).resolve(UUID.randomUUID().toString()));
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to create cache staging directory under " + root, e);
+        }
+    }
+
+    /**
+     * Removes least-recently-used entries until the cache fits in {@code maxBytes}.
+     */
+    private void evictIfNeeded() {
+        List<Path> entries = new ArrayList<>();
+        try (Stream<Path> shards = Files.list(root)) {
+            for (Path shard : (Iterable<Path>) shards::iterator) {
+                if (shard.getFileName().toString().equals(STAGING_DIR) || !Files.isDirectory(shard)) continue;
+                try (Stream<Path> s = Files.list(shard)) {
+                    s.forEach(entries::add);
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("[Warn] Cache eviction skipped: " + e.getMessage());
+            return;
+        }
+
+        long total = 0L;
+        List<long[]> stats = new ArrayList<>(entries.size());   // {lastModified, size}
+        for (Path entry : entries) {
+            long size = directorySize(entry);
+            total += size;
+            stats.add(new long[] { lastModified(entry), size });
+        }
+        if (total <= maxBytes) return;
+
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < entries.size(); i++) order.add(i);
+        order.sort(Comparator.comparingLong(i -> stats.get(i)[0]));
+
+        for (int i : order) {
+            if (total <= maxBytes) break;
+            Path victim = entries.get(i);
+            Path doomed = root.resolve(STAGING_DIR).resolve(UUID.randomUUID() + "-evicted");
+            try {
+                Files.move(victim, doomed, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                continue;   // already evicted or being read elsewhere
+            }
+            deleteRecursively(doomed);
+            total -= stats.get(i)[1];
+        }
+    }
+
+    private static long directorySize(Path dir) {
+        try (Stream<Path> s = Files.list(dir)) {
+            return s.mapToLong(p -> p.toFile().length()).sum();
+        } catch (IOException e) {
+            return 0L;
+        }
+    }
+
+    private static long lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path).toMillis();
+        } catch (IOException e) {
+            return 0L;
+        }
+    }
+
+    private static void deleteRecursively(Path dir) {
+        if (!Files.exists(dir)) return;
+        try (Stream<Path> s = Files.walk(dir)) {
+            s.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        } catch (IOException e) {
+            // Leftover staging directories are harmless
+        }
+    }
+
+    /**
+     * Hash of the code this class was loaded from: the jar file, every file
+     * under the class directory when running from an exploded build, or the
+     * executable itself when running as a native image.
+     */
+    static String codeVersion() {
+        String version = codeVersion;
+        if (version != null) return version;
+
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            Path path;
+            if (System.getProperty(NATIVE_IMAGE_PROPERTY) != null) {
+                // No class files at run time: the executable is the code
+                path = ProcessHandle.current().info().command().map(Paths::get).orElse(null);
+            } else {
+                CodeSource source = OutputCache.class.getProtectionDomain().getCodeSource();
+                URL location = source != null ? source.getLocation() : null;
+                path = location != null ? Paths.get(location.toURI()) : null;
+            }
+
+            if (path != null && Files.isDirectory(path)) {
+                List<Path> files;
+                try (Stream<Path> s = Files.walk(path)) {
+                    files = s.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+                }
+                for (Path file : files) {
+                    update(digest, path.relativize(file).toString());
+                    digest.update(Files.readAllBytes(file));
+                }
+            } else if (path != null && Files.isRegularFile(path)) {
+                digest.update(Files.readAllBytes(path));
+            } else {
+                update(digest, String.valueOf(OutputCache.class.getPackage().getImplementationVersion()));
+            }
+            version = toHex(digest.digest());
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to determine code version", e);
+        }
+        codeVersion = version;
+        return version;
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,126 @@
+package tech.konata.convert;
+
+/**
+ * Output settings shared by the project converters.
+ *
+ * <p>Every field affects the written files, so {@link #toString()} lists them
+ * all; converters append it to their
+ * {@linkplain ProjectConverter#getSettingsFingerprint() settings fingerprint}.
+ */
+public final class ConverterSettings {
+
+    /** System properties read by {@link #fromSystemProperties()}. */
+    public static final String CONTROLLER_POINTS_PER_SECOND_PROPERTY = "plg.controller.pointsPerSecond";
+    public static final String LOUDNESS_TOLERANCE_DB_PROPERTY        = "plg.controller.loudnessToleranceDb";
+    public static final String DYNAMICS_TOLERANCE_PROPERTY           = "plg.controller.dynamicsTolerance";
+    public static final String PIT_TOLERANCE_CENTS_PROPERTY          = "plg.vpr.pitToleranceCents";
+    public static final String PIT_RESOLUTION_CENTS_PROPERTY         = "plg.vpr.pitResolutionCents";
+    public static final String VPR_DEFLATE_LEVEL_PROPERTY            = "plg.vpr.deflateLevel";
+
+    public static final double DEFAULT_CONTROLLER_POINTS_PER_SECOND = 20.0;
+    public static final double DEFAULT_LOUDNESS_TOLERANCE_DB        = 0.25;
+    public static final double DEFAULT_DYNAMICS_TOLERANCE           = 1.0;
+    public static final double DEFAULT_PIT_TOLERANCE_CENTS          = 1.0;
+    public static final double DEFAULT_PIT_RESOLUTION_CENTS         = 0.1;
+    public static final int    DEFAULT_VPR_DEFLATE_LEVEL            = 6;
+
+    public static final ConverterSettings DEFAULT = new ConverterSettings(
+            DEFAULT_CONTROLLER_POINTS_PER_SECOND, DEFAULT_LOUDNESS_TOLERANCE_DB, DEFAULT_DYNAMICS_TOLERANCE,
+            DEFAULT_PIT_TOLERANCE_CENTS, DEFAULT_PIT_RESOLUTION_CENTS, DEFAULT_VPR_DEFLATE_LEVEL);
+
+    /** Average controller points per second of song the output may use ({@code 0} = unlimited). */
+    public final double controllerPointsPerSecond;
+
+    /** Largest SVP loudness error, in dB, before the budget forces more. */
+    public final double loudnessToleranceDb;
+
+    /** Largest VPR dynamics error, in controller units, before the budget forces more. */
+    public final double dynamicsTolerance;
+
+    /** Largest pitch error, in cents, that thinning VPR pitchBend events may introduce ({@code 0} = only drop repeats). */
+    public final double pitToleranceCents;
+
+    /**
+     * Coarsest PIT step, in cents, a VPR pitch section may be given when it
+     * shares a wider pitchBendSens with its neighbours to save PBS events.
+     */
+    public final double pitResolutionCents;
+
+    /** Deflate level of {@code sequence.json} inside a VPR archive, {@code 0} (stored) to {@code 9}. */
+    public final int vprDeflateLevel;
+
+    public ConverterSettings(double controllerPointsPerSecond, double loudnessToleranceDb,
+                             double dynamicsTolerance, double pitToleranceCents, double pitResolutionCents,
+                             int vprDeflateLevel) {
+        if (controllerPointsPerSecond < 0.0) {
+            throw new IllegalArgumentException(
+                    "controllerPointsPerSecond must not be negative: " + controllerPointsPerSecond);
+        }
+        if (loudnessToleranceDb < 0.0 || dynamicsTolerance < 0.0 || pitToleranceCents < 0.0
+                || pitResolutionCents < 0.0) {
+            throw new IllegalArgumentException("Tolerances must not be negative");
+        }
+        if (vprDeflateLevel < 0 || vprDeflateLevel > 9) {
+            throw new IllegalArgumentException("vprDeflateLevel must be 0-9: " + vprDeflateLevel);
+        }
+        this.controllerPointsPerSecond = controllerPointsPerSecond;
+        this.loudnessToleranceDb       = loudnessToleranceDb;
+        this.dynamicsTolerance         = dynamicsTolerance;
+        this.pitToleranceCents         = pitToleranceCents;
+        this.pitResolutionCents        = pitResolutionCents;
+        this.vprDeflateLevel           = vprDeflateLevel;
+    }
+
+    /**
+     * Builds settings from the {@code plg.controller.*} and {@code plg.vpr.*} system properties,
+     * falling back to the defaults for unset ones.
+     */
+    public static ConverterSettings fromSystemProperties() {
+        return new ConverterSettings(
+                doubleProperty(CONTROLLER_POINTS_PER_SECOND_PROPERTY, DEFAULT_CONTROLLER_POINTS_PER_SECOND),
+                doubleProperty(LOUDNESS_TOLERANCE_DB_PROPERTY,        DEFAULT_LOUDNESS_TOLERANCE_DB),
+                doubleProperty(DYNAMICS_TOLERANCE_PROPERTY,           DEFAULT_DYNAMICS_TOLERANCE),
+                doubleProperty(PIT_TOLERANCE_CENTS_PROPERTY,          DEFAULT_PIT_TOLERANCE_CENTS),
+                doubleProperty(PIT_RESOLUTION_CENTS_PROPERTY,         DEFAULT_PIT_RESOLUTION_CENTS),
+                intProperty(VPR_DEFLATE_LEVEL_PROPERTY,               DEFAULT_VPR_DEFLATE_LEVEL));
+    }
+
+    private static double doubleProperty(String name, double fallback) {
+        String value = System.getProperty(name);
+        if (value == null || value.isBlank()) return fallback;
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value for -D" + name + ": " + value, e);
+        }
+    }
+
+    private static int intProperty(String name, int fallback) {
+        String value = System.getProperty(name);
+        if (value == null || value.isBlank()) return fallback;
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value for -D" + name + ": " + value, e);
+        }
+    }
+
+    /**
+     * Point budget for a controller curve spanning {@code seconds} of song;
+     * {@code 0} means unlimited. Always leaves room for at least two points.
+     */
+    public int controllerPointBudget(double seconds) {
+        if (controllerPointsPerSecond == 0.0) return 0;
+        return (int) Math.max(2L, Math.min(Integer.MAX_VALUE, (long) Math.ceil(controllerPointsPerSecond * seconds)));
+    }
+
+    @Override
+    public String toString() {
+        return "ConverterSettings{controllerPointsPerSecond=" + controllerPointsPerSecond
+                + ", loudnessToleranceDb=" + loudnessToleranceDb
+                + ", dynamicsTolerance=" + dynamicsTolerance
+                + ", pitToleranceCents=" + pitToleranceCents
+                + ", pitResolutionCents=" + pitResolutionCents
+                + ", vprDeflateLevel=" + vprDeflateLevel + "}";
+    }
+}
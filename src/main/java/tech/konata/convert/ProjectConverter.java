@@ -1,5 +1,9 @@
 package tech.konata.convert;
 
+import tech.konata.output.FileOutput;
+
+import java.util.Objects;
+
 /**
  * Abstract base for converters that produce a specific singing-synthesis project format
  * (e.g. Synthesizer V {@code .svp}, VOCALOID {@code .vpr}).
@@ -10,43 +14,58 @@ package tech.konata.convert;
  *   <li>{@link #insertTempo(long, double)} — add tempo events (in tick order)</li>
  *   <li>{@link #insertNote(String, long, long, int)} — add note events (in tick order)</li>
  *   <li>{@link #onPitchBend(int, long)} — accumulate raw MIDI pitch-bend events</li>
+ *   <li>{@link #onControlChange(int, int, long)} — accumulate controller automation</li>
  *   <li>{@link #save(String)} — finalise and write the project file</li>
+ *   <li>{@link #reset()} — drop the song, after a save or a failed conversion</li>
  * </ol>
+ * A converter can go through the lifecycle any number of times; {@link #load()}
+ * always starts a new song. The event methods are those of {@link ScoreSink}.
  */
-public abstract class ProjectConverter {
+public abstract class ProjectConverter implements ScoreSink {
+
+    /** Where {@link #save(String)} writes the project files. */
+    private FileOutput output = FileOutput.SYNCHRONOUS;
 
     /**
-     * Initialises the converter and loads any required templates or resources.
+     * Initialises the converter for a new song, loading any required templates
+     * or resources and discarding what was collected for a previous song.
      */
     public abstract void load();
 
     /**
-     * Inserts a tempo change event.
-     *
-     * @param tick tick position of the tempo change
-     * @param bpm  beats per minute (must be positive)
+     * Discards everything collected for the current song and releases the
+     * resources it holds (e.g. temporary files), so an idle converter does not
+     * keep the song alive. {@link #load()} must be called before the next song.
+     * The default implementation is a no-op.
      */
-    public abstract void insertTempo(long tick, double bpm);
+    public void reset() {
+        // no-op by default
+    }
 
     /**
-     * Inserts a note with the given lyric syllable.
+     * Returns a string that identifies every setting affecting this converter's
+     * output. Two converters with equal fingerprints must produce identical files
+     * from identical input; the output cache relies on this.
      *
-     * @param lyric     lyric syllable (hiragana, romaji, etc.)
-     * @param tickStart tick at which the note begins (inclusive)
-     * @param tickEnd   tick at which the note ends (exclusive)
-     * @param midiKey   MIDI note number (0–127)
+     * <p>The default is the class name; converters with configurable behaviour
+     * must append their settings.
      */
-    public abstract void insertNote(String lyric, long tickStart, long tickEnd, int midiKey);
+    public String getSettingsFingerprint() {
+        return getClass().getName();
+    }
 
     /**
-     * Records a raw MIDI pitch-bend event. The default implementation is a no-op;
-     * override in converters that support pitch-bend output.
-     *
-     * @param value 14-bit signed pitch-bend value in the range {@code [-8192, 8191]}
-     * @param tick  tick position of the event
+     * Sets where {@link #save(String)} writes the project files. With an
+     * asynchronous output, the files may still be in progress when
+     * {@code save} returns. Defaults to {@link FileOutput#SYNCHRONOUS}.
      */
-    public void onPitchBend(int value, long tick) {
-        // no-op by default
+    public void setOutput(FileOutput output) {
+        this.output = Objects.requireNonNull(output, "output");
+    }
+
+    /** The output set with {@link #setOutput(FileOutput)}. */
+    protected final FileOutput getOutput() {
+        return output;
     }
 
     /**
@@ -0,0 +1,55 @@
+package tech.konata.convert;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A project template parsed once from the classpath, handing out a fresh copy
+ * of its JSON tree for every song.
+ *
+ * <p>Copying the parsed tree is much cheaper than parsing the resource again.
+ * The parsed tree itself is never handed out or modified, so one template can
+ * be shared by any number of converters and threads.
+ */
+public final class ProjectTemplate {
+
+    private final String     resourcePath;
+    private final JsonObject tree;
+
+    private ProjectTemplate(String resourcePath, JsonObject tree) {
+        this.resourcePath = resourcePath;
+        this.tree         = tree;
+    }
+
+    /**
+     * Parses the classpath resource {@code resourcePath}.
+     *
+     * @param description what the template is, for error messages (e.g.
+     *                    {@code "Synthesizer V project template"})
+     * @throws RuntimeException if the resource is missing or not a JSON object
+     */
+    public static ProjectTemplate load(String resourcePath, String description, Gson gson) {
+        try (InputStream in = ProjectTemplate.class.getResourceAsStream(resourcePath)) {
+            if (in == null) {
+                throw new IllegalStateException(description + " not found: " + resourcePath);
+            }
+            JsonObject tree = gson.fromJson(new InputStreamReader(in, StandardCharsets.UTF_8), JsonObject.class);
+            return new ProjectTemplate(resourcePath, tree);
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to load " + description, e);
+        }
+    }
+
+    /** A new, independent copy of the template, for the caller to fill in. */
+    public JsonObject newProject() {
+        return tree.deepCopy();
+    }
+
+    public String getResourcePath() {
+        return resourcePath;
+    }
+}
@@ -0,0 +1,196 @@
+package tech.konata.convert;
+
+import java.util.Arrays;
+
+/**
+ * A {@link ScoreSink} that only records what it receives, in primitive
+ * buffers, so it can later be replayed into real converters.
+ *
+ * <p>This decouples event intake from project building: the live input front
+ * end records on its dispatch thread and, at each rest, {@linkplain #drain()
+ * drains} the phrase into an immutable {@link Snapshot} for a background
+ * thread, which adds it to the song and replays that into the SVP / VPR
+ * converters.
+ *
+ * <p>Not thread-safe; snapshots are.
+ */
+public final class RecordingConverter implements ScoreSink {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    /** Recorded for notes inserted without a velocity. */
+    static final int NO_VELOCITY = 0;
+
+    private long[]   tempoTicks = new long[16];
+    private double[] tempoBpm   = new double[16];
+    private int      tempoCount;
+
+    private long[]   noteOn     = new long[INITIAL_CAPACITY];
+    private long[]   noteOff    = new long[INITIAL_CAPACITY];
+    private int[]    noteKey    = new int[INITIAL_CAPACITY];
+    private String[] noteLyric  = new String[INITIAL_CAPACITY];
+    private int[]    noteVel    = new int[INITIAL_CAPACITY];
+    private int      noteCount;
+
+    private long[]   bendTicks  = new long[INITIAL_CAPACITY];
+    private int[]    bendValues = new int[INITIAL_CAPACITY];
+    private int      bendCount;
+
+    private long[]   ccTicks    = new long[16];
+    private int[]    ccNumbers  = new int[16];
+    private int[]    ccValues   = new int[16];
+    private int      ccCount;
+
+    /** Drops everything recorded so far. */
+    public void clear() {
+        tempoCount = 0;
+        noteCount  = 0;
+        bendCount  = 0;
+        ccCount    = 0;
+    }
+
+    @Override
+    public void insertTempo(long tick, double bpm) {
+        if (tempoCount == tempoTicks.length) {
+            tempoTicks = Arrays.copyOf(tempoTicks, tempoCount * 2);
+            tempoBpm   = Arrays.copyOf(tempoBpm,   tempoCount * 2);
+        }
+        tempoTicks[tempoCount] = tick;
+        tempoBpm[tempoCount]   = bpm;
+        tempoCount++;
+    }
+
+    @Override
+    public void insertNote(String lyric, long tickStart, long tickEnd, int midiKey) {
+        insertNote(lyric, tickStart, tickEnd, midiKey, NO_VELOCITY);
+    }
+
+    @Override
+    public void insertNote(String lyric, long tickStart, long tickEnd, int midiKey, int velocity) {
+        if (noteCount == noteOn.length) {
+            noteOn    = Arrays.copyOf(noteOn,    noteCount * 2);
+            noteOff   = Arrays.copyOf(noteOff,   noteCount * 2);
+            noteKey   = Arrays.copyOf(noteKey,   noteCount * 2);
+            noteLyric = Arrays.copyOf(noteLyric, noteCount * 2);
+            noteVel   = Arrays.copyOf(noteVel,   noteCount * 2);
+        }
+        noteOn[noteCount]    = tickStart;
+        noteOff[noteCount]   = tickEnd;
+        noteKey[noteCount]   = midiKey;
+        noteLyric[noteCount] = lyric;
+        noteVel[noteCount]   = velocity;
+        noteCount++;
+    }
+
+    @Override
+    public void onPitchBend(int value, long tick) {
+        if (bendCount == bendTicks.length) {
+            bendTicks  = Arrays.copyOf(bendTicks,  bendCount * 2);
+            bendValues = Arrays.copyOf(bendValues, bendCount * 2);
+        }
+        bendTicks[bendCount]  = tick;
+        bendValues[bendCount] = value;
+        bendCount++;
+    }
+
+    @Override
+    public void onControlChange(int controller, int value, long tick) {
+        if (ccCount == ccTicks.length) {
+            ccTicks   = Arrays.copyOf(ccTicks,   ccCount * 2);
+            ccNumbers = Arrays.copyOf(ccNumbers, ccCount * 2);
+            ccValues  = Arrays.copyOf(ccValues,  ccCount * 2);
+        }
+        ccTicks[ccCount]   = tick;
+        ccNumbers[ccCount] = controller;
+        ccValues[ccCount]  = value;
+        ccCount++;
+    }
+
+    /** Total number of recorded tempo, note, pitch-bend and control-change events. */
+    public int getEventCount() {
+        return tempoCount + noteCount + bendCount + ccCount;
+    }
+
+    /**
+     * Returns an immutable copy of everything recorded so far.
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    /**
+     * Returns an immutable copy of everything recorded since the last drain
+     * and {@linkplain #clear() clears} the recorder, so the copy only costs
+     * the new events.
+     */
+    public Snapshot drain() {
+        Snapshot snapshot = new Snapshot(this);
+        clear();
+        return snapshot;
+    }
+
+    /**
+     * An immutable copy of a recording.
+     */
+    public static final class Snapshot {
+        final long[]   tempoTicks;
+        final double[] tempoBpm;
+        final long[]   noteOn;
+        final long[]   noteOff;
+        final int[]    noteKey;
+        final String[] noteLyric;
+        final int[]    noteVel;
+        final long[]   bendTicks;
+        final int[]    bendValues;
+        final long[]   ccTicks;
+        final int[]    ccNumbers;
+        final int[]    ccValues;
+
+        private Snapshot(RecordingConverter r) {
+            this.tempoTicks = Arrays.copyOf(r.tempoTicks, r.tempoCount);
+            this.tempoBpm   = Arrays.copyOf(r.tempoBpm,   r.tempoCount);
+            this.noteOn     = Arrays.copyOf(r.noteOn,     r.noteCount);
+            this.noteOff    = Arrays.copyOf(r.noteOff,    r.noteCount);
+            this.noteKey    = Arrays.copyOf(r.noteKey,    r.noteCount);
+            this.noteLyric  = Arrays.copyOf(r.noteLyric,  r.noteCount);
+            this.noteVel    = Arrays.copyOf(r.noteVel,    r.noteCount);
+            this.bendTicks  = Arrays.copyOf(r.bendTicks,  r.bendCount);
+            this.bendValues = Arrays.copyOf(r.bendValues, r.bendCount);
+            this.ccTicks    = Arrays.copyOf(r.ccTicks,    r.ccCount);
+            this.ccNumbers  = Arrays.copyOf(r.ccNumbers,  r.ccCount);
+            this.ccValues   = Arrays.copyOf(r.ccValues,   r.ccCount);
+        }
+
+        public int getNoteCount() {
+            return noteOn.length;
+        }
+
+        public int getEventCount() {
+            return tempoTicks.length + noteOn.length + bendTicks.length + ccTicks.length;
+        }
+
+        /**
+         * Feeds the recording to {@code converter}: tempos, then notes, then pitch
+         * bends, then control changes, each in recorded order. A project converter
+         * must already be {@linkplain ProjectConverter#load() loaded}.
+         */
+        public void replay(ScoreSink converter) {
+            for (int i = 0; i < tempoTicks.length; i++) {
+                converter.insertTempo(tempoTicks[i], tempoBpm[i]);
+            }
+            for (int i = 0; i < noteOn.length; i++) {
+                if (noteVel[i] == NO_VELOCITY) {
+                    converter.insertNote(noteLyric[i], noteOn[i], noteOff[i], noteKey[i]);
+                } else {
+                    converter.insertNote(noteLyric[i], noteOn[i], noteOff[i], noteKey[i], noteVel[i]);
+                }
+            }
+            for (int i = 0; i < bendTicks.length; i++) {
+                converter.onPitchBend(bendValues[i], bendTicks[i]);
+            }
+            for (int i = 0; i < ccTicks.length; i++) {
+                converter.onControlChange(ccNumbers[i], ccValues[i], ccTicks[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package tech.konata.convert;
+
+import tech.konata.output.AtomicFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Versioned binary snapshot of a parsed song, for parse-once, convert-many
+ * workflows.
+ *
+ * <h2>Why</h2>
+ * Converting the same MIDI file to another format or with other settings
+ * otherwise repeats the SMF decode and the PhoneSEQ matching against the SG
+ * table. A score file holds exactly what {@link tech.konata.parser.MidiParser}
+ * dispatched (a {@link RecordingConverter.Snapshot}), so it can be replayed
+ * into any converters without the MIDI file or the table.
+ *
+ * <h2>Layout</h2>
+ * Big-endian. A header of seven {@code int}s, {@code "PLGS"},
+ * {@value #VERSION}, then the lyric, tempo, note, pitch-bend and
+ * control-change counts, followed by five sections, each an {@code int} byte
+ * length and the section bytes:
+ * <ol>
+ *   <li><b>Lyrics</b> – the distinct lyric strings, each a length and UTF-8
+ *       bytes. Notes refer to them by index.</li>
+ *   <li><b>Tempos</b> – per tempo, the tick delta and the BPM as a raw
+ *       {@code double}.</li>
+ *   <li><b>Notes</b> – per note, in dispatch order: the onset delta
+ *       (notes are dispatched at their note-off, so onsets may go back), the duration,
+ *       the key, the velocity and the lyric index.</li>
+ *   <li><b>Pitch bends</b> – per bend, the tick delta and the value delta.</li>
+ *   <li><b>Control changes</b> – per event, the tick delta, the controller
+ *       and the value.</li>
+ * </ol>
+ * Every integer in a section is a LEB128 varint; deltas are zigzag encoded
+ * first. Smooth pitch curves thus take two or three bytes per bend.
+ *
+ * <h2>Reading</h2>
+ * {@link #map(File)} memory-maps the file and {@link #replay(List)} decodes
+ * the columns straight from the mapping into converter calls; only the lyric
+ * table is turned into objects.
+ */
+public final class ScoreFile {
+
+    /** File name extension of score files. */
+    public static final String EXTENSION = ".plgs";
+
+    public static final int VERSION = 1;
+
+    private static final int MAGIC        = 0x504C4753;   // "PLGS"
+    private static final int HEADER_INTS  = 7;
+    private static final int SECTIONS     = 5;
+
+    private final String[]   lyrics;
+    private final int        tempoCount;
+    private final int        noteCount;
+    private final int        bendCount;
+    private final int        ccCount;
+    private final ByteBuffer tempos;
+    private final ByteBuffer notes;
+    private final ByteBuffer bends;
+    private final ByteBuffer ccs;
+
+    private ScoreFile(ByteBuffer data) {
+        if (data.remaining() < HEADER_INTS * Integer.BYTES || data.getInt() != MAGIC) {
+            throw new IllegalArgumentException("Not a score file (missing PLGS header)");
+        }
+        int version = data.getInt();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported score file version " + version + " (expected " + VERSION + ")");
+        }
+        int lyricCount = data.getInt();
+        tempoCount = data.getInt();
+        noteCount  = data.getInt();
+        bendCount  = data.getInt();
+        ccCount    = data.getInt();
+        if ((lyricCount | tempoCount | noteCount | bendCount | ccCount) < 0) {
+            throw new IllegalArgumentException("Corrupt score file header");
+        }
+
+        ByteBuffer[] sections = new ByteBuffer[SECTIONS];
+        for (int s = 0; s < SECTIONS; s++) {
+            int length = data.remaining() >= Integer.BYTES ? data.getInt() : -1;
+            if (length < 0 || length > data.remaining()) {
+                throw new IllegalArgumentException("Truncated score file section " + s);
+            }
+            sections[s] = data.slice(data.position(), length);
+            data.position(data.position() + length);
+        }
+
+        ByteBuffer lyricBytes = sections[0];
+        lyrics = new String[lyricCount];
+        for (int i = 0; i < lyricCount; i++) {
+            byte[] utf8 = new byte[(int) readVarint(lyricBytes)];
+            lyricBytes.get(utf8);
+            lyrics[i] = new String(utf8, StandardCharsets.UTF_8);
+        }
+        tempos = sections[1];
+        notes  = sections[2];
+        bends  = sections[3];
+        ccs    = sections[4];
+    }
+
+    /**
+     * Memory-maps a score file.
+     *
+     * @throws RuntimeException if the file cannot be read or is not a score file of this version
+     */
+    public static ScoreFile map(File file) {
+        ByteBuffer data;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new RuntimeException("Score file too large: " + file);
+            }
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0L, channel.size());
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read score file: " + file, e);
+        }
+        try {
+            return new ScoreFile(data);
+        } catch (IllegalArgumentException e) {
+            throw new RuntimeException("Failed to read score file: " + file, e);
+        }
+    }
+
+    public int getNoteCount() {
+        return noteCount;
+    }
+
+    public int getEventCount() {
+        return tempoCount + noteCount + bendCount + ccCount;
+    }
+
+    /**
+     * Feeds the song to every converter, in the order of
+     * {@link RecordingConverter.Snapshot#replay}: tempos, then notes, then pitch
+     * bends, then control changes. Project converters must already be
+     * {@linkplain ProjectConverter#load() loaded}. May be called any number of
+     * times.
+     *
+     * @throws IllegalArgumentException if a section is corrupt
+     */
+    public void replay(List<? extends ScoreSink> converters) {
+        try {
+            ByteBuffer in = tempos.duplicate();
+            long tick = 0L;
+            for (int i = 0; i < tempoCount; i++) {
+                tick += unzigzag(readVarint(in));
+                double bpm = in.getDouble();
+                for (ScoreSink c : converters) c.insertTempo(tick, bpm);
+            }
+
+            in   = notes.duplicate();
+            tick = 0L;
+            for (int i = 0; i < noteCount; i++) {
+                tick += unzigzag(readVarint(in));
+                long   off      = tick + readVarint(in);
+                int    key      = (int) readVarint(in);
+                int    velocity = (int) readVarint(in);
+                String lyric    = lyrics[(int) readVarint(in)];
+                for (ScoreSink c : converters) {
+                    if (velocity == RecordingConverter.NO_VELOCITY) c.insertNote(lyric, tick, off, key);
+                    else                                            c.insertNote(lyric, tick, off, key, velocity);
+                }
+            }
+
+            in   = bends.duplicate();
+            tick = 0L;
+            int value = 0;
+            for (int i = 0; i < bendCount; i++) {
+                tick  += unzigzag(readVarint(in));
+                value += (int) unzigzag(readVarint(in));
+                for (ScoreSink c : converters) c.onPitchBend(value, tick);
+            }
+
+            in   = ccs.duplicate();
+            tick = 0L;
+            for (int i = 0; i < ccCount; i++) {
+                tick += unzigzag(readVarint(in));
+                int controller = (int) readVarint(in);
+                int ccValue    = (int) readVarint(in);
+                for (ScoreSink c : converters) c.onControlChange(controller, ccValue, tick);
+            }
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Corrupt score file section", e);
+        }
+    }
+
+    /**
+     * Writes {@code snapshot} as a score file.
+     *
+     * @throws RuntimeException if the file cannot be written
+     */
+    public static void write(RecordingConverter.Snapshot snapshot, Path path) {
+        Map<String, Integer> lyricIndex = new HashMap<>();
+        Encoder lyricBytes = new Encoder();
+        Encoder noteBytes  = new Encoder();
+        long prev = 0L;
+        for (int i = 0; i < snapshot.noteOn.length; i++) {
+            String  lyric = snapshot.noteLyric[i];
+            Integer index = lyricIndex.get(lyric);
+            if (index == null) {
+                index = lyricIndex.size();
+                lyricIndex.put(lyric, index);
+                byte[] utf8 = lyric.getBytes(StandardCharsets.UTF_8);
+                lyricBytes.varint(utf8.length).bytes(utf8);
+            }
+            noteBytes.varint(zigzag(snapshot.noteOn[i] - prev))
+                     .varint(snapshot.noteOff[i] - snapshot.noteOn[i])
+                     .varint(snapshot.noteKey[i])
+                     .varint(snapshot.noteVel[i])
+                     .varint(index);
+            prev = snapshot.noteOn[i];
+        }
+
+        Encoder tempoBytes = new Encoder();
+        prev = 0L;
+        for (int i = 0; i < snapshot.tempoTicks.length; i++) {
+            tempoBytes.varint(zigzag(snapshot.tempoTicks[i] - prev)).rawDouble(snapshot.tempoBpm[i]);
+            prev = snapshot.tempoTicks[i];
+        }
+
+        Encoder bendBytes = new Encoder();
+        prev = 0L;
+        int prevValue = 0;
+        for (int i = 0; i < snapshot.bendTicks.length; i++) {
+            bendBytes.varint(zigzag(snapshot.bendTicks[i] - prev)).varint(zigzag(snapshot.bendValues[i] - prevValue));
+            prev      = snapshot.bendTicks[i];
+            prevValue = snapshot.bendValues[i];
+        }
+
+        Encoder ccBytes = new Encoder();
+        prev = 0L;
+        for (int i = 0; i < snapshot.ccTicks.length; i++) {
+            ccBytes.varint(zigzag(snapshot.ccTicks[i] - prev)).varint(snapshot.ccNumbers[i]).varint(snapshot.ccValues[i]);
+            prev = snapshot.ccTicks[i];
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_INTS * Integer.BYTES);
+        header.putInt(MAGIC).putInt(VERSION).putInt(lyricIndex.size())
+              .putInt(snapshot.tempoTicks.length).putInt(snapshot.noteOn.length)
+              .putInt(snapshot.bendTicks.length).putInt(snapshot.ccTicks.length).flip();
+
+        AtomicFile.write(path, file -> {
+            OutputStream out = file.outputStream();
+            out.write(header.array());
+            for (Encoder section : new Encoder[] { lyricBytes, tempoBytes, noteBytes, bendBytes, ccBytes }) {
+                out.write(ByteBuffer.allocate(Integer.BYTES).putInt(section.size).array());
+                out.write(section.buffer, 0, section.size);
+            }
+        });
+    }
+
+    /** Maps signed values to unsigned ones so small magnitudes make short varints. */
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static long readVarint(ByteBuffer in) {
+        long value = 0L;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+        throw new IllegalArgumentException("Varint too long at offset " + in.position());
+    }
+
+    /** Growable byte array with the varint and raw encoders the sections need. */
+    private static final class Encoder {
+        byte[] buffer = new byte[256];
+        int    size;
+
+        Encoder varint(long value) {
+            if (value < 0) throw new IllegalArgumentException("Negative value in unsigned column: " + value);
+            while ((value & ~0x7FL) != 0) {
+                put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            put((byte) value);
+            return this;
+        }
+
+        Encoder rawDouble(double value) {
+            long bits = Double.doubleToRawLongBits(value);
+            for (int shift = 56; shift >= 0; shift -= 8) put((byte) (bits >>> shift));
+            return this;
+        }
+
+        Encoder bytes(byte[] bytes) {
+            for (byte b : bytes) put(b);
+            return this;
+        }
+
+        private void put(byte b) {
+            if (size == buffer.length) buffer = Arrays.copyOf(buffer, size * 2);
+            buffer[size++] = b;
+        }
+    }
+}
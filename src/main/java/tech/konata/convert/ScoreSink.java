@@ -0,0 +1,64 @@
+package tech.konata.convert;
+
+/**
+ * Receiver of the song events {@link tech.konata.parser.MidiParser} dispatches:
+ * tempos, notes, pitch bends and control changes.
+ *
+ * <p>{@link ProjectConverter} adds the lifecycle that turns the events into a
+ * project file; sinks that only collect events, such as
+ * {@link RecordingConverter}, implement this interface alone.
+ */
+public interface ScoreSink {
+
+    /**
+     * Inserts a tempo change event.
+     *
+     * @param tick tick position of the tempo change
+     * @param bpm  beats per minute (must be positive)
+     */
+    void insertTempo(long tick, double bpm);
+
+    /**
+     * Inserts a note with the given lyric syllable.
+     *
+     * @param lyric     lyric syllable (hiragana, romaji, etc.)
+     * @param tickStart tick at which the note begins (inclusive)
+     * @param tickEnd   tick at which the note ends (exclusive)
+     * @param midiKey   MIDI note number (0–127)
+     */
+    void insertNote(String lyric, long tickStart, long tickEnd, int midiKey);
+
+    /**
+     * Same as {@link #insertNote(String, long, long, int)}, with the note-on
+     * velocity. The default implementation drops the velocity; override in
+     * sinks whose format has a per-note velocity.
+     *
+     * @param velocity MIDI note-on velocity (1–127)
+     */
+    default void insertNote(String lyric, long tickStart, long tickEnd, int midiKey, int velocity) {
+        insertNote(lyric, tickStart, tickEnd, midiKey);
+    }
+
+    /**
+     * Records a raw MIDI pitch-bend event. The default implementation is a no-op;
+     * override in sinks that support pitch-bend output.
+     *
+     * @param value 14-bit signed pitch-bend value in the range {@code [-8192, 8191]}
+     * @param tick  tick position of the event
+     */
+    default void onPitchBend(int value, long tick) {
+        // no-op by default
+    }
+
+    /**
+     * Records a MIDI control change. The default implementation is a no-op;
+     * override in sinks that map controllers to parameter lanes.
+     *
+     * @param controller controller number (0–127)
+     * @param value      controller value (0–127)
+     * @param tick       tick position of the event
+     */
+    default void onControlChange(int controller, int value, long tick) {
+        // no-op by default
+    }
+}
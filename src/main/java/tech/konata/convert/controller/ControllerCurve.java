@@ -0,0 +1,42 @@
+package tech.konata.convert.controller;
+
+/**
+ * An immutable automation curve: parallel {@code ticks} / {@code values}
+ * arrays sorted by tick. Whether the points are steps or linear breakpoints
+ * depends on where the curve came from.
+ */
+public final class ControllerCurve {
+
+    public final long[]   ticks;
+    public final double[] values;
+
+    public ControllerCurve(long[] ticks, double[] values) {
+        if (ticks.length != values.length) {
+            throw new IllegalArgumentException("ticks and values differ in length: "
+                    + ticks.length + " != " + values.length);
+        }
+        this.ticks  = ticks;
+        this.values = values;
+    }
+
+    public int size() {
+        return ticks.length;
+    }
+
+    public boolean isEmpty() {
+        return ticks.length == 0;
+    }
+
+    /** Returns {@code true} if every value equals {@code value}. */
+    public boolean isConstant(double value) {
+        for (double v : values) {
+            if (v != value) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "ControllerCurve{points=" + ticks.length + "}";
+    }
+}
@@ -0,0 +1,100 @@
+package tech.konata.convert.controller;
+
+import java.util.Arrays;
+
+/**
+ * One MIDI controller's automation as a step function: each event holds its
+ * value until the next one. Stored as parallel primitive arrays sorted by tick.
+ *
+ * <p>Events normally arrive in tick order and are appended; a later event on
+ * the same tick replaces the earlier one, events that do not change the value
+ * are dropped, and the rare out-of-order event is inserted in place.
+ *
+ * <p>Not thread-safe.
+ */
+public final class ControllerLane {
+
+    private final int defaultValue;
+
+    private long[] ticks  = new long[16];
+    private int[]  values = new int[16];
+    private int    size;
+
+    /**
+     * @param defaultValue value in effect before the first event
+     */
+    public ControllerLane(int defaultValue) {
+        this.defaultValue = defaultValue;
+    }
+
+    public void add(long tick, int value) {
+        if (size == 0 || tick >= ticks[size - 1]) {
+            if (size > 0 && tick == ticks[size - 1]) {
+                values[size - 1] = value;
+                return;
+            }
+            if (value == (size > 0 ? values[size - 1] : defaultValue)) return;
+            grow();
+            ticks[size]  = tick;
+            values[size] = value;
+            size++;
+            return;
+        }
+
+        int index = Arrays.binarySearch(ticks, 0, size, tick);
+        if (index >= 0) {
+            values[index] = value;
+            return;
+        }
+        int insertAt = -index - 1;
+        grow();
+        System.arraycopy(ticks,  insertAt, ticks,  insertAt + 1, size - insertAt);
+        System.arraycopy(values, insertAt, values, insertAt + 1, size - insertAt);
+        ticks[insertAt]  = tick;
+        values[insertAt] = value;
+        size++;
+    }
+
+    private void grow() {
+        if (size == ticks.length) {
+            ticks  = Arrays.copyOf(ticks,  size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public long tick(int index) {
+        return ticks[index];
+    }
+
+    public int value(int index) {
+        return values[index];
+    }
+
+    public int getDefaultValue() {
+        return defaultValue;
+    }
+
+    /** Value in effect at {@code tick}. */
+    public int valueAt(long tick) {
+        int index = Arrays.binarySearch(ticks, 0, size, tick);
+        if (index < 0) index = -index - 2;
+        return index < 0 ? defaultValue : values[index];
+    }
+
+    @Override
+    public String toString() {
+        return "ControllerLane{events=" + size + ", default=" + defaultValue + "}";
+    }
+}
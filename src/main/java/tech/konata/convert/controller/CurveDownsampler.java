@@ -0,0 +1,163 @@
+package tech.konata.convert.controller;
+
+import java.util.Arrays;
+
+/**
+ * Error-bounded downsampling of step curves (e.g. from {@link GainLanes}) to a
+ * point budget.
+ *
+ * <h2>Targets</h2>
+ * <ul>
+ *   <li>{@link #toLinear} – for hosts that interpolate linearly between
+ *       points. Each step becomes a one-tick ramp, and the polyline is then
+ *       simplified with Ramer–Douglas–Peucker using the vertical (value) error,
+ *       so no tick of the result is off by more than the tolerance.</li>
+ *   <li>{@link #toSteps} – for hosts that hold each value until the next
+ *       point. A dead band drops every step that stays within the tolerance of
+ *       the last emitted value; the final value is always emitted exactly.</li>
+ * </ul>
+ *
+ * <h2>Budget</h2>
+ * Both take a maximum point count. If the result at the requested tolerance
+ * exceeds it, the tolerance is doubled until it fits, trading accuracy for
+ * size only where the input is too dense.
+ */
+public final class CurveDownsampler {
+
+    private static final int MAX_DOUBLINGS = 32;
+
+    private CurveDownsampler() { /* static utility class */ }
+
+    /**
+     * Simplifies a step curve into linear breakpoints.
+     *
+     * @param steps     step curve, ticks strictly increasing
+     * @param tolerance maximum value error at the requested accuracy
+     * @param maxPoints point budget ({@code <= 0} = unlimited)
+     */
+    public static ControllerCurve toLinear(ControllerCurve steps, double tolerance, int maxPoints) {
+        ControllerCurve polyline = stepsToPolyline(steps);
+        double t = tolerance;
+        ControllerCurve result = simplifyLinear(polyline, t);
+        for (int i = 0; i < MAX_DOUBLINGS && overBudget(result, maxPoints); i++) {
+            t = Math.max(t * 2.0, Double.MIN_NORMAL);
+            result = simplifyLinear(polyline, t);
+        }
+        return result;
+    }
+
+    /**
+     * Simplifies a step curve into fewer steps.
+     *
+     * @param steps     step curve, ticks strictly increasing
+     * @param tolerance maximum value error at the requested accuracy
+     * @param maxPoints point budget ({@code <= 0} = unlimited)
+     */
+    public static ControllerCurve toSteps(ControllerCurve steps, double tolerance, int maxPoints) {
+        double t = tolerance;
+        ControllerCurve result = simplifySteps(steps, t);
+        for (int i = 0; i < MAX_DOUBLINGS && overBudget(result, maxPoints); i++) {
+            t = Math.max(t * 2.0, Double.MIN_NORMAL);
+            result = simplifySteps(steps, t);
+        }
+        return result;
+    }
+
+    private static boolean overBudget(ControllerCurve curve, int maxPoints) {
+        return maxPoints > 0 && curve.size() > maxPoints;
+    }
+
+    /** Turns each step into a ramp from the tick before it. */
+    private static ControllerCurve stepsToPolyline(ControllerCurve steps) {
+        int      n      = steps.size();
+        long[]   ticks  = new long[n * 2];
+        double[] values = new double[n * 2];
+        int      size   = 0;
+        for (int i = 0; i < n; i++) {
+            long tick = steps.ticks[i];
+            if (i > 0 && tick - 1 > steps.ticks[i - 1]) {
+                ticks[size]  = tick - 1;
+                values[size] = steps.values[i - 1];
+                size++;
+            }
+            ticks[size]  = tick;
+            values[size] = steps.values[i];
+            size++;
+        }
+        return new ControllerCurve(Arrays.copyOf(ticks, size), Arrays.copyOf(values, size));
+    }
+
+    /** Iterative Ramer–Douglas–Peucker with vertical distance. */
+    private static ControllerCurve simplifyLinear(ControllerCurve curve, double tolerance) {
+        int n = curve.size();
+        if (n <= 2) return curve;
+
+        boolean[] keep  = new boolean[n];
+        int[]     stack = new int[2 * n];
+        int       top   = 0;
+        keep[0] = keep[n - 1] = true;
+        stack[top++] = 0;
+        stack[top++] = n - 1;
+
+        while (top > 0) {
+            int last  = stack[--top];
+            int first = stack[--top];
+
+            long   t0 = curve.ticks[first],  t1 = curve.ticks[last];
+            double v0 = curve.values[first], v1 = curve.values[last];
+            double slope = (v1 - v0) / (t1 - t0);
+
+            int    worst    = -1;
+            double worstErr = tolerance;
+            for (int i = first + 1; i < last; i++) {
+                double err = Math.abs(curve.values[i] - (v0 + slope * (curve.ticks[i] - t0)));
+                if (err > worstErr) {
+                    worstErr = err;
+                    worst    = i;
+                }
+            }
+            if (worst >= 0) {
+                keep[worst] = true;
+                stack[top++] = first;
+                stack[top++] = worst;
+                stack[top++] = worst;
+                stack[top++] = last;
+            }
+        }
+        return select(curve, keep);
+    }
+
+    private static ControllerCurve simplifySteps(ControllerCurve curve, double tolerance) {
+        int n = curve.size();
+        if (n <= 1) return curve;
+
+        boolean[] keep    = new boolean[n];
+        double    emitted = curve.values[0];
+        keep[0] = true;
+        for (int i = 1; i < n; i++) {
+            double value = curve.values[i];
+            boolean settles = (i == n - 1) && value != emitted;
+            if (Math.abs(value - emitted) > tolerance || settles) {
+                keep[i] = true;
+                emitted = value;
+            }
+        }
+        return select(curve, keep);
+    }
+
+    private static ControllerCurve select(ControllerCurve curve, boolean[] keep) {
+        int count = 0;
+        for (boolean k : keep) if (k) count++;
+        long[]   ticks  = new long[count];
+        double[] values = new double[count];
+        int      j      = 0;
+        for (int i = 0; i < keep.length; i++) {
+            if (keep[i]) {
+                ticks[j]  = curve.ticks[i];
+                values[j] = curve.values[i];
+                j++;
+            }
+        }
+        return new ControllerCurve(ticks, values);
+    }
+}
@@ -0,0 +1,106 @@
+package tech.konata.convert.controller;
+
+import java.util.Arrays;
+
+/**
+ * Channel volume (CC7) and expression (CC11) lanes, combined into a gain curve
+ * in decibels.
+ *
+ * <h2>Gain law</h2>
+ * Each controller follows the General MIDI curve {@code 40·log10(value / 127)},
+ * so the two multiply: {@code gain = 40·log10(cc7·cc11 / 127²)}. The result is
+ * offset so the GM power-on state (volume {@value #DEFAULT_VOLUME}, expression
+ * {@value #DEFAULT_EXPRESSION}) is 0 dB: a part that never touches the
+ * controllers sings at the synthesiser's normal level.
+ */
+public final class GainLanes {
+
+    public static final int CC_VOLUME          = 7;
+    public static final int CC_EXPRESSION      = 11;
+    public static final int DEFAULT_VOLUME     = 100;
+    public static final int DEFAULT_EXPRESSION = 127;
+
+    private static final double MAX_VALUE = 127.0;
+    private static final double REFERENCE_DB = decibels(DEFAULT_VOLUME, DEFAULT_EXPRESSION);
+
+    private final ControllerLane volume     = new ControllerLane(DEFAULT_VOLUME);
+    private final ControllerLane expression = new ControllerLane(DEFAULT_EXPRESSION);
+
+    /**
+     * Records a control change; controllers other than volume and expression
+     * are ignored.
+     *
+     * @return {@code true} if the controller was recorded
+     */
+    public boolean onControlChange(int controller, int value, long tick) {
+        switch (controller) {
+            case CC_VOLUME:
+                volume.add(tick, value);
+                return true;
+            case CC_EXPRESSION:
+                expression.add(tick, value);
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    public boolean isEmpty() {
+        return volume.isEmpty() && expression.isEmpty();
+    }
+
+    public int getEventCount() {
+        return volume.size() + expression.size();
+    }
+
+    public void clear() {
+        volume.clear();
+        expression.clear();
+    }
+
+    /**
+     * Returns the combined gain as a step curve in dB relative to the GM
+     * default, starting at tick 0 and clamped to {@code [floorDb, ceilingDb]}.
+     * Empty if no volume or expression event was recorded.
+     */
+    public ControllerCurve toDecibels(double floorDb, double ceilingDb) {
+        if (isEmpty()) return new ControllerCurve(new long[0], new double[0]);
+
+        int      capacity = volume.size() + expression.size() + 1;
+        long[]   ticks    = new long[capacity];
+        double[] values   = new double[capacity];
+        int      size     = 0;
+
+        int  v = 0, e = 0;
+        long tick = 0L;
+        while (true) {
+            while (v < volume.size()     && volume.tick(v)     <= tick) v++;
+            while (e < expression.size() && expression.tick(e) <= tick) e++;
+
+            int    vol = v > 0 ? volume.value(v - 1)     : DEFAULT_VOLUME;
+            int    exp = e > 0 ? expression.value(e - 1) : DEFAULT_EXPRESSION;
+            double db  = Math.max(floorDb, Math.min(ceilingDb, decibels(vol, exp) - REFERENCE_DB));
+            if (size == 0 || values[size - 1] != db) {
+                ticks[size]  = tick;
+                values[size] = db;
+                size++;
+            }
+
+            long next = Math.min(v < volume.size()     ? volume.tick(v)     : Long.MAX_VALUE,
+                                 e < expression.size() ? expression.tick(e) : Long.MAX_VALUE);
+            if (next == Long.MAX_VALUE) break;
+            tick = Math.max(next, 0L);
+        }
+        return new ControllerCurve(Arrays.copyOf(ticks, size), Arrays.copyOf(values, size));
+    }
+
+    private static double decibels(int volume, int expression) {
+        if (volume <= 0 || expression <= 0) return Double.NEGATIVE_INFINITY;
+        return 40.0 * Math.log10(volume / MAX_VALUE) + 40.0 * Math.log10(expression / MAX_VALUE);
+    }
+
+    @Override
+    public String toString() {
+        return "GainLanes{volume=" + volume.size() + ", expression=" + expression.size() + "}";
+    }
+}
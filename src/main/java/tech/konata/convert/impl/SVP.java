@@ -5,12 +5,21 @@ import com.google.gson.GsonBuilder;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 import tech.konata.convert.*;
-import tech.konata.convert.pitch.PitchConverter;
+import tech.konata.convert.controller.ControllerCurve;
+import tech.konata.convert.controller.CurveDownsampler;
+import tech.konata.convert.controller.GainLanes;
+import tech.konata.convert.pitch.PitchBendStore;
+import tech.konata.convert.pitch.PointSource;
+import tech.konata.convert.pitch.PointStages;
 import tech.konata.convert.pitch.SynthVPitchConversion;
-
-import java.io.FileWriter;
-import java.io.InputStream;
-import java.io.InputStreamReader;
+import tech.konata.convert.pitch.TickTimeTransformer;
+import tech.konata.jfr.FileWriteEvent;
+import tech.konata.jfr.JsonSerializationEvent;
+import tech.konata.output.AtomicFile;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -25,14 +34,30 @@ import java.util.List;
  * <h2>Pitch encoding</h2>
  * The {@code pitchDelta} channel stores semitone offsets × 100 (cents), as a
  * flat array of {@code [position0, value0, position1, value1, ...]} doubles.
+ *
+ * <h2>Loudness</h2>
+ * Channel volume and expression (see {@link GainLanes}) are written to the
+ * {@code loudness} lane in dB as linear breakpoints, downsampled to the
+ * {@link ConverterSettings} point budget. The lane is left empty if the part
+ * never leaves the default level.
  */
 public final class SVP extends ProjectConverter {
 
     /** Blicks per MIDI tick (SVP's internal time unit). */
-    private static final long   BLICKS_PER_TICK    = 1_470_000L;
+    public static final long   BLICKS_PER_TICK     = 1_470_000L;
 
     /** Cents per semitone. */
-    private static final double CENTS_PER_SEMITONE = 100.0;
+    static final double CENTS_PER_SEMITONE = 100.0;
+
+    /**
+     * MIDI pitch-bend units per semitone: ±8192 → ±10.67 semitones with the
+     * PLG100-SG's default sensitivity.
+     */
+    static final double BEND_UNITS_PER_SEMITONE = 768.0;
+
+    /** Range of the {@code loudness} parameter, in dB. */
+    private static final double LOUDNESS_MIN_DB = -48.0;
+    private static final double LOUDNESS_MAX_DB = 12.0;
 
     // Note default attribute values
     private static final double  DEFAULT_DETUNE          = 0.0;
@@ -45,24 +70,65 @@ public final class SVP extends ProjectConverter {
     private static final int     DEFAULT_ACTIVE_TAKE_ID  = 0;
     private static final boolean DEFAULT_LIKED           = false;
 
-    private final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+    /** Classpath resource of the project template. */
+    public static final String TEMPLATE_RESOURCE = "/SynthesizerV_Project_Template.json";
+
+    private final Gson              gson;
+    private final ConverterSettings settings;
+
+    /** Shared template, or {@code null} until the first {@link #load()} of a standalone converter. */
+    private ProjectTemplate template;
+
+    /** The current song, set up by {@link #load()}. */
+    private JsonObject             project;
+    private final List<Note>       notes  = new ArrayList<>();
+    private PitchBendStore         pitchBendData;
+    private final List<Tempo>      tempos = new ArrayList<>();
+    private GainLanes              gain;
+
+    public SVP() {
+        this(ConverterSettings.DEFAULT);
+    }
+
+    public SVP(ConverterSettings settings) {
+        this(settings, null, new GsonBuilder().setPrettyPrinting().create());
+    }
+
+    /**
+     * A converter that copies its project from {@code template} and writes it
+     * with {@code gson}, both of which may be shared with other converters.
+     *
+     * @param template the template loaded from {@link #TEMPLATE_RESOURCE}, or
+     *                 {@code null} to load it on the first {@link #load()}
+     */
+    public SVP(ConverterSettings settings, ProjectTemplate template, Gson gson) {
+        this.settings = settings;
+        this.template = template;
+        this.gson     = gson;
+    }
 
-    private JsonObject project;
-    private final List<Note>               notes         = new ArrayList<>();
-    private final List<Pair<Long, Double>> pitchBendData = new ArrayList<>();
+    /** Parses the template of this format. */
+    public static ProjectTemplate loadTemplate(Gson gson) {
+        return ProjectTemplate.load(TEMPLATE_RESOURCE, "Synthesizer V project template", gson);
+    }
 
     @Override
     public void load() {
-        String resourcePath = "/SynthesizerV_Project_Template.json";
-        try (InputStream in = getClass().getResourceAsStream(resourcePath)) {
-            if (in == null) {
-                throw new IllegalStateException(
-                        "Synthesizer V project template not found: " + resourcePath);
-            }
-            project = gson.fromJson(new InputStreamReader(in), JsonObject.class);
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to load Synthesizer V project template", e);
-        }
+        reset();
+        if (template == null) template = loadTemplate(gson);
+        project       = template.newProject();
+        pitchBendData = new PitchBendStore();
+        gain          = new GainLanes();
+    }
+
+    @Override
+    public void reset() {
+        if (pitchBendData != null) pitchBendData.close();
+        project       = null;
+        pitchBendData = null;
+        gain          = null;
+        notes.clear();
+        tempos.clear();
     }
 
     @Override
@@ -73,6 +139,7 @@ public final class SVP extends ProjectConverter {
         JsonObject time       = project.getAsJsonObject("time");
         JsonArray  tempoArray = time.getAsJsonArray("tempo");
         tempoArray.add(buildTempoObject(tick, bpm));
+        tempos.add(new Tempo(tick, bpm));
         time.add("tempo", tempoArray);
         project.add("time", time);
     }
@@ -97,9 +164,19 @@ public final class SVP extends ProjectConverter {
     @Override
     public void onPitchBend(int value, long tick) {
         validatePitchBend(value);
-        // Scale 14-bit signed MIDI pitch-bend to semitones (±8192 → ±10.67 semitones
-        // with the PLG100-SG's default sensitivity of 768 units/semitone)
-        pitchBendData.add(new Pair<>(tick, value / 768.0));
+        // Scale 14-bit signed MIDI pitch-bend to semitones
+        pitchBendData.add(tick, value / BEND_UNITS_PER_SEMITONE);
+    }
+
+    @Override
+    public void onControlChange(int controller, int value, long tick) {
+        validateTick(tick);
+        gain.onControlChange(controller, value, tick);
+    }
+
+    @Override
+    public String getSettingsFingerprint() {
+        return super.getSettingsFingerprint() + " " + settings;
     }
 
     @Override
@@ -108,31 +185,54 @@ public final class SVP extends ProjectConverter {
             throw new IllegalArgumentException("Output file base name must not be blank");
         }
 
-        Pitch pitch = new Pitch(pitchBendData, /* absolute */ false);
-
         JsonArray  tracks    = project.getAsJsonArray("tracks");
         JsonObject track     = tracks.get(0).getAsJsonObject();
         JsonObject mainGroup = track.getAsJsonObject("mainGroup");
 
-        writePitchDelta(mainGroup, pitch);
+        writePitchDelta(mainGroup);
+        // The points are in the JSON tree now; free the bends (and any spill file)
+        pitchBendData.close();
+        writeLoudness(mainGroup);
         writeTrackBack(track, mainGroup, mainGroup.getAsJsonArray("notes"), tracks);
 
-        String outputPath = baseName + ".svp";
-        try (FileWriter writer = new FileWriter(outputPath)) {
-            gson.toJson(project, writer);
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to write SVP file: " + outputPath, e);
+        String     outputPath = baseName + ".svp";
+        JsonObject tree       = project;
+        getOutput().write(Paths.get(outputPath), file -> writeJson(tree, outputPath, file));
+    }
+
+    /** Serialises {@code tree} into {@code file}; may run on an output thread. */
+    private void writeJson(JsonObject tree, String outputPath, AtomicFile file) throws IOException {
+        FileWriteEvent writeEvent = new FileWriteEvent();
+        writeEvent.begin();
+
+        JsonSerializationEvent serializationEvent = new JsonSerializationEvent();
+        serializationEvent.begin();
+        Writer writer = file.writer();
+        gson.toJson(tree, writer);
+        writer.flush();
+        serializationEvent.end();
+        if (serializationEvent.shouldCommit()) {
+            serializationEvent.format = "svp";
+            serializationEvent.size   = file.size();
+            serializationEvent.commit();
+        }
+
+        writeEvent.end();
+        if (writeEvent.shouldCommit()) {
+            writeEvent.path  = outputPath;
+            writeEvent.bytes = file.size();
+            writeEvent.commit();
         }
     }
 
-    private JsonObject buildTempoObject(long tick, double bpm) {
+    static JsonObject buildTempoObject(long tick, double bpm) {
         JsonObject obj = new JsonObject();
         obj.addProperty("position", tick * BLICKS_PER_TICK);
         obj.addProperty("bpm", bpm);
         return obj;
     }
 
-    private JsonObject buildNoteObject(String lyric, long tickStart, long tickEnd, int midiKey) {
+    static JsonObject buildNoteObject(String lyric, long tickStart, long tickEnd, int midiKey) {
         JsonObject obj = new JsonObject();
         obj.addProperty("musicalType",   "singing");
         obj.addProperty("onset",         tickStart * BLICKS_PER_TICK);
@@ -150,7 +250,7 @@ public final class SVP extends ProjectConverter {
         return obj;
     }
 
-    private JsonObject buildSystemAttributes() {
+    private static JsonObject buildSystemAttributes() {
         JsonObject sa = new JsonObject();
         sa.addProperty("tF0Offset", DEFAULT_F0_OFFSET);
         sa.addProperty("tF0Left",   DEFAULT_F0_TRANSITION);
@@ -161,7 +261,7 @@ public final class SVP extends ProjectConverter {
         return sa;
     }
 
-    private JsonObject buildPitchTakes() {
+    private static JsonObject buildPitchTakes() {
         JsonObject takes    = new JsonObject();
         JsonArray  takeArr  = new JsonArray();
         JsonObject takeItem = new JsonObject();
@@ -175,7 +275,7 @@ public final class SVP extends ProjectConverter {
         return takes;
     }
 
-    private JsonObject buildTimbreTakes() {
+    private static JsonObject buildTimbreTakes() {
         JsonObject takes    = new JsonObject();
         JsonArray  takeArr  = new JsonArray();
         JsonObject takeItem = new JsonObject();
@@ -195,18 +295,24 @@ public final class SVP extends ProjectConverter {
      *
      * <p>SVP's {@code pitchDelta} channel stores data as an interleaved flat array:
      * {@code [blick0, cents0, blick1, cents1, ...]}.
+     *
+     * <p>The bends are already relative to the notes, so they are read straight
+     * from the store through the streaming preparation stages rather than
+     * copied into point lists.
      */
-    private void writePitchDelta(JsonObject mainGroup, Pitch pitch) {
+    private void writePitchDelta(JsonObject mainGroup) {
         JsonObject parameters = mainGroup.getAsJsonObject("parameters");
         JsonObject pitchDelta = parameters.getAsJsonObject("pitchDelta");
         JsonArray  points     = pitchDelta.getAsJsonArray("points");
 
-        List<Pair<Long, Double>> relativeData = PitchConverter.getRelativeData(pitch, notes);
-        if (relativeData != null && !relativeData.isEmpty()) {
-            List<Pair<Long, Double>> prepared = SynthVPitchConversion.prepareForSvpOutput(relativeData);
-            for (Pair<Long, Double> p : prepared) {
-                points.add((double) (p.first * BLICKS_PER_TICK));   // position in blicks
-                points.add(p.second * CENTS_PER_SEMITONE);          // value in cents
+        PointSource prepared = SynthVPitchConversion.prepareForSvpOutput(pitchBendData.reader());
+        long[]      ticks    = new long[PointStages.CHUNK_SIZE];
+        double[]    values   = new double[PointStages.CHUNK_SIZE];
+        int n;
+        while ((n = prepared.read(ticks, values)) > 0) {
+            for (int i = 0; i < n; i++) {
+                points.add((double) (ticks[i] * BLICKS_PER_TICK));   // position in blicks
+                points.add(values[i] * CENTS_PER_SEMITONE);          // value in cents
             }
         }
 
@@ -215,6 +321,46 @@ public final class SVP extends ProjectConverter {
         mainGroup.add("parameters", parameters);
     }
 
+    /**
+     * Writes the volume / expression gain into the {@code loudness} lane as
+     * {@code [blick0, dB0, blick1, dB1, ...]}.
+     */
+    private void writeLoudness(JsonObject mainGroup) {
+        long noteEndTick = 0L;
+        for (Note note : notes) noteEndTick = Math.max(noteEndTick, note.getTickOff());
+
+        ControllerCurve curve = loudnessCurve(gain, noteEndTick, tempos, settings);
+        if (curve == null) return;
+
+        JsonObject parameters = mainGroup.getAsJsonObject("parameters");
+        JsonObject loudness   = parameters.getAsJsonObject("loudness");
+        JsonArray  points     = loudness.getAsJsonArray("points");
+        for (int i = 0; i < curve.size(); i++) {
+            points.add((double) (curve.ticks[i] * BLICKS_PER_TICK));
+            points.add(curve.values[i]);
+        }
+        loudness.addProperty("mode", "linear");
+    }
+
+    /**
+     * The {@code loudness} lane for {@code gain}: its dB steps downsampled to
+     * linear breakpoints within the budget for the song up to the later of the
+     * last step and {@code noteEndTick}.
+     *
+     * @return the breakpoints, or {@code null} if the part never leaves the default level
+     */
+    static ControllerCurve loudnessCurve(GainLanes gain, long noteEndTick, List<Tempo> tempos,
+                                         ConverterSettings settings) {
+        ControllerCurve steps = gain.toDecibels(LOUDNESS_MIN_DB, LOUDNESS_MAX_DB);
+        if (steps.isEmpty() || steps.isConstant(0.0)) return null;
+
+        long   endTick = Math.max(steps.ticks[steps.size() - 1], noteEndTick);
+        double seconds = new TickTimeTransformer(tempos).tickToSec(endTick);
+
+        return CurveDownsampler.toLinear(
+                steps, settings.loudnessToleranceDb, settings.controllerPointBudget(seconds));
+    }
+
     private void writeTrackBack(
             JsonObject track, JsonObject mainGroup,
             JsonArray notesArray, JsonArray tracks) {
@@ -227,21 +373,21 @@ public final class SVP extends ProjectConverter {
         project.add("tracks", updatedTracks);
     }
 
-    private static void validateTick(long tick) {
+    static void validateTick(long tick) {
         if (tick < 0) throw new IllegalArgumentException("Tick cannot be negative: " + tick);
     }
 
-    private static void validateBpm(double bpm) {
+    static void validateBpm(double bpm) {
         if (bpm <= 0) throw new IllegalArgumentException("BPM must be positive: " + bpm);
     }
 
-    private static void validateLyric(String lyric) {
+    static void validateLyric(String lyric) {
         if (lyric == null || lyric.isBlank()) {
             throw new IllegalArgumentException("Lyric must not be null or blank");
         }
     }
 
-    private static void validateTickRange(long tickStart, long tickEnd) {
+    static void validateTickRange(long tickStart, long tickEnd) {
         if (tickStart < 0 || tickEnd < 0) {
             throw new IllegalArgumentException("Tick values must be non-negative");
         }
@@ -251,13 +397,13 @@ public final class SVP extends ProjectConverter {
         }
     }
 
-    private static void validateMidiKey(int key) {
+    static void validateMidiKey(int key) {
         if (key < 0 || key > 127) {
             throw new IllegalArgumentException("MIDI key must be in [0, 127]: " + key);
         }
     }
 
-    private static void validatePitchBend(int value) {
+    static void validatePitchBend(int value) {
         if (value < -8192 || value > 8191) {
             throw new IllegalArgumentException("Pitch-bend value out of range: " + value);
         }
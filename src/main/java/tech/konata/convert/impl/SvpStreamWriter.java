@@ -0,0 +1,292 @@
+package tech.konata.convert.impl;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonWriter;
+import tech.konata.convert.ConverterSettings;
+import tech.konata.convert.ScoreSink;
+import tech.konata.convert.Tempo;
+import tech.konata.convert.controller.ControllerCurve;
+import tech.konata.convert.controller.GainLanes;
+import tech.konata.convert.pitch.PointSource;
+import tech.konata.convert.pitch.PointStages;
+import tech.konata.convert.pitch.SynthVPitchConversion;
+import tech.konata.jfr.FileWriteEvent;
+import tech.konata.output.AtomicFile;
+import tech.konata.parser.MidiParser;
+import tech.konata.parser.PhoneSeqParser;
+import tech.konata.parser.SmfEventStream;
+
+import javax.sound.midi.ShortMessage;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes the same {@code .svp} file as {@link SVP}, in memory independent of
+ * the length of the song.
+ *
+ * <h2>Why</h2>
+ * {@link SVP} collects every note and pitch bend, then the prepared pitch
+ * points, then the whole JSON tree and its text before the first byte is
+ * written. For multi-hour recordings that does not fit a fixed {@code -Xmx}.
+ * This writer never holds more than a chunk of any of them.
+ *
+ * <h2>Pipeline</h2>
+ * The file is read through a memory-mapped {@link SmfEventStream} and the
+ * output is written by walking the project template with a {@link JsonWriter},
+ * streaming each growing array in where the template has it:
+ * <ol>
+ *   <li><b>Scan</b> – one quiet {@link MidiParser} pass collects what the
+ *       template needs before the notes: the tempo map, the volume /
+ *       expression lanes and the end of the last note (for the loudness point
+ *       budget). These are the only per-song data kept, as primitive steps;
+ *       they grow with tempo and controller changes, not with notes or
+ *       bends.</li>
+ *   <li><b>Pitch</b> – channel-0 pitch bends are pulled from a second pass
+ *       through the {@link SynthVPitchConversion#prepareForSvpOutput(PointSource)}
+ *       stages and written chunk by chunk. SVP pitch is already relative to
+ *       the notes, so no note look-ahead is needed.</li>
+ *   <li><b>Notes</b> – a third pass through {@link MidiParser} pairs note-ons
+ *       and note-offs and writes each note as soon as it ends.</li>
+ * </ol>
+ * The notes come out in the order {@link SVP} appends them, and every value is
+ * formatted by the same {@link Gson} settings, so the two files are
+ * byte-identical.
+ */
+public final class SvpStreamWriter {
+
+    /** Template paths of the arrays filled from the MIDI file ({@code /}-separated member names). */
+    private static final String TRACKS_PATH          = "/tracks";
+    private static final String TEMPO_PATH           = "/time/tempo";
+    private static final String PITCH_POINTS_PATH    = "/tracks/mainGroup/parameters/pitchDelta/points";
+    private static final String LOUDNESS_PATH        = "/tracks/mainGroup/parameters/loudness";
+    private static final String LOUDNESS_POINTS_PATH = LOUDNESS_PATH + "/points";
+    private static final String NOTES_PATH           = "/tracks/mainGroup/notes";
+
+    private static final int TARGET_CHANNEL = 0;
+
+    private final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+
+    private final PhoneSeqParser    phoneSeqParser;
+    private final ConverterSettings settings;
+
+    public SvpStreamWriter(PhoneSeqParser phoneSeqParser, ConverterSettings settings) {
+        this.phoneSeqParser = phoneSeqParser;
+        this.settings       = settings;
+    }
+
+    /**
+     * Converts {@code midiFile} to {@code baseName.svp}.
+     *
+     * @throws RuntimeException if the file cannot be read or the output cannot be written
+     */
+    public void convert(File midiFile, String baseName) {
+        if (baseName == null || baseName.isBlank()) {
+            throw new IllegalArgumentException("Output file base name must not be blank");
+        }
+        System.out.println("Parsing MIDI file: " + midiFile.getName());
+        SmfEventStream events = SmfEventStream.open(midiFile);
+
+        Scan scan = new Scan();
+        MidiParser scanner = new MidiParser(Collections.singletonList(scan), phoneSeqParser);
+        scanner.setLogging(false);
+        scanner.parse(events);
+
+        JsonObject      project  = SVP.loadTemplate(gson).newProject();
+        ControllerCurve loudness = SVP.loudnessCurve(scan.gain, scan.noteEndTick, scan.tempos, settings);
+        if (loudness != null) {
+            lookup(project, LOUDNESS_PATH).getAsJsonObject().addProperty("mode", "linear");
+        }
+
+        String outputPath = baseName + ".svp";
+        FileWriteEvent writeEvent = new FileWriteEvent();
+        writeEvent.begin();
+        AtomicFile.write(Paths.get(outputPath), file -> {
+            Writer     writer = file.writer();
+            JsonWriter out    = gson.newJsonWriter(writer);
+            out.setLenient(true);
+            write(out, project, "", new Output(events, scan, loudness));
+            out.flush();
+        });
+        writeEvent.end();
+        if (writeEvent.shouldCommit()) {
+            writeEvent.path  = outputPath;
+            writeEvent.bytes = new File(outputPath).length();
+            writeEvent.commit();
+        }
+
+        System.out.println(phoneSeqParser.getCache());
+    }
+
+    /** The element at {@code path}, following the first element of every array. */
+    private static JsonElement lookup(JsonObject root, String path) {
+        JsonElement element = root;
+        for (String name : path.substring(1).split("/")) {
+            if (element.isJsonArray()) element = element.getAsJsonArray().get(0);
+            element = element.getAsJsonObject().get(name);
+        }
+        return element;
+    }
+
+    /**
+     * Writes {@code element} (found at {@code path} in the template), appending
+     * the streamed content to the arrays the MIDI file fills.
+     */
+    private void write(JsonWriter out, JsonElement element, String path, Output output) throws IOException {
+        if (element.isJsonObject()) {
+            out.beginObject();
+            for (Map.Entry<String, JsonElement> member : element.getAsJsonObject().entrySet()) {
+                out.name(member.getKey());
+                write(out, member.getValue(), path + "/" + member.getKey(), output);
+            }
+            out.endObject();
+
+        } else if (element.isJsonArray()) {
+            JsonArray array = element.getAsJsonArray();
+            // SVP writes back the first track only
+            int count = path.equals(TRACKS_PATH) ? Math.min(1, array.size()) : array.size();
+
+            out.beginArray();
+            for (int i = 0; i < count; i++) {
+                write(out, array.get(i), path, output);
+            }
+            switch (path) {
+                case TEMPO_PATH:           output.writeTempos(out);   break;
+                case PITCH_POINTS_PATH:    output.writePitch(out);    break;
+                case LOUDNESS_POINTS_PATH: output.writeLoudness(out); break;
+                case NOTES_PATH:           output.writeNotes(out);    break;
+                default:                   break;
+            }
+            out.endArray();
+
+        } else {
+            gson.toJson(element, out);
+        }
+    }
+
+    /** The streamed parts of the file, in the order the template has them. */
+    private final class Output {
+        private final SmfEventStream  events;
+        private final Scan            scan;
+        private final ControllerCurve loudness;
+
+        Output(SmfEventStream events, Scan scan, ControllerCurve loudness) {
+            this.events   = events;
+            this.scan     = scan;
+            this.loudness = loudness;
+        }
+
+        void writeTempos(JsonWriter out) {
+            for (Tempo tempo : scan.tempos) {
+                gson.toJson(SVP.buildTempoObject(tempo.tickPosition, tempo.bpm), out);
+            }
+        }
+
+        void writePitch(JsonWriter out) throws IOException {
+            events.rewind();
+            PointSource points = SynthVPitchConversion.prepareForSvpOutput(new PitchBends(events));
+
+            long[]   ticks  = new long[PointStages.CHUNK_SIZE];
+            double[] values = new double[PointStages.CHUNK_SIZE];
+            int n;
+            while ((n = points.read(ticks, values)) > 0) {
+                for (int i = 0; i < n; i++) {
+                    out.value((double) (ticks[i] * SVP.BLICKS_PER_TICK));   // position in blicks
+                    out.value(values[i] * SVP.CENTS_PER_SEMITONE);          // value in cents
+                }
+            }
+        }
+
+        void writeLoudness(JsonWriter out) throws IOException {
+            if (loudness == null) return;
+            for (int i = 0; i < loudness.size(); i++) {
+                out.value((double) (loudness.ticks[i] * SVP.BLICKS_PER_TICK));
+                out.value(loudness.values[i]);
+            }
+        }
+
+        void writeNotes(JsonWriter out) {
+            events.rewind();
+            new MidiParser(Collections.singletonList(new NoteWriter(out)), phoneSeqParser).parse(events);
+        }
+    }
+
+    /** Channel-0 pitch bends of an event stream, in semitones. */
+    private static final class PitchBends implements PointSource {
+        private final SmfEventStream events;
+
+        PitchBends(SmfEventStream events) {
+            this.events = events;
+        }
+
+        @Override
+        public int read(long[] ticks, double[] values) {
+            int n = 0;
+            while (n < ticks.length && events.next()) {
+                if (events.kind() != SmfEventStream.SHORT
+                        || events.status() != (ShortMessage.PITCH_BEND | TARGET_CHANNEL)) {
+                    continue;
+                }
+                int value = ((events.data2() << 7) | events.data1()) - 8192;
+                ticks[n]  = events.tick();
+                values[n] = value / SVP.BEND_UNITS_PER_SEMITONE;
+                n++;
+            }
+            return n;
+        }
+    }
+
+    /** Collects, and checks as {@link SVP} does, what the file needs before the notes. */
+    private static final class Scan implements ScoreSink {
+        final List<Tempo> tempos = new ArrayList<>();
+        final GainLanes   gain   = new GainLanes();
+        long              noteEndTick;
+
+        @Override
+        public void insertTempo(long tick, double bpm) {
+            SVP.validateTick(tick);
+            SVP.validateBpm(bpm);
+            tempos.add(new Tempo(tick, bpm));
+        }
+
+        @Override
+        public void insertNote(String lyric, long tickStart, long tickEnd, int midiKey) {
+            SVP.validateLyric(lyric);
+            SVP.validateTickRange(tickStart, tickEnd);
+            SVP.validateMidiKey(midiKey);
+            noteEndTick = Math.max(noteEndTick, tickEnd);
+        }
+
+        @Override
+        public void onControlChange(int controller, int value, long tick) {
+            SVP.validateTick(tick);
+            gain.onControlChange(controller, value, tick);
+        }
+    }
+
+    /** Writes each note into the {@code notes} array as soon as it ends. */
+    private final class NoteWriter implements ScoreSink {
+        private final JsonWriter out;
+
+        NoteWriter(JsonWriter out) {
+            this.out = out;
+        }
+
+        @Override
+        public void insertTempo(long tick, double bpm) { }
+
+        @Override
+        public void insertNote(String lyric, long tickStart, long tickEnd, int midiKey) {
+            gson.toJson(SVP.buildNoteObject(lyric, tickStart, tickEnd, midiKey), out);
+        }
+    }
+}
@@ -5,23 +5,36 @@ import com.google.gson.GsonBuilder;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 import tech.konata.convert.*;
+import tech.konata.convert.controller.ControllerCurve;
+import tech.konata.convert.controller.CurveDownsampler;
+import tech.konata.convert.controller.GainLanes;
+import tech.konata.convert.pitch.NoteTimeline;
+import tech.konata.convert.pitch.PitchBendStore;
+import tech.konata.convert.pitch.TickTimeTransformer;
 import tech.konata.convert.pitch.VocaloidPitchConverter;
 import tech.konata.convert.pitch.VocaloidPitchConverter.VocaloidPartPitchData;
+import tech.konata.jfr.FileWriteEvent;
+import tech.konata.jfr.JsonSerializationEvent;
+import tech.konata.output.AtomicFile;
+import tech.konata.output.ParallelDeflaterOutputStream;
+import tech.konata.output.ZipWriter;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
 
 /**
  * Converts MIDI data to the VOCALOID 6 {@code .vpr} project format.
  *
  * <h2>File layout</h2>
- * A {@code .vpr} file is a ZIP archive (DEFLATE, level 0) containing:
+ * A {@code .vpr} file is a ZIP archive containing:
  * <ul>
- *   <li>{@code Project/sequence.json} – the main project JSON.</li>
+ *   <li>{@code Project/sequence.json} – the main project JSON, deflated at
+ *       {@link ConverterSettings#vprDeflateLevel} in parallel blocks by
+ *       {@link ParallelDeflaterOutputStream}.</li>
  *   <li>{@code Project/Audio/}        – an empty directory placeholder.</li>
  * </ul>
  *
@@ -33,6 +46,13 @@ import java.util.zip.ZipOutputStream;
  * individual single-character notes that evenly share the original tick range.
  * This is a best-effort fallback; the PLG100-SG normally sends single-character
  * or combined-phoneme syllables.
+ *
+ * <h2>Dynamics and velocity</h2>
+ * Note-on velocities are kept as each note's {@code velocity}. Channel volume
+ * and expression (see {@link GainLanes}) become the {@code dynamics}
+ * controller: the gain is mapped to amplitude around the default DYN of
+ * {@value #DEFAULT_DYNAMICS} ({@code 64 · 10^(dB / 40)}) and downsampled as
+ * steps to the {@link ConverterSettings} point budget.
  */
 public final class VPR extends ProjectConverter {
 
@@ -52,28 +72,72 @@ public final class VPR extends ProjectConverter {
     private static final boolean DEFAULT_IS_PROTECTED          = false;
     private static final int    DEFAULT_LANG_ID                = 0;
     private static final int    BPM_SCALE                      = 100;
+    private static final int    DEFAULT_DYNAMICS               = 64;
+    private static final int    MAX_CONTROLLER_VALUE           = 127;
+    private static final double DYNAMICS_MIN_DB                = -48.0;
 
     private static final String PHONEME_DEFAULT = "a";
 
-    private final Gson         gson          = new GsonBuilder().setPrettyPrinting().create();
-    private final DecimalFormat bpmFormatter = new DecimalFormat("##.##");
+    /** Classpath resource of the project template. */
+    public static final String TEMPLATE_RESOURCE = "/VOCALOID6_Project_Template.json";
+
+    private final Gson              gson;
+    private final DecimalFormat     bpmFormatter = new DecimalFormat("##.##");
+    private final ConverterSettings settings;
+
+    /** Shared template, or {@code null} until the first {@link #load()} of a standalone converter. */
+    private ProjectTemplate template;
+
+    /** The current song, set up by {@link #load()}. */
+    private JsonObject             project;
+    private final List<Note>       notes  = new ArrayList<>();
+    private PitchBendStore         pitchBendData;
+    private final List<Tempo>      tempos = new ArrayList<>();
+    private GainLanes              gain;
+
+    public VPR() {
+        this(ConverterSettings.DEFAULT);
+    }
+
+    public VPR(ConverterSettings settings) {
+        this(settings, null, new GsonBuilder().setPrettyPrinting().create());
+    }
 
-    private JsonObject project;
-    private final List<Note>               notes         = new ArrayList<>();
-    private final List<Pair<Long, Double>> pitchBendData = new ArrayList<>();
+    /**
+     * A converter that copies its project from {@code template} and writes it
+     * with {@code gson}, both of which may be shared with other converters.
+     *
+     * @param template the template loaded from {@link #TEMPLATE_RESOURCE}, or
+     *                 {@code null} to load it on the first {@link #load()}
+     */
+    public VPR(ConverterSettings settings, ProjectTemplate template, Gson gson) {
+        this.settings = settings;
+        this.template = template;
+        this.gson     = gson;
+    }
+
+    /** Parses the template of this format. */
+    public static ProjectTemplate loadTemplate(Gson gson) {
+        return ProjectTemplate.load(TEMPLATE_RESOURCE, "VOCALOID project template", gson);
+    }
 
     @Override
     public void load() {
-        String resourcePath = "/VOCALOID6_Project_Template.json";
-        try (InputStream in = getClass().getResourceAsStream(resourcePath)) {
-            if (in == null) {
-                throw new IllegalStateException(
-                        "VOCALOID project template not found: " + resourcePath);
-            }
-            project = gson.fromJson(new InputStreamReader(in), JsonObject.class);
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to load VOCALOID project template", e);
-        }
+        reset();
+        if (template == null) template = loadTemplate(gson);
+        project       = template.newProject();
+        pitchBendData = new PitchBendStore();
+        gain          = new GainLanes();
+    }
+
+    @Override
+    public void reset() {
+        if (pitchBendData != null) pitchBendData.close();
+        project       = null;
+        pitchBendData = null;
+        gain          = null;
+        notes.clear();
+        tempos.clear();
     }
 
     @Override
@@ -88,6 +152,7 @@ public final class VPR extends ProjectConverter {
         boolean isFirstTempo = events.isEmpty();
 
         events.add(buildTempoEvent(tick, bpm));
+        tempos.add(new Tempo(tick, bpm));
 
         if (isFirstTempo) {
             // Populate the "global" field used for display purposes
@@ -105,12 +170,18 @@ public final class VPR extends ProjectConverter {
      */
     @Override
     public void insertNote(String lyric, long tickStart, long tickEnd, int midiKey) {
+        insertNote(lyric, tickStart, tickEnd, midiKey, DEFAULT_VELOCITY);
+    }
+
+    @Override
+    public void insertNote(String lyric, long tickStart, long tickEnd, int midiKey, int velocity) {
         validateLyric(lyric);
         validateTickRange(tickStart, tickEnd);
         validateMidiKey(midiKey);
+        validateVelocity(velocity);
 
         if (lyric.length() > 1) {
-            splitAndInsertMultiCharNote(lyric, tickStart, tickEnd, midiKey);
+            splitAndInsertMultiCharNote(lyric, tickStart, tickEnd, midiKey, velocity);
             return;
         }
 
@@ -122,14 +193,25 @@ public final class VPR extends ProjectConverter {
         JsonObject part      = parts.get(0).getAsJsonObject();
         JsonArray  noteArr   = part.getAsJsonArray("notes");
 
-        noteArr.add(buildNoteObject(lyric, tickStart, tickEnd, midiKey));
+        noteArr.add(buildNoteObject(lyric, tickStart, tickEnd, midiKey, velocity));
         writeTrackBack(part, parts, track, tracks);
     }
 
     @Override
     public void onPitchBend(int value, long tick) {
         validatePitchBend(value);
-        pitchBendData.add(new Pair<>(tick, value / 768.0));
+        pitchBendData.add(tick, value / 768.0);
+    }
+
+    @Override
+    public void onControlChange(int controller, int value, long tick) {
+        validateTick(tick);
+        gain.onControlChange(controller, value, tick);
+    }
+
+    @Override
+    public String getSettingsFingerprint() {
+        return super.getSettingsFingerprint() + " " + settings;
     }
 
     @Override
@@ -139,22 +221,26 @@ public final class VPR extends ProjectConverter {
         }
 
         Pitch pitch = new Pitch(pitchBendData, /* absolute */ false);
-        VocaloidPartPitchData pitchData = VocaloidPitchConverter.generateForVocaloid(pitch, notes);
+        VocaloidPartPitchData pitchData = VocaloidPitchConverter.generateForVocaloid(
+                pitch, NoteTimeline.of(notes), settings);
+        // The PIT / PBS events are all the output needs; free the bends (and any spill file)
+        pitchBendData.close();
 
         if (pitchData != null) {
             writePitchControllers(pitchData);
+            System.out.printf("VPR pitch events: PIT=%d (from %d points, tolerance %.2f cents), PBS=%d%n",
+                    pitchData.getPit().size(), pitchData.getSourcePointCount(),
+                    settings.pitToleranceCents, pitchData.getPbs().size());
         }
+        writeDynamics();
 
-        String outputPath = baseName + ".vpr";
-        try {
-            writeVprZip(outputPath);
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to write VPR file: " + outputPath, e);
-        }
+        String     outputPath = baseName + ".vpr";
+        JsonObject tree       = project;
+        getOutput().write(Paths.get(outputPath), file -> writeVprZip(tree, outputPath, file));
     }
 
     private void splitAndInsertMultiCharNote(
-            String lyric, long tickStart, long tickEnd, int midiKey) {
+            String lyric, long tickStart, long tickEnd, int midiKey, int velocity) {
 
         int  charCount    = lyric.length();
         long totalDuration = tickEnd - tickStart;
@@ -164,7 +250,7 @@ public final class VPR extends ProjectConverter {
             long charEnd   = tickStart + (totalDuration / charCount) * (i + 1);
             // Ensure the last character extends exactly to tickEnd
             if (i == charCount - 1) charEnd = tickEnd;
-            insertNote(String.valueOf(lyric.charAt(i)), charStart, charEnd, midiKey);
+            insertNote(String.valueOf(lyric.charAt(i)), charStart, charEnd, midiKey, velocity);
         }
     }
 
@@ -186,7 +272,7 @@ public final class VPR extends ProjectConverter {
         return (int) (Double.parseDouble(bpmFormatter.format(bpm)) * BPM_SCALE);
     }
 
-    private JsonObject buildNoteObject(String lyric, long tickStart, long tickEnd, int midiKey) {
+    private JsonObject buildNoteObject(String lyric, long tickStart, long tickEnd, int midiKey, int velocity) {
         JsonObject obj = new JsonObject();
         obj.addProperty("lyric",       lyric);
         obj.addProperty("phoneme",     PHONEME_DEFAULT);
@@ -195,7 +281,7 @@ public final class VPR extends ProjectConverter {
         obj.addProperty("pos",         tickStart);
         obj.addProperty("duration",    tickEnd - tickStart);
         obj.addProperty("number",      midiKey);
-        obj.addProperty("velocity",    DEFAULT_VELOCITY);
+        obj.addProperty("velocity",    velocity);
         obj.add("exp",          buildExpression());
         obj.add("aiExp",        buildAiExpression());
         obj.add("singingSkill", buildSingingSkill());
@@ -278,6 +364,54 @@ public final class VPR extends ProjectConverter {
         writeTrackBack(part, parts, track, tracks);
     }
 
+    /**
+     * Writes the volume / expression gain as a {@code dynamics} controller.
+     */
+    private void writeDynamics() {
+        ControllerCurve gainDb = gain.toDecibels(DYNAMICS_MIN_DB, Double.MAX_VALUE);
+        if (gainDb.isEmpty() || gainDb.isConstant(0.0)) return;
+
+        double[] dyn = new double[gainDb.size()];
+        for (int i = 0; i < dyn.length; i++) {
+            double value = DEFAULT_DYNAMICS * Math.pow(10.0, gainDb.values[i] / 40.0);
+            dyn[i] = Math.max(0, Math.min(MAX_CONTROLLER_VALUE, Math.round(value)));
+        }
+        ControllerCurve steps = new ControllerCurve(gainDb.ticks, dyn);
+
+        long   endTick = steps.ticks[steps.size() - 1];
+        for (Note note : notes) endTick = Math.max(endTick, note.getTickOff());
+        double seconds = new TickTimeTransformer(tempos).tickToSec(endTick);
+
+        ControllerCurve curve = CurveDownsampler.toSteps(
+                steps, settings.dynamicsTolerance, settings.controllerPointBudget(seconds));
+
+        JsonObject ctrl      = new JsonObject();
+        JsonArray  eventsArr = new JsonArray();
+        int        lastValue = -1;
+
+        ctrl.addProperty("name", "dynamics");
+        for (int i = 0; i < curve.size(); i++) {
+            int value = (int) curve.values[i];
+            if (value == lastValue) continue;
+            JsonObject e = new JsonObject();
+            e.addProperty("pos",   curve.ticks[i]);
+            e.addProperty("value", value);
+            eventsArr.add(e);
+            lastValue = value;
+        }
+        ctrl.add("events", eventsArr);
+
+        JsonArray  tracks      = project.getAsJsonArray("tracks");
+        JsonObject track       = tracks.get(0).getAsJsonObject();
+        JsonArray  parts       = track.getAsJsonArray("parts");
+        JsonObject part        = parts.get(0).getAsJsonObject();
+        JsonArray  controllers = part.getAsJsonArray("controllers");
+
+        controllers.add(ctrl);
+        part.add("controllers", controllers);
+        writeTrackBack(part, parts, track, tracks);
+    }
+
     private JsonObject buildController(String name, List<VocaloidPartPitchData.Event> events) {
         JsonObject ctrl      = new JsonObject();
         JsonArray  eventsArr = new JsonArray();
@@ -293,23 +427,37 @@ public final class VPR extends ProjectConverter {
         return ctrl;
     }
 
-    private void writeVprZip(String outputPath) throws Exception {
-        try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(outputPath))) {
-            zip.setMethod(ZipOutputStream.DEFLATED);
-            zip.setLevel(0);
+    /** Writes {@code tree} as the {@code .vpr} archive into {@code file}; may run on an output thread. */
+    private void writeVprZip(JsonObject tree, String outputPath, AtomicFile file) throws IOException {
+        FileWriteEvent writeEvent = new FileWriteEvent();
+        writeEvent.begin();
+
+        ZipWriter zip = new ZipWriter(file.outputStream());
+
+        // sequence.json, serialised straight into the entry and deflated in parallel blocks
+        ParallelDeflaterOutputStream sequence = zip.putDeflatedEntry("Project/sequence.json", settings.vprDeflateLevel);
+        JsonSerializationEvent serializationEvent = new JsonSerializationEvent();
+        serializationEvent.begin();
+        Writer json = new OutputStreamWriter(sequence, StandardCharsets.UTF_8);
+        gson.toJson(tree, json);
+        json.flush();
+        sequence.finish();
+        serializationEvent.end();
+        if (serializationEvent.shouldCommit()) {
+            serializationEvent.format = "vpr";
+            serializationEvent.size   = sequence.getBytesIn();
+            serializationEvent.commit();
+        }
 
-            // sequence.json
-            ByteArrayOutputStream jsonBuf = new ByteArrayOutputStream();
-            try (OutputStreamWriter w = new OutputStreamWriter(jsonBuf)) {
-                gson.toJson(project, w);
-            }
-            zip.putNextEntry(new ZipEntry("Project/sequence.json"));
-            zip.write(jsonBuf.toByteArray());
-            zip.closeEntry();
+        // Audio directory placeholder
+        zip.putDirectory("Project/Audio/");
+        zip.finish();
 
-            // Audio directory placeholder
-            zip.putNextEntry(new ZipEntry("Project/Audio/"));
-            zip.closeEntry();
+        writeEvent.end();
+        if (writeEvent.shouldCommit()) {
+            writeEvent.path  = outputPath;
+            writeEvent.bytes = file.size();
+            writeEvent.commit();
         }
     }
 
@@ -356,6 +504,12 @@ public final class VPR extends ProjectConverter {
         }
     }
 
+    private static void validateVelocity(int velocity) {
+        if (velocity < 1 || velocity > 127) {
+            throw new IllegalArgumentException("Velocity must be in [1, 127]: " + velocity);
+        }
+    }
+
     private static void validatePitchBend(int value) {
         if (value < -8192 || value > 8191) {
             throw new IllegalArgumentException("Pitch-bend value out of range: " + value);
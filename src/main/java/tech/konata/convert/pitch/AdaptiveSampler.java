@@ -0,0 +1,155 @@
+package tech.konata.convert.pitch;
+
+import tech.konata.convert.Pair;
+
+import java.util.List;
+import java.util.function.LongToDoubleFunction;
+
+/**
+ * Error-bounded sampling of a continuous {@code tick → value} curve, as an
+ * alternative to a fixed tick grid.
+ *
+ * <h2>Why</h2>
+ * A fixed grid of N ticks oversamples flat stretches and slow tempos and
+ * undersamples fast passages, since N ticks at 200 BPM span far less time than
+ * N ticks at 60 BPM. This sampler instead places points where the curve needs
+ * them and bounds the spacing in milliseconds through the tempo map.
+ *
+ * <h2>Algorithm</h2>
+ * Each span is bisected until it is accepted: a span is accepted when the
+ * curve, probed at its quarter points, stays within {@code maxError} of how
+ * the consumer will rebuild it from the two end samples, and the span is no
+ * longer than {@code maxIntervalMs}; a span shorter than
+ * {@code minIntervalMs} (or one tick) is always accepted. How the consumer
+ * rebuilds it is the {@link Reconstruction}:
+ * <ul>
+ *   <li>{@link Reconstruction#LINEAR} – straight lines between samples. The
+ *       error of a chord grows with curvature, so points cluster in bends and
+ *       straight ramps need no more than their end points.</li>
+ *   <li>{@link Reconstruction#HOLD} – each sample held until the next, as
+ *       MIDI pitch bends are. The error grows with slope, so flat stretches
+ *       get one point and steep ones many.</li>
+ * </ul>
+ *
+ * <h2>Statistics</h2>
+ * The sampler counts the points it emits and the song time it covers, so
+ * {@link #pointsPerSecond()} reports the density it actually produced.
+ * Instances are therefore not thread-safe.
+ */
+public final class AdaptiveSampler {
+
+    /** How the consumer of the samples rebuilds the curve between them. */
+    public enum Reconstruction { LINEAR, HOLD }
+
+    private final TickTimeTransformer transformer;
+    private final Reconstruction      reconstruction;
+    private final double              maxError;
+    private final double              minIntervalMs;
+    private final double              maxIntervalMs;
+
+    private long   points;
+    private double seconds;
+
+    /**
+     * @param transformer    tempo map used to turn the millisecond bounds into ticks
+     * @param reconstruction how the consumer rebuilds the curve between samples
+     * @param maxError       largest deviation, in curve units, the samples may leave
+     * @param minIntervalMs  spacing below which a span is never split further
+     * @param maxIntervalMs  spacing above which a span is always split
+     */
+    public AdaptiveSampler(TickTimeTransformer transformer, Reconstruction reconstruction,
+                           double maxError, double minIntervalMs, double maxIntervalMs) {
+        if (maxError < 0.0) {
+            throw new IllegalArgumentException("maxError must not be negative: " + maxError);
+        }
+        if (minIntervalMs < 0.0 || maxIntervalMs < minIntervalMs) {
+            throw new IllegalArgumentException(
+                    "Invalid interval bounds: min=" + minIntervalMs + "ms, max=" + maxIntervalMs + "ms");
+        }
+        this.transformer    = transformer;
+        this.reconstruction = reconstruction;
+        this.maxError       = maxError;
+        this.minIntervalMs  = minIntervalMs;
+        this.maxIntervalMs  = maxIntervalMs;
+    }
+
+    /** A sampler with the same tempo map and bounds but another reconstruction (and fresh statistics). */
+    public AdaptiveSampler withReconstruction(Reconstruction other) {
+        return new AdaptiveSampler(transformer, other, maxError, minIntervalMs, maxIntervalMs);
+    }
+
+    public Reconstruction getReconstruction() { return reconstruction; }
+    public double         getMaxError()       { return maxError;       }
+
+    /**
+     * Appends samples of {@code curve} over {@code [fromTick, toTick)} to
+     * {@code out}: one at {@code fromTick}, then as many interior ones as the
+     * bounds require. {@code toTick} itself is left to the caller, which
+     * usually owns it as the next control point.
+     *
+     * @param fromTick first tick of the span
+     * @param toTick   end of the span (exclusive); nothing is emitted if not after {@code fromTick}
+     * @param curve    value at any tick in {@code [fromTick, toTick]}
+     * @param out      receives the samples in tick order
+     */
+    public void sample(long fromTick, long toTick, LongToDoubleFunction curve, List<Pair<Long, Double>> out) {
+        if (toTick <= fromTick) return;
+
+        double from = curve.applyAsDouble(fromTick);
+        out.add(new Pair<>(fromTick, from));
+        int before = out.size();
+        refine(fromTick, from, toTick, curve.applyAsDouble(toTick), curve, out);
+
+        points  += 1 + out.size() - before;
+        seconds += transformer.tickToSec(toTick) - transformer.tickToSec(fromTick);
+    }
+
+    /** Samples emitted so far. */
+    public long getPoints() { return points; }
+
+    /** Song time, in seconds, covered by the spans sampled so far. */
+    public double getSeconds() { return seconds; }
+
+    /** Average density of the samples emitted so far ({@code 0} before any). */
+    public double pointsPerSecond() {
+        return seconds > 0.0 ? points / seconds : 0.0;
+    }
+
+    /** Emits the interior samples of {@code (a, b)} in tick order. */
+    private void refine(long a, double fa, long b, double fb, LongToDoubleFunction curve,
+                        List<Pair<Long, Double>> out) {
+        long span = b - a;
+        if (span <= 1) return;
+
+        double secPerTick = transformer.secPerTickAt(a);
+        double spanMs     = span * secPerTick * 1000.0;
+        if (spanMs <= minIntervalMs) return;
+
+        long   m  = a + span / 2;
+        double fm = curve.applyAsDouble(m);
+        if (spanMs <= maxIntervalMs && withinError(a, fa, b, fb, m, fm, curve)) return;
+
+        refine(a, fa, m, fm, curve, out);
+        out.add(new Pair<>(m, fm));
+        refine(m, fm, b, fb, curve, out);
+    }
+
+    private boolean withinError(long a, double fa, long b, double fb, long m, double fm,
+                                LongToDoubleFunction curve) {
+        if (reconstruction == Reconstruction.HOLD && Math.abs(fb - fa) > maxError) return false;
+        if (error(a, fa, b, fb, m, fm) > maxError) return false;
+
+        long q1 = a + (m - a) / 2;
+        if (q1 > a && error(a, fa, b, fb, q1, curve.applyAsDouble(q1)) > maxError) return false;
+        long q3 = m + (b - m) / 2;
+        return q3 <= m || error(a, fa, b, fb, q3, curve.applyAsDouble(q3)) <= maxError;
+    }
+
+    /** Deviation at tick {@code p} of the curve rebuilt from the samples at {@code a} and {@code b}. */
+    private double error(long a, double fa, long b, double fb, long p, double fp) {
+        double rebuilt = reconstruction == Reconstruction.HOLD
+                ? fa
+                : fa + (fb - fa) * (p - a) / (double) (b - a);
+        return Math.abs(fp - rebuilt);
+    }
+}
@@ -1,20 +1,24 @@
 package tech.konata.convert.pitch;
 
 import tech.konata.convert.Pair;
+import tech.konata.jfr.InterpolationEvent;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.stream.Collectors;
-import java.util.stream.LongStream;
+import java.util.function.LongToDoubleFunction;
 
 /**
  * Utility class providing several interpolation strategies over a sequence of
  * {@code (tick, value)} pitch points.
  *
- * <p>Each method takes a sparse list of control points and a sampling-interval
- * (in ticks), and returns a denser list that includes both the original points
- * and the interpolated ones.
+ * <p>Each method takes a sparse list of control points and either a
+ * sampling interval (in ticks) or an {@link AdaptiveSampler}, and returns a
+ * denser list that includes both the original points and the interpolated
+ * ones. The fixed interval puts a point on every grid tick anchored at each
+ * control point; the sampler puts them only where the curve needs them.
+ * The fixed-interval methods throw {@link IllegalArgumentException} if the
+ * interval is not positive.
  */
 public final class InterpolationUtils {
 
@@ -26,7 +30,7 @@ public final class InterpolationUtils {
     public static List<Pair<Long, Double>> interpolateLinear(
             List<Pair<Long, Double>> data,
             long samplingIntervalTick) {
-        return interpolate(data, samplingIntervalTick, InterpolationUtils::linearSegment);
+        return interpolate(data, samplingIntervalTick, "linear", InterpolationUtils::linearSegment);
     }
 
     /**
@@ -36,7 +40,7 @@ public final class InterpolationUtils {
     public static List<Pair<Long, Double>> interpolateCosineEaseInOut(
             List<Pair<Long, Double>> data,
             long samplingIntervalTick) {
-        return interpolate(data, samplingIntervalTick, InterpolationUtils::cosineEaseInOutSegment);
+        return interpolate(data, samplingIntervalTick, "cosineEaseInOut", InterpolationUtils::cosineEaseInOutSegment);
     }
 
     /**
@@ -46,7 +50,7 @@ public final class InterpolationUtils {
     public static List<Pair<Long, Double>> interpolateCosineEaseIn(
             List<Pair<Long, Double>> data,
             long samplingIntervalTick) {
-        return interpolate(data, samplingIntervalTick, InterpolationUtils::cosineEaseInSegment);
+        return interpolate(data, samplingIntervalTick, "cosineEaseIn", InterpolationUtils::cosineEaseInSegment);
     }
 
     /**
@@ -56,92 +60,176 @@ public final class InterpolationUtils {
     public static List<Pair<Long, Double>> interpolateCosineEaseOut(
             List<Pair<Long, Double>> data,
             long samplingIntervalTick) {
-        return interpolate(data, samplingIntervalTick, InterpolationUtils::cosineEaseOutSegment);
+        return interpolate(data, samplingIntervalTick, "cosineEaseOut", InterpolationUtils::cosineEaseOutSegment);
+    }
+
+    /**
+     * Adaptive counterpart of {@link #interpolateLinear(List, long)}: the
+     * interior points are placed by {@code sampler} instead of on a grid.
+     */
+    public static List<Pair<Long, Double>> interpolateLinear(
+            List<Pair<Long, Double>> data,
+            AdaptiveSampler sampler) {
+        return interpolate(data, sampler, "linear", InterpolationUtils::linearSegment);
+    }
+
+    /**
+     * Adaptive counterpart of {@link #interpolateCosineEaseInOut(List, long)}.
+     */
+    public static List<Pair<Long, Double>> interpolateCosineEaseInOut(
+            List<Pair<Long, Double>> data,
+            AdaptiveSampler sampler) {
+        return interpolate(data, sampler, "cosineEaseInOut", InterpolationUtils::cosineEaseInOutSegment);
+    }
+
+    /**
+     * Adaptive counterpart of {@link #interpolateCosineEaseIn(List, long)}.
+     */
+    public static List<Pair<Long, Double>> interpolateCosineEaseIn(
+            List<Pair<Long, Double>> data,
+            AdaptiveSampler sampler) {
+        return interpolate(data, sampler, "cosineEaseIn", InterpolationUtils::cosineEaseInSegment);
+    }
+
+    /**
+     * Adaptive counterpart of {@link #interpolateCosineEaseOut(List, long)}.
+     */
+    public static List<Pair<Long, Double>> interpolateCosineEaseOut(
+            List<Pair<Long, Double>> data,
+            AdaptiveSampler sampler) {
+        return interpolate(data, sampler, "cosineEaseOut", InterpolationUtils::cosineEaseOutSegment);
     }
 
     @FunctionalInterface
     private interface SegmentInterpolator {
-        List<Pair<Long, Double>> interpolate(
-                Pair<Long, Double> start,
-                Pair<Long, Double> end,
-                List<Long> sampleTicks);
+        /** The curve between two consecutive control points, as a function of the tick. */
+        LongToDoubleFunction between(Pair<Long, Double> start, Pair<Long, Double> end);
     }
 
     private static List<Pair<Long, Double>> interpolate(
             List<Pair<Long, Double>> data,
             long samplingIntervalTick,
+            String curveName,
             SegmentInterpolator interpolator) {
 
+        if (samplingIntervalTick <= 0) {
+            throw new IllegalArgumentException("samplingIntervalTick must be positive: " + samplingIntervalTick);
+        }
         if (data == null || data.isEmpty()) {
             return Collections.emptyList();
         }
 
+        InterpolationEvent event = new InterpolationEvent();
+        event.begin();
+
         List<Pair<Long, Double>> result = new ArrayList<>();
 
         for (int i = 0; i < data.size() - 1; i++) {
             Pair<Long, Double> start = data.get(i);
             Pair<Long, Double> end   = data.get(i + 1);
+            LongToDoubleFunction curve = interpolator.between(start, end);
 
-            // Collect the ticks that fall strictly between start and end
-            // and align to the sampling grid anchored at start.first
-            List<Long> sampleTicks = LongStream
-                    .range(start.first + 1, end.first)
-                    .filter(x -> (x - start.first) % samplingIntervalTick == 0)
-                    .boxed()
-                    .collect(Collectors.toList());
-
+            // The ticks strictly between start and end on the grid anchored at start.first
             result.add(start);
-            result.addAll(interpolator.interpolate(start, end, sampleTicks));
+            for (long x = start.first + samplingIntervalTick; x < end.first; x += samplingIntervalTick) {
+                result.add(new Pair<>(x, curve.applyAsDouble(x)));
+            }
         }
 
         result.add(data.get(data.size() - 1));
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.curve                = curveName;
+            event.samplingIntervalTick = samplingIntervalTick;
+            event.inputPoints          = data.size();
+            event.outputPoints         = result.size();
+            event.commit();
+        }
         return result;
     }
 
-    private static List<Pair<Long, Double>> linearSegment(
-            Pair<Long, Double> start,
-            Pair<Long, Double> end,
-            List<Long> sampleTicks) {
+    private static List<Pair<Long, Double>> interpolate(
+            List<Pair<Long, Double>> data,
+            AdaptiveSampler sampler,
+            String curveName,
+            SegmentInterpolator interpolator) {
 
-        long   x0     = start.first;
-        double y0     = start.second;
-        long   x1     = end.first;
-        double y1     = end.second;
-        double deltaX = x1 - x0;
+        if (data == null || data.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        InterpolationEvent event = new InterpolationEvent();
+        event.begin();
+
+        List<Pair<Long, Double>> result = new ArrayList<>();
+
+        for (int i = 0; i < data.size() - 1; i++) {
+            Pair<Long, Double> start = data.get(i);
+            Pair<Long, Double> end   = data.get(i + 1);
+            LongToDoubleFunction curve = interpolator.between(start, end);
+
+            // Sample the interior, but keep the control point's exact value
+            int first = result.size();
+            sampler.sample(start.first, end.first, curve, result);
+            if (first < result.size()) result.set(first, start);
+        }
+
+        result.add(data.get(data.size() - 1));
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.curve        = curveName;
+            event.adaptive     = true;
+            event.maxError     = sampler.getMaxError();
+            event.inputPoints  = data.size();
+            event.outputPoints = result.size();
+            event.commit();
+        }
+        return result;
+    }
+
+    private static LongToDoubleFunction linearSegment(Pair<Long, Double> start, Pair<Long, Double> end) {
 
-        return sampleTicks.stream()
-                .map(x -> new Pair<>(x, y0 + (x - x0) * (y1 - y0) / deltaX))
-                .collect(Collectors.toList());
+        long   x0 = start.first;
+        double y0 = start.second;
+        long   x1 = end.first;
+        double y1 = end.second;
+
+        return x -> linearAt(x0, y0, x1, y1, x);
+    }
+
+    /** Value at {@code x} of the straight line through {@code (x0, y0)} and {@code (x1, y1)}. */
+    static double linearAt(long x0, double y0, long x1, double y1, long x) {
+        double deltaX = x1 - x0;
+        return y0 + (x - x0) * (y1 - y0) / deltaX;
     }
 
     /**
      * Cosine ease-in-out: starts slow, accelerates, then slows again (S-curve).
      */
-    private static List<Pair<Long, Double>> cosineEaseInOutSegment(
-            Pair<Long, Double> start,
-            Pair<Long, Double> end,
-            List<Long> sampleTicks) {
-
-        long   x0      = start.first;
-        double y0      = start.second;
-        long   x1      = end.first;
-        double y1      = end.second;
+    private static LongToDoubleFunction cosineEaseInOutSegment(Pair<Long, Double> start, Pair<Long, Double> end) {
+
+        long   x0 = start.first;
+        double y0 = start.second;
+        long   x1 = end.first;
+        double y1 = end.second;
+
+        return x -> cosineEaseInOutAt(x0, y0, x1, y1, x);
+    }
+
+    /** Value at {@code x} of the cosine S-curve from {@code (x0, y0)} to {@code (x1, y1)}. */
+    static double cosineEaseInOutAt(long x0, double y0, long x1, double y1, long x) {
         double yOffset = (y0 + y1) / 2.0;
         double amp     = (y0 - y1) / 2.0;
         double freq    = Math.PI / (x1 - x0);
-
-        return sampleTicks.stream()
-                .map(x -> new Pair<>(x, amp * Math.cos(freq * (x - x0)) + yOffset))
-                .collect(Collectors.toList());
+        return amp * Math.cos(freq * (x - x0)) + yOffset;
     }
 
     /**
      * Cosine ease-in: starts slow, then accelerates toward the end value.
      */
-    private static List<Pair<Long, Double>> cosineEaseInSegment(
-            Pair<Long, Double> start,
-            Pair<Long, Double> end,
-            List<Long> sampleTicks) {
+    private static LongToDoubleFunction cosineEaseInSegment(Pair<Long, Double> start, Pair<Long, Double> end) {
 
         long   x0   = start.first;
         double y0   = start.second;
@@ -150,18 +238,13 @@ public final class InterpolationUtils {
         double amp  = y0 - y1;
         double freq = Math.PI / (x1 - x0) / 2.0;
 
-        return sampleTicks.stream()
-                .map(x -> new Pair<>(x, amp * Math.cos(freq * (x - x0)) + y1))
-                .collect(Collectors.toList());
+        return x -> amp * Math.cos(freq * (x - x0)) + y1;
     }
 
     /**
      * Cosine ease-out: starts fast, then decelerates toward the end value.
      */
-    private static List<Pair<Long, Double>> cosineEaseOutSegment(
-            Pair<Long, Double> start,
-            Pair<Long, Double> end,
-            List<Long> sampleTicks) {
+    private static LongToDoubleFunction cosineEaseOutSegment(Pair<Long, Double> start, Pair<Long, Double> end) {
 
         long   x0    = start.first;
         double y0    = start.second;
@@ -171,8 +254,6 @@ public final class InterpolationUtils {
         double freq  = Math.PI / (x1 - x0) / 2.0;
         double phase = Math.PI / 2.0;
 
-        return sampleTicks.stream()
-                .map(x -> new Pair<>(x, amp * Math.cos(freq * (x - x0) + phase) + y0))
-                .collect(Collectors.toList());
+        return x -> amp * Math.cos(freq * (x - x0) + phase) + y0;
     }
 }
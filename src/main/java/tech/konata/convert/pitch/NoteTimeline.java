@@ -0,0 +1,246 @@
+package tech.konata.convert.pitch;
+
+import tech.konata.convert.Note;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntConsumer;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * Immutable index over a track's notes, shared by the pitch stages to answer
+ * "which note owns this tick?" without walking a {@code List<Note>}.
+ *
+ * <h2>Layout</h2>
+ * Notes are stored sorted by note-on (stable, so input order breaks ties) in
+ * parallel {@code tickOn} / {@code tickOff} / {@code key} arrays;
+ * {@link #sourceIndex(int)} maps an index back to the caller's list.
+ *
+ * <h2>Borders</h2>
+ * {@code border(i)} is the tick at which pitch ownership passes from note
+ * {@code i} to note {@code i + 1}:
+ * <ul>
+ *   <li>the shared tick if the notes are back-to-back,</li>
+ *   <li>the midpoint of the gap if there is one,</li>
+ *   <li>the next note-on if the notes overlap – the later note takes over.</li>
+ * </ul>
+ * Borders are non-decreasing, so every tick maps to exactly one owner by
+ * binary search. The <em>sounding</em> range of note {@code i} is
+ * {@code [tickOn(i), effectiveTickOff(i))}, where an overlapped note is cut
+ * short at the next note-on; sounding ranges never overlap.
+ */
+public final class NoteTimeline {
+
+    private final long[] tickOn;
+    private final long[] tickOff;
+    private final int[]  key;
+    private final int[]  sourceIndex;
+    private final long[] borders;
+
+    private NoteTimeline(long[] tickOn, long[] tickOff, int[] key, int[] sourceIndex) {
+        this.tickOn      = tickOn;
+        this.tickOff     = tickOff;
+        this.key         = key;
+        this.sourceIndex = sourceIndex;
+        this.borders     = computeBorders(tickOn, tickOff);
+    }
+
+    public static NoteTimeline of(List<Note> notes) {
+        return of(notes, Note::getTickOn, Note::getTickOff, Note::getKey);
+    }
+
+    /**
+     * Indexes any note-like list; {@code keyOf} may return a constant if keys
+     * are not needed.
+     */
+    public static <T> NoteTimeline of(List<T> notes,
+                                      ToLongFunction<? super T> tickOnOf,
+                                      ToLongFunction<? super T> tickOffOf,
+                                      ToIntFunction<? super T>  keyOf) {
+        int n = notes.size();
+        long[] on  = new long[n];
+        long[] off = new long[n];
+        int[]  k   = new int[n];
+        boolean sorted = true;
+        for (int i = 0; i < n; i++) {
+            T note = notes.get(i);
+            on[i]  = tickOnOf.applyAsLong(note);
+            off[i] = tickOffOf.applyAsLong(note);
+            k[i]   = keyOf.applyAsInt(note);
+            if (i > 0 && on[i] < on[i - 1]) sorted = false;
+        }
+
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) order[i] = i;
+        if (sorted) return new NoteTimeline(on, off, k, order);
+
+        Integer[] boxed = new Integer[n];
+        for (int i = 0; i < n; i++) boxed[i] = i;
+        Arrays.sort(boxed, (a, b) -> Long.compare(on[a], on[b]));   // stable
+        long[] sortedOn  = new long[n];
+        long[] sortedOff = new long[n];
+        int[]  sortedKey = new int[n];
+        for (int i = 0; i < n; i++) {
+            int src = boxed[i];
+            order[i]     = src;
+            sortedOn[i]  = on[src];
+            sortedOff[i] = off[src];
+            sortedKey[i] = k[src];
+        }
+        return new NoteTimeline(sortedOn, sortedOff, sortedKey, order);
+    }
+
+    private static long[] computeBorders(long[] tickOn, long[] tickOff) {
+        int n = tickOn.length;
+        long[] borders = new long[Math.max(0, n - 1)];
+        for (int i = 0; i < n - 1; i++) {
+            long prevOff = tickOff[i];
+            long nextOn  = tickOn[i + 1];
+            borders[i] = (prevOff < nextOn) ? (prevOff + nextOn) / 2L : nextOn;
+        }
+        return borders;
+    }
+
+    // ---------------------------------------------------------------------------------
+    // Per-note accessors
+    // ---------------------------------------------------------------------------------
+
+    public int size() {
+        return tickOn.length;
+    }
+
+    public boolean isEmpty() {
+        return tickOn.length == 0;
+    }
+
+    public long tickOn(int index) {
+        return tickOn[index];
+    }
+
+    public long tickOff(int index) {
+        return tickOff[index];
+    }
+
+    /** Note-off, cut short at the next note-on if the notes overlap. */
+    public long effectiveTickOff(int index) {
+        return index + 1 < tickOn.length ? Math.min(tickOff[index], tickOn[index + 1]) : tickOff[index];
+    }
+
+    public int key(int index) {
+        return key[index];
+    }
+
+    /** Index of this note in the list the timeline was built from. */
+    public int sourceIndex(int index) {
+        return sourceIndex[index];
+    }
+
+    /** Tick at which ownership passes from note {@code index} to the next. */
+    public long border(int index) {
+        return borders[index];
+    }
+
+    // ---------------------------------------------------------------------------------
+    // Queries
+    // ---------------------------------------------------------------------------------
+
+    /**
+     * Returns the note that owns {@code tick} for pitch purposes – the one
+     * whose border range contains it – or {@code -1} if there are no notes.
+     */
+    public int ownerAt(long tick) {
+        if (tickOn.length == 0) return -1;
+        return upperBound(borders, 0, borders.length, tick);
+    }
+
+    /** Returns the note sounding at {@code tick}, or {@code -1} if none is. */
+    public int noteAt(long tick) {
+        int i = upperBound(tickOn, 0, tickOn.length, tick) - 1;
+        return (i >= 0 && tick < effectiveTickOff(i)) ? i : -1;
+    }
+
+    /** Returns the first note starting at or after {@code tick}, or {@link #size()}. */
+    public int firstStartingAtOrAfter(long tick) {
+        return lowerBound(tickOn, 0, tickOn.length, tick);
+    }
+
+    /**
+     * Calls {@code action} with the index of every note whose sounding range
+     * intersects {@code [fromTick, toTick)}, in order.
+     */
+    public void forEachInRange(long fromTick, long toTick, IntConsumer action) {
+        int i = Math.max(0, upperBound(tickOn, 0, tickOn.length, fromTick) - 1);
+        for (; i < tickOn.length && tickOn[i] < toTick; i++) {
+            if (effectiveTickOff(i) > fromTick || tickOn[i] >= fromTick) action.accept(i);
+        }
+    }
+
+    /** Returns a cursor for monotonically increasing tick lookups. */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Forward cursor over {@link #ownerAt(long)}: amortised O(1) per lookup
+     * while ticks increase, with a binary search for the first lookup and
+     * whenever they go back.
+     * Not thread-safe; take one per pass.
+     */
+    public final class Cursor {
+
+        private int  index;
+        private long lastTick = Long.MIN_VALUE;
+
+        private Cursor() { }
+
+        /** Moves to the owner of {@code tick} and returns its index ({@code -1} if empty). */
+        public int seek(long tick) {
+            if (tickOn.length == 0) return -1;
+            if (tick < lastTick || lastTick == Long.MIN_VALUE) {
+                // Going back, or the first lookup (which may start anywhere): binary search
+                index = upperBound(borders, 0, borders.length, tick);
+            } else {
+                while (index < borders.length && tick >= borders[index]) index++;
+            }
+            lastTick = tick;
+            return index;
+        }
+
+        /** Key of the note at the cursor. */
+        public int key() {
+            return key[index];
+        }
+    }
+
+    // ---------------------------------------------------------------------------------
+    // Binary search
+    // ---------------------------------------------------------------------------------
+
+    /** First index in {@code [from, to)} with {@code a[i] >= value}. */
+    private static int lowerBound(long[] a, int from, int to, long value) {
+        int lo = from, hi = to;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (a[mid] < value) lo = mid + 1;
+            else                hi = mid;
+        }
+        return lo;
+    }
+
+    /** First index in {@code [from, to)} with {@code a[i] > value}. */
+    private static int upperBound(long[] a, int from, int to, long value) {
+        int lo = from, hi = to;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (a[mid] <= value) lo = mid + 1;
+            else                 hi = mid;
+        }
+        return lo;
+    }
+
+    @Override
+    public String toString() {
+        return "NoteTimeline{notes=" + tickOn.length + "}";
+    }
+}
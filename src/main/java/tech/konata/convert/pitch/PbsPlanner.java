@@ -0,0 +1,97 @@
+package tech.konata.convert.pitch;
+
+import java.util.Arrays;
+
+/**
+ * Chooses one pitch-bend sensitivity per pitch section for a whole song,
+ * minimising the number of PBS events VOCALOID has to receive.
+ *
+ * <h2>Constraints</h2>
+ * Section {@code i} needs at least {@code required[i]} semitones of range. It
+ * may be given a wider PBS – so that it can share its neighbours' value – only
+ * while the PIT step stays within the resolution limit, i.e. up to
+ * {@code maxSharedPbs}; a section that needs more than that always gets
+ * exactly what it needs. Values are clamped to {@code [1, }{@value #MAX_PBS}{@code ]}.
+ *
+ * <h2>Algorithm</h2>
+ * Dynamic programming over sections with the PBS in effect as the state: a
+ * PBS event is paid whenever a section's value differs from the one before
+ * it, the part starting at {@link #INITIAL_PBS}. Ties are broken towards the
+ * smaller total PBS, i.e. the finer resolution. With a constant number of
+ * states each step is O(1), so planning is linear in the number of sections.
+ */
+final class PbsPlanner {
+
+    /** Largest sensitivity VOCALOID accepts. */
+    static final int MAX_PBS     = 24;
+
+    /** Sensitivity in effect at the start of a part. */
+    static final int INITIAL_PBS = 2;
+
+    private static final long INFINITE = Long.MAX_VALUE / 4;
+
+    /** Cost of one PBS event; the low bits hold the PBS sum as a tie-breaker. */
+    private static final long EVENT_COST = 1L << 32;
+
+    private PbsPlanner() { /* static utility class */ }
+
+    /**
+     * @param required     minimum PBS of each section, in song order
+     * @param maxSharedPbs widest PBS a section may use beyond its own need
+     * @return the PBS to use for each section
+     */
+    static int[] plan(int[] required, int maxSharedPbs) {
+        int    n      = required.length;
+        int[]  result = new int[n];
+        if (n == 0) return result;
+
+        byte[][] from = new byte[n][MAX_PBS + 1];
+        long[]   prev = new long[MAX_PBS + 1];
+        long[]   cur  = new long[MAX_PBS + 1];
+
+        Arrays.fill(prev, INFINITE);
+        prev[INITIAL_PBS] = 0L;
+
+        for (int i = 0; i < n; i++) {
+            int low  = clamp(required[i]);
+            int high = Math.max(low, clamp(maxSharedPbs));
+
+            int  bestPrev     = argMin(prev);
+            long switchCost   = prev[bestPrev] + EVENT_COST;
+
+            Arrays.fill(cur, INFINITE);
+            for (int p = low; p <= high; p++) {
+                long stay = prev[p];
+                if (stay <= switchCost) {
+                    cur[p]     = stay + p;
+                    from[i][p] = (byte) p;
+                } else {
+                    cur[p]     = switchCost + p;
+                    from[i][p] = (byte) bestPrev;
+                }
+            }
+            long[] swap = prev;
+            prev = cur;
+            cur  = swap;
+        }
+
+        int p = argMin(prev);
+        for (int i = n - 1; i >= 0; i--) {
+            result[i] = p;
+            p = from[i][p];
+        }
+        return result;
+    }
+
+    private static int clamp(int pbs) {
+        return Math.max(1, Math.min(MAX_PBS, pbs));
+    }
+
+    private static int argMin(long[] costs) {
+        int best = 1;
+        for (int p = 2; p <= MAX_PBS; p++) {
+            if (costs[p] < costs[best]) best = p;
+        }
+        return best;
+    }
+}
@@ -0,0 +1,254 @@
+package tech.konata.convert.pitch;
+
+import tech.konata.convert.Pair;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * Append-only {@code (tick, value)} store for the pitch bends a converter
+ * collects, that moves to a memory-mapped temporary file once it grows past a
+ * threshold.
+ *
+ * <h2>Why</h2>
+ * A {@code List<Pair<Long, Double>>} costs around 60 bytes of heap per bend.
+ * Extreme-length or extreme-density captures then need more heap than small
+ * containers have, long before the rest of the conversion does.
+ *
+ * <h2>Storage</h2>
+ * Points are kept as primitive arrays (16 bytes each) until there are
+ * {@value #DEFAULT_SPILL_THRESHOLD} of them, or the number set with
+ * {@code -D}{@value #SPILL_THRESHOLD_PROPERTY}. The store then moves them to a
+ * temporary file of packed big-endian {@code (long tick, double value)}
+ * records, in {@code -D}{@value #SPILL_DIR_PROPERTY} or the system temporary
+ * directory, and appends further points through a small write buffer. Reads
+ * go through read-only mappings of the file, so a sequential pass, which is
+ * how {@link PitchConverter} and the writers use it, runs at close to heap
+ * speed and leaves paging to the OS.
+ *
+ * <h2>Access</h2>
+ * The store is a {@link RandomAccess} list of {@link Pair}s, so it can stand
+ * in wherever the pitch list was used; each {@link #get} creates a new pair.
+ * Hot loops should use {@link #tick}, {@link #value} or {@link #reader()}
+ * instead. {@link #close()} deletes the file. Instances are not thread-safe,
+ * except that once nothing more is added and the last point has been read
+ * (which maps the whole file), any number of threads may read the store.
+ */
+public final class PitchBendStore extends AbstractList<Pair<Long, Double>> implements RandomAccess, Closeable {
+
+    /** System properties read by {@link #PitchBendStore()}. */
+    public static final String SPILL_THRESHOLD_PROPERTY = "plg.pitch.spillPoints";
+    public static final String SPILL_DIR_PROPERTY       = "plg.pitch.spillDir";
+
+    /** Points kept on the heap before spilling: 64 MiB of primitive records. */
+    public static final int DEFAULT_SPILL_THRESHOLD = 1 << 22;
+
+    private static final int RECORD_BYTES         = 16;
+    private static final int SEGMENT_RECORDS      = 1 << 26;   // 1 GiB per mapping
+    private static final int WRITE_BUFFER_RECORDS = 4096;
+
+    private final int  spillThreshold;
+    private final Path spillDir;
+
+    /** Heap storage, until the store spills. */
+    private long[]   ticks  = new long[16];
+    private double[] values = new double[16];
+    private int      size;
+
+    /** File storage, once it has: the channel, pending records and mappings of {@code [0, mappedSize)}. */
+    private Path                spillFile;
+    private FileChannel         channel;
+    private ByteBuffer          writeBuffer;
+    private MappedByteBuffer[]  segments = new MappedByteBuffer[0];
+    private int                 mappedSize;
+    private boolean             closed;
+
+    /** A store configured through the {@code plg.pitch.*} system properties. */
+    public PitchBendStore() {
+        this(Integer.getInteger(SPILL_THRESHOLD_PROPERTY, DEFAULT_SPILL_THRESHOLD), spillDirFromSystemProperties());
+    }
+
+    /**
+     * @param spillThreshold number of points kept on the heap before the store spills
+     * @param spillDir       directory for the temporary file
+     */
+    public PitchBendStore(int spillThreshold, Path spillDir) {
+        if (spillThreshold < 0) {
+            throw new IllegalArgumentException("spillThreshold must not be negative: " + spillThreshold);
+        }
+        this.spillThreshold = spillThreshold;
+        this.spillDir       = spillDir;
+    }
+
+    private static Path spillDirFromSystemProperties() {
+        String dir = System.getProperty(SPILL_DIR_PROPERTY);
+        return Paths.get(dir == null || dir.isBlank() ? System.getProperty("java.io.tmpdir") : dir);
+    }
+
+    /** Appends a point; ticks must not decrease. */
+    public void add(long tick, double value) {
+        checkOpen();
+        if (size == Integer.MAX_VALUE) throw new IllegalStateException("Pitch-bend store is full");
+
+        if (channel == null && size == spillThreshold) spill();
+        if (channel == null) {
+            if (size == ticks.length) {
+                ticks  = Arrays.copyOf(ticks,  size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            ticks[size]  = tick;
+            values[size] = value;
+        } else {
+            writeBuffer.putLong(tick).putDouble(value);
+            if (!writeBuffer.hasRemaining()) flush();
+        }
+        size++;
+        modCount++;
+    }
+
+    @Override
+    public boolean add(Pair<Long, Double> point) {
+        add(point.first, point.second);
+        return true;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /** Whether the points have moved to a temporary file. */
+    public boolean isSpilled() {
+        return channel != null;
+    }
+
+    @Override
+    public Pair<Long, Double> get(int index) {
+        return new Pair<>(tick(index), value(index));
+    }
+
+    /** Tick of the point at {@code index}. */
+    public long tick(int index) {
+        checkOpen();
+        Objects.checkIndex(index, size);
+        if (channel == null) return ticks[index];
+        return segment(index).getLong(offset(index));
+    }
+
+    /** Value of the point at {@code index}. */
+    public double value(int index) {
+        checkOpen();
+        Objects.checkIndex(index, size);
+        if (channel == null) return values[index];
+        return segment(index).getDouble(offset(index) + Long.BYTES);
+    }
+
+    /** Reads the points in order, from the first one, as a {@link PointSource}. */
+    public PointSource reader() {
+        return new PointSource() {
+            private int next;
+
+            @Override
+            public int read(long[] ticks, double[] values) {
+                int n = Math.min(ticks.length, size - next);
+                for (int i = 0; i < n; i++, next++) {
+                    ticks[i]  = tick(next);
+                    values[i] = value(next);
+                }
+                return n;
+            }
+        };
+    }
+
+    /** Drops all points and deletes the temporary file, if any; the store cannot be read afterwards. */
+    @Override
+    public void close() {
+        if (closed) return;
+        closed   = true;
+        ticks    = null;
+        values   = null;
+        segments = null;
+        if (channel != null) {
+            try {
+                channel.close();
+                Files.deleteIfExists(spillFile);
+            } catch (IOException e) {
+                System.out.println("[Warn] Failed to delete pitch spill file " + spillFile + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) throw new IllegalStateException("Pitch-bend store is closed");
+    }
+
+    private void spill() {
+        try {
+            spillFile = Files.createTempFile(spillDir, "plg-pitch-", ".bin");
+            channel   = FileChannel.open(spillFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to create pitch spill file in " + spillDir, e);
+        }
+        writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_RECORDS * RECORD_BYTES);
+        for (int i = 0; i < size; i++) {
+            writeBuffer.putLong(ticks[i]).putDouble(values[i]);
+            if (!writeBuffer.hasRemaining()) flush();
+        }
+        ticks  = null;
+        values = null;
+    }
+
+    /** Writes the pending records to the end of the file. */
+    private void flush() {
+        writeBuffer.flip();
+        try {
+            while (writeBuffer.hasRemaining()) channel.write(writeBuffer);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to write pitch spill file " + spillFile, e);
+        }
+        writeBuffer.clear();
+    }
+
+    private MappedByteBuffer segment(int index) {
+        if (index >= mappedSize) map();
+        return segments[index / SEGMENT_RECORDS];
+    }
+
+    private static int offset(int index) {
+        return (index % SEGMENT_RECORDS) * RECORD_BYTES;
+    }
+
+    /** Maps every record written so far, remapping only the segments that have grown. */
+    private void map() {
+        if (writeBuffer.position() > 0) flush();
+
+        int count = (size + SEGMENT_RECORDS - 1) / SEGMENT_RECORDS;
+        if (segments.length < count) segments = Arrays.copyOf(segments, count);
+        try {
+            for (int s = mappedSize / SEGMENT_RECORDS; s < count; s++) {
+                long start   = (long) s * SEGMENT_RECORDS;
+                long records = Math.min(SEGMENT_RECORDS, size - start);
+                segments[s]  = channel.map(FileChannel.MapMode.READ_ONLY, start * RECORD_BYTES, records * RECORD_BYTES);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to map pitch spill file " + spillFile, e);
+        }
+        mappedSize = size;
+    }
+
+    @Override
+    public String toString() {
+        return "PitchBendStore{points=" + size + (isSpilled() ? ", spilled to " + spillFile : "") + "}";
+    }
+}
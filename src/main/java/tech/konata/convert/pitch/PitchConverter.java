@@ -3,11 +3,10 @@ package tech.konata.convert.pitch;
 import tech.konata.convert.Note;
 import tech.konata.convert.Pair;
 import tech.konata.convert.Pitch;
+import tech.konata.jfr.RelativePitchEvent;
 
 import java.util.*;
 import java.util.stream.Collectors;
-import java.util.stream.IntStream;
-import java.util.stream.Stream;
 
 /**
  * Core pitch-data utilities: conversion between absolute and relative pitch
@@ -41,6 +40,9 @@ public final class PitchConverter {
     /** Log-frequency difference per semitone. */
     public static final double LOG_FREQ_DIFF_PER_KEY = 0.05776226505;
 
+    /** Points converted by one {@link PitchForkJoin} section in {@link #convertPitchRelativity}. */
+    private static final long RELATIVITY_CHUNK = PitchForkJoin.MIN_TASK_WEIGHT;
+
     private PitchConverter() { /* static utility class */ }
 
     /**
@@ -67,6 +69,11 @@ public final class PitchConverter {
      *         notes list is empty and conversion is needed
      */
     public static List<Pair<Long, Double>> getAbsoluteData(Pitch pitch, List<Note> notes) {
+        return getAbsoluteData(pitch, NoteTimeline.of(notes));
+    }
+
+    /** Same as {@link #getAbsoluteData(Pitch, List)}, over a prebuilt index. */
+    public static List<Pair<Long, Double>> getAbsoluteData(Pitch pitch, NoteTimeline notes) {
         return convertPitchRelativity(pitch, notes, /* toAbsolute */ true, /* borderRadius */ 0L);
     }
 
@@ -96,111 +103,105 @@ public final class PitchConverter {
      */
     public static List<Pair<Long, Double>> getRelativeData(
             Pitch pitch, List<Note> notes, long borderAppendRadius) {
+        return getRelativeData(pitch, NoteTimeline.of(notes), borderAppendRadius);
+    }
+
+    /** Same as {@link #getRelativeData(Pitch, List, long)}, over a prebuilt index. */
+    public static List<Pair<Long, Double>> getRelativeData(
+            Pitch pitch, NoteTimeline notes, long borderAppendRadius) {
+
+        RelativePitchEvent event = new RelativePitchEvent();
+        event.begin();
 
         List<Pair<Long, Double>> result =
                 convertPitchRelativity(pitch, notes, /* toAbsolute */ false, borderAppendRadius);
 
-        if (result == null) return null;
+        if (result != null && hasNullValue(result)) {
+            result = result.stream()
+                    .filter(p -> p.second != null)
+                    .collect(Collectors.toList());
+        }
 
-        return result.stream()
-                .filter(p -> p.second != null)
-                .collect(Collectors.toList());
+        event.end();
+        if (event.shouldCommit()) {
+            event.inputPoints        = pitch.getData().size();
+            event.outputPoints       = result != null ? result.size() : 0;
+            event.notes              = notes.size();
+            event.borderAppendRadius = borderAppendRadius;
+            event.commit();
+        }
+        return result;
     }
 
     /**
      * Converts pitch data between absolute and relative representations.
      *
+     * <p>The key at each point is that of the note owning its tick (see
+     * {@link NoteTimeline}); points must be sorted by tick.
+     *
      * @param pitch              source pitch
-     * @param notes              note list (must not be empty when conversion is needed)
+     * @param notes              note index (must not be empty when conversion is needed)
      * @param toAbsolute         {@code true} → convert to absolute; {@code false} → convert to relative
      * @param borderAppendRadius radius for border-append pass (relative only)
      */
     private static List<Pair<Long, Double>> convertPitchRelativity(
             Pitch pitch,
-            List<Note> notes,
+            NoteTimeline notes,
             boolean toAbsolute,
             long borderAppendRadius) {
 
-        // If the data is already in the target form, return a copy directly
+        // If the data is already in the target form, return it as-is: it may be
+        // a spilled PitchBendStore, which a copy would pull back onto the heap
         if (pitch.isAbsolute() == toAbsolute) {
-            return new ArrayList<>(pitch.getData());
+            return pitch.getData();
         }
 
         if (notes.isEmpty()) return null;
 
-        // Pre-compute the tick at which each note transition ("border") falls
-        List<Long> borders = computeNoteBorders(notes);
-
-        // Mutable state shared across the stream
-        int[]    noteIndexRef   = { 0 };
-        double[] currentKeyRef  = { notes.get(0).getKey() };
-        long[]   nextBorderRef  = { borders.isEmpty() ? Long.MAX_VALUE : borders.get(0) };
-
-        Stream<Pair<Long, Double>> converted = pitch.getData().stream()
-                .map(point -> {
-                    // Advance note index when we pass a border tick
-                    while (point.first >= nextBorderRef[0]) {
-                        noteIndexRef[0]++;
-                        nextBorderRef[0] = noteIndexRef[0] < borders.size()
-                                ? borders.get(noteIndexRef[0])
-                                : Long.MAX_VALUE;
-                        currentKeyRef[0] = notes.get(noteIndexRef[0]).getKey();
-                    }
-
-                    Double convertedValue = null;
-                    if (point.second != null) {
-                        if (pitch.isAbsolute()) {
-                            // absolute → relative
-                            convertedValue = point.second - currentKeyRef[0];
-                        } else {
-                            // relative → absolute (0.0 offset means "no data" → null)
-                            convertedValue = (point.second == 0.0)
-                                    ? null
-                                    : point.second + currentKeyRef[0];
-                        }
-                    }
-                    return new Pair<>(point.first, convertedValue);
-                });
+        // Each point only needs its own owner note: convert fixed-size chunks, in parallel for long songs
+        List<Pair<Long, Double>> data   = pitch.getData();
+        if (!data.isEmpty()) data.get(data.size() - 1);   // maps all of a spilled PitchBendStore for concurrent reads
+        int                      chunks = (int) ((data.size() + RELATIVITY_CHUNK - 1) / RELATIVITY_CHUNK);
+        List<List<Pair<Long, Double>>> convertedChunks = PitchForkJoin.map(chunks,
+                c -> RELATIVITY_CHUNK,
+                c -> convertChunk(data, (int) (c * RELATIVITY_CHUNK),
+                        (int) Math.min(data.size(), (c + 1) * RELATIVITY_CHUNK), notes, pitch.isAbsolute()));
+
+        List<Pair<Long, Double>> converted = new ArrayList<>(data.size());
+        convertedChunks.forEach(converted::addAll);
 
         if (!toAbsolute) {
-            List<Pair<Long, Double>> temp = converted.collect(Collectors.toList());
-            return appendPointsAtNoteBorders(temp, notes, borderAppendRadius);
+            return appendPointsAtNoteBorders(converted, notes, borderAppendRadius);
         }
-
-        return converted.collect(Collectors.toList());
+        return converted;
     }
 
-    /**
-     * Computes the tick at which each adjacent note pair transitions.
-     *
-     * <ul>
-     *   <li>If notes are back-to-back (no gap), the border is at the shared tick.</li>
-     *   <li>If there is a gap, the border is placed at the midpoint of the gap.</li>
-     *   <li>Overlapping notes are not supported and will throw.</li>
-     * </ul>
-     */
-    private static List<Long> computeNoteBorders(List<Note> notes) {
-        List<Long> borders = new ArrayList<>();
-        long prevTickOff = -1L;
+    /** Converts {@code data[from, to)} with its own cursor into {@code notes}. */
+    private static List<Pair<Long, Double>> convertChunk(
+            List<Pair<Long, Double>> data, int from, int to, NoteTimeline notes, boolean fromAbsolute) {
 
-        for (Note note : notes) {
-            if (prevTickOff < 0) {
-                prevTickOff = note.getTickOff();
-                continue;
-            }
+        List<Pair<Long, Double>> converted = new ArrayList<>(to - from);
+        NoteTimeline.Cursor      cursor    = notes.cursor();
 
-            long nextTickOn = note.getTickOn();
-            if (prevTickOff == nextTickOn) {
-                borders.add(prevTickOff);
-            } else if (prevTickOff < nextTickOn) {
-                borders.add((prevTickOff + nextTickOn) / 2L);
-            } else {
-                throw new IllegalStateException("Notes overlap: tickOff=" + prevTickOff
-                        + " > nextTickOn=" + nextTickOn);
+        for (Pair<Long, Double> point : data.subList(from, to)) {
+            cursor.seek(point.first);
+            double currentKey = cursor.key();
+
+            Double convertedValue = null;
+            if (point.second != null) {
+                if (fromAbsolute) {
+                    // absolute → relative
+                    convertedValue = point.second - currentKey;
+                } else {
+                    // relative → absolute (0.0 offset means "no data" → null)
+                    convertedValue = (point.second == 0.0)
+                            ? null
+                            : point.second + currentKey;
+                }
             }
-            prevTickOff = note.getTickOff();
+            converted.add(new Pair<>(point.first, convertedValue));
         }
-        return borders;
+        return converted;
     }
 
     /**
@@ -210,55 +211,72 @@ public final class PitchConverter {
      * <p>For each adjacent note pair where the gap is ≤ {@code radius}, if the
      * first pitch point that falls on or after the note-on is within {@code radius}
      * ticks, a copy of that point is placed exactly {@code radius} ticks before
-     * the note-on.
+     * the note-on, replacing the points in between.
+     *
+     * <p>Runs as a single merge over the sorted points: each anchor only touches
+     * points before its own note-on, which later notes never revisit.
      */
     private static List<Pair<Long, Double>> appendPointsAtNoteBorders(
             List<Pair<Long, Double>> data,
-            List<Note> notes,
+            NoteTimeline notes,
             long radius) {
 
         if (radius <= 0) return data;
 
-        List<Pair<Long, Double>> result = new ArrayList<>(data);
+        List<Pair<Long, Double>> result = new ArrayList<>(data.size() + notes.size());
+        int  copied     = 0;                 // data[0, copied) is already in result
+        long lastAnchor = Long.MIN_VALUE;
 
         for (int i = 0; i < notes.size() - 1; i++) {
-            Note lastNote = notes.get(i);
-            Note thisNote = notes.get(i + 1);
-
-            if (thisNote.getTickOn() - lastNote.getTickOff() > radius) continue;
+            long noteOn = notes.tickOn(i + 1);
+            if (noteOn - notes.tickOff(i) > radius) continue;
+            if (noteOn == lastAnchor) continue;      // same note-on already anchored
 
             // Find the first point at or after this note's start
-            OptionalInt firstIndexOpt = IntStream.range(0, result.size())
-                    .filter(idx -> result.get(idx).first >= thisNote.getTickOn())
-                    .findFirst();
-
-            if (firstIndexOpt.isEmpty()) continue;
+            int firstIndex = lowerBound(data, copied, noteOn);
+            if (firstIndex == data.size()) break;
 
-            int               firstIndex = firstIndexOpt.getAsInt();
-            Pair<Long, Double> firstPoint = result.get(firstIndex);
+            Pair<Long, Double> firstPoint = data.get(firstIndex);
+            if (firstPoint.first == noteOn) continue;
+            if (firstPoint.first - noteOn > radius) continue;
 
-            if (firstPoint.first == thisNote.getTickOn()) continue;
-            if (firstPoint.first - thisNote.getTickOn() > radius) continue;
-
-            long newTick = thisNote.getTickOn() - radius;
+            long newTick = noteOn - radius;
             Pair<Long, Double> anchor = new Pair<>(newTick, firstPoint.second);
 
-            // Remove any existing points in [newTick, noteOn) that aren't the new anchor
-            result.removeIf(p -> p.first >= newTick
-                    && p.first < thisNote.getTickOn()
-                    && !p.equals(anchor));
-
-            // Insert the anchor before firstIndex (index may have shifted)
-            int insertAt = IntStream.range(0, result.size())
-                    .filter(idx -> result.get(idx).first >= thisNote.getTickOn())
-                    .findFirst()
-                    .orElse(result.size());
-            result.add(insertAt, anchor);
+            // Keep everything before the anchor; of the points in [newTick, noteOn)
+            // keep only copies of the anchor itself
+            int rangeStart = lowerBound(data, copied, newTick);
+            result.addAll(data.subList(copied, rangeStart));
+            for (int j = rangeStart; j < firstIndex; j++) {
+                if (data.get(j).equals(anchor)) result.add(data.get(j));
+            }
+            result.add(anchor);
+            copied     = firstIndex;
+            lastAnchor = noteOn;
         }
 
+        result.addAll(data.subList(copied, data.size()));
         return result;
     }
 
+    private static boolean hasNullValue(List<Pair<Long, Double>> points) {
+        for (Pair<Long, Double> point : points) {
+            if (point.second == null) return true;
+        }
+        return false;
+    }
+
+    /** First index in {@code [from, size)} whose tick is {@code >= tick}. */
+    private static int lowerBound(List<Pair<Long, Double>> points, int from, long tick) {
+        int lo = from, hi = points.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (points.get(mid).first < tick) lo = mid + 1;
+            else                              hi = mid;
+        }
+        return lo;
+    }
+
     /**
      * Inserts intermediate "step" points between consecutive pitch points that are
      * far apart, so that subsequent cosine-interpolation produces smooth curves
@@ -0,0 +1,346 @@
+package tech.konata.convert.pitch;
+
+import tech.konata.convert.Pair;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.LongToDoubleFunction;
+
+/**
+ * Lazy {@code tick → semitone offset} pitch curve, kept as typed segments and
+ * evaluated only where an output asks for samples.
+ *
+ * <h2>Segments</h2>
+ * A curve is a sorted run of <em>base</em> segments – {@link Kind#HOLD},
+ * {@link Kind#LINEAR} and {@link Kind#COSINE}, each from a start value to an
+ * end value over {@code [start, end)} – with {@link Kind#VIBRATO} segments
+ * layered on top, each adding an offset function over its own range. Before
+ * the first base segment the curve holds its start value, after the last (and
+ * in gaps) the end value of the one before; a curve without base segments is
+ * {@code 0}. Consecutive holds at the same value are merged, so a flat or
+ * sustained region costs one segment however long it is.
+ *
+ * <h2>Sampling</h2>
+ * Outputs pull samples at the resolution they need, either on a tick grid or
+ * through an {@link AdaptiveSampler}. Both cut the range at every segment
+ * boundary, emit one sample wherever the curve is constant and sample only
+ * the pieces that actually move, so nothing is materialised just to be
+ * deduplicated again.
+ */
+public final class PitchCurve {
+
+    /** Segment types. */
+    public enum Kind {
+        /** Constant at the start value. */
+        HOLD,
+        /** Straight line from the start value to the end value. */
+        LINEAR,
+        /** Cosine ease-in-out (S-curve) from the start value to the end value. */
+        COSINE,
+        /** An offset function added to the base segments. */
+        VIBRATO
+    }
+
+    /** Receives samples in tick order. */
+    @FunctionalInterface
+    public interface SampleSink {
+        void accept(long tick, double value) throws IOException;
+    }
+
+    private static final Kind[] KINDS = Kind.values();
+
+    private final byte[]   kinds;
+    private final long[]   starts;
+    private final long[]   ends;
+    private final double[] fromValues;
+    private final double[] toValues;
+
+    private final long[]                 vibratoStarts;
+    private final long[]                 vibratoEnds;
+    private final LongToDoubleFunction[] vibratoOffsets;
+
+    private PitchCurve(Builder b) {
+        this.kinds          = Arrays.copyOf(b.kinds,      b.size);
+        this.starts         = Arrays.copyOf(b.starts,     b.size);
+        this.ends           = Arrays.copyOf(b.ends,       b.size);
+        this.fromValues     = Arrays.copyOf(b.fromValues, b.size);
+        this.toValues       = Arrays.copyOf(b.toValues,   b.size);
+        this.vibratoStarts  = b.vibratoStarts.stream().mapToLong(Long::longValue).toArray();
+        this.vibratoEnds    = b.vibratoEnds.stream().mapToLong(Long::longValue).toArray();
+        this.vibratoOffsets = b.vibratoOffsets.toArray(new LongToDoubleFunction[0]);
+    }
+
+    /**
+     * A curve through sorted control points with distinct ticks, interpolated
+     * with {@code interpolation} ({@link Kind#LINEAR} or {@link Kind#COSINE}).
+     */
+    public static PitchCurve ofControlPoints(List<Pair<Long, Double>> points, Kind interpolation) {
+        return new Builder().controlPoints(points, interpolation).build();
+    }
+
+    /** Number of base segments. */
+    public int segmentCount() { return kinds.length; }
+
+    /** Number of vibrato segments. */
+    public int vibratoCount() { return vibratoStarts.length; }
+
+    /** {@code true} if the curve has no segments of any kind (and is therefore {@code 0}). */
+    public boolean isEmpty() {
+        return kinds.length == 0 && vibratoStarts.length == 0;
+    }
+
+    /** Start of the first base segment; undefined if there is none. */
+    public long startTick() { return starts[0]; }
+
+    /** End of the last base segment; undefined if there is none. */
+    public long endTick() { return ends[ends.length - 1]; }
+
+    /** Value at {@code tick}. */
+    public double valueAt(long tick) {
+        double value = baseAt(tick);
+        int v = upperBound(vibratoStarts, tick) - 1;
+        if (v >= 0 && tick < vibratoEnds[v]) value += vibratoOffsets[v].applyAsDouble(tick);
+        return value;
+    }
+
+    private double baseAt(long tick) {
+        int s = upperBound(starts, tick) - 1;
+        if (s < 0) return kinds.length == 0 ? 0.0 : fromValues[0];
+        return tick < ends[s] ? segmentAt(s, tick) : toValues[s];
+    }
+
+    private double segmentAt(int s, long tick) {
+        switch (KINDS[kinds[s]]) {
+            case LINEAR:
+                return InterpolationUtils.linearAt(starts[s], fromValues[s], ends[s], toValues[s], tick);
+            case COSINE:
+                return InterpolationUtils.cosineEaseInOutAt(starts[s], fromValues[s], ends[s], toValues[s], tick);
+            default:
+                return fromValues[s];
+        }
+    }
+
+    // ---------------------------------------------------------------------------------
+    // Sampling
+    // ---------------------------------------------------------------------------------
+
+    /**
+     * Samples {@code [fromTick, toTick)} on a tick grid: the first tick of every
+     * piece and, where the piece moves, every {@code intervalTick} ticks after
+     * it – the grid restarts at each segment boundary, as it does at each
+     * control point in {@link InterpolationUtils}.
+     *
+     * @return the number of samples emitted
+     */
+    public long sample(long fromTick, long toTick, long intervalTick, SampleSink sink) throws IOException {
+        if (intervalTick <= 0) throw new IllegalArgumentException("intervalTick must be positive: " + intervalTick);
+        return forEachPiece(fromTick, toTick, (a, b, curve) -> {
+            sink.accept(a, curve.applyAsDouble(a));
+            if (curve instanceof Constant) return 1L;
+
+            long count = 1L;
+            for (long tick = a + intervalTick; tick < b; tick += intervalTick, count++) {
+                sink.accept(tick, curve.applyAsDouble(tick));
+            }
+            return count;
+        });
+    }
+
+    /**
+     * Samples {@code [fromTick, toTick)} with {@code sampler}, one piece at a
+     * time; a constant piece gets a single sample.
+     *
+     * @return the number of samples emitted
+     */
+    public long sample(long fromTick, long toTick, AdaptiveSampler sampler, SampleSink sink) throws IOException {
+        List<Pair<Long, Double>> buffer = new ArrayList<>();
+        return forEachPiece(fromTick, toTick, (a, b, curve) -> {
+            if (curve instanceof Constant) {
+                sink.accept(a, curve.applyAsDouble(a));
+                return 1L;
+            }
+            buffer.clear();
+            sampler.sample(a, b, curve, buffer);
+            for (Pair<Long, Double> p : buffer) sink.accept(p.first, p.second);
+            return buffer.size();
+        });
+    }
+
+    @FunctionalInterface
+    private interface PieceVisitor {
+        /** Visits {@code [a, b)}, over which {@code curve} is the curve; returns the samples emitted. */
+        long visit(long a, long b, LongToDoubleFunction curve) throws IOException;
+    }
+
+    /** The curve over a piece where it does not move. */
+    private static final class Constant implements LongToDoubleFunction {
+        final double value;
+
+        Constant(double value) { this.value = value; }
+
+        @Override
+        public double applyAsDouble(long tick) { return value; }
+    }
+
+    /**
+     * Cuts {@code [fromTick, toTick)} at every base and vibrato boundary and
+     * visits the pieces in order with the formula that holds on each.
+     */
+    private long forEachPiece(long fromTick, long toTick, PieceVisitor visitor) throws IOException {
+        int  n     = kinds.length;
+        int  m     = vibratoStarts.length;
+        int  s     = upperBound(starts, fromTick) - 1;
+        int  v     = Math.max(0, upperBound(vibratoStarts, fromTick) - 1);
+        long count = 0L;
+
+        for (long a = fromTick; a < toTick; ) {
+            while (s + 1 < n && starts[s + 1] <= a) s++;
+            while (v < m && vibratoEnds[v] <= a) v++;
+
+            // Base formula and where it stops holding
+            LongToDoubleFunction base;
+            long                 baseEnd;
+            if (s < 0) {
+                base    = new Constant(n == 0 ? 0.0 : fromValues[0]);
+                baseEnd = n == 0 ? Long.MAX_VALUE : starts[0];
+            } else if (a < ends[s] && kinds[s] != Kind.HOLD.ordinal()) {
+                int segment = s;
+                base    = tick -> segmentAt(segment, tick);
+                baseEnd = ends[s];
+            } else {
+                base    = new Constant(a < ends[s] ? fromValues[s] : toValues[s]);
+                baseEnd = a < ends[s] ? ends[s] : (s + 1 < n ? starts[s + 1] : Long.MAX_VALUE);
+            }
+
+            // Vibrato in effect, if any, and where that changes
+            boolean vibrato    = v < m && vibratoStarts[v] <= a;
+            long    vibratoEnd = v < m ? (vibrato ? vibratoEnds[v] : vibratoStarts[v]) : Long.MAX_VALUE;
+
+            LongToDoubleFunction curve = base;
+            if (vibrato) {
+                LongToDoubleFunction offset = vibratoOffsets[v];
+                curve = tick -> base.applyAsDouble(tick) + offset.applyAsDouble(tick);
+            }
+
+            long b = Math.min(toTick, Math.min(baseEnd, vibratoEnd));
+            count += visitor.visit(a, b, curve);
+            a = b;
+        }
+        return count;
+    }
+
+    /** First index with {@code a[i] > value}. */
+    private static int upperBound(long[] a, long value) {
+        int lo = 0, hi = a.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (a[mid] <= value) lo = mid + 1;
+            else                 hi = mid;
+        }
+        return lo;
+    }
+
+    @Override
+    public String toString() {
+        return "PitchCurve{segments=" + kinds.length + ", vibrato=" + vibratoStarts.length + "}";
+    }
+
+    // ---------------------------------------------------------------------------------
+    // Builder
+    // ---------------------------------------------------------------------------------
+
+    /**
+     * Collects segments in tick order. Base segments must not overlap each
+     * other, nor vibrato segments each other; empty ranges are ignored.
+     */
+    public static final class Builder {
+
+        private byte[]   kinds      = new byte[16];
+        private long[]   starts     = new long[16];
+        private long[]   ends       = new long[16];
+        private double[] fromValues = new double[16];
+        private double[] toValues   = new double[16];
+        private int      size;
+
+        private final List<Long>                 vibratoStarts  = new ArrayList<>();
+        private final List<Long>                 vibratoEnds    = new ArrayList<>();
+        private final List<LongToDoubleFunction> vibratoOffsets = new ArrayList<>();
+
+        /**
+         * Adds a base segment over {@code [start, end)}. A segment whose start
+         * and end values are equal is stored as a {@link Kind#HOLD}, and merged
+         * into a directly preceding hold at the same value.
+         */
+        public Builder segment(Kind kind, long start, long end, double from, double to) {
+            if (kind == Kind.VIBRATO) {
+                throw new IllegalArgumentException("Vibrato segments are added with vibrato()");
+            }
+            if (end <= start) return this;
+            if (size > 0 && start < ends[size - 1]) {
+                throw new IllegalArgumentException("Segment at tick " + start + " overlaps the previous one");
+            }
+            if (kind == Kind.HOLD || from == to) {
+                kind = Kind.HOLD;
+                to   = from;
+                int last = size - 1;
+                if (last >= 0 && kinds[last] == Kind.HOLD.ordinal() && ends[last] == start
+                        && fromValues[last] == from) {
+                    ends[last] = end;
+                    return this;
+                }
+            }
+            if (size == kinds.length) grow();
+            kinds[size]      = (byte) kind.ordinal();
+            starts[size]     = start;
+            ends[size]       = end;
+            fromValues[size] = from;
+            toValues[size]   = to;
+            size++;
+            return this;
+        }
+
+        /**
+         * Adds one segment between each pair of consecutive control points
+         * (sorted, distinct ticks); a single point becomes a one-tick hold.
+         */
+        public Builder controlPoints(List<Pair<Long, Double>> points, Kind interpolation) {
+            if (points.size() == 1) {
+                Pair<Long, Double> only = points.get(0);
+                return segment(Kind.HOLD, only.first, only.first + 1, only.second, only.second);
+            }
+            for (int i = 0; i + 1 < points.size(); i++) {
+                Pair<Long, Double> start = points.get(i);
+                Pair<Long, Double> end   = points.get(i + 1);
+                segment(interpolation, start.first, end.first, start.second, end.second);
+            }
+            return this;
+        }
+
+        /** Adds {@code offset} to the curve over {@code [start, end)}. */
+        public Builder vibrato(long start, long end, LongToDoubleFunction offset) {
+            if (end <= start) return this;
+            if (!vibratoEnds.isEmpty() && start < vibratoEnds.get(vibratoEnds.size() - 1)) {
+                throw new IllegalArgumentException("Vibrato at tick " + start + " overlaps the previous one");
+            }
+            vibratoStarts.add(start);
+            vibratoEnds.add(end);
+            vibratoOffsets.add(offset);
+            return this;
+        }
+
+        public PitchCurve build() {
+            return new PitchCurve(this);
+        }
+
+        private void grow() {
+            int capacity = kinds.length * 2;
+            kinds      = Arrays.copyOf(kinds,      capacity);
+            starts     = Arrays.copyOf(starts,     capacity);
+            ends       = Arrays.copyOf(ends,       capacity);
+            fromValues = Arrays.copyOf(fromValues, capacity);
+            toValues   = Arrays.copyOf(toValues,   capacity);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package tech.konata.convert.pitch;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntFunction;
+import java.util.function.IntToLongFunction;
+
+/**
+ * Fork/join execution of the pitch stages that work section by section.
+ *
+ * <h2>Sections</h2>
+ * The pitch stages cut their input into pieces that can be processed without
+ * looking at each other – the curve between two rests, or a run of points
+ * converted one by one – and call {@link #map} with each piece's weight
+ * (roughly, the points it holds or produces). A task tree splits the section
+ * range in halves of equal weight, like {@link tech.konata.parser.SmfDecoder}
+ * splits tracks, down to leaves of at most {@value #MIN_TASK_WEIGHT} units,
+ * and runs the leaves in the common {@link ForkJoinPool}.
+ *
+ * <h2>Determinism</h2>
+ * Every section's result is stored at its own index and returned in section
+ * order, so the caller's sequential concatenation gives the same output
+ * whatever the number of threads – and the same output as the stages' plain
+ * loops, which is what they run when forking would not pay: for less than
+ * two leaves of work, on a single-core machine or with
+ * {@code -D}{@value #FORK_JOIN_PROPERTY}{@code =false}.
+ */
+public final class PitchForkJoin {
+
+    /** System property that turns the fork/join mode off when set to {@code false}. */
+    public static final String FORK_JOIN_PROPERTY = "plg.pitch.forkJoin";
+
+    /** Largest weight a leaf task handles; less work than two leaves runs on the caller's thread. */
+    public static final long MIN_TASK_WEIGHT = 1L << 14;
+
+    private static final boolean ENABLED =
+            !"false".equalsIgnoreCase(System.getProperty(FORK_JOIN_PROPERTY, "true").trim());
+
+    private PitchForkJoin() { /* static utility class */ }
+
+    /** Whether the fork/join mode is on (it is unless {@value #FORK_JOIN_PROPERTY} is {@code false}). */
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /** Whether {@code totalWeight} units of section work are worth spreading over the common pool. */
+    static boolean worthForking(long totalWeight) {
+        return ENABLED && ForkJoinPool.getCommonPoolParallelism() > 1 && totalWeight >= 2 * MIN_TASK_WEIGHT;
+    }
+
+    /**
+     * Applies {@code task} to sections {@code 0 .. count - 1}, in parallel if
+     * {@linkplain #worthForking worth it}.
+     *
+     * @param weight work in a section; sections count as at least {@code 1}
+     * @param task   processes one section; must only read shared state
+     * @return the results, in section order
+     */
+    static <R> List<R> map(int count, IntToLongFunction weight, IntFunction<R> task) {
+        long[] prefix = new long[count + 1];
+        for (int i = 0; i < count; i++) {
+            prefix[i + 1] = prefix[i] + Math.max(1L, weight.applyAsLong(i));
+        }
+
+        Object[] results = new Object[count];
+        if (count > 1 && worthForking(prefix[count])) {
+            ForkJoinPool.commonPool().invoke(new SectionTask(prefix, 0, count, task, results));
+        } else {
+            for (int i = 0; i < count; i++) results[i] = task.apply(i);
+        }
+
+        @SuppressWarnings("unchecked")
+        List<R> list = (List<R>) Arrays.asList(results);
+        return list;
+    }
+
+    /** Runs {@code task} on sections {@code [from, to)}, halving the range by weight. */
+    @SuppressWarnings("serial")   // ForkJoinTask is Serializable, but tasks are never serialized
+    private static final class SectionTask extends RecursiveAction {
+        private final long[]         prefix;
+        private final int            from;
+        private final int            to;
+        private final IntFunction<?> task;
+        private final Object[]       results;
+
+        SectionTask(long[] prefix, int from, int to, IntFunction<?> task, Object[] results) {
+            this.prefix  = prefix;
+            this.from    = from;
+            this.to      = to;
+            this.task    = task;
+            this.results = results;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1 || prefix[to] - prefix[from] <= MIN_TASK_WEIGHT) {
+                for (int i = from; i < to; i++) results[i] = task.apply(i);
+                return;
+            }
+            // First section whose end passes the middle of the weight, keeping both halves non-empty
+            long half = prefix[from] + (prefix[to] - prefix[from]) / 2;
+            int  mid  = from + 1;
+            while (mid < to - 1 && prefix[mid] < half) mid++;
+            invokeAll(new SectionTask(prefix, from, mid, task, results),
+                      new SectionTask(prefix, mid,  to,  task, results));
+        }
+    }
+}
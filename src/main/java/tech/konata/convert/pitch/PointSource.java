@@ -0,0 +1,23 @@
+package tech.konata.convert.pitch;
+
+/**
+ * Pull-based source of {@code (tick, value)} points in tick order, read in
+ * primitive chunks.
+ *
+ * <p>This is the streaming counterpart of a {@code List<Pair<Long, Double>>}:
+ * a stage of a conversion pipeline wraps the source before it (see
+ * {@link PointStages}) and only ever holds a chunk, plus whatever look-ahead
+ * its own rule needs, so a pipeline's heap use does not grow with the length
+ * of the song.
+ */
+public interface PointSource {
+
+    /**
+     * Reads the next points into {@code ticks} and {@code values}, which must
+     * have the same length of at least {@code 2}.
+     *
+     * @return the number of points read, from {@code 0} to {@code ticks.length};
+     *         {@code 0} only once the source is exhausted
+     */
+    int read(long[] ticks, double[] values);
+}
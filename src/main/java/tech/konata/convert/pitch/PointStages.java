@@ -0,0 +1,217 @@
+package tech.konata.convert.pitch;
+
+import java.util.Arrays;
+
+/**
+ * Streaming versions of the {@link PitchConverter} point-list passes, as
+ * {@link PointSource} stages.
+ *
+ * <p>Each stage produces exactly the points its list counterpart would for the
+ * same input, but pulls the input chunk by chunk and keeps only the look-ahead
+ * its rule needs: nothing for {@link #stepPoints}, the points of one tick plus
+ * the next point for {@link #reduceRepeats}.
+ */
+public final class PointStages {
+
+    /** Points each stage pulls from its source at a time. */
+    public static final int CHUNK_SIZE = 1024;
+
+    private PointStages() { /* static utility class */ }
+
+    /**
+     * Streaming {@link PitchConverter#appendPitchPointsForInterpolation}: a hold
+     * point with the previous value before every point at least
+     * {@code intervalTick} ticks after its predecessor.
+     */
+    public static PointSource stepPoints(PointSource source, long intervalTick) {
+        return new StepPoints(source, intervalTick);
+    }
+
+    /**
+     * Streaming {@link PitchConverter#reduceRepeatedPoints}: drops every point
+     * whose value equals that of both its neighbours. Like the list version,
+     * which removes points by {@code (tick, value)} equality, it also drops the
+     * duplicates of a removed point at the same tick.
+     */
+    public static PointSource reduceRepeats(PointSource source) {
+        return new RepeatReduction(source);
+    }
+
+    private static void checkChunk(long[] ticks, double[] values) {
+        if (ticks.length != values.length || ticks.length < 2) {
+            throw new IllegalArgumentException(
+                    "Chunk arrays must have the same length of at least 2: " + ticks.length + ", " + values.length);
+        }
+    }
+
+    /** {@code Objects.equals} on boxed doubles, as the list passes compare values. */
+    private static boolean same(double a, double b) {
+        return Double.doubleToLongBits(a) == Double.doubleToLongBits(b);
+    }
+
+    private static final class StepPoints implements PointSource {
+        private final PointSource source;
+        private final long        intervalTick;
+
+        private final long[]   inTicks  = new long[CHUNK_SIZE];
+        private final double[] inValues = new double[CHUNK_SIZE];
+        private int            inPos;
+        private int            inSize;
+
+        private boolean any;
+        private long    prevTick;
+        private double  prevValue;
+
+        StepPoints(PointSource source, long intervalTick) {
+            this.source       = source;
+            this.intervalTick = intervalTick;
+        }
+
+        @Override
+        public int read(long[] ticks, double[] values) {
+            checkChunk(ticks, values);
+
+            // Every input point yields at most two output points
+            int out = 0;
+            while (out + 2 <= ticks.length) {
+                if (inPos == inSize) {
+                    inSize = source.read(inTicks, inValues);
+                    inPos  = 0;
+                    if (inSize == 0) break;
+                }
+                long   tick  = inTicks[inPos];
+                double value = inValues[inPos];
+                inPos++;
+
+                if (any) {
+                    long tickGap = tick - prevTick;
+                    if (tickGap >= intervalTick) {
+                        ticks[out]  = (tickGap < 2 * intervalTick) ? (tick + prevTick) / 2L : tick - intervalTick;
+                        values[out] = prevValue;
+                        out++;
+                    }
+                }
+                ticks[out]  = tick;
+                values[out] = value;
+                out++;
+
+                any       = true;
+                prevTick  = tick;
+                prevValue = value;
+            }
+            return out;
+        }
+    }
+
+    private static final class RepeatReduction implements PointSource {
+        private final PointSource source;
+
+        /** Input chunk and read position. */
+        private final long[]   inTicks  = new long[CHUNK_SIZE];
+        private final double[] inValues = new double[CHUNK_SIZE];
+        private int            inPos;
+        private int            inSize;
+        private boolean        exhausted;
+
+        /** The point after the current tick group. */
+        private boolean hasNext;
+        private long    nextTick;
+        private double  nextValue;
+
+        /** The points of the current tick group. */
+        private long[]    groupTicks   = new long[16];
+        private double[]  groupValues  = new double[16];
+        private boolean[] groupRemoved = new boolean[16];
+        private int       groupSize;
+
+        /** The last point of the previous group, whether kept or not. */
+        private boolean hasBefore;
+        private double  beforeValue;
+
+        /** Kept points of the current group not yet returned. */
+        private int queuePos;
+
+        RepeatReduction(PointSource source) {
+            this.source = source;
+        }
+
+        @Override
+        public int read(long[] ticks, double[] values) {
+            checkChunk(ticks, values);
+
+            int out = 0;
+            while (out < ticks.length) {
+                while (queuePos < groupSize && groupRemoved[queuePos]) queuePos++;
+                if (queuePos < groupSize) {
+                    ticks[out]  = groupTicks[queuePos];
+                    values[out] = groupValues[queuePos];
+                    out++;
+                    queuePos++;
+                } else if (!nextGroup()) {
+                    break;
+                }
+            }
+            return out;
+        }
+
+        /** Reads the next group of points sharing a tick and marks the removed ones. */
+        private boolean nextGroup() {
+            if (groupSize > 0) {
+                hasBefore   = true;
+                beforeValue = groupValues[groupSize - 1];
+            }
+            groupSize = 0;
+            queuePos  = 0;
+            if (!hasNext && !pull()) return false;
+
+            long tick = nextTick;
+            do {
+                if (groupSize == groupTicks.length) {
+                    groupTicks   = Arrays.copyOf(groupTicks,   groupSize * 2);
+                    groupValues  = Arrays.copyOf(groupValues,  groupSize * 2);
+                    groupRemoved = Arrays.copyOf(groupRemoved, groupSize * 2);
+                }
+                groupTicks[groupSize]   = nextTick;
+                groupValues[groupSize]  = nextValue;
+                groupRemoved[groupSize] = false;
+                groupSize++;
+                hasNext = pull();
+            } while (hasNext && nextTick == tick);
+
+            int last = groupSize - 1;
+            for (int i = 0; i <= last; i++) {
+                boolean hasPrev = i > 0 || hasBefore;
+                boolean hasSucc = i < last || hasNext;
+                if (!hasPrev || !hasSucc) continue;
+
+                double prev  = i > 0    ? groupValues[i - 1] : beforeValue;
+                double succ  = i < last ? groupValues[i + 1] : nextValue;
+                double value = groupValues[i];
+                if (same(prev, value) && same(value, succ)) {
+                    // Equal (tick, value) points share the fate of the removed one
+                    for (int j = 0; j <= last; j++) {
+                        if (same(groupValues[j], value)) groupRemoved[j] = true;
+                    }
+                }
+            }
+            return true;
+        }
+
+        /** Loads the next input point into {@code next*}. */
+        private boolean pull() {
+            if (inPos == inSize) {
+                if (exhausted) return false;
+                inSize = source.read(inTicks, inValues);
+                inPos  = 0;
+                if (inSize == 0) {
+                    exhausted = true;
+                    return false;
+                }
+            }
+            nextTick  = inTicks[inPos];
+            nextValue = inValues[inPos];
+            inPos++;
+            return true;
+        }
+    }
+}
@@ -2,9 +2,10 @@ package tech.konata.convert.pitch;
 
 import tech.konata.convert.Pair;
 import tech.konata.convert.Tempo;
+import tech.konata.jfr.VibratoOverlayEvent;
 
 import java.util.*;
-import java.util.function.ToDoubleFunction;
+import java.util.function.LongToDoubleFunction;
 import java.util.stream.Collectors;
 
 import static tech.konata.convert.pitch.InterpolationUtils.interpolateCosineEaseInOut;
@@ -24,10 +25,38 @@ import static tech.konata.convert.pitch.TickTimeTransformer.bpmToSecPerTick;
  *       parameters.</li>
  *   <li>Strip redundant consecutive identical values.</li>
  * </ol>
+ *
+ * <h2>Sampling</h2>
+ * By default steps 2 and 3 sample on a fixed grid of
+ * {@value #SAMPLING_INTERVAL_TICK} ticks. Given an {@link AdaptiveSampler},
+ * they sample only as densely as the curve and the tempo need instead: the
+ * pitch curve and the vibrato with the sampler's own reconstruction, and the
+ * vibrato envelope – which is read back between its samples – with linear
+ * reconstruction.
+ *
+ * <h2>Sections</h2>
+ * On the fixed grid, long inputs are cut at rests (a note-on after the
+ * previous note's note-off) and steps 2 to 4 run per section through
+ * {@link PitchForkJoin}: interpolation over the control points whose segments
+ * start in the section, vibrato over the sampled points and notes inside it,
+ * and the de-duplication within it, with only the first point of a section
+ * checked against the one before. Each step only ever looks at one segment,
+ * one note or one neighbour, so the concatenated sections are exactly the
+ * single-threaded result. The adaptive sampler keeps statistics and always
+ * runs on one thread.
+ *
+ * <h2>Lazy curve</h2>
+ * {@link #buildSvpPitchCurve} performs the same steps without sampling
+ * anything: it returns a {@link PitchCurve} of interpolation segments between
+ * the control points with one vibrato segment per note, which the output then
+ * samples at the resolution it needs. Flat stretches stay one segment, and the
+ * vibrato envelope is read at the exact tick rather than from a grid.
  */
 public final class SvpPitchProcessor {
 
-    private static final long   SAMPLING_INTERVAL_TICK           = 4L;
+    /** Grid, in ticks, the pitch curve is sampled on unless an {@link AdaptiveSampler} is given. */
+    public static final long    SAMPLING_INTERVAL_TICK           = 4L;
+
     private static final double DEFAULT_VIBRATO_START_SEC        = 0.25;
     private static final double DEFAULT_VIBRATO_EASE_IN_SEC      = 0.2;
     private static final double DEFAULT_VIBRATO_EASE_OUT_SEC     = 0.2;
@@ -112,28 +141,208 @@ public final class SvpPitchProcessor {
             List<Pair<Long, Double>> vibratoEnvPoints,
             String vibratoEnvMode,
             SvpDefaultVibratoParameters vibratoDefaultParams) {
+        return processSvpInputPitchData(points, interpolationMode, notesWithVibrato, tempos,
+                vibratoEnvPoints, vibratoEnvMode, vibratoDefaultParams, null);
+    }
+
+    /**
+     * Same as {@link #processSvpInputPitchData(List, String, List, List, List, String, SvpDefaultVibratoParameters)},
+     * but sampled by {@code sampler} instead of on the fixed grid.
+     *
+     * @param sampler adaptive sampler over the same tempo map, or {@code null}
+     *                for the fixed {@value #SAMPLING_INTERVAL_TICK}-tick grid
+     */
+    public static List<Pair<Long, Double>> processSvpInputPitchData(
+            List<Pair<Long, Double>> points,
+            String interpolationMode,
+            List<SvpNoteWithVibrato> notesWithVibrato,
+            List<Tempo> tempos,
+            List<Pair<Long, Double>> vibratoEnvPoints,
+            String vibratoEnvMode,
+            SvpDefaultVibratoParameters vibratoDefaultParams,
+            AdaptiveSampler sampler) {
 
-        // 1. Merge duplicate ticks, then interpolate pitch-delta
-        List<Pair<Long, Double>> pitchInterpolated =
-                interpolate(mergeDuplicateTicks(points), interpolationMode);
-        if (pitchInterpolated == null) pitchInterpolated = Collections.emptyList();
+        // 1. Merge duplicate ticks
+        List<Pair<Long, Double>> controlPoints = mergeDuplicateTicks(points);
 
-        // 2. Merge and interpolate the vibrato envelope
+        // 2a. Merge and interpolate the vibrato envelope
+        AdaptiveSampler envSampler = sampler != null
+                ? sampler.withReconstruction(AdaptiveSampler.Reconstruction.LINEAR)
+                : null;
         List<Pair<Long, Double>> envInterpolated =
-                interpolate(mergeDuplicateTicks(vibratoEnvPoints), vibratoEnvMode);
+                interpolate(mergeDuplicateTicks(vibratoEnvPoints), vibratoEnvMode, envSampler);
         if (envInterpolated == null) envInterpolated = Collections.emptyList();
 
-        // Flatten envelope into a tick→amplitude map for O(1) lookups
-        Map<Long, Double> vibratoEnvMap = buildEnvelopeMap(envInterpolated);
+        LongToDoubleFunction vibratoEnv;
+        if (sampler == null) {
+            // Flatten envelope into a tick→amplitude map for O(1) lookups on the grid
+            Map<Long, Double> vibratoEnvMap = buildEnvelopeMap(envInterpolated);
+            vibratoEnv = tick -> vibratoEnvMap.getOrDefault(tick, 1.0);
+
+            if (PitchForkJoin.worthForking(gridPoints(controlPoints, 0, controlPoints.size()))) {
+                return processInSections(controlPoints, interpolationMode, notesWithVibrato, tempos,
+                        vibratoEnv, vibratoDefaultParams);
+            }
+        } else {
+            vibratoEnv = envelopeBetweenSamples(envInterpolated);
+        }
+
+        // 2b. Interpolate pitch-delta
+        List<Pair<Long, Double>> pitchInterpolated = interpolate(controlPoints, interpolationMode, sampler);
 
         // 3. Overlay vibrato
         List<Pair<Long, Double>> withVibrato = appendVibrato(
-                pitchInterpolated, notesWithVibrato, vibratoDefaultParams, tempos, vibratoEnvMap);
+                pitchInterpolated, notesWithVibrato, vibratoDefaultParams, tempos, vibratoEnv, sampler);
 
         // 4. Strip consecutive duplicates
         return removeConsecutiveDuplicates(withVibrato);
     }
 
+    /**
+     * Steps 2b to 4 of {@link #processSvpInputPitchData} on the fixed grid,
+     * section by section; see the class documentation.
+     */
+    private static List<Pair<Long, Double>> processInSections(
+            List<Pair<Long, Double>> controlPoints,
+            String interpolationMode,
+            List<SvpNoteWithVibrato> notes,
+            List<Tempo> tempos,
+            LongToDoubleFunction vibratoEnv,
+            SvpDefaultVibratoParameters defaultParams) {
+
+        NoteTimeline timeline = vibratoTimeline(notes);
+
+        // Section s starts at the note firstNote[s] and covers [startTick[s], startTick[s + 1])
+        List<Integer> rests = new ArrayList<>();
+        rests.add(0);
+        for (int i = 1; i < timeline.size(); i++) {
+            if (timeline.tickOff(i - 1) < timeline.tickOn(i)) rests.add(i);
+        }
+        int    sections  = rests.size();
+        int[]  firstNote = new int[sections + 1];
+        long[] startTick = new long[sections + 1];
+        for (int s = 0; s < sections; s++) {
+            firstNote[s] = rests.get(s);
+            startTick[s] = s == 0 ? Long.MIN_VALUE : timeline.tickOn(firstNote[s]);
+        }
+        firstNote[sections] = timeline.size();
+        startTick[sections] = Long.MAX_VALUE;
+
+        // 2b. Interpolate the segments starting in each section; the point that ends
+        // a section's last segment starts the next section's first one
+        int[] controlStart = new int[sections + 1];
+        for (int s = 0; s <= sections; s++) {
+            controlStart[s] = s == sections ? controlPoints.size() : lowerBound(controlPoints, startTick[s]);
+        }
+        List<List<Pair<Long, Double>>> interpolatedSections = PitchForkJoin.map(sections,
+                s -> gridPoints(controlPoints, controlStart[s], controlStart[s + 1]),
+                s -> {
+                    int from = controlStart[s];
+                    int to   = controlStart[s + 1];
+                    if (from == to) return Collections.<Pair<Long, Double>>emptyList();
+                    boolean last = to == controlPoints.size();
+                    List<Pair<Long, Double>> sampled =
+                            interpolate(controlPoints.subList(from, last ? to : to + 1), interpolationMode);
+                    return last ? sampled : sampled.subList(0, sampled.size() - 1);
+                });
+        List<Pair<Long, Double>> interpolated = new ArrayList<>();
+        interpolatedSections.forEach(interpolated::addAll);
+
+        // 3–4. Overlay vibrato and strip duplicates within each section
+        VibratoOverlayEvent event = new VibratoOverlayEvent();
+        event.begin();
+
+        TickTimeTransformer transformer = new TickTimeTransformer(tempos);
+        int[] dataStart = new int[sections + 1];
+        for (int s = 0; s <= sections; s++) {
+            dataStart[s] = s == sections ? interpolated.size() : lowerBound(interpolated, startTick[s]);
+        }
+        List<List<Pair<Long, Double>>> processedSections = PitchForkJoin.map(sections,
+                s -> dataStart[s + 1] - dataStart[s],
+                s -> removeConsecutiveDuplicates(appendVibrato(
+                        interpolated.subList(dataStart[s], dataStart[s + 1]), notes, timeline,
+                        firstNote[s], firstNote[s + 1], s == 0 ? 0L : startTick[s],
+                        defaultParams, transformer, tempos, vibratoEnv, null)));
+
+        List<Pair<Long, Double>> result = new ArrayList<>(interpolated.size());
+        for (List<Pair<Long, Double>> section : processedSections) {
+            int skip = !section.isEmpty() && !result.isEmpty()
+                    && Objects.equals(section.get(0).second, result.get(result.size() - 1).second) ? 1 : 0;
+            result.addAll(section.subList(skip, section.size()));
+        }
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.inputPoints  = interpolated.size();
+            event.outputPoints = result.size();
+            event.notes        = notes.size();
+            event.commit();
+        }
+        return result;
+    }
+
+    /** Roughly the grid points interpolating {@code controlPoints[from, to)} produces. */
+    private static long gridPoints(List<Pair<Long, Double>> controlPoints, int from, int to) {
+        if (from >= to) return 0L;
+        int end = Math.min(to, controlPoints.size() - 1);
+        return (controlPoints.get(end).first - controlPoints.get(from).first) / SAMPLING_INTERVAL_TICK + (to - from);
+    }
+
+    /** First index whose tick is {@code >= tick}, in a list sorted by tick. */
+    private static int lowerBound(List<Pair<Long, Double>> points, long tick) {
+        int lo = 0, hi = points.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (points.get(mid).first < tick) lo = mid + 1;
+            else                              hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * Builds the processed pitch curve lazily; see the class documentation.
+     * Parameters are as for
+     * {@link #processSvpInputPitchData(List, String, List, List, List, String, SvpDefaultVibratoParameters)}.
+     * Note regions without control points vibrate around the curve held from
+     * the nearest control point.
+     */
+    public static PitchCurve buildSvpPitchCurve(
+            List<Pair<Long, Double>> points,
+            String interpolationMode,
+            List<SvpNoteWithVibrato> notesWithVibrato,
+            List<Tempo> tempos,
+            List<Pair<Long, Double>> vibratoEnvPoints,
+            String vibratoEnvMode,
+            SvpDefaultVibratoParameters vibratoDefaultParams) {
+
+        PitchCurve envelope = PitchCurve.ofControlPoints(
+                mergeDuplicateTicks(vibratoEnvPoints), curveKind(vibratoEnvMode));
+        LongToDoubleFunction vibratoEnv = envelope.segmentCount() == 0
+                ? tick -> 1.0
+                : tick -> tick < envelope.startTick() || tick > envelope.endTick() ? 1.0 : envelope.valueAt(tick);
+
+        PitchCurve.Builder builder = new PitchCurve.Builder()
+                .controlPoints(mergeDuplicateTicks(points), curveKind(interpolationMode));
+
+        TickTimeTransformer transformer = new TickTimeTransformer(tempos);
+        NoteTimeline        timeline    = vibratoTimeline(notesWithVibrato);
+
+        for (int i = 0; i < timeline.size(); i++) {
+            long    end     = timeline.effectiveTickOff(i);
+            Vibrato vibrato = vibratoFor(notesWithVibrato.get(timeline.sourceIndex(i)), end,
+                    vibratoDefaultParams, transformer, tempos, vibratoEnv);
+            if (vibrato != null) {
+                builder.vibrato(Math.max(timeline.tickOn(i), vibrato.startTick), end, vibrato.offset);
+            }
+        }
+        return builder.build();
+    }
+
+    /** The segment kind for an SVP curve mode ({@code "cubic"} is not yet implemented and uses cosine). */
+    private static PitchCurve.Kind curveKind(String mode) {
+        return "linear".equals(mode) ? PitchCurve.Kind.LINEAR : PitchCurve.Kind.COSINE;
+    }
+
     /**
      * Merges points that share the same tick by averaging their values.
      */
@@ -153,14 +362,27 @@ public final class SvpPitchProcessor {
      * Returns {@code null} if {@code points} is {@code null}.
      */
     static List<Pair<Long, Double>> interpolate(List<Pair<Long, Double>> points, String mode) {
+        return interpolate(points, mode, null);
+    }
+
+    /**
+     * Same as {@link #interpolate(List, String)}, sampled by {@code sampler}
+     * unless it is {@code null}.
+     */
+    static List<Pair<Long, Double>> interpolate(List<Pair<Long, Double>> points, String mode,
+                                                AdaptiveSampler sampler) {
         if (points == null) return null;
         switch (mode != null ? mode : "") {
             case "linear":
-                return interpolateLinear(points, SAMPLING_INTERVAL_TICK);
+                return sampler != null
+                        ? interpolateLinear(points, sampler)
+                        : interpolateLinear(points, SAMPLING_INTERVAL_TICK);
             case "cosine":
             case "cubic":   // cubic is not yet implemented; fall through to cosine
             default:
-                return interpolateCosineEaseInOut(points, SAMPLING_INTERVAL_TICK);
+                return sampler != null
+                        ? interpolateCosineEaseInOut(points, sampler)
+                        : interpolateCosineEaseInOut(points, SAMPLING_INTERVAL_TICK);
         }
     }
 
@@ -175,72 +397,195 @@ public final class SvpPitchProcessor {
         return map;
     }
 
+    /**
+     * Reads an adaptively sampled envelope back at any tick, linearly between
+     * its samples; outside them the amplitude is {@code 1}, as on the grid.
+     */
+    static LongToDoubleFunction envelopeBetweenSamples(List<Pair<Long, Double>> list) {
+        int      size   = list.size();
+        long[]   ticks  = new long[size];
+        double[] values = new double[size];
+        for (int i = 0; i < size; i++) {
+            ticks[i]  = list.get(i).first;
+            values[i] = list.get(i).second;
+        }
+        return tick -> {
+            if (size == 0 || tick < ticks[0] || tick > ticks[size - 1]) return 1.0;
+            int i = Arrays.binarySearch(ticks, tick);
+            if (i >= 0) return values[i];
+            int hi = -i - 1;
+            int lo = hi - 1;
+            return values[lo] + (values[hi] - values[lo]) * (tick - ticks[lo]) / (double) (ticks[hi] - ticks[lo]);
+        };
+    }
+
     /**
      * Partitions the pitch data by note region (with inter-note gaps as null-note
      * regions), then overlays vibrato for each note region.
+     *
+     * <p>Regions come from a {@link NoteTimeline}, so overlapping notes are cut
+     * short at the next note-on; since they are sorted and disjoint, a single
+     * forward pass over the (sorted) points slices out each region.
      */
     private static List<Pair<Long, Double>> appendVibrato(
             List<Pair<Long, Double>> data,
             List<SvpNoteWithVibrato> notes,
             SvpDefaultVibratoParameters defaultParams,
             List<Tempo> tempos,
-            Map<Long, Double> vibratoEnv) {
-
-        TickTimeTransformer timeTransformer = new TickTimeTransformer(tempos);
-
-        // Build a list of (tick range → note or null) segments
-        List<Pair<TickRange, SvpNoteWithVibrato>> segments = buildNoteSegments(notes);
-
-        return segments.stream()
-                .flatMap(segment -> {
-                    List<Pair<Long, Double>> segmentData = data.stream()
-                            .filter(p -> segment.first.contains(p.first))
-                            .collect(Collectors.toList());
-                    return appendVibratoForNote(
-                            segmentData, segment.second,
-                            defaultParams, timeTransformer, tempos, vibratoEnv).stream();
-                })
-                .collect(Collectors.toList());
+            LongToDoubleFunction vibratoEnv,
+            AdaptiveSampler sampler) {
+
+        VibratoOverlayEvent event = new VibratoOverlayEvent();
+        event.begin();
+
+        NoteTimeline timeline = vibratoTimeline(notes);
+        List<Pair<Long, Double>> result = appendVibrato(data, notes, timeline, 0, timeline.size(), 0L,
+                defaultParams, new TickTimeTransformer(tempos), tempos, vibratoEnv, sampler);
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.inputPoints  = data.size();
+            event.outputPoints = result.size();
+            event.notes        = notes.size();
+            event.commit();
+        }
+        return result;
     }
 
     /**
-     * Builds the list of (range, note) segments, inserting null-note gap regions.
+     * Overlays vibrato for the notes {@code [fromNote, toNote)} of
+     * {@code timeline}; points before the first note pass through from
+     * {@code lastEnd} on, and every point after the last one.
      */
-    private static List<Pair<TickRange, SvpNoteWithVibrato>> buildNoteSegments(
-            List<SvpNoteWithVibrato> notes) {
+    private static List<Pair<Long, Double>> appendVibrato(
+            List<Pair<Long, Double>> data,
+            List<SvpNoteWithVibrato> notes,
+            NoteTimeline timeline,
+            int fromNote,
+            int toNote,
+            long lastEnd,
+            SvpDefaultVibratoParameters defaultParams,
+            TickTimeTransformer timeTransformer,
+            List<Tempo> tempos,
+            LongToDoubleFunction vibratoEnv,
+            AdaptiveSampler sampler) {
+
+        List<Pair<Long, Double>> result = new ArrayList<>(data.size());
+        int next = 0;
 
-        List<Pair<TickRange, SvpNoteWithVibrato>> segments = new ArrayList<>();
-        long lastEnd = 0L;
+        for (int i = fromNote; i < toNote; i++) {
+            long start = timeline.tickOn(i);
+            long end   = timeline.effectiveTickOff(i);
 
-        for (SvpNoteWithVibrato note : notes) {
-            if (lastEnd < note.noteStartTick) {
-                segments.add(new Pair<>(new TickRange(lastEnd, note.noteStartTick), null));
+            if (lastEnd < start) {
+                // Gap region: points pass through unchanged
+                int from = skipBefore(data, next, lastEnd);
+                next = skipBefore(data, from, start);
+                result.addAll(data.subList(from, next));
             }
-            segments.add(new Pair<>(new TickRange(note.noteStartTick, note.getNoteEndTick()), note));
-            lastEnd = note.getNoteEndTick();
+
+            int from = skipBefore(data, next, start);
+            next = skipBefore(data, from, end);
+            result.addAll(appendVibratoForNote(
+                    data.subList(from, next), notes.get(timeline.sourceIndex(i)), end,
+                    defaultParams, timeTransformer, tempos, vibratoEnv, sampler));
+            lastEnd = end;
         }
         // Trailing gap (to +∞)
-        segments.add(new Pair<>(new TickRange(lastEnd, Long.MAX_VALUE), null));
-        return segments;
+        result.addAll(data.subList(skipBefore(data, next, lastEnd), data.size()));
+        return result;
+    }
+
+    /** Note regions for the vibrato overlay, by note start and end tick. */
+    private static NoteTimeline vibratoTimeline(List<SvpNoteWithVibrato> notes) {
+        return NoteTimeline.of(notes, n -> n.noteStartTick, SvpNoteWithVibrato::getNoteEndTick, n -> 0);
+    }
+
+    /** Advances {@code from} past every point before {@code tick}. */
+    private static int skipBefore(List<Pair<Long, Double>> points, int from, long tick) {
+        while (from < points.size() && points.get(from).first < tick) from++;
+        return from;
     }
 
     /**
-     * Overlays vibrato onto pitch points within a single note region.
-     * If {@code note} is {@code null}, the input points are returned unchanged.
+     * Overlays vibrato onto pitch points within a single note region, which
+     * ends at {@code noteEndTick}. Between two points the earlier one is held
+     * and the vibrato sampled on the grid, or by {@code sampler} if given.
      */
     private static List<Pair<Long, Double>> appendVibratoForNote(
             List<Pair<Long, Double>> points,
             SvpNoteWithVibrato note,
+            long noteEndTick,
+            SvpDefaultVibratoParameters defaultParams,
+            TickTimeTransformer transformer,
+            List<Tempo> tempos,
+            LongToDoubleFunction vibratoEnv,
+            AdaptiveSampler sampler) {
+
+        Vibrato vibrato = vibratoFor(note, noteEndTick, defaultParams, transformer, tempos, vibratoEnv);
+        if (vibrato == null) return points;
+        LongToDoubleFunction vibratoFn = vibrato.offset;
+
+        // --- Apply vibrato to each point, interpolating between them ---
+        List<Pair<Long, Double>> basePoints = buildBasePoints(points, note.noteStartTick, noteEndTick);
+        List<Pair<Long, Double>> result     = new ArrayList<>();
+
+        if (sampler != null) {
+            for (int i = 0; i + 1 < basePoints.size(); i++) {
+                double base = basePoints.get(i).second;
+                sampler.sample(basePoints.get(i).first, basePoints.get(i + 1).first,
+                        tick -> base + vibratoFn.applyAsDouble(tick), result);
+            }
+            Pair<Long, Double> last = basePoints.get(basePoints.size() - 1);
+            result.add(new Pair<>(last.first, last.second + vibratoFn.applyAsDouble(last.first)));
+            return result;
+        }
+
+        Pair<Long, Double> lastPoint = null;
+        for (Pair<Long, Double> current : basePoints) {
+            if (lastPoint != null) {
+                long startTick = lastPoint.first + 1;
+                long endTick   = current.first;
+                for (long tick = startTick; tick < endTick; tick++) {
+                    if ((tick - lastPoint.first) % SAMPLING_INTERVAL_TICK == 0) {
+                        result.add(new Pair<>(tick, lastPoint.second + vibratoFn.applyAsDouble(tick)));
+                    }
+                }
+            }
+            result.add(new Pair<>(current.first, current.second + vibratoFn.applyAsDouble(current.first)));
+            lastPoint = current;
+        }
+        return result;
+    }
+
+    /** A note's vibrato: its offset function and the tick from which it can be non-zero. */
+    private static final class Vibrato {
+        final long                 startTick;
+        final LongToDoubleFunction offset;
+
+        Vibrato(long startTick, LongToDoubleFunction offset) {
+            this.startTick = startTick;
+            this.offset    = offset;
+        }
+    }
+
+    /**
+     * Resolves a note's vibrato over a region ending at {@code noteEndTick};
+     * {@code null} if the note has none.
+     */
+    private static Vibrato vibratoFor(
+            SvpNoteWithVibrato note,
+            long noteEndTick,
             SvpDefaultVibratoParameters defaultParams,
             TickTimeTransformer transformer,
             List<Tempo> tempos,
-            Map<Long, Double> vibratoEnv) {
+            LongToDoubleFunction vibratoEnv) {
 
-        if (note == null || note.noteStartTick < 0) return points;
+        if (note.noteStartTick < 0) return null;
 
         // --- Resolve vibrato parameters (note-level → default → fallback) ---
         double noteStartSec = transformer.tickToSec(note.noteStartTick);
-        double noteEndSec   = transformer.tickToSec(note.getNoteEndTick());
+        double noteEndSec   = transformer.tickToSec(noteEndTick);
 
         double vibratoStartSec = resolveParam(note.vibratoStart,
                 defaultParams != null ? defaultParams.vibratoStart : null,
@@ -259,7 +604,7 @@ public final class SvpPitchProcessor {
                 defaultParams != null ? defaultParams.depth : null,
                 DEFAULT_VIBRATO_DEPTH_SEMITONE) * 0.5;
 
-        if (depthSemitone == 0.0) return points;
+        if (depthSemitone == 0.0) return null;
 
         double phaseRad    = note.phase != null ? note.phase : DEFAULT_VIBRATO_PHASE_RAD;
         double frequencyHz = resolveParam(note.frequency,
@@ -276,37 +621,19 @@ public final class SvpPitchProcessor {
                 .orElse(bpmToSecPerTick(DEFAULT_BPM));
 
         // --- Build vibrato function: tick → semitone offset ---
-        ToDoubleFunction<Long> vibratoFn = tick -> {
+        LongToDoubleFunction offset = tick -> {
             double currentSec = transformer.tickToSec(tick);
             if (currentSec < vibratoStartSec) return 0.0;
 
             double easeIn  = Math.min(Math.max((currentSec - vibratoStartSec) / easeInSec, 0.0), 1.0);
             double easeOut = Math.min(Math.max((noteEndSec - currentSec)       / easeOutSec, 0.0), 1.0);
             double phase   = 2.0 * Math.PI * frequencyHz * (tick - vibratoStartTick) * secPerTick + phaseRad;
-            double env     = vibratoEnv.getOrDefault(tick, 1.0);
+            double env     = vibratoEnv.applyAsDouble(tick);
 
             return env * depthSemitone * easeIn * easeOut * Math.sin(phase);
         };
 
-        // --- Apply vibrato to each point, interpolating between them ---
-        List<Pair<Long, Double>> basePoints = buildBasePoints(points, note);
-        List<Pair<Long, Double>> result     = new ArrayList<>();
-        Pair<Long, Double> lastPoint        = null;
-
-        for (Pair<Long, Double> current : basePoints) {
-            if (lastPoint != null) {
-                long startTick = lastPoint.first + 1;
-                long endTick   = current.first;
-                for (long tick = startTick; tick < endTick; tick++) {
-                    if ((tick - lastPoint.first) % SAMPLING_INTERVAL_TICK == 0) {
-                        result.add(new Pair<>(tick, lastPoint.second + vibratoFn.applyAsDouble(tick)));
-                    }
-                }
-            }
-            result.add(new Pair<>(current.first, current.second + vibratoFn.applyAsDouble(current.first)));
-            lastPoint = current;
-        }
-        return result;
+        return new Vibrato(vibratoStartTick, offset);
     }
 
     /**
@@ -315,17 +642,17 @@ public final class SvpPitchProcessor {
      * ensures the last point is exactly at the note's end tick.
      */
     private static List<Pair<Long, Double>> buildBasePoints(
-            List<Pair<Long, Double>> points, SvpNoteWithVibrato note) {
+            List<Pair<Long, Double>> points, long noteStartTick, long noteEndTick) {
 
         List<Pair<Long, Double>> base = points.isEmpty()
                 ? Arrays.asList(
-                        new Pair<>(note.noteStartTick, 0.0),
-                        new Pair<>(note.getNoteEndTick(), 0.0))
+                        new Pair<>(noteStartTick, 0.0),
+                        new Pair<>(noteEndTick, 0.0))
                 : new ArrayList<>(points);
 
-        if (base.get(base.size() - 1).first != note.getNoteEndTick()) {
+        if (base.get(base.size() - 1).first != noteEndTick) {
             if (!(base instanceof ArrayList)) base = new ArrayList<>(base);
-            base.add(new Pair<>(note.getNoteEndTick(), base.get(base.size() - 1).second));
+            base.add(new Pair<>(noteEndTick, base.get(base.size() - 1).second));
         }
         return base;
     }
@@ -354,18 +681,4 @@ public final class SvpPitchProcessor {
         if (defaultValue != null) return defaultValue;
         return fallback;
     }
-
-    static final class TickRange {
-        final long start;
-        final long end;
-
-        TickRange(long start, long end) {
-            this.start = start;
-            this.end   = end;
-        }
-
-        boolean contains(long tick) {
-            return tick >= start && tick < end;
-        }
-    }
 }
@@ -40,4 +40,15 @@ public final class SynthVPitchConversion {
 
         return PitchConverter.reduceRepeatedPitchPoints(withStepPoints);
     }
+
+    /**
+     * Streaming version of {@link #prepareForSvpOutput(List)}: the same two
+     * passes as {@link PointStages}, pulling {@code relativeData} chunk by chunk.
+     *
+     * @param relativeData relative pitch points ({@code (tick, semitoneOffset)})
+     * @return the processed points, in the same order as the list version returns them
+     */
+    public static PointSource prepareForSvpOutput(PointSource relativeData) {
+        return PointStages.reduceRepeats(PointStages.stepPoints(relativeData, SAMPLING_INTERVAL_TICK));
+    }
 }
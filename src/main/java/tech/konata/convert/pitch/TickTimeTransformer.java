@@ -86,6 +86,23 @@ public final class TickTimeTransformer {
         return accumulatedTick + (long) (remainingSec / bpmToSecPerTick(lastBpm));
     }
 
+    /**
+     * Returns the duration of one tick in seconds at {@code tick}, i.e. under
+     * the last tempo change at or before it.
+     *
+     * @param tick absolute tick position
+     * @return seconds per tick in effect at {@code tick}
+     */
+    public double secPerTickAt(long tick) {
+        int lo = 0, hi = sortedTempos.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sortedTempos.get(mid).tickPosition <= tick) lo = mid + 1;
+            else                                            hi = mid;
+        }
+        return bpmToSecPerTick(lo == 0 ? DEFAULT_BPM : sortedTempos.get(lo - 1).bpm);
+    }
+
     /**
      * Returns the duration of one tick in seconds at the given BPM.
      *
@@ -1,8 +1,10 @@
 package tech.konata.convert.pitch;
 
+import tech.konata.convert.ConverterSettings;
 import tech.konata.convert.Note;
 import tech.konata.convert.Pair;
 import tech.konata.convert.Pitch;
+import tech.konata.jfr.VocaloidPitchEvent;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -16,8 +18,8 @@ import java.util.List;
  *   <li><b>PIT</b> ({@code pitchBend}) – the pitch-bend value at each tick,
  *       normalised to the range {@code [-8191, 8191]}.</li>
  *   <li><b>PBS</b> ({@code pitchBendSens}) – the pitch-bend sensitivity (in
- *       semitones) at each tick; inserted only when the required range exceeds
- *       the hardware default of ±2 semitones.</li>
+ *       semitones) at each tick; inserted only where it changes from the
+ *       hardware default of ±2 semitones or the previous section's value.</li>
  * </ul>
  *
  * <h2>Algorithm</h2>
@@ -25,12 +27,33 @@ import java.util.List;
  *   <li>Obtain relative pitch data (semitone offsets from the current note).</li>
  *   <li>Split the data into <em>sections</em> separated by gaps of
  *       ≥ {@value #MIN_BREAK_TICKS} ticks (where there is nothing to express).</li>
- *   <li>For each section, compute the maximum absolute offset.  If it exceeds
- *       {@value #DEFAULT_PBS} semitones, emit a PBS event at the section start
- *       (and a reset event just after the section ends).</li>
+ *   <li>For each section, compute the PBS its maximum absolute offset needs
+ *       (at least {@value #DEFAULT_PBS}).</li>
+ *   <li>Let {@link PbsPlanner} choose each section's PBS for the whole song:
+ *       the fewest PBS changes such that every section gets the range it needs
+ *       and, where it gets more, a PIT step no coarser than the configured
+ *       resolution. A PBS event is emitted at the start of each section whose
+ *       value differs from the previous one.</li>
  *   <li>Scale every relative value to {@code [-8191, 8191]} using the section's
- *       PBS range and emit a PIT event.</li>
+ *       PBS and emit a PIT event – unless it is within the tolerance of the
+ *       last emitted one.</li>
  * </ol>
+ *
+ * <h2>Thinning</h2>
+ * VOCALOID holds each controller value until the next event, so an event that
+ * repeats the previous value is redundant, and one that differs by less than
+ * the tolerance is inaudible. Quantisation, run-length deduplication and
+ * dead-band thinning happen in one pass per section: a point is emitted only
+ * if its quantised value is more than {@code toleranceCents} away from the
+ * last emitted value (or differs at all on the section's last point, so each
+ * section settles exactly). The held curve therefore never strays more than
+ * the tolerance from the quantised input; a tolerance of {@code 0} only
+ * removes repeats. Fewer PIT events make VOCALOID open the project faster.
+ *
+ * <h2>Parallelism</h2>
+ * Steps 3 and 5 only look at their own section, so long songs run them
+ * through {@link PitchForkJoin}; the events are concatenated in section order
+ * and are the same as with a single thread.
  */
 public final class VocaloidPitchConverter {
 
@@ -60,11 +83,13 @@ public final class VocaloidPitchConverter {
         private final long        startPos;
         private final List<Event> pit;
         private final List<Event> pbs;
+        private final int         sourcePoints;
 
-        VocaloidPartPitchData(long startPos, List<Event> pit, List<Event> pbs) {
-            this.startPos = startPos;
-            this.pit      = Collections.unmodifiableList(pit);
-            this.pbs      = Collections.unmodifiableList(pbs);
+        VocaloidPartPitchData(long startPos, List<Event> pit, List<Event> pbs, int sourcePoints) {
+            this.startPos     = startPos;
+            this.pit          = Collections.unmodifiableList(pit);
+            this.pbs          = Collections.unmodifiableList(pbs);
+            this.sourcePoints = sourcePoints;
         }
 
         /** Tick offset of the containing part (always 0 for single-part projects). */
@@ -76,6 +101,15 @@ public final class VocaloidPitchConverter {
         /** {@code pitchBendSens} controller events. */
         public List<Event> getPbs() { return pbs; }
 
+        /** Number of relative pitch points the PIT events were thinned from. */
+        public int getSourcePointCount() { return sourcePoints; }
+
+        @Override
+        public String toString() {
+            return "VocaloidPartPitchData{pit=" + pit.size() + ", pbs=" + pbs.size()
+                    + ", sourcePoints=" + sourcePoints + "}";
+        }
+
         /** A single controller event: a tick position plus an integer value. */
         public static final class Event {
             private final long pos;
@@ -97,7 +131,8 @@ public final class VocaloidPitchConverter {
     }
 
     /**
-     * Converts pitch automation data to VOCALOID PIT / PBS event lists.
+     * Converts pitch automation data to VOCALOID PIT / PBS event lists, thinned
+     * with the default tolerance.
      *
      * @param pitch source pitch data (absolute or relative)
      * @param notes note list that provides the key at each tick
@@ -105,79 +140,129 @@ public final class VocaloidPitchConverter {
      *         meaningful pitch data
      */
     public static VocaloidPartPitchData generateForVocaloid(Pitch pitch, List<Note> notes) {
+        return generateForVocaloid(pitch, NoteTimeline.of(notes), ConverterSettings.DEFAULT);
+    }
+
+    /**
+     * Same as {@link #generateForVocaloid(Pitch, List)}, over a prebuilt index
+     * and with the thinning tolerance and PIT resolution from {@code settings}.
+     */
+    public static VocaloidPartPitchData generateForVocaloid(
+            Pitch pitch, NoteTimeline notes, ConverterSettings settings) {
+        double toleranceCents = settings.pitToleranceCents;
         List<Pair<Long, Double>> relativeData =
                 PitchConverter.getRelativeData(pitch, notes, BORDER_APPEND_RADIUS);
 
         if (relativeData == null || relativeData.isEmpty()) return null;
 
+        VocaloidPitchEvent event = new VocaloidPitchEvent();
+        event.begin();
+
         List<List<Pair<Long, Double>>> sections = splitIntoSections(relativeData);
 
+        // Range and PIT events are worked out per section, in parallel for long songs;
+        // only the PBS plan needs to see every section
+        List<Integer> required = PitchForkJoin.map(sections.size(),
+                i -> sections.get(i).size(), i -> requiredPbs(sections.get(i)));
+        int[] planned = PbsPlanner.plan(required.stream().mapToInt(Integer::intValue).toArray(),
+                maxSharedPbs(settings.pitResolutionCents));
+        List<List<VocaloidPartPitchData.Event>> sectionPit = PitchForkJoin.map(sections.size(),
+                i -> sections.get(i).size(), i -> processPitchSection(sections.get(i), planned[i], toleranceCents));
+
         List<VocaloidPartPitchData.Event> pit = new ArrayList<>();
         List<VocaloidPartPitchData.Event> pbs = new ArrayList<>();
-
-        for (List<Pair<Long, Double>> section : sections) {
-            processPitchSection(section, pit, pbs);
+        int currentPbs = PbsPlanner.INITIAL_PBS;
+        for (int i = 0; i < planned.length; i++) {
+            if (planned[i] != currentPbs) {
+                pbs.add(new VocaloidPartPitchData.Event(sections.get(i).get(0).first, planned[i]));
+                currentPbs = planned[i];
+            }
+            pit.addAll(sectionPit.get(i));
         }
 
-        return new VocaloidPartPitchData(0L, pit, pbs);
+        event.end();
+        if (event.shouldCommit()) {
+            event.relativePoints    = relativeData.size();
+            event.sections          = sections.size();
+            event.pitEvents         = pit.size();
+            event.pbsEvents         = pbs.size();
+            event.pitToleranceCents = toleranceCents;
+            event.commit();
+        }
+        return new VocaloidPartPitchData(0L, pit, pbs, relativeData.size());
     }
 
     /**
      * Splits a flat list of pitch events into contiguous sections.
      * A new section begins whenever consecutive events are separated by
-     * ≥ {@value #MIN_BREAK_TICKS} ticks.
+     * ≥ {@value #MIN_BREAK_TICKS} ticks. Sections are views of {@code data},
+     * so a spilled {@link PitchBendStore} is read in place; reading every tick
+     * here also maps all of it, so the sections may then be read concurrently.
      */
     private static List<List<Pair<Long, Double>>> splitIntoSections(
             List<Pair<Long, Double>> data) {
 
         List<List<Pair<Long, Double>>> sections = new ArrayList<>();
-        long prevTick = Long.MIN_VALUE;
-
-        for (Pair<Long, Double> event : data) {
-            if (sections.isEmpty() || event.first - prevTick >= MIN_BREAK_TICKS) {
-                sections.add(new ArrayList<>());
+        long prevTick     = Long.MIN_VALUE;
+        int  sectionStart = 0;
+
+        for (int i = 0; i < data.size(); i++) {
+            long tick = data.get(i).first;
+            if (i > 0 && tick - prevTick >= MIN_BREAK_TICKS) {
+                sections.add(data.subList(sectionStart, i));
+                sectionStart = i;
             }
-            sections.get(sections.size() - 1).add(event);
-            prevTick = event.first;
+            prevTick = tick;
+        }
+        if (sectionStart < data.size()) {
+            sections.add(data.subList(sectionStart, data.size()));
         }
         return sections;
     }
 
+    /** Minimum PBS that covers the section's largest absolute offset. */
+    private static int requiredPbs(List<Pair<Long, Double>> section) {
+        double maxAbsOffset = 0.0;
+        for (Pair<Long, Double> e : section) {
+            maxAbsOffset = Math.max(maxAbsOffset, Math.abs(e.second));
+        }
+        return Math.max((int) Math.ceil(maxAbsOffset), DEFAULT_PBS);
+    }
+
+    /** Widest PBS whose PIT step ({@code pbs / 8191} semitones) is within {@code resolutionCents}. */
+    private static int maxSharedPbs(double resolutionCents) {
+        return Math.max(DEFAULT_PBS, (int) Math.floor(resolutionCents * PITCH_MAX_VALUE / 100.0));
+    }
+
     /**
-     * Processes one contiguous pitch section, appending events to {@code pit} and
-     * {@code pbs}.
-     *
-     * <p>If the maximum absolute offset in the section exceeds {@value #DEFAULT_PBS}
-     * semitones, a PBS override event is emitted at the section start and a PBS
-     * reset event is emitted halfway through the trailing gap after the section.
+     * Processes one contiguous pitch section at the planned PBS, returning its
+     * PIT events thinned as described in the class documentation.
      */
-    private static void processPitchSection(
+    private static List<VocaloidPartPitchData.Event> processPitchSection(
             List<Pair<Long, Double>> section,
-            List<VocaloidPartPitchData.Event> pit,
-            List<VocaloidPartPitchData.Event> pbs) {
-
-        // Determine the minimum PBS needed to cover this section's range
-        double maxAbsOffset = section.stream()
-                .mapToDouble(e -> Math.abs(e.second))
-                .max()
-                .orElse(0.0);
+            int sectionPbs,
+            double toleranceCents) {
 
-        int sectionPbs = Math.max((int) Math.ceil(maxAbsOffset), DEFAULT_PBS);
-
-        if (sectionPbs > DEFAULT_PBS) {
-            long firstTick = section.get(0).first;
-            long lastTick  = section.get(section.size() - 1).first;
-
-            pbs.add(new VocaloidPartPitchData.Event(firstTick, sectionPbs));
-            // Reset PBS to the hardware default once the section ends
-            pbs.add(new VocaloidPartPitchData.Event(lastTick + MIN_BREAK_TICKS / 2L, DEFAULT_PBS));
-        }
-
-        // Emit PIT events, scaled and clamped to [-8191, 8191]
-        for (Pair<Long, Double> event : section) {
-            int rawValue   = (int) Math.round(event.second * PITCH_MAX_VALUE / sectionPbs);
+        // Emit PIT events, scaled and clamped to [-8191, 8191], skipping any
+        // within the dead band of the last emitted value
+        List<VocaloidPartPitchData.Event> pit = new ArrayList<>();
+        double  toleranceUnits = toleranceCents / 100.0 * PITCH_MAX_VALUE / sectionPbs;
+        int     last           = section.size() - 1;
+        int     emitted        = 0;
+        boolean any            = false;
+
+        for (int i = 0; i <= last; i++) {
+            Pair<Long, Double> event = section.get(i);
+            int rawValue     = (int) Math.round(event.second * PITCH_MAX_VALUE / sectionPbs);
             int clampedValue = Math.max(-PITCH_MAX_VALUE, Math.min(PITCH_MAX_VALUE, rawValue));
-            pit.add(new VocaloidPartPitchData.Event(event.first, clampedValue));
+
+            int delta = Math.abs(clampedValue - emitted);
+            if (!any || delta > toleranceUnits || (i == last && delta != 0)) {
+                pit.add(new VocaloidPartPitchData.Event(event.first, clampedValue));
+                emitted = clampedValue;
+                any     = true;
+            }
         }
+        return pit;
     }
 }
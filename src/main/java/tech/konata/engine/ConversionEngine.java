@@ -0,0 +1,215 @@
+package tech.konata.engine;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import tech.konata.convert.ConverterSettings;
+import tech.konata.convert.ProjectConverter;
+import tech.konata.convert.ProjectTemplate;
+import tech.konata.convert.ScoreFile;
+import tech.konata.convert.impl.SVP;
+import tech.konata.convert.impl.VPR;
+import tech.konata.output.FileOutput;
+import tech.konata.parser.MidiParser;
+import tech.konata.parser.PhoneSeqParser;
+import tech.konata.parser.SgData;
+import tech.konata.parser.SgTableLoader;
+import tech.konata.parser.SmfDecoder;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread-safe conversion facade: loads everything songs have in common once
+ * and hands out cheap, reusable sessions that convert one song at a time.
+ *
+ * <h2>Shared state</h2>
+ * The engine owns the SG table and its {@link PhoneSeqParser} (whose
+ * {@link tech.konata.parser.PhoneSeqCache} is shared by every song), the
+ * parsed {@link ProjectTemplate}s, one {@link Gson}, the {@link SmfDecoder} and
+ * the {@link ConverterSettings}. All of them are immutable or thread-safe, so
+ * any number of threads can convert on one engine.
+ *
+ * <h2>Sessions</h2>
+ * A {@link Session} holds one {@link SVP} and one {@link VPR} converter. Each
+ * conversion copies the project from the shared templates instead of parsing
+ * them, and {@linkplain ProjectConverter#reset() resets} the converters when it
+ * ends, whether it succeeded or not. {@link Session#close()} returns the
+ * session to the engine, which keeps up to {@code maxIdleSessions} of them for
+ * the next {@link #openSession()}. A session must only be used by one thread
+ * at a time.
+ *
+ * <pre>
+ *   ConversionEngine engine = new ConversionEngine(settings, 8, false);
+ *   try (ConversionEngine.Session session = engine.openSession()) {
+ *       session.convert(midiFile, "out/song");
+ *   }
+ * </pre>
+ */
+public final class ConversionEngine {
+
+    /** Idle sessions kept by {@link #ConversionEngine(ConverterSettings)}: one per processor. */
+    public static final int DEFAULT_MAX_IDLE_SESSIONS = Runtime.getRuntime().availableProcessors();
+
+    private final ConverterSettings settings;
+    private final List<SgData>      sgTable;
+    private final PhoneSeqParser    phoneSeqParser;
+    private final SmfDecoder        decoder;
+    private final Gson              gson;
+    private final ProjectTemplate   svpTemplate;
+    private final ProjectTemplate   vprTemplate;
+    private final int               maxIdleSessions;
+    private final boolean           logging;
+    private final FileOutput        output;
+
+    private final ConcurrentLinkedDeque<Session> idle      = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger                  idleCount = new AtomicInteger();
+
+    public ConversionEngine() {
+        this(ConverterSettings.DEFAULT);
+    }
+
+    /** An engine that keeps {@link #DEFAULT_MAX_IDLE_SESSIONS} idle sessions and logs every MIDI event. */
+    public ConversionEngine(ConverterSettings settings) {
+        this(settings, DEFAULT_MAX_IDLE_SESSIONS, true);
+    }
+
+    /** An engine that writes every file before {@link Session#convert} returns. */
+    public ConversionEngine(ConverterSettings settings, int maxIdleSessions, boolean logging) {
+        this(settings, maxIdleSessions, logging, FileOutput.SYNCHRONOUS);
+    }
+
+    /**
+     * @param settings        converter settings of every session
+     * @param maxIdleSessions sessions kept for reuse once closed
+     * @param logging         whether parsers echo every MIDI event to {@code System.out}
+     *                        (see {@link MidiParser#setLogging(boolean)})
+     * @param output          where the converters write their files, e.g. an
+     *                        {@link tech.konata.output.AsyncFileOutput} shared by all sessions
+     * @throws RuntimeException if the SG table or a template cannot be loaded
+     */
+    public ConversionEngine(ConverterSettings settings, int maxIdleSessions, boolean logging, FileOutput output) {
+        if (maxIdleSessions < 0) {
+            throw new IllegalArgumentException("maxIdleSessions must not be negative: " + maxIdleSessions);
+        }
+        this.settings        = settings;
+        this.sgTable         = SgTableLoader.load();
+        this.phoneSeqParser  = new PhoneSeqParser(sgTable);
+        this.decoder         = new SmfDecoder();
+        this.gson            = new GsonBuilder().setPrettyPrinting().create();
+        this.svpTemplate     = SVP.loadTemplate(gson);
+        this.vprTemplate     = VPR.loadTemplate(gson);
+        this.maxIdleSessions = maxIdleSessions;
+        this.logging         = logging;
+        this.output          = output;
+    }
+
+    /** An idle session if there is one, otherwise a new session. */
+    public Session openSession() {
+        Session session = idle.pollFirst();
+        if (session != null) {
+            idleCount.decrementAndGet();
+        } else {
+            session = new Session();
+        }
+        session.open = true;
+        return session;
+    }
+
+    /** Converts {@code midiFile} to {@code baseName.svp} and {@code baseName.vpr} in a pooled session. */
+    public void convert(File midiFile, String baseName) {
+        try (Session session = openSession()) {
+            session.convert(midiFile, baseName);
+        }
+    }
+
+    private void release(Session session) {
+        if (idleCount.incrementAndGet() <= maxIdleSessions) {
+            idle.offerFirst(session);   // most recently used first: its buffers are the warmest
+        } else {
+            idleCount.decrementAndGet();
+        }
+    }
+
+    public ConverterSettings getSettings() {
+        return settings;
+    }
+
+    /** The unmodifiable SG table. */
+    public List<SgData> getSgTable() {
+        return sgTable;
+    }
+
+    /** The shared, thread-safe PhoneSEQ parser. */
+    public PhoneSeqParser getPhoneSeqParser() {
+        return phoneSeqParser;
+    }
+
+    /** Number of closed sessions waiting to be reused. */
+    public int getIdleSessionCount() {
+        return idleCount.get();
+    }
+
+    /**
+     * One SVP and one VPR converter, reused for song after song. Not
+     * thread-safe; close it to give it back to the engine.
+     */
+    public final class Session implements AutoCloseable {
+
+        private final List<ProjectConverter> converters;
+        private boolean open;
+
+        private Session() {
+            converters = List.of(new SVP(settings, svpTemplate, gson), new VPR(settings, vprTemplate, gson));
+            converters.forEach(c -> c.setOutput(output));
+        }
+
+        /** The converters, e.g. for {@link tech.konata.cache.OutputCache} keys. */
+        public List<ProjectConverter> getConverters() {
+            return converters;
+        }
+
+        /**
+         * Converts {@code midiFile} to {@code baseName.svp} and {@code baseName.vpr}.
+         *
+         * @throws RuntimeException if the file cannot be read or converted, or an output cannot be written
+         */
+        public void convert(File midiFile, String baseName) {
+            checkOpen();
+            try {
+                converters.forEach(ProjectConverter::load);
+                MidiParser parser = new MidiParser(converters, phoneSeqParser, decoder);
+                parser.setLogging(logging);
+                parser.parse(midiFile);
+                converters.forEach(c -> c.save(baseName));
+            } finally {
+                converters.forEach(ProjectConverter::reset);
+            }
+        }
+
+        /** Same as {@link #convert}, replaying a parsed {@link ScoreFile} instead of a MIDI file. */
+        public void replay(ScoreFile score, String baseName) {
+            checkOpen();
+            try {
+                converters.forEach(ProjectConverter::load);
+                score.replay(converters);
+                converters.forEach(c -> c.save(baseName));
+            } finally {
+                converters.forEach(ProjectConverter::reset);
+            }
+        }
+
+        private void checkOpen() {
+            if (!open) throw new IllegalStateException("Conversion session is closed");
+        }
+
+        /** Returns the session to the engine; closing it again has no effect. */
+        @Override
+        public void close() {
+            if (!open) return;
+            open = false;
+            release(this);
+        }
+    }
+}
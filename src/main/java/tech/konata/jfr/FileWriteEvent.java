@@ -0,0 +1,20 @@
+package tech.konata.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * Writing a finished project file to disk.
+ */
+@Name("tech.konata.FileWrite")
+@Label("File Write")
+@Category({ "PLG100-SG", "Output" })
+@StackTrace(false)
+public final class FileWriteEvent extends Event {
+
+    @Label("Path")
+    public String path;
+
+    @Label("Bytes Written")
+    @DataAmount
+    public long bytes;
+}
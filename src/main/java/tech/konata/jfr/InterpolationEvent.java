@@ -0,0 +1,32 @@
+package tech.konata.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * Densifying control points with one of the InterpolationUtils curves, on a
+ * fixed tick grid or with an adaptive sampler.
+ */
+@Name("tech.konata.Interpolation")
+@Label("Interpolation")
+@Category({ "PLG100-SG", "Pitch" })
+@StackTrace(false)
+public final class InterpolationEvent extends Event {
+
+    @Label("Curve")
+    public String curve;
+
+    @Label("Sampling Interval Ticks")
+    public long samplingIntervalTick;
+
+    @Label("Adaptive")
+    public boolean adaptive;
+
+    @Label("Max Error")
+    public double maxError;
+
+    @Label("Input Points")
+    public int inputPoints;
+
+    @Label("Output Points")
+    public int outputPoints;
+}
@@ -0,0 +1,20 @@
+package tech.konata.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * Serialising a project JSON tree into its output file.
+ */
+@Name("tech.konata.JsonSerialization")
+@Label("JSON Serialization")
+@Category({ "PLG100-SG", "Output" })
+@StackTrace(false)
+public final class JsonSerializationEvent extends Event {
+
+    @Label("Format")
+    public String format;
+
+    @Label("Serialized Size")
+    @Description("Length of the serialized JSON in UTF-8 bytes")
+    public long size;
+}
@@ -0,0 +1,30 @@
+package tech.konata.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * Reading and decoding a Standard MIDI File into tracks.
+ */
+@Name("tech.konata.MidiLoad")
+@Label("MIDI Load")
+@Category({ "PLG100-SG", "Parsing" })
+@StackTrace(false)
+public final class MidiLoadEvent extends Event {
+
+    @Label("File")
+    public String file;
+
+    @Label("File Size")
+    @DataAmount
+    public long fileSize;
+
+    @Label("Tracks")
+    public int tracks;
+
+    @Label("Events")
+    public long events;
+
+    @Label("Resolution")
+    @Description("Ticks per quarter note")
+    public int resolution;
+}
@@ -0,0 +1,25 @@
+package tech.konata.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * Forwarding one completed note to every registered converter.
+ */
+@Name("tech.konata.NoteDispatch")
+@Label("Note Dispatch")
+@Category({ "PLG100-SG", "Parsing" })
+@StackTrace(false)
+public final class NoteDispatchEvent extends Event {
+
+    @Label("Key")
+    public int key;
+
+    @Label("Tick On")
+    public long tickOn;
+
+    @Label("Duration Ticks")
+    public long durationTicks;
+
+    @Label("Converters")
+    public int converters;
+}
@@ -0,0 +1,30 @@
+package tech.konata.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * Resolving one PhoneSEQ SysEx body against the SG table.
+ */
+@Name("tech.konata.PhoneSeqMatch")
+@Label("PhoneSEQ Match")
+@Category({ "PLG100-SG", "Parsing" })
+@StackTrace(false)
+public final class PhoneSeqMatchEvent extends Event {
+
+    @Label("Matched")
+    public boolean matched;
+
+    @Label("Cache Hit")
+    @Description("Whether the resolution came from the PhoneSEQ cache instead of a table search")
+    public boolean cacheHit;
+
+    @Label("Phoneme Count")
+    @Description("Number of data codes in the PhoneSEQ body, breath mark excluded")
+    public int phonemeCount;
+
+    @Label("Breath Mark")
+    public boolean breathMark;
+
+    @Label("Lyric")
+    public String lyric;
+}
@@ -0,0 +1,25 @@
+package tech.konata.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * Converting a pitch curve to semitone offsets from the current note.
+ */
+@Name("tech.konata.RelativePitch")
+@Label("Relative Pitch Conversion")
+@Category({ "PLG100-SG", "Pitch" })
+@StackTrace(false)
+public final class RelativePitchEvent extends Event {
+
+    @Label("Input Points")
+    public int inputPoints;
+
+    @Label("Output Points")
+    public int outputPoints;
+
+    @Label("Notes")
+    public int notes;
+
+    @Label("Border Append Radius")
+    public long borderAppendRadius;
+}
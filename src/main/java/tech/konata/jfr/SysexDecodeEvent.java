@@ -0,0 +1,17 @@
+package tech.konata.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * Decoding one SysEx message: the PhoneSEQ lyric lookup, including its cache.
+ */
+@Name("tech.konata.SysexDecode")
+@Label("SysEx Decode")
+@Category({ "PLG100-SG", "Parsing" })
+@StackTrace(false)
+public final class SysexDecodeEvent extends Event {
+
+    @Label("Message Size")
+    @DataAmount
+    public int messageSize;
+}
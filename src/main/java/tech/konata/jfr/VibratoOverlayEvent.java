@@ -0,0 +1,22 @@
+package tech.konata.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * Overlaying per-note vibrato onto an interpolated SVP pitch curve.
+ */
+@Name("tech.konata.VibratoOverlay")
+@Label("Vibrato Overlay")
+@Category({ "PLG100-SG", "Pitch" })
+@StackTrace(false)
+public final class VibratoOverlayEvent extends Event {
+
+    @Label("Input Points")
+    public int inputPoints;
+
+    @Label("Output Points")
+    public int outputPoints;
+
+    @Label("Notes")
+    public int notes;
+}
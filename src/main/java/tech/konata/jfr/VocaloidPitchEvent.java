@@ -0,0 +1,28 @@
+package tech.konata.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * Generating VOCALOID pitchBend (PIT) and pitchBendSens (PBS) controller events.
+ */
+@Name("tech.konata.VocaloidPitch")
+@Label("VPR PIT/PBS Generation")
+@Category({ "PLG100-SG", "Pitch" })
+@StackTrace(false)
+public final class VocaloidPitchEvent extends Event {
+
+    @Label("Relative Points")
+    public int relativePoints;
+
+    @Label("Sections")
+    public int sections;
+
+    @Label("PIT Events")
+    public int pitEvents;
+
+    @Label("PBS Events")
+    public int pbsEvents;
+
+    @Label("PIT Tolerance (cents)")
+    public double pitToleranceCents;
+}
@@ -0,0 +1,62 @@
+package tech.konata.live;
+
+/**
+ * Log-scale histogram of latencies in nanoseconds.
+ *
+ * <p>Bucket {@code i} counts values in {@code [2^i, 2^(i+1))}; percentiles are
+ * reported as the upper bound of their bucket, so they over-estimate by at
+ * most a factor of two. Recording is allocation-free.
+ *
+ * <p>Not thread-safe: record from one thread and read after it has stopped.
+ */
+public final class LatencyHistogram {
+
+    private final long[] buckets = new long[64];
+    private long count;
+    private long total;
+    private long max;
+
+    public void record(long nanos) {
+        if (nanos < 1) nanos = 1;
+        buckets[63 - Long.numberOfLeadingZeros(nanos)]++;
+        count++;
+        total += nanos;
+        if (nanos > max) max = nanos;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMaxNanos() {
+        return max;
+    }
+
+    public double getMeanNanos() {
+        return count == 0 ? 0.0 : (double) total / count;
+    }
+
+    /**
+     * Returns an upper bound for the {@code p}-th percentile, {@code p} in
+     * {@code (0, 100]}.
+     */
+    public long percentileNanos(double p) {
+        if (count == 0) return 0L;
+        long rank = (long) Math.ceil(count * p / 100.0);
+        long seen = 0L;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i];
+            if (seen >= rank) {
+                return Math.min(i >= 62 ? Long.MAX_VALUE : (1L << (i + 1)) - 1, max);
+            }
+        }
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("events=%d, mean=%.1f us, p50<=%.1f us, p99<=%.1f us, p99.9<=%.1f us, max=%.1f us",
+                count, getMeanNanos() / 1e3, percentileNanos(50) / 1e3, percentileNanos(99) / 1e3,
+                percentileNanos(99.9) / 1e3, max / 1e3);
+    }
+}
@@ -0,0 +1,424 @@
+package tech.konata.live;
+
+import tech.konata.convert.ConverterSettings;
+import tech.konata.convert.ProjectConverter;
+import tech.konata.convert.RecordingConverter;
+import tech.konata.convert.impl.SVP;
+import tech.konata.convert.impl.VPR;
+import tech.konata.parser.MidiParser;
+import tech.konata.parser.PhoneSeqParser;
+import tech.konata.parser.SgData;
+import tech.konata.parser.SgTableLoader;
+
+import javax.sound.midi.*;
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Live front end: a {@link Receiver} that feeds a PLG100-SG performance into
+ * {@link MidiParser} as it is played and keeps the SVP / VPR output up to date.
+ *
+ * <h2>Threads</h2>
+ * <ul>
+ *   <li><b>Caller</b> ({@link #send} / {@link #meta}): stamps each message with
+ *       its arrival time and queues it. Nothing else happens on the MIDI
+ *       driver's thread.</li>
+ *   <li><b>Dispatcher</b>: converts arrival times to ticks with the current
+ *       tempo and calls {@link MidiParser}'s incremental entry points, which
+ *       record into a {@link RecordingConverter}. The time from arrival to the
+ *       end of handling is recorded in a {@link LatencyHistogram}.</li>
+ *   <li><b>Finaliser</b>: whenever the singer rests (no key held for
+ *       {@code restMillis}), the dispatcher {@linkplain RecordingConverter#drain()
+ *       drains} the phrase recorded since the previous rest and hands it to
+ *       this thread, so its own work is proportional to the phrase, not to the
+ *       song. The finaliser appends the phrase to its copy of the song, replays
+ *       the song into the converters and saves the project. Phrases that
+ *       arrive while a save is running are taken together by the next save, so
+ *       the finaliser never falls behind.</li>
+ * </ul>
+ * After {@link #close()} only the phrase after the last rest, if any, is still
+ * unconverted, so the final files are ready as soon as that one save finishes.
+ *
+ * <h2>Timing</h2>
+ * Ticks are derived from arrival times at {@value #RESOLUTION} PPQ, starting at
+ * {@value #DEFAULT_BPM} BPM and following tempo meta events passed to
+ * {@link #meta}. Message time stamps are ignored, since most drivers and the
+ * software sequencer send {@code -1}.
+ *
+ * <p>Usage:
+ * <pre>
+ *   LiveMidiInput &lt;output-base&gt; [file.mid | device-name]
+ * </pre>
+ * With a {@code .mid} file, a software {@link Sequencer} plays it into the
+ * receiver in real time as a stand-in for the instrument; with a device name
+ * (or nothing, for the default device) the input runs until Enter is pressed.
+ */
+public final class LiveMidiInput implements Receiver, MetaEventListener {
+
+    public static final int    RESOLUTION          = 480;
+    public static final double DEFAULT_BPM         = 120.0;
+    public static final long   DEFAULT_REST_MILLIS = 300L;
+
+    private static final int META_TEMPO        = 0x51;
+    private static final int META_END_OF_TRACK = 0x2F;
+
+    private static final int KIND_SHORT = 0;
+    private static final int KIND_TEMPO = 1;
+    private static final int KIND_SYSEX = 2;
+    private static final int KIND_STOP  = 3;
+
+    /** A queued message with its arrival time. */
+    private static final class Incoming {
+        final long   arrivalNanos;
+        final int    kind;
+        final int    value;      // SHORT: status << 16 | data1 << 8 | data2; TEMPO: µs per quarter
+        final byte[] sysex;
+
+        Incoming(long arrivalNanos, int kind, int value, byte[] sysex) {
+            this.arrivalNanos = arrivalNanos;
+            this.kind         = kind;
+            this.value        = value;
+            this.sysex        = sysex;
+        }
+    }
+
+    private final String                           baseName;
+    private final Supplier<List<ProjectConverter>> converterFactory;
+    private final long                             restNanos;
+
+    private final RecordingConverter              recorder = new RecordingConverter();
+    private final MidiParser                      parser;
+    private final BlockingQueue<Incoming>         queue    = new LinkedBlockingQueue<>();
+    private final LatencyHistogram                latency  = new LatencyHistogram();
+    private final Thread                          dispatcher;
+    private final ExecutorService                 finaliser;
+    private final Queue<RecordingConverter.Snapshot> phrases = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean                   finalisePending = new AtomicBoolean();
+    private final AtomicBoolean                   closed          = new AtomicBoolean();
+
+    // Dispatcher-thread state
+    private final boolean[] held = new boolean[128];
+    private int     heldCount;
+    private long    clockNanos;
+    private double  clockTick;
+    private double  ticksPerNano;
+    private boolean started;
+    private boolean tempoWritten;
+    private long    lastReleaseNanos;
+    private boolean restReached;
+
+    // Finaliser-thread state: the song so far, built from the drained phrases
+    private final RecordingConverter song = new RecordingConverter();
+
+    private volatile int finalisedPhrases;
+
+    public LiveMidiInput(String baseName, List<SgData> sgTable) {
+        this(baseName, sgTable, liveConverters(ConverterSettings.fromSystemProperties()), DEFAULT_REST_MILLIS);
+    }
+
+    /**
+     * @param baseName         output file base name (without extension)
+     * @param sgTable          SG table for PhoneSEQ resolution
+     * @param converterFactory supplies the converters for each save, which loads, saves and resets them
+     * @param restMillis       silence after the last released key that counts as a rest
+     */
+    public LiveMidiInput(String baseName, List<SgData> sgTable,
+                         Supplier<List<ProjectConverter>> converterFactory, long restMillis) {
+        if (restMillis <= 0) {
+            throw new IllegalArgumentException("restMillis must be positive: " + restMillis);
+        }
+        this.baseName         = baseName;
+        this.converterFactory = converterFactory;
+        this.restNanos        = TimeUnit.MILLISECONDS.toNanos(restMillis);
+
+        parser = new MidiParser(Collections.singletonList(recorder), new PhoneSeqParser(sgTable));
+        parser.beginStream(RESOLUTION);
+
+        clockNanos   = System.nanoTime();
+        ticksPerNano = ticksPerNano(DEFAULT_BPM);
+
+        finaliser = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "plg-live-finaliser");
+            t.setDaemon(true);
+            return t;
+        });
+        dispatcher = new Thread(this::dispatchLoop, "plg-live-dispatch");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    private static Supplier<List<ProjectConverter>> liveConverters(ConverterSettings settings) {
+        // Saves run one at a time on the finaliser thread, so one pair of converters is reused
+        List<ProjectConverter> converters = Arrays.asList(new SVP(settings), new VPR(settings));
+        return () -> converters;
+    }
+
+    // ---------------------------------------------------------------------------------
+    // Input (any thread)
+    // ---------------------------------------------------------------------------------
+
+    @Override
+    public void send(MidiMessage message, long timeStamp) {
+        if (closed.get()) return;
+        long now = System.nanoTime();
+
+        if (message instanceof ShortMessage) {
+            ShortMessage sm = (ShortMessage) message;
+            int value = sm.getStatus() << 16 | sm.getData1() << 8 | sm.getData2();
+            queue.add(new Incoming(now, KIND_SHORT, value, null));
+        } else if (message instanceof SysexMessage) {
+            queue.add(new Incoming(now, KIND_SYSEX, 0, message.getMessage()));
+        } else if (message instanceof MetaMessage) {
+            meta((MetaMessage) message);
+        }
+    }
+
+    /** Accepts tempo changes, e.g. from {@link Sequencer#addMetaEventListener}. */
+    @Override
+    public void meta(MetaMessage meta) {
+        if (closed.get() || meta.getType() != META_TEMPO) return;
+        byte[] data = meta.getData();
+        if (data.length < 3) return;
+        int tempo = (data[0] & 0xFF) << 16 | (data[1] & 0xFF) << 8 | (data[2] & 0xFF);
+        queue.add(new Incoming(System.nanoTime(), KIND_TEMPO, tempo, null));
+    }
+
+    /**
+     * Stops the input, converts whatever the last rest did not cover and waits
+     * for the final save.
+     */
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true)) return;
+        queue.add(new Incoming(System.nanoTime(), KIND_STOP, 0, null));
+        try {
+            dispatcher.join();
+            finaliser.shutdown();
+            finaliser.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while finalising live input", e);
+        }
+        System.out.println("[Live] Saved " + baseName + " after " + finalisedPhrases + " background saves");
+        System.out.println("[Live] Event latency: " + latency);
+    }
+
+    /** Per-event processing latency; complete once {@link #close()} has returned. */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    // ---------------------------------------------------------------------------------
+    // Dispatcher thread
+    // ---------------------------------------------------------------------------------
+
+    private void dispatchLoop() {
+        long pollNanos = Math.max(restNanos / 4, TimeUnit.MILLISECONDS.toNanos(1));
+        while (true) {
+            Incoming in;
+            try {
+                in = queue.poll(pollNanos, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                break;
+            }
+
+            if (in == null) {
+                checkRest(System.nanoTime());
+                continue;
+            }
+            if (in.kind == KIND_STOP) break;
+
+            try {
+                dispatch(in);
+            } catch (RuntimeException e) {
+                System.out.println("[Err] Live event dropped: " + e.getMessage());
+            }
+            long now = System.nanoTime();
+            latency.record(now - in.arrivalNanos);
+            // Steady input without keys (clock, controllers, bends) must not hold back the rest
+            checkRest(now);
+        }
+        scheduleFinalise();
+    }
+
+    private void dispatch(Incoming in) {
+        long tick = tickAt(in.arrivalNanos);
+
+        if (in.kind == KIND_TEMPO) {
+            // Tempo sent before any note data is the song's initial tempo
+            parser.onTempo(in.value, started ? tick : 0L);
+            ticksPerNano = ticksPerNano(60_000_000.0 / in.value);
+            tempoWritten = true;
+            return;
+        }
+
+        if (!tempoWritten) {
+            parser.onTempo((int) Math.round(60_000_000.0 / DEFAULT_BPM), 0L);
+            tempoWritten = true;
+        }
+        started = true;
+
+        if (in.kind == KIND_SHORT) {
+            int status = in.value >>> 16;
+            int data1  = (in.value >>> 8) & 0x7F;
+            int data2  = in.value & 0x7F;
+            trackHeldKeys(status, data1, data2, in.arrivalNanos);
+            parser.onShortMessage(status, data1, data2, tick);
+        } else if (in.kind == KIND_SYSEX) {
+            parser.onSysex(in.sysex);
+        }
+    }
+
+    private void trackHeldKeys(int status, int key, int velocity, long nanos) {
+        int command = status & 0xF0;
+        if ((status & 0x0F) != 0 || (command != ShortMessage.NOTE_ON && command != ShortMessage.NOTE_OFF)) return;
+
+        boolean on = command == ShortMessage.NOTE_ON && velocity > 0;
+        if (on && !held[key]) {
+            held[key] = true;
+            heldCount++;
+            restReached = false;
+        } else if (!on && held[key]) {
+            held[key] = false;
+            heldCount--;
+            if (heldCount == 0) lastReleaseNanos = nanos;
+        }
+    }
+
+    /** Converts an arrival time into a tick, integrating over tempo changes. */
+    private long tickAt(long nanos) {
+        if (nanos > clockNanos) {
+            clockTick += (nanos - clockNanos) * ticksPerNano;
+            clockNanos = nanos;
+        }
+        return (long) clockTick;
+    }
+
+    private static double ticksPerNano(double bpm) {
+        return bpm * RESOLUTION / 60e9;
+    }
+
+    /**
+     * Finalises once per rest: when no key has been held for {@code restMillis}.
+     * Events that arrive later in the same rest go with the next phrase.
+     */
+    private void checkRest(long now) {
+        if (heldCount == 0 && !restReached && now - lastReleaseNanos >= restNanos) {
+            restReached = true;
+            scheduleFinalise();
+        }
+    }
+
+    /**
+     * Hands the events recorded since the last rest to the finaliser, unless
+     * there are none.
+     */
+    private void scheduleFinalise() {
+        if (recorder.getEventCount() == 0) return;
+
+        phrases.add(recorder.drain());
+        if (finalisePending.compareAndSet(false, true)) {
+            finaliser.execute(this::finaliseLatest);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------
+    // Finaliser thread
+    // ---------------------------------------------------------------------------------
+
+    private void finaliseLatest() {
+        finalisePending.set(false);
+        RecordingConverter.Snapshot phrase = phrases.poll();
+        if (phrase == null) return;
+        for (; phrase != null; phrase = phrases.poll()) {
+            phrase.replay(song);
+        }
+
+        long start = System.nanoTime();
+        RecordingConverter.Snapshot snapshot = song.snapshot();
+        List<ProjectConverter> converters = converterFactory.get();
+        try {
+            for (ProjectConverter converter : converters) {
+                converter.load();
+                snapshot.replay(converter);
+                converter.save(baseName);
+            }
+        } catch (RuntimeException e) {
+            System.out.println("[Err] Live save failed: " + e.getMessage());
+            return;
+        } finally {
+            converters.forEach(ProjectConverter::reset);
+        }
+        finalisedPhrases++;
+        System.out.printf("[Live] Saved %d notes in %.1f ms%n",
+                snapshot.getNoteCount(), (System.nanoTime() - start) / 1e6);
+    }
+
+    // ---------------------------------------------------------------------------------
+    // Entry point
+    // ---------------------------------------------------------------------------------
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Usage: LiveMidiInput <output-base> [file.mid | device-name]");
+            return;
+        }
+        String baseName = args[0];
+        String source   = args.length > 1 ? args[1] : null;
+
+        LiveMidiInput input = new LiveMidiInput(baseName, SgTableLoader.load());
+
+        if (source != null && new File(source).isFile()) {
+            playFile(new File(source), input);
+        } else {
+            MidiDevice device = (source != null) ? openDevice(source) : null;
+            Transmitter transmitter = (device != null) ? device.getTransmitter() : MidiSystem.getTransmitter();
+            transmitter.setReceiver(input);
+            System.out.println("[Live] Recording; press Enter to stop");
+            System.in.read();
+            transmitter.close();
+            if (device != null) device.close();
+        }
+        input.close();
+    }
+
+    /**
+     * Plays {@code file} into {@code input} through a software sequencer, in real
+     * time, and returns when playback ends.
+     */
+    private static void playFile(File file, LiveMidiInput input) throws Exception {
+        Sequencer sequencer = MidiSystem.getSequencer(false);
+        sequencer.open();
+        try {
+            CountDownLatch ended = new CountDownLatch(1);
+            sequencer.setSequence(MidiSystem.getSequence(file));
+            sequencer.getTransmitter().setReceiver(input);
+            sequencer.addMetaEventListener(input);
+            sequencer.addMetaEventListener(meta -> {
+                if (meta.getType() == META_END_OF_TRACK) ended.countDown();
+            });
+            System.out.println("[Live] Playing " + file.getName() + " as live input");
+            sequencer.start();
+            ended.await();
+        } finally {
+            sequencer.close();
+        }
+    }
+
+    private static MidiDevice openDevice(String name) throws MidiUnavailableException {
+        for (MidiDevice.Info info : MidiSystem.getMidiDeviceInfo()) {
+            if (!info.getName().contains(name)) continue;
+            MidiDevice device = MidiSystem.getMidiDevice(info);
+            if (device.getMaxTransmitters() == 0) continue;
+            device.open();
+            return device;
+        }
+        throw new IllegalArgumentException("No MIDI input device matching: " + name);
+    }
+}
@@ -0,0 +1,112 @@
+package tech.konata.output;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link FileOutput} that writes files on background threads, so a batch
+ * can convert its next song while the previous one is still being
+ * serialised and flushed.
+ *
+ * <h2>Back-pressure</h2>
+ * Every queued file keeps its content (e.g. a project JSON tree) alive until
+ * it is written, so at most {@code maxPending} files may be queued or in
+ * progress; {@link #write} blocks until one of them is done.
+ *
+ * <h2>Failures</h2>
+ * A file that cannot be written is reported with an {@code [Err]} line as
+ * soon as it fails, its target is left unchanged, and {@link #await()} (or
+ * {@link #close()}) throws once every queued file has been handled.
+ */
+public final class AsyncFileOutput implements FileOutput, AutoCloseable {
+
+    /** Files that may be queued or in progress at a time. */
+    public static final int DEFAULT_MAX_PENDING = 4;
+
+    private final ExecutorService executor;
+    private final int             maxPending;
+    private final Semaphore       pending;
+
+    private final ConcurrentLinkedQueue<RuntimeException> failures = new ConcurrentLinkedQueue<>();
+
+    public AsyncFileOutput() {
+        this(1, DEFAULT_MAX_PENDING);
+    }
+
+    /**
+     * @param threads    background writer threads
+     * @param maxPending files that may be queued or in progress before {@link #write} blocks
+     */
+    public AsyncFileOutput(int threads, int maxPending) {
+        if (threads < 1 || maxPending < 1) {
+            throw new IllegalArgumentException("threads and maxPending must be positive: " + threads + ", " + maxPending);
+        }
+        this.maxPending = maxPending;
+        this.pending    = new Semaphore(maxPending);
+        this.executor   = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "plg-output-writer");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @Override
+    public void write(Path target, Content content) {
+        pending.acquireUninterruptibly();
+        try {
+            executor.execute(() -> {
+                try {
+                    AtomicFile.write(target, content);
+                } catch (RuntimeException e) {
+                    System.out.println("[Err] " + e.getMessage() + (e.getCause() != null ? ": " + e.getCause() : ""));
+                    failures.add(e);
+                } finally {
+                    pending.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            pending.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Waits until every queued file has been written.
+     *
+     * @throws RuntimeException if any file written since the last call failed
+     *                          (the first failure is the cause; later ones are suppressed)
+     */
+    public void await() {
+        pending.acquireUninterruptibly(maxPending);
+        pending.release(maxPending);
+
+        List<RuntimeException> failed = new ArrayList<>();
+        for (RuntimeException e; (e = failures.poll()) != null; ) failed.add(e);
+        if (failed.isEmpty()) return;
+
+        RuntimeException error = new RuntimeException(failed.size() + " output file(s) could not be written", failed.get(0));
+        for (int i = 1; i < failed.size(); i++) error.addSuppressed(failed.get(i));
+        throw error;
+    }
+
+    /** {@link #await()}s the queued files, then stops the writer threads. */
+    @Override
+    public void close() {
+        try {
+            await();
+        } finally {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package tech.konata.output;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * An output file that is written under a temporary name and only appears at
+ * its target path, complete, once {@linkplain #commit() committed}.
+ *
+ * <h2>Writing</h2>
+ * The temporary file is created next to the target, so the final rename
+ * stays on one file system and is atomic: readers see either the previous
+ * file or the whole new one, never a partial file. It is created with the
+ * default mode, filtered by the umask, like a file written in place; if the
+ * target exists, its POSIX permissions are kept. Bytes go through a
+ * {@value #BUFFER_SIZE}-byte direct buffer (one per writing thread, reused
+ * across files) straight into a {@link FileChannel}; {@link #writer()} encodes
+ * text as UTF-8 regardless of the platform charset.
+ *
+ * <h2>Failure</h2>
+ * {@link #close()} without a {@link #commit()} deletes the temporary file and
+ * leaves the target untouched. The rename does not {@code fsync}, so it
+ * protects readers, not against power loss.
+ *
+ * <p>Instances are not thread-safe.
+ */
+public final class AtomicFile implements Closeable {
+
+    /** Size of the per-thread direct write buffer. */
+    public static final int BUFFER_SIZE = 1 << 20;
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /** The calling thread's idle write buffer; taken while a file is open so nested files get their own. */
+    private static final ThreadLocal<ByteBuffer> SPARE_BUFFER = new ThreadLocal<>();
+
+    private final Path        target;
+    private final Path        temp;
+    private final FileChannel channel;
+    private final ByteBuffer  buffer;
+    private final Stream      stream = new Stream();
+    private long              size;
+    private boolean           committed;
+    private boolean           closed;
+
+    private AtomicFile(Path target, Path temp, FileChannel channel) {
+        this.target  = target;
+        this.temp    = temp;
+        this.channel = channel;
+        this.buffer  = borrowBuffer();
+    }
+
+    /**
+     * Opens a temporary file for {@code target} in the same directory.
+     *
+     * @throws IOException if the temporary file cannot be created
+     */
+    public static AtomicFile create(Path target) throws IOException {
+        Path absolute = target.toAbsolutePath();
+        while (true) {
+            Path temp = absolute.resolveSibling("." + absolute.getFileName() + "."
+                    + Long.toUnsignedString(ThreadLocalRandom.current().nextLong()) + TEMP_SUFFIX);
+            FileChannel channel;
+            try {
+                channel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            } catch (FileAlreadyExistsException e) {
+                continue;
+            }
+            try {
+                copyPermissions(absolute, temp);
+                return new AtomicFile(absolute, temp, channel);
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                Files.deleteIfExists(temp);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Writes {@code target} in one go: creates the file, lets {@code content}
+     * fill it and commits it.
+     *
+     * @throws RuntimeException if the file cannot be written; the target is then unchanged
+     */
+    public static void write(Path target, FileOutput.Content content) {
+        try (AtomicFile file = create(target)) {
+            content.writeTo(file);
+            file.commit();
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to write " + target, e);
+        }
+    }
+
+    /** Raw bytes of the file. Closing the stream has no effect; call {@link #commit()}. */
+    public OutputStream outputStream() {
+        return stream;
+    }
+
+    /** UTF-8 text of the file. Flush it before {@link #commit()}; closing it has no effect. */
+    public Writer writer() {
+        return new OutputStreamWriter(stream, StandardCharsets.UTF_8);
+    }
+
+    /** The final path of the file. */
+    public Path getTarget() {
+        return target;
+    }
+
+    /** Bytes written so far. */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Writes out the buffered bytes and moves the file to its target,
+     * replacing any previous file.
+     *
+     * @throws IOException if the file cannot be written or moved
+     */
+    public void commit() throws IOException {
+        checkOpen();
+        drain();
+        channel.close();
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        committed = true;
+        closed    = true;
+        SPARE_BUFFER.set(buffer);
+    }
+
+    /** Discards the file unless it has been committed. */
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        SPARE_BUFFER.set(buffer);
+        try {
+            channel.close();
+        } finally {
+            if (!committed) Files.deleteIfExists(temp);
+        }
+    }
+
+    /** Gives {@code temp} the POSIX permissions of an existing {@code target}, as rewriting it in place would keep them. */
+    private static void copyPermissions(Path target, Path temp) throws IOException {
+        if (!Files.exists(target) || !Files.getFileStore(temp).supportsFileAttributeView(PosixFileAttributeView.class)) return;
+        Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(target);
+        Files.setPosixFilePermissions(temp, permissions);
+    }
+
+    private static ByteBuffer borrowBuffer() {
+        ByteBuffer spare = SPARE_BUFFER.get();
+        if (spare == null) return ByteBuffer.allocateDirect(BUFFER_SIZE);
+        SPARE_BUFFER.remove();
+        spare.clear();
+        return spare;
+    }
+
+    private void checkOpen() throws IOException {
+        if (closed) throw new IOException("Output file is closed: " + target);
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+    }
+
+    private final class Stream extends OutputStream {
+        @Override
+        public void write(int b) throws IOException {
+            checkOpen();
+            if (!buffer.hasRemaining()) drain();
+            buffer.put((byte) b);
+            size++;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            checkOpen();
+            if (length >= buffer.capacity()) {
+                // Too big to be worth copying: write it straight through
+                drain();
+                ByteBuffer wrapped = ByteBuffer.wrap(bytes, offset, length);
+                while (wrapped.hasRemaining()) channel.write(wrapped);
+            } else {
+                int done = 0;
+                while (done < length) {
+                    if (!buffer.hasRemaining()) drain();
+                    int n = Math.min(buffer.remaining(), length - done);
+                    buffer.put(bytes, offset + done, n);
+                    done += n;
+                }
+            }
+            size += length;
+        }
+
+        @Override
+        public void close() {
+            // The file is finished by commit() or close() of the AtomicFile
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package tech.konata.output;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Where converters send their finished files: written on the calling thread
+ * ({@link #SYNCHRONOUS}) or handed to a background writer
+ * ({@link AsyncFileOutput}). Either way every file is an {@link AtomicFile},
+ * so its target only ever holds a complete file.
+ */
+public interface FileOutput {
+
+    /**
+     * Fills an output file. It may run on another thread after
+     * {@link #write} has returned, so it must only use data that the caller
+     * no longer changes.
+     */
+    @FunctionalInterface
+    interface Content {
+        void writeTo(AtomicFile file) throws IOException;
+    }
+
+    /** Writes each file before {@link #write} returns. */
+    FileOutput SYNCHRONOUS = AtomicFile::write;
+
+    /**
+     * Writes {@code content} to {@code target}.
+     *
+     * @throws RuntimeException if the file cannot be written (synchronous outputs only;
+     *                          asynchronous ones report failures later)
+     */
+    void write(Path target, Content content);
+}
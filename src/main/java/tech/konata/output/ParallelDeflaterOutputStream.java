@@ -0,0 +1,183 @@
+package tech.konata.output;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Raw DEFLATE stream compressed on several threads, in the style of pigz.
+ *
+ * <h2>Blocks</h2>
+ * The input is cut into {@value #BLOCK_SIZE}-byte blocks that are compressed
+ * independently, each by its own {@link Deflater} primed with the last
+ * {@value #DICTIONARY_SIZE} bytes of the block before it, so matches can still
+ * reach back across block boundaries. Every block but the last ends with a
+ * sync flush, which byte-aligns it without ending the stream, so the blocks'
+ * output, written in order, is one ordinary DEFLATE stream that any inflater
+ * reads. The ratio is within a fraction of a percent of a single-threaded
+ * deflate at the same level.
+ *
+ * <h2>Determinism</h2>
+ * Block boundaries depend only on the input, so the output is the same
+ * whatever the number of threads.
+ *
+ * <p>The CRC-32 and sizes a zip entry needs are tracked as the data passes
+ * through. At most twice the executor's parallelism of blocks are in flight,
+ * so memory use does not grow with the input. {@link #finish()} ends the
+ * stream without closing the underlying one. Instances are not thread-safe.
+ */
+public final class ParallelDeflaterOutputStream extends OutputStream {
+
+    /** Uncompressed bytes per block. */
+    public static final int BLOCK_SIZE = 128 * 1024;
+
+    /** Bytes of the previous block a block's compressor is primed with: the DEFLATE window. */
+    public static final int DICTIONARY_SIZE = 32 * 1024;
+
+    /** Each thread's deflater, reset and reused for every block it compresses. */
+    private static final ThreadLocal<Deflater[]> DEFLATERS = ThreadLocal.withInitial(() -> new Deflater[Deflater.BEST_COMPRESSION + 1]);
+
+    private final OutputStream out;
+    private final int          level;
+    private final Executor     executor;
+    private final int          maxInFlight;
+
+    private final ArrayDeque<CompletableFuture<byte[]>> inFlight = new ArrayDeque<>();
+    private final CRC32                                 crc      = new CRC32();
+
+    private byte[]  block = new byte[BLOCK_SIZE];
+    private int     blockLength;
+    private byte[]  dictionary;
+    private long    bytesIn;
+    private long    bytesOut;
+    private boolean finished;
+
+    /**
+     * @param out         receives the compressed stream
+     * @param level       deflate level, {@code 0} (stored) to {@code 9}
+     * @param executor    runs the block compressions
+     * @param parallelism threads {@code executor} can give the stream
+     */
+    public ParallelDeflaterOutputStream(OutputStream out, int level, Executor executor, int parallelism) {
+        if (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Deflate level must be 0-9: " + level);
+        }
+        this.out         = out;
+        this.level       = level;
+        this.executor    = executor;
+        this.maxInFlight = 2 * Math.max(1, parallelism);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        if (finished) throw new IOException("Deflate stream is finished");
+        crc.update(bytes, offset, length);
+        bytesIn += length;
+
+        while (length > 0) {
+            int n = Math.min(length, BLOCK_SIZE - blockLength);
+            System.arraycopy(bytes, offset, block, blockLength, n);
+            blockLength += n;
+            offset      += n;
+            length      -= n;
+            if (blockLength == BLOCK_SIZE) submit(false);
+        }
+    }
+
+    /** Compresses the remaining input, ends the stream and writes out every block. */
+    public void finish() throws IOException {
+        if (finished) return;
+        submit(true);
+        finished = true;
+        while (!inFlight.isEmpty()) writeOldest();
+    }
+
+    /** {@link #finish()}es the stream; the underlying stream stays open. */
+    @Override
+    public void close() throws IOException {
+        finish();
+    }
+
+    /** CRC-32 of the uncompressed data written so far. */
+    public long getCrc() {
+        return crc.getValue();
+    }
+
+    /** Uncompressed bytes written so far. */
+    public long getBytesIn() {
+        return bytesIn;
+    }
+
+    /** Compressed bytes written to the underlying stream so far. */
+    public long getBytesOut() {
+        return bytesOut;
+    }
+
+    private void submit(boolean last) throws IOException {
+        byte[] data       = block;
+        int    length     = blockLength;
+        byte[] primer     = dictionary;
+        int    blockLevel = level;
+        inFlight.add(CompletableFuture.supplyAsync(() -> compress(data, length, primer, blockLevel, last), executor));
+
+        if (!last) {
+            dictionary  = Arrays.copyOfRange(data, length - DICTIONARY_SIZE, length);
+            block       = new byte[BLOCK_SIZE];
+            blockLength = 0;
+        }
+        while (inFlight.size() > maxInFlight) writeOldest();
+    }
+
+    private void writeOldest() throws IOException {
+        byte[] compressed;
+        try {
+            compressed = inFlight.poll().join();
+        } catch (CompletionException e) {
+            throw new IOException("Failed to compress block", e.getCause());
+        }
+        out.write(compressed);
+        bytesOut += compressed.length;
+    }
+
+    private static byte[] compress(byte[] data, int length, byte[] dictionary, int level, boolean last) {
+        Deflater[] deflaters = DEFLATERS.get();
+        Deflater   deflater  = deflaters[level];
+        if (deflater == null) {
+            deflater = deflaters[level] = new Deflater(level, /* nowrap */ true);
+        } else {
+            deflater.reset();
+        }
+        if (dictionary != null) deflater.setDictionary(dictionary);
+        deflater.setInput(data, 0, length);
+
+        byte[] output = new byte[length / 2 + 64];
+        int    size   = 0;
+        if (last) {
+            deflater.finish();
+            while (!deflater.finished()) {
+                if (size == output.length) output = Arrays.copyOf(output, output.length * 2);
+                size += deflater.deflate(output, size, output.length - size);
+            }
+        } else {
+            // A full output buffer may hide more pending output: keep flushing until it is not full
+            int n;
+            do {
+                if (size == output.length) output = Arrays.copyOf(output, output.length * 2);
+                n     = deflater.deflate(output, size, output.length - size, Deflater.SYNC_FLUSH);
+                size += n;
+            } while (size == output.length);
+        }
+        return Arrays.copyOf(output, size);
+    }
+}
@@ -0,0 +1,233 @@
+package tech.konata.output;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Minimal streaming zip writer whose deflated entries are compressed by a
+ * {@link ParallelDeflaterOutputStream}.
+ *
+ * <h2>Layout</h2>
+ * The archive is laid out the way {@link java.util.zip.ZipOutputStream} lays
+ * out a streamed archive: each deflated entry has a local header with the
+ * "sizes follow" flag, its data and a data descriptor; directories are empty
+ * stored entries; the central directory and end record follow the last entry.
+ * Names are UTF-8. ZIP64 is not supported, so an entry or archive of 4 GiB or
+ * more is rejected.
+ *
+ * <pre>
+ *   ZipWriter zip = new ZipWriter(out);
+ *   ParallelDeflaterOutputStream entry = zip.putDeflatedEntry("a.json", 6);
+ *   ... write to entry ...
+ *   zip.putDirectory("dir/");
+ *   zip.finish();
+ * </pre>
+ *
+ * <p>{@link #finish()} does not close the underlying stream. Instances are not
+ * thread-safe.
+ */
+public final class ZipWriter {
+
+    private static final int LOCAL_HEADER_SIGNATURE    = 0x04034b50;
+    private static final int DATA_DESCRIPTOR_SIGNATURE = 0x08074b50;
+    private static final int CENTRAL_HEADER_SIGNATURE  = 0x02014b50;
+    private static final int END_RECORD_SIGNATURE      = 0x06054b50;
+
+    private static final int FLAG_DATA_DESCRIPTOR = 0x0008;
+    private static final int FLAG_UTF8            = 0x0800;
+
+    private static final int METHOD_STORED   = 0;
+    private static final int METHOD_DEFLATED = 8;
+
+    private static final long MAX_SIZE = 0xFFFFFFFFL;
+
+    private final OutputStream           out;
+    private final int                    dosTime;
+    private final List<Entry>            entries = new ArrayList<>();
+    private long                         offset;
+    private Entry                        current;
+    private ParallelDeflaterOutputStream deflater;
+    private boolean                      finished;
+
+    /** Every entry is stamped with the time the writer was created. */
+    public ZipWriter(OutputStream out) {
+        this.out     = out;
+        this.dosTime = dosTime(LocalDateTime.now());
+    }
+
+    /**
+     * Starts a deflated entry and returns the stream its content is written
+     * to, compressed on the {@linkplain ForkJoinPool#commonPool() common pool}.
+     * The entry ends with the next entry or {@link #finish()}.
+     *
+     * @param level deflate level, {@code 0} to {@code 9}
+     */
+    public ParallelDeflaterOutputStream putDeflatedEntry(String name, int level) throws IOException {
+        closeEntry();
+        current  = new Entry(name, METHOD_DEFLATED, FLAG_DATA_DESCRIPTOR | FLAG_UTF8, offset);
+        writeLocalHeader(current);
+        deflater = new ParallelDeflaterOutputStream(new Counting(), level,
+                ForkJoinPool.commonPool(), ForkJoinPool.getCommonPoolParallelism());
+        return deflater;
+    }
+
+    /** Adds an empty directory entry; {@code name} must end with {@code '/'}. */
+    public void putDirectory(String name) throws IOException {
+        if (!name.endsWith("/")) throw new IllegalArgumentException("Not a directory name: " + name);
+        closeEntry();
+        Entry entry = new Entry(name, METHOD_STORED, FLAG_UTF8, offset);
+        writeLocalHeader(entry);
+        entries.add(entry);
+    }
+
+    /** Ends the last entry and writes the central directory; the underlying stream stays open. */
+    public void finish() throws IOException {
+        if (finished) return;
+        closeEntry();
+        finished = true;
+
+        long directoryStart = offset;
+        for (Entry entry : entries) writeCentralHeader(entry);
+        long directorySize = offset - directoryStart;
+        checkSize(directoryStart + directorySize, "Zip archive");
+
+        ByteBuffer end = record(22);
+        end.putInt(END_RECORD_SIGNATURE);
+        end.putShort((short) 0);                    // this disk
+        end.putShort((short) 0);                    // disk of the central directory
+        end.putShort((short) entries.size());       // entries on this disk
+        end.putShort((short) entries.size());       // entries in total
+        end.putInt((int) directorySize);
+        end.putInt((int) directoryStart);
+        end.putShort((short) 0);                    // comment length
+        write(end);
+        out.flush();
+    }
+
+    private void closeEntry() throws IOException {
+        if (finished) throw new IOException("Zip archive is finished");
+        if (current == null) return;
+
+        deflater.finish();
+        current.crc            = deflater.getCrc();
+        current.compressedSize = deflater.getBytesOut();
+        current.size           = deflater.getBytesIn();
+        checkSize(current.size,           current.name);
+        checkSize(current.compressedSize, current.name);
+
+        ByteBuffer descriptor = record(16);
+        descriptor.putInt(DATA_DESCRIPTOR_SIGNATURE);
+        descriptor.putInt((int) current.crc);
+        descriptor.putInt((int) current.compressedSize);
+        descriptor.putInt((int) current.size);
+        write(descriptor);
+
+        entries.add(current);
+        current  = null;
+        deflater = null;
+    }
+
+    private void writeLocalHeader(Entry entry) throws IOException {
+        checkSize(offset, "Zip archive");
+        ByteBuffer header = record(30 + entry.nameBytes.length);
+        header.putInt(LOCAL_HEADER_SIGNATURE);
+        header.putShort((short) versionNeeded(entry));
+        header.putShort((short) entry.flags);
+        header.putShort((short) entry.method);
+        header.putInt(dosTime);
+        header.putInt(0);                           // crc, compressed size and size:
+        header.putInt(0);                           // zero for stored directories, in the
+        header.putInt(0);                           // data descriptor for deflated entries
+        header.putShort((short) entry.nameBytes.length);
+        header.putShort((short) 0);                 // extra field length
+        header.put(entry.nameBytes);
+        write(header);
+    }
+
+    private void writeCentralHeader(Entry entry) throws IOException {
+        ByteBuffer header = record(46 + entry.nameBytes.length);
+        header.putInt(CENTRAL_HEADER_SIGNATURE);
+        header.putShort((short) versionNeeded(entry));  // version made by
+        header.putShort((short) versionNeeded(entry));
+        header.putShort((short) entry.flags);
+        header.putShort((short) entry.method);
+        header.putInt(dosTime);
+        header.putInt((int) entry.crc);
+        header.putInt((int) entry.compressedSize);
+        header.putInt((int) entry.size);
+        header.putShort((short) entry.nameBytes.length);
+        header.putShort((short) 0);                 // extra field length
+        header.putShort((short) 0);                 // comment length
+        header.putShort((short) 0);                 // disk number
+        header.putShort((short) 0);                 // internal attributes
+        header.putInt(0);                           // external attributes
+        header.putInt((int) entry.localHeaderOffset);
+        header.put(entry.nameBytes);
+        write(header);
+    }
+
+    private static int versionNeeded(Entry entry) {
+        return entry.method == METHOD_DEFLATED ? 20 : 10;
+    }
+
+    private static ByteBuffer record(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private void write(ByteBuffer record) throws IOException {
+        out.write(record.array(), 0, record.position());
+        offset += record.position();
+    }
+
+    private static void checkSize(long size, String what) throws IOException {
+        if (size >= MAX_SIZE) throw new IOException(what + " is too large for a zip archive without ZIP64");
+    }
+
+    /** MS-DOS date and time, to two seconds, as stored in zip headers. */
+    private static int dosTime(LocalDateTime time) {
+        int year = Math.max(1980, time.getYear());
+        return (year - 1980) << 25 | time.getMonthValue() << 21 | time.getDayOfMonth() << 16
+                | time.getHour() << 11 | time.getMinute() << 5 | time.getSecond() >> 1;
+    }
+
+    private static final class Entry {
+        final String name;
+        final byte[] nameBytes;
+        final int    method;
+        final int    flags;
+        final long   localHeaderOffset;
+        long         crc;
+        long         compressedSize;
+        long         size;
+
+        Entry(String name, int method, int flags, long localHeaderOffset) {
+            this.name              = name;
+            this.nameBytes         = name.getBytes(StandardCharsets.UTF_8);
+            this.method            = method;
+            this.flags             = flags;
+            this.localHeaderOffset = localHeaderOffset;
+        }
+    }
+
+    /** Passes compressed entry data through to the archive, keeping {@link #offset} up to date. */
+    private final class Counting extends OutputStream {
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            offset++;
+        }
+
+        @Override
+        public void write(byte[] bytes, int off, int length) throws IOException {
+            out.write(bytes, off, length);
+            offset += length;
+        }
+    }
+}
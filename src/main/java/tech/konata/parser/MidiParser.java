@@ -1,14 +1,22 @@
 package tech.konata.parser;
 
-import tech.konata.convert.ProjectConverter;
+import tech.konata.convert.ScoreSink;
+import tech.konata.jfr.MidiLoadEvent;
+import tech.konata.jfr.NoteDispatchEvent;
+import tech.konata.jfr.SysexDecodeEvent;
 
-import javax.sound.midi.*;
+import javax.sound.midi.ShortMessage;
 import java.io.File;
+import java.util.Arrays;
 import java.util.List;
 
 /**
- * Parses a Standard MIDI File (SMF) and dispatches tempo, note, and pitch-bend
- * events to a list of {@link ProjectConverter} instances.
+ * Parses a Standard MIDI File (SMF) and dispatches tempo, note, pitch-bend and
+ * control-change events to a list of {@link ScoreSink}s, usually project converters.
+ *
+ * <h2>Event order</h2>
+ * All tracks are merged into one stream ordered by tick; simultaneous events
+ * keep their track order, and events of one track keep their file order.
  *
  * <h2>Channel convention</h2>
  * Only events on MIDI channel 0 (the first channel) are processed.  This
@@ -16,167 +24,312 @@ import java.util.List;
  *
  * <h2>PhoneSEQ SysEx</h2>
  * Each SysEx message on any channel is tested by {@link PhoneSeqParser}.  If it
- * matches the PLG100-SG PhoneSEQ format, the resolved {@link SgData} is stored
+ * matches the PLG100-SG PhoneSEQ format, the resolved {@link SgLyric} is stored
  * and assigned to the next NOTE_ON event.
  *
  * <h2>Note matching</h2>
  * NOTE_ON with velocity 0 is treated as NOTE_OFF (per the MIDI spec).  A note is
  * only forwarded to the converters when its corresponding NOTE_OFF is received
- * <em>and</em> a non-null {@link SgData} record was set before the NOTE_ON.
+ * <em>and</em> a non-null {@link SgLyric} was set before the NOTE_ON.
  */
 public final class MidiParser {
 
     private static final int TARGET_CHANNEL = 0;
 
-    private final List<ProjectConverter> converters;
-    private final PhoneSeqParser         phoneSeqParser;
+    private final List<? extends ScoreSink> converters;
+    private final PhoneSeqParser            phoneSeqParser;
+    private final SmfDecoder                decoder;
+
+    /** Per-MIDI-key pending note start tick, velocity and associated lyric occurrence. */
+    private final long[]    noteStartTick = new long[128];
+    private final int[]     noteVelocity  = new int[128];
+    private final SgLyric[] noteLyrics    = new SgLyric[128];
+
+    /** The lyric resolved from the most recently seen PhoneSEQ SysEx. */
+    private SgLyric pendingLyric = null;
+
+    /** Ticks per quarter note of the current stream, and the derived ms per tick (for logging). */
+    private int    resolution;
+    private double msPerTick;
 
-    /** Per-MIDI-key pending note start tick and associated SgData. */
-    private final long[]   noteStartTick = new long[128];
-    private final SgData[] noteLyrics    = new SgData[128];
+    /** Whether events are echoed to {@code System.out}. */
+    private boolean logging = true;
 
-    /** The SgData resolved from the most recently seen PhoneSEQ SysEx. */
-    private SgData pendingLyric = null;
+    public MidiParser(List<? extends ScoreSink> converters, List<SgData> sgTable) {
+        this(converters, new PhoneSeqParser(sgTable));
+    }
+
+    /**
+     * Creates a parser that resolves PhoneSEQ data with {@code phoneSeqParser},
+     * e.g. one whose {@link PhoneSeqCache} is shared across files.
+     */
+    public MidiParser(List<? extends ScoreSink> converters, PhoneSeqParser phoneSeqParser) {
+        this(converters, phoneSeqParser, new SmfDecoder());
+    }
 
-    public MidiParser(List<ProjectConverter> converters, List<SgData> sgTable) {
+    /**
+     * Same as {@link #MidiParser(List, PhoneSeqParser)}, decoding tracks with
+     * {@code decoder} (e.g. one bound to a dedicated fork/join pool).
+     */
+    public MidiParser(List<? extends ScoreSink> converters, PhoneSeqParser phoneSeqParser,
+                      SmfDecoder decoder) {
         this.converters     = converters;
-        this.phoneSeqParser = new PhoneSeqParser(sgTable);
+        this.phoneSeqParser = phoneSeqParser;
+        this.decoder        = decoder;
     }
 
     /**
      * Parses {@code midiFile} and dispatches all relevant events to the
      * registered converters.
      *
+     * <p>The tracks are decoded concurrently by {@link SmfDecoder} and merged by
+     * tick; the merged stream is then dispatched on the calling thread.
+     *
      * @param midiFile the SMF file to parse
      * @throws RuntimeException if the file cannot be read
      */
     public void parse(File midiFile) {
-        System.out.println("Parsing MIDI file: " + midiFile.getName());
+        if (logging) System.out.println("Parsing MIDI file: " + midiFile.getName());
 
-        Sequence sequence;
-        try {
-            sequence = MidiSystem.getSequence(midiFile);
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to read MIDI file: " + midiFile, e);
-        }
+        MidiLoadEvent loadEvent = new MidiLoadEvent();
+        loadEvent.begin();
+
+        SmfDecoder.Result decoded = decoder.decode(midiFile);
 
-        Track[] tracks = sequence.getTracks();
-        System.out.println("Tracks: " + tracks.length);
+        loadEvent.end();
+        if (loadEvent.shouldCommit()) {
+            loadEvent.file       = midiFile.getPath();
+            loadEvent.fileSize   = midiFile.length();
+            loadEvent.tracks     = decoded.getTrackCount();
+            loadEvent.events     = decoded.getRawEventCount();
+            loadEvent.resolution = decoded.resolution;
+            loadEvent.commit();
+        }
+        if (logging) {
+            System.out.println("Tracks: " + decoded.getTrackCount());
+            for (int ti = 0; ti < decoded.getTrackCount(); ti++) {
+                System.out.println("Track " + ti + ": " + decoded.trackEventCounts[ti] + " events");
+            }
+        }
 
-        double msPerTick = 0.0;
+        TrackEvents events = decoded.events;
+        beginStream(decoded.resolution);
 
-        for (int ti = 0; ti < tracks.length; ti++) {
-            Track track = tracks[ti];
-            System.out.println("Track " + ti + ": " + track.size() + " events");
+        for (int ei = 0; ei < events.size; ei++) {
+            long tick = events.ticks[ei];
+            int  word = events.words[ei];
 
-            for (int ei = 0; ei < track.size(); ei++) {
-                MidiEvent   event   = track.get(ei);
-                MidiMessage message = event.getMessage();
-                long        tick    = event.getTick();
+            switch (TrackEvents.kind(word)) {
+                case TrackEvents.TEMPO:
+                    onTempo(TrackEvents.payload(word), tick);
+                    break;
+                case TrackEvents.SHORT: {
+                    int payload = TrackEvents.payload(word);
+                    onShortMessage(payload >>> 16, (payload >>> 8) & 0x7F, payload & 0x7F, tick);
+                    break;
+                }
+                case TrackEvents.SYSEX:
+                    onSysex(events.sysex[TrackEvents.payload(word)]);
+                    break;
+                default:
+                    break;
+            }
+        }
 
-                if (message instanceof MetaMessage) {
-                    msPerTick = handleMetaMessage((MetaMessage) message, tick, msPerTick, sequence);
+        if (logging) System.out.println(phoneSeqParser.getCache());
+    }
 
-                } else if (message instanceof ShortMessage) {
-                    double curMs = tick * msPerTick;
-                    handleShortMessage((ShortMessage) message, tick, curMs);
+    /**
+     * Dispatches every remaining event of {@code events} to the registered
+     * converters, without materialising the file: heap use is independent of
+     * the length of the song. Call {@link SmfEventStream#rewind()} first to
+     * run another pass over the same stream.
+     *
+     * @param events the merged event stream of an SMF file
+     * @throws IllegalArgumentException if a track is malformed
+     */
+    public void parse(SmfEventStream events) {
+        if (logging) System.out.println("Tracks: " + events.getTrackCount());
 
-                } else if (message instanceof SysexMessage) {
-                    handleSysexMessage((SysexMessage) message);
-                }
+        beginStream(events.resolution);
+        while (events.next()) {
+            switch (events.kind()) {
+                case SmfEventStream.TEMPO:
+                    onTempo(events.microsPerQuarter(), events.tick());
+                    break;
+                case SmfEventStream.SHORT:
+                    onShortMessage(events.status(), events.data1(), events.data2(), events.tick());
+                    break;
+                case SmfEventStream.SYSEX:
+                    onSysex(events.sysexMessage());
+                    break;
+                default:
+                    break;
             }
         }
     }
 
     /**
-     * Handles meta messages; returns the (possibly updated) ms-per-tick value.
+     * Turns the per-event log on {@code System.out} on or off (it is on by
+     * default), e.g. for an extra pass over a stream that was already logged.
      */
-    private double handleMetaMessage(MetaMessage mm, long tick,
-                                     double currentMsPerTick, Sequence sequence) {
-        if (mm.getType() != 0x51) return currentMsPerTick; // only SET_TEMPO
+    public void setLogging(boolean logging) {
+        this.logging = logging;
+    }
 
-        byte[] data  = mm.getData();
-        int    tempo = (data[0] & 0xFF) << 16 | (data[1] & 0xFF) << 8 | (data[2] & 0xFF);
-        double bpm   = 60_000_000.0 / tempo;
+    // ---------------------------------------------------------------------------------
+    // Incremental entry points
+    // ---------------------------------------------------------------------------------
+
+    /**
+     * Starts a new event stream at {@code resolution} ticks per quarter note,
+     * forgetting any pending notes and lyric. {@link #parse(File)} calls this
+     * itself; live front ends call it once and then feed events one by one
+     * through {@link #onTempo}, {@link #onShortMessage} and {@link #onSysex},
+     * in tick order and from a single thread.
+     */
+    public void beginStream(int resolution) {
+        if (resolution <= 0) {
+            throw new IllegalArgumentException("Resolution must be positive: " + resolution);
+        }
+        this.resolution   = resolution;
+        this.msPerTick    = 0.0;
+        this.pendingLyric = null;
+        Arrays.fill(noteLyrics, null);
+    }
+
+    /**
+     * Handles a SET_TEMPO meta event.
+     *
+     * @param microsPerQuarter tempo in microseconds per quarter note
+     * @param tick             tick position of the event
+     */
+    public void onTempo(int microsPerQuarter, long tick) {
+        double bpm = 60_000_000.0 / microsPerQuarter;
 
         converters.forEach(c -> c.insertTempo(tick, bpm));
 
-        System.out.printf("[Tick %d] Tempo: %.2f BPM%n", tick, bpm);
-        return 60_000.0 / (bpm * sequence.getResolution());
+        if (logging) System.out.printf("[Tick %d] Tempo: %.2f BPM%n", tick, bpm);
+        msPerTick = 60_000.0 / (bpm * resolution);
     }
 
-    private void handleShortMessage(ShortMessage sm, long tick, double curMs) {
-        if (sm.getChannel() != TARGET_CHANNEL) {
+    /**
+     * Handles a channel message; only notes, pitch bends and control changes on
+     * channel 0 are used.
+     *
+     * @param status status byte (command and channel)
+     * @param data1  first data byte
+     * @param data2  second data byte, or 0 for one-byte messages
+     * @param tick   tick position of the event
+     */
+    public void onShortMessage(int status, int data1, int data2, long tick) {
+        if ((status & 0x0F) != TARGET_CHANNEL) {
             return;
         }
+        double curMs = tick * msPerTick;
 
-        switch (sm.getCommand()) {
+        switch (status & 0xF0) {
             case ShortMessage.NOTE_ON:
-                handleNoteOn(sm, tick, curMs);
+                handleNoteOn(data1, data2, tick, curMs);
                 break;
             case ShortMessage.PITCH_BEND:
-                handlePitchBend(sm, tick, curMs);
+                handlePitchBend(data1, data2, tick, curMs);
+                break;
+            case ShortMessage.CONTROL_CHANGE:
+                handleControlChange(data1, data2, tick, curMs);
                 break;
             default:
                 break;
         }
     }
 
-    private void handleNoteOn(ShortMessage sm, long tick, double curMs) {
-        int note     = sm.getData1();
-        int velocity = sm.getData2();
-
+    private void handleNoteOn(int note, int velocity, long tick, double curMs) {
         if (velocity == 0) {
             // NOTE_ON with velocity 0 = NOTE_OFF
             handleNoteOff(note, tick, curMs);
         } else {
-            System.out.printf("[%.1f ms] NOTE_ON: note=%d vel=%d%n", curMs, note, velocity);
-            if (pendingLyric != null) {
-                System.out.println("  - Lyric: " + pendingLyric.lyricsRepresentation
-                        + ", mode=" + pendingLyric.pronunciationMode);
+            if (logging) System.out.printf("[%.1f ms] NOTE_ON: note=%d vel=%d%n", curMs, note, velocity);
+            if (logging && pendingLyric != null) {
+                System.out.println("  - Lyric: " + pendingLyric.getLyric()
+                        + ", mode=" + pendingLyric.syllable.pronunciationMode);
                 if (pendingLyric.hasBreathMark) System.out.println("  - Has breath mark");
             }
             noteStartTick[note] = tick;
+            noteVelocity[note]  = velocity;
             noteLyrics[note]    = pendingLyric;
         }
     }
 
     private void handleNoteOff(int note, long tick, double curMs) {
-        System.out.printf("[%.1f ms] NOTE_OFF: note=%d%n", curMs, note);
-        SgData lyric = noteLyrics[note];
+        if (logging) System.out.printf("[%.1f ms] NOTE_OFF: note=%d%n", curMs, note);
+        SgLyric lyric = noteLyrics[note];
         if (lyric == null) return;
 
-        long startTick = noteStartTick[note];
-        String syllable = lyric.lyricsRepresentation;
-        converters.forEach(c -> c.insertNote(syllable, startTick, tick, note));
+        NoteDispatchEvent event = new NoteDispatchEvent();
+        event.begin();
+
+        long   startTick = noteStartTick[note];
+        int    velocity  = noteVelocity[note];
+        String syllable  = lyric.getLyric();
+        converters.forEach(c -> c.insertNote(syllable, startTick, tick, note, velocity));
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.key           = note;
+            event.tickOn        = startTick;
+            event.durationTicks = tick - startTick;
+            event.converters    = converters.size();
+            event.commit();
+        }
     }
 
-    private void handlePitchBend(ShortMessage sm, long tick, double curMs) {
-        int lsb   = sm.getData1();
-        int msb   = sm.getData2();
+    private void handlePitchBend(int lsb, int msb, long tick, double curMs) {
         int value = ((msb << 7) | lsb) - 8192; // centre at 0
 
         converters.forEach(c -> c.onPitchBend(value, tick));
-        System.out.printf("[%.1f ms] PITCH_BEND: %d%n", curMs, value);
+        if (logging) System.out.printf("[%.1f ms] PITCH_BEND: %d%n", curMs, value);
+    }
+
+    private void handleControlChange(int controller, int value, long tick, double curMs) {
+        converters.forEach(c -> c.onControlChange(controller, value, tick));
+        if (logging) System.out.printf("[%.1f ms] CONTROL_CHANGE: cc=%d value=%d%n", curMs, controller, value);
     }
 
-    private void handleSysexMessage(SysexMessage sysex) {
-        StringBuilder sb = new StringBuilder();
-        for (byte b : sysex.getMessage()) {
-            sb.append(String.format("%02X ", b));
+    /**
+     * Handles a SysEx message; PhoneSEQ messages set the lyric of the next note.
+     *
+     * @param message the complete message including the leading {@code F0}
+     */
+    public void onSysex(byte[] message) {
+        if (logging) {
+            StringBuilder sb = new StringBuilder();
+            for (byte b : message) {
+                sb.append(String.format("%02X ", b));
+            }
+            // Remove trailing space
+            System.out.println("[SysEx] " + sb.toString().stripTrailing());
+        }
+
+        SysexDecodeEvent event = new SysexDecodeEvent();
+        event.begin();
+
+        SgLyric parsed = phoneSeqParser.parse(message);
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.messageSize = message.length;
+            event.commit();
         }
-        // Remove trailing space
-        String hex = sb.toString().stripTrailing();
-        System.out.println("[SysEx] " + hex);
 
-        SgData parsed = phoneSeqParser.parse(hex);
         if (parsed != null) {
-            System.out.println("  - Parsed: " + parsed.inputText);
-            System.out.println("  - Mode=" + parsed.pronunciationMode
-                    + ", breath=" + parsed.hasBreathMark);
-            System.out.println("  - Phonemes: " + parsed.getValidPhonemeCount());
+            if (logging) {
+                System.out.println("  - Parsed: " + parsed.syllable.inputText);
+                System.out.println("  - Mode=" + parsed.syllable.pronunciationMode
+                        + ", breath=" + parsed.hasBreathMark);
+                System.out.println("  - Phonemes: " + parsed.syllable.getValidPhonemeCount());
+            }
             pendingLyric = parsed;
-        } else {
+        } else if (logging) {
             System.out.println("  - [Err] PhoneSEQ data parse failed");
         }
     }
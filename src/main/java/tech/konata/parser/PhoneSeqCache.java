@@ -0,0 +1,176 @@
+package tech.konata.parser;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded, thread-safe memo of PhoneSEQ resolutions, keyed by the raw SysEx
+ * body bytes (everything between the 7-byte PhoneSEQ header and {@code F7}).
+ *
+ * <p>A song repeats the same few dozen syllables thousands of times; with this
+ * cache each distinct body is split and searched against the SG table once.
+ * Bodies that match no table row are cached as well, so malformed data is not
+ * re-searched either.
+ *
+ * <p>One instance may be shared by any number of {@link PhoneSeqParser}s on
+ * any number of threads, e.g. across the files of a batch run or for the
+ * lifetime of a daemon, as long as they all use the <em>same</em> SG table:
+ * the first parser binds the cache to its table and parsers built on a
+ * different table are rejected.
+ *
+ * <p>When the cache reaches its capacity an arbitrary entry is dropped for each
+ * new one; with realistic working sets the bound is never reached and only
+ * guards against unbounded growth from garbage input.
+ */
+public final class PhoneSeqCache {
+
+    /** Default capacity: far more distinct syllables than the SG table holds. */
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    private final int capacity;
+    private final ConcurrentHashMap<BodyKey, Resolution> entries;
+
+    private final LongAdder hits   = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /** The table whose rows the cached resolutions refer to. */
+    private volatile List<SgData> boundTable;
+
+    public PhoneSeqCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public PhoneSeqCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.entries  = new ConcurrentHashMap<>(Math.min(capacity, 256));
+    }
+
+    /**
+     * The outcome of resolving one PhoneSEQ body.
+     */
+    static final class Resolution {
+        /** Resolved occurrence, or {@code null} if no row matched. */
+        final SgLyric lyric;
+        /** Whether the body contained the breath-mark code {@code 7E}. */
+        final boolean breath;
+        /** Number of data codes in the body, breath mark excluded. */
+        final int     phonemeCount;
+
+        Resolution(SgData match, boolean breath, int phonemeCount) {
+            this.lyric        = match != null ? new SgLyric(match, breath) : null;
+            this.breath       = breath;
+            this.phonemeCount = phonemeCount;
+        }
+    }
+
+    /**
+     * Binds this cache to {@code table}, or verifies it is already bound to it.
+     *
+     * @throws IllegalArgumentException if the cache already serves another table
+     */
+    synchronized void bind(List<SgData> table) {
+        if (boundTable == null) {
+            boundTable = table;
+        } else if (boundTable != table) {
+            throw new IllegalArgumentException("PhoneSeqCache is already bound to a different SG table");
+        }
+    }
+
+    /**
+     * Looks up the body {@code message[offset, offset + length)}; counts a hit or
+     * a miss.
+     */
+    Resolution get(byte[] message, int offset, int length) {
+        Resolution resolution = entries.get(new BodyKey(message, offset, length, /* copy */ false));
+        if (resolution != null) hits.increment();
+        else                    misses.increment();
+        return resolution;
+    }
+
+    void put(byte[] message, int offset, int length, Resolution resolution) {
+        if (entries.size() >= capacity) {
+            Iterator<BodyKey> it = entries.keySet().iterator();
+            if (it.hasNext()) {
+                entries.remove(it.next());
+            }
+        }
+        entries.putIfAbsent(new BodyKey(message, offset, length, /* copy */ true), resolution);
+    }
+
+    /** Number of lookups answered from the cache. */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /** Number of lookups that had to search the SG table. */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /** Fraction of lookups answered from the cache, in {@code [0, 1]}. */
+    public double getHitRate() {
+        long h = getHits();
+        long total = h + getMisses();
+        return total == 0 ? 0.0 : (double) h / total;
+    }
+
+    /** Number of distinct bodies currently cached. */
+    public int size() {
+        return entries.size();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("PhoneSeqCache{size=%d, hits=%d, misses=%d, hitRate=%.1f%%}",
+                size(), getHits(), getMisses(), getHitRate() * 100.0);
+    }
+
+    /**
+     * A byte range used as a map key. Lookup keys view the caller's array;
+     * stored keys own a copy.
+     */
+    private static final class BodyKey {
+        private final byte[] bytes;
+        private final int    offset;
+        private final int    length;
+        private final int    hash;
+
+        BodyKey(byte[] source, int offset, int length, boolean copy) {
+            if (copy) {
+                this.bytes  = Arrays.copyOfRange(source, offset, offset + length);
+                this.offset = 0;
+            } else {
+                this.bytes  = source;
+                this.offset = offset;
+            }
+            this.length = length;
+
+            int h = 1;
+            for (int i = 0; i < length; i++) {
+                h = 31 * h + source[offset + i];
+            }
+            this.hash = h;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof BodyKey)) return false;
+            BodyKey other = (BodyKey) o;
+            return hash == other.hash
+                && Arrays.equals(bytes, offset, offset + length,
+                                 other.bytes, other.offset, other.offset + other.length);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
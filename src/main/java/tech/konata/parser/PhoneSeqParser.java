@@ -1,11 +1,18 @@
 package tech.konata.parser;
 
+import tech.konata.jfr.PhoneSeqMatchEvent;
+
 import java.util.ArrayList;
 import java.util.List;
 
 /**
  * Parses PLG100-SG {@code PhoneSEQ} SysEx messages and resolves them to
- * {@link SgData} syllable records by searching the loaded SG table.
+ * {@link SgLyric} occurrences of {@link SgData} syllable records by searching
+ * the loaded SG table.
+ *
+ * <p>Parsing never modifies the table, and the only mutable state is the
+ * thread-safe {@link PhoneSeqCache}, so one parser (or many parsers sharing a
+ * table and cache) can be used from any number of threads.
  *
  * <h2>PhoneSEQ SysEx structure</h2>
  * All bytes are shown in hex. The message must match this layout:
@@ -53,31 +60,96 @@ public final class PhoneSeqParser {
     /** First CSV column index that holds phoneme/time data (used in matching). */
     private static final int PHONEME_COLUMNS_START = 9;
 
-    private final List<SgData> table;
+    // The same header as raw bytes: F0 43 1n 5D 03 0p 00
+    private static final int    BODY_START_BYTE     = 7;
+    private static final int    MIN_MESSAGE_BYTES   = BODY_START_BYTE + 1;   // header + F7
+
+    private final List<SgData>  table;
+    private final PhoneSeqCache cache;
 
     public PhoneSeqParser(List<SgData> table) {
+        this(table, new PhoneSeqCache());
+    }
+
+    /**
+     * @param table SG table to resolve syllables against
+     * @param cache resolution cache; may be shared with other parsers that use
+     *              the same {@code table}
+     * @throws IllegalArgumentException if {@code cache} is bound to another table
+     */
+    public PhoneSeqParser(List<SgData> table, PhoneSeqCache cache) {
         this.table = table;
+        this.cache = cache;
+        cache.bind(table);
+    }
+
+    /** Returns the resolution cache used by {@link #parse(byte[])}. */
+    public PhoneSeqCache getCache() {
+        return cache;
     }
 
     /**
-     * Attempts to parse a space-delimited hex SysEx string into an {@link SgData}
-     * record.
+     * Attempts to parse a space-delimited hex SysEx string into an
+     * {@link SgLyric} occurrence.
      *
      * @param hexString space-delimited hex bytes, e.g.
      *                  {@code "F0 43 10 5D 03 00 00 0D 0A 01 00 F7"}
-     * @return matching {@link SgData} with {@code hasBreathMark} set, or
-     *         {@code null} if the message does not conform to the PhoneSEQ format
-     *         or no table match is found
+     * @return the matching table row together with this occurrence's breath
+     *         flag, or {@code null} if the message does not conform to the
+     *         PhoneSEQ format or no table match is found
      */
-    public SgData parse(String hexString) {
+    public SgLyric parse(String hexString) {
         if (!isValidPhoneSeqHeader(hexString)) return null;
 
         String body = extractBody(hexString);
         if (body.isEmpty()) return null;
 
         System.out.println("  - Content: " + body);
-        String[] rawCodes = body.split(" ");
 
+        PhoneSeqMatchEvent event = new PhoneSeqMatchEvent();
+        event.begin();
+        return report(event, resolve(body.split(" ")), /* cacheHit */ false);
+    }
+
+    /**
+     * Same as {@link #parse(String)} for a raw SysEx message (including the
+     * leading {@code F0} and trailing {@code F7}, as returned by
+     * {@code SysexMessage.getMessage()}).
+     *
+     * <p>Resolutions are memoised in the {@link PhoneSeqCache} by body bytes, so
+     * a repeated syllable costs one hash lookup instead of a table search, and
+     * every repeat returns the same {@link SgLyric} instance.
+     */
+    public SgLyric parse(byte[] message) {
+        if (!isValidPhoneSeqHeader(message)) return null;
+
+        int bodyLength = message.length - MIN_MESSAGE_BYTES;
+        if (bodyLength <= 0) return null;
+
+        PhoneSeqMatchEvent event = new PhoneSeqMatchEvent();
+        event.begin();
+
+        PhoneSeqCache.Resolution resolution = cache.get(message, BODY_START_BYTE, bodyLength);
+        if (resolution != null) {
+            return report(event, resolution, /* cacheHit */ true);
+        }
+
+        StringBuilder body = new StringBuilder(bodyLength * 3);
+        for (int i = BODY_START_BYTE; i < BODY_START_BYTE + bodyLength; i++) {
+            if (body.length() > 0) body.append(' ');
+            body.append(String.format("%02X", message[i]));
+        }
+        System.out.println("  - Content: " + body);
+
+        resolution = resolve(body.toString().split(" "));
+        cache.put(message, BODY_START_BYTE, bodyLength, resolution);
+        return report(event, resolution, /* cacheHit */ false);
+    }
+
+    /**
+     * Strips the breath-mark code and searches the table for the remaining codes.
+     */
+    private PhoneSeqCache.Resolution resolve(String[] rawCodes) {
         // Strip breath-mark code (7E) and record its presence
         boolean      hasBreath    = false;
         List<String> filteredCodes = new ArrayList<>(rawCodes.length);
@@ -89,11 +161,35 @@ public final class PhoneSeqParser {
             }
         }
 
-        SgData match = findBestMatch(filteredCodes);
-        if (match != null) {
-            match.hasBreathMark = hasBreath;
+        return new PhoneSeqCache.Resolution(findBestMatch(filteredCodes), hasBreath, filteredCodes.size());
+    }
+
+    private static SgLyric report(PhoneSeqMatchEvent event, PhoneSeqCache.Resolution resolution,
+                                  boolean cacheHit) {
+        SgLyric lyric = resolution.lyric;
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.matched      = lyric != null;
+            event.cacheHit     = cacheHit;
+            event.phonemeCount = resolution.phonemeCount;
+            event.breathMark   = resolution.breath;
+            event.lyric        = lyric != null ? lyric.getLyric() : null;
+            event.commit();
         }
-        return match;
+        return lyric;
+    }
+
+    private static boolean isValidPhoneSeqHeader(byte[] m) {
+        if (m == null || m.length < MIN_MESSAGE_BYTES) return false;
+        return (m[0] & 0xFF) == 0xF0
+            && m[1] == 0x43
+            && (m[2] & 0xF0) == 0x10
+            && m[3] == 0x5D
+            && m[4] == 0x03
+            && (m[5] & 0xF0) == 0x00
+            && m[6] == 0x00
+            && (m[m.length - 1] & 0xFF) == 0xF7;
     }
 
     private static boolean isValidPhoneSeqHeader(String hex) {
@@ -1,5 +1,9 @@
 package tech.konata.parser;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 /**
  * One row from {@code SG_TABLE.csv}, representing a single syllable of the
  * PLG100-SG formant-singing synthesiser.
@@ -37,7 +41,13 @@ package tech.konata.parser;
  *
  * <h2>Breath mark</h2>
  * Phoneme code {@code 7E} in any phoneme slot signals a breath mark; it is
- * stripped from the matching data before comparison.
+ * stripped from the matching data before comparison. Whether a particular
+ * occurrence in a song carries a breath mark is recorded by {@link SgLyric},
+ * not here.
+ *
+ * <h2>Thread safety</h2>
+ * Instances are deeply immutable and are shared by every parser and thread
+ * that uses the table.
  */
 public final class SgData {
 
@@ -69,11 +79,20 @@ public final class SgData {
 
     public final String eox;
 
+    /**
+     * The row's PhoneSEQ data bytes as they appear on the wire, i.e. each
+     * non-empty phoneme code followed by its <em>raw</em> CSV time value.
+     */
+    private final List<String> phoneSeqCodes;
+
     /** Number of non-empty phoneme slots. */
     public final int availablePhonemeCount;
 
-    /** {@code true} if a breath mark (phoneme code {@code 7E}) is present. */
-    public boolean hasBreathMark;
+    /**
+     * {@code true} if the table row itself contains the breath-mark code
+     * {@code 7E} in a phoneme slot.
+     */
+    public final boolean hasBreathMark;
 
     /**
      * Pronunciation mode determined from the time fields:
@@ -112,6 +131,9 @@ public final class SgData {
         this.time4 = "**";
         this.time5 = "**";
         this.eox  = eox;
+        this.phoneSeqCodes = collectPhoneSeqCodes(
+                new String[] { ph1, ph2, ph3, ph4, ph5 },
+                new String[] { time1, time2, time3, time4, time5 });
 
         this.hasBreathMark        = containsBreathMark();
         this.availablePhonemeCount = countAvailablePhonemes(time1, time2, time3, time4, time5);
@@ -158,6 +180,28 @@ public final class SgData {
         return count;
     }
 
+    /**
+     * Returns the PhoneSEQ data bytes for this syllable (phoneme / time pairs,
+     * using the original CSV time values rather than the matching wildcards),
+     * e.g. {@code [7A, 01, 06, 04, 01, 00]} for "か".
+     *
+     * <p>Framing these codes with the SysEx header and {@code F7} yields a
+     * message that {@link PhoneSeqParser} resolves.
+     */
+    public List<String> getPhoneSeqCodes() {
+        return phoneSeqCodes;
+    }
+
+    private static List<String> collectPhoneSeqCodes(String[] phonemes, String[] times) {
+        List<String> codes = new ArrayList<>(phonemes.length * 2);
+        for (int i = 0; i < phonemes.length; i++) {
+            if (phonemes[i].isEmpty()) continue;
+            codes.add(phonemes[i]);
+            if (!times[i].isEmpty()) codes.add(times[i]);
+        }
+        return Collections.unmodifiableList(codes);
+    }
+
     /**
      * Returns {@code true} if any phoneme slot contains the breath-mark code
      * {@code 7E}.
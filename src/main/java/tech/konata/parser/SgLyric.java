@@ -0,0 +1,51 @@
+package tech.konata.parser;
+
+import java.util.Objects;
+
+/**
+ * One occurrence of a syllable in a song: a shared, immutable {@link SgData}
+ * table row (the flyweight) plus the per-occurrence breath-mark flag.
+ *
+ * <p>Table rows are never modified while parsing, so any number of threads can
+ * parse against one table. Instances are immutable and are themselves shared:
+ * {@link PhoneSeqParser} hands out the same {@code SgLyric} for every repeat of
+ * a PhoneSEQ body it has cached.
+ */
+public final class SgLyric {
+
+    /** The matching SG table row. */
+    public final SgData syllable;
+
+    /** {@code true} if this occurrence carried the breath-mark code {@code 7E}. */
+    public final boolean hasBreathMark;
+
+    public SgLyric(SgData syllable, boolean hasBreathMark) {
+        this.syllable      = Objects.requireNonNull(syllable, "syllable");
+        this.hasBreathMark = hasBreathMark;
+    }
+
+    /** Display text inserted into the project, i.e. the row's lyrics representation. */
+    public String getLyric() {
+        return syllable.lyricsRepresentation;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof SgLyric)) return false;
+        SgLyric other = (SgLyric) o;
+        return syllable == other.syllable && hasBreathMark == other.hasBreathMark;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * System.identityHashCode(syllable) + (hasBreathMark ? 1 : 0);
+    }
+
+    @Override
+    public String toString() {
+        return "SgLyric{lyric='" + syllable.lyricsRepresentation
+                + "', mode=" + syllable.pronunciationMode
+                + ", breath=" + hasBreathMark + "}";
+    }
+}
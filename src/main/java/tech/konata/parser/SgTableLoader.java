@@ -1,6 +1,7 @@
 package tech.konata.parser;
 
 import java.io.InputStream;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -24,8 +25,32 @@ public final class SgTableLoader {
     /** First column index that may contain a phoneme hex code. */
     private static final int PHONEME_HEX_START_COL = 7;
 
+    private static final String RESOURCE_PATH = "/SG_TABLE.csv";
+
     private SgTableLoader() { /* static utility class */ }
 
+    /**
+     * Returns a version identifier for the bundled SG table: the hex SHA-256 of
+     * the raw CSV resource. Any edit to the table changes the version.
+     *
+     * @throws RuntimeException if the resource cannot be read
+     */
+    public static String version() {
+        try (InputStream is = SgTableLoader.class.getResourceAsStream(RESOURCE_PATH)) {
+            if (is == null) {
+                throw new IllegalStateException("SG_TABLE.csv not found on classpath");
+            }
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(is.readAllBytes());
+            StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to read SG_TABLE.csv", e);
+        }
+    }
+
     /**
      * Loads {@code /SG_TABLE.csv} from the classpath and returns an unmodifiable
      * list of parsed {@link SgData} entries.
@@ -34,7 +59,7 @@ public final class SgTableLoader {
      * @throws RuntimeException if the resource cannot be read or parsed
      */
     public static List<SgData> load() {
-        InputStream is = SgTableLoader.class.getResourceAsStream("/SG_TABLE.csv");
+        InputStream is = SgTableLoader.class.getResourceAsStream(RESOURCE_PATH);
         if (is == null) {
             throw new IllegalStateException("SG_TABLE.csv not found on classpath");
         }
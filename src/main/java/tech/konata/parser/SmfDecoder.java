@@ -0,0 +1,224 @@
+package tech.konata.parser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Standard MIDI File decoder that decodes every track concurrently.
+ *
+ * <h2>Pipeline</h2>
+ * <ol>
+ *   <li>The header and the {@code MTrk} chunk boundaries are located with a
+ *       single cheap scan of the file bytes.</li>
+ *   <li>A fork/join task tree splits the track range in halves down to single
+ *       tracks. Each leaf decodes its chunk (delta times, running status,
+ *       meta and SysEx events) into a primitive {@link TrackEvents}
+ *       buffer.</li>
+ *   <li>On the way back up, sibling buffers are merged by tick. The merge is
+ *       stable and the lower-numbered track wins ties, so the result is the
+ *       events of all tracks ordered by {@code (tick, track, position)}.</li>
+ * </ol>
+ * Decoding and merging both run in the common {@link ForkJoinPool} unless a
+ * pool is supplied, so parse time for wide type-1 files scales with the number
+ * of cores.
+ *
+ * <p>Only tempo meta events, channel messages and SysEx messages are kept;
+ * everything else is counted but dropped.
+ */
+public final class SmfDecoder {
+
+    private static final int HEADER_MAGIC = 0x4D546864;   // "MThd"
+    private static final int TRACK_MAGIC  = 0x4D54726B;   // "MTrk"
+
+    private final ForkJoinPool pool;
+
+    public SmfDecoder() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public SmfDecoder(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * The decoded file: header values, per-track event counts and the merged
+     * event stream.
+     */
+    public static final class Result {
+        public final int   format;
+        public final int   resolution;
+        public final int[] trackEventCounts;
+
+        final TrackEvents events;
+
+        Result(int format, int resolution, int[] trackEventCounts, TrackEvents events) {
+            this.format           = format;
+            this.resolution       = resolution;
+            this.trackEventCounts = trackEventCounts;
+            this.events           = events;
+        }
+
+        /** Number of tracks in the file. */
+        public int getTrackCount() {
+            return trackEventCounts.length;
+        }
+
+        /** Number of events in all tracks, including the ones not kept. */
+        public long getRawEventCount() {
+            return events.rawEvents;
+        }
+    }
+
+    /**
+     * Reads and decodes {@code midiFile}.
+     *
+     * @throws RuntimeException if the file cannot be read or is not a valid SMF
+     */
+    public Result decode(File midiFile) {
+        byte[] data;
+        try {
+            data = Files.readAllBytes(midiFile.toPath());
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read MIDI file: " + midiFile, e);
+        }
+        try {
+            return decode(data);
+        } catch (IllegalArgumentException e) {
+            throw new RuntimeException("Failed to read MIDI file: " + midiFile, e);
+        }
+    }
+
+    /**
+     * Decodes an in-memory SMF image.
+     *
+     * @throws IllegalArgumentException if {@code data} is not a valid SMF
+     */
+    public Result decode(byte[] data) {
+        Layout layout = Layout.read(ByteBuffer.wrap(data));
+        List<int[]> chunks = layout.chunks;
+
+        int[]       counts = new int[chunks.size()];
+        TrackEvents events = chunks.isEmpty()
+                ? new TrackEvents(0)
+                : pool.invoke(new DecodeTask(data, chunks, counts, 0, chunks.size()));
+        return new Result(layout.format, layout.resolution, counts, events);
+    }
+
+    /**
+     * Header values and {@code MTrk} body boundaries of an SMF image, found
+     * with a single scan of the chunk headers.
+     */
+    static final class Layout {
+        final int         format;
+        final int         resolution;
+        final List<int[]> chunks;   // {start, end} of each MTrk body
+
+        private Layout(int format, int resolution, List<int[]> chunks) {
+            this.format     = format;
+            this.resolution = resolution;
+            this.chunks     = chunks;
+        }
+
+        /**
+         * @throws IllegalArgumentException if {@code data} is not a valid SMF
+         */
+        static Layout read(ByteBuffer data) {
+            int size = data.limit();
+            if (size < 14 || data.getInt(0) != HEADER_MAGIC) {
+                throw new IllegalArgumentException("Not a Standard MIDI File (missing MThd header)");
+            }
+            int headerLength = data.getInt(4);
+            if (headerLength < 6 || headerLength > size - 8) {
+                throw new IllegalArgumentException("Invalid MThd header length: " + headerLength);
+            }
+            int format       = data.getShort(8)  & 0xFFFF;
+            int division     = data.getShort(12) & 0xFFFF;
+
+            // PPQ division, or ticks per frame for SMPTE timing (as Sequence.getResolution())
+            int resolution = (division & 0x8000) == 0 ? division : division & 0xFF;
+
+            List<int[]> chunks = new ArrayList<>();
+            int pos = 8 + headerLength;
+            while (pos + 8 <= size) {
+                int magic  = data.getInt(pos);
+                int length = data.getInt(pos + 4);
+                int start  = pos + 8;
+                if (length < 0 || length > size - start) {
+                    throw new IllegalArgumentException("Truncated chunk at offset " + pos);
+                }
+                if (magic == TRACK_MAGIC) {
+                    chunks.add(new int[] { start, start + length });
+                }
+                pos = start + length;
+            }
+            return new Layout(format, resolution, chunks);
+        }
+    }
+
+    /**
+     * Decodes the tracks {@code [from, to)} and merges them into one buffer.
+     */
+    @SuppressWarnings("serial")   // ForkJoinTask is Serializable, but tasks are never serialized
+    private static final class DecodeTask extends RecursiveTask<TrackEvents> {
+        private final byte[]      data;
+        private final List<int[]> chunks;
+        private final int[]       counts;
+        private final int         from;
+        private final int         to;
+
+        DecodeTask(byte[] data, List<int[]> chunks, int[] counts, int from, int to) {
+            this.data   = data;
+            this.chunks = chunks;
+            this.counts = counts;
+            this.from   = from;
+            this.to     = to;
+        }
+
+        @Override
+        protected TrackEvents compute() {
+            if (to - from == 1) {
+                int[] chunk = chunks.get(from);
+                TrackEvents track = decodeTrack(data, chunk[0], chunk[1]);
+                counts[from] = (int) track.rawEvents;
+                return track;
+            }
+            int mid = (from + to) >>> 1;
+            DecodeTask left = new DecodeTask(data, chunks, counts, from, mid);
+            left.fork();
+            TrackEvents right = new DecodeTask(data, chunks, counts, mid, to).compute();
+            return TrackEvents.merge(left.join(), right);
+        }
+    }
+
+    /**
+     * Decodes one {@code MTrk} body, {@code data[start, end)}.
+     */
+    static TrackEvents decodeTrack(byte[] data, int start, int end) {
+        // A channel event takes at least 3 bytes with a delta time
+        TrackEvents track  = new TrackEvents((end - start) / 3);
+        TrackCursor cursor = new TrackCursor(ByteBuffer.wrap(data), start, end);
+
+        while (cursor.next()) {
+            switch (cursor.kind) {
+                case TrackEvents.TEMPO:
+                    track.addTempo(cursor.eventTick, cursor.payload);
+                    break;
+                case TrackEvents.SYSEX:
+                    track.addSysex(cursor.eventTick, cursor.sysexMessage());
+                    break;
+                default:
+                    int payload = cursor.payload;
+                    track.addShort(cursor.eventTick, payload >>> 16, (payload >>> 8) & 0xFF, payload & 0xFF);
+                    break;
+            }
+        }
+        track.rawEvents = cursor.rawEvents;
+        return track;
+    }
+}
@@ -0,0 +1,208 @@
+package tech.konata.parser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Pull-based, constant-memory reader of the merged event stream of a Standard
+ * MIDI File.
+ *
+ * <h2>Why</h2>
+ * {@link SmfDecoder} materialises every event of every track before the first
+ * one is dispatched, so its heap grows with the length of the song. This
+ * reader instead keeps one {@link TrackCursor} per track over the file bytes,
+ * which are memory-mapped rather than read onto the heap, and merges the
+ * cursors on the fly. Its heap use depends only on the number of tracks.
+ *
+ * <h2>Event order</h2>
+ * The same as {@link SmfDecoder}: by tick, simultaneous events in track order,
+ * events of one track in file order. A min-heap of the track cursors, keyed by
+ * {@code (tick, track)}, picks the next event.
+ *
+ * <h2>Usage</h2>
+ * <pre>
+ *   SmfEventStream events = SmfEventStream.open(file);
+ *   while (events.next()) {
+ *       switch (events.kind()) { ... }
+ *   }
+ *   events.rewind();   // for another pass
+ * </pre>
+ * Only tempo meta events, channel messages and SysEx messages are returned,
+ * as by {@link SmfDecoder}. Instances are not thread-safe.
+ */
+public final class SmfEventStream {
+
+    /** Event kinds returned by {@link #kind()}. */
+    public static final int SHORT = TrackEvents.SHORT;
+    public static final int TEMPO = TrackEvents.TEMPO;
+    public static final int SYSEX = TrackEvents.SYSEX;
+
+    public final int format;
+    public final int resolution;
+
+    private final TrackCursor[] cursors;
+
+    /** Indices of the cursors that have a current event, as a binary min-heap on {@code (tick, index)}. */
+    private final int[] heap;
+    private int         heapSize;
+
+    /** Cursor of the current event, or {@code null} before the first {@link #next()} and at the end. */
+    private TrackCursor current;
+    private boolean     started;
+
+    private SmfEventStream(ByteBuffer data) {
+        SmfDecoder.Layout layout = SmfDecoder.Layout.read(data);
+        List<int[]> chunks = layout.chunks;
+
+        this.format     = layout.format;
+        this.resolution = layout.resolution;
+        this.cursors    = new TrackCursor[chunks.size()];
+        this.heap       = new int[chunks.size()];
+        for (int i = 0; i < cursors.length; i++) {
+            cursors[i] = new TrackCursor(data, chunks.get(i)[0], chunks.get(i)[1]);
+        }
+    }
+
+    /**
+     * Memory-maps {@code midiFile} and reads its header and track layout.
+     * Events are decoded as they are pulled, so a malformed track is only
+     * reported when it is reached.
+     *
+     * @throws RuntimeException if the file cannot be read or is not a valid SMF
+     */
+    public static SmfEventStream open(File midiFile) {
+        ByteBuffer data;
+        try (FileChannel channel = FileChannel.open(midiFile.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new RuntimeException("MIDI file too large: " + midiFile);
+            }
+            // The mapping stays valid after the channel is closed
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0L, channel.size());
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read MIDI file: " + midiFile, e);
+        }
+        try {
+            return new SmfEventStream(data);
+        } catch (IllegalArgumentException e) {
+            throw new RuntimeException("Failed to read MIDI file: " + midiFile, e);
+        }
+    }
+
+    /**
+     * Reads an in-memory SMF image.
+     *
+     * @throws IllegalArgumentException if {@code data} is not a valid SMF
+     */
+    public static SmfEventStream of(byte[] data) {
+        return new SmfEventStream(ByteBuffer.wrap(data));
+    }
+
+    /** Number of tracks in the file. */
+    public int getTrackCount() {
+        return cursors.length;
+    }
+
+    /** Number of events in all tracks read so far, including the ones not returned. */
+    public long getRawEventCount() {
+        long count = 0L;
+        for (TrackCursor cursor : cursors) count += cursor.rawEvents;
+        return count;
+    }
+
+    /** Restarts the stream before its first event. */
+    public void rewind() {
+        for (TrackCursor cursor : cursors) cursor.rewind();
+        heapSize = 0;
+        current  = null;
+        started  = false;
+    }
+
+    /**
+     * Advances to the next event.
+     *
+     * @return {@code false} at the end of the stream
+     * @throws IllegalArgumentException if a track is malformed
+     */
+    public boolean next() {
+        if (!started) {
+            started = true;
+            for (int i = 0; i < cursors.length; i++) {
+                if (cursors[i].next()) push(i);
+            }
+        } else if (current != null) {
+            // Re-insert the track that supplied the previous event, at its next one
+            if (current.next()) {
+                siftDown(0);
+            } else {
+                heap[0] = heap[--heapSize];
+                if (heapSize > 0) siftDown(0);
+            }
+        }
+        current = heapSize > 0 ? cursors[heap[0]] : null;
+        return current != null;
+    }
+
+    /** Tick of the current event. */
+    public long tick() { return current.eventTick; }
+
+    /** Kind of the current event: {@link #SHORT}, {@link #TEMPO} or {@link #SYSEX}. */
+    public int kind() { return current.kind; }
+
+    /** Status byte (command and channel) of the current SHORT event. */
+    public int status() { return current.payload >>> 16; }
+
+    /** First data byte of the current SHORT event. */
+    public int data1() { return (current.payload >>> 8) & 0x7F; }
+
+    /** Second data byte of the current SHORT event, or {@code 0} for one-byte messages. */
+    public int data2() { return current.payload & 0x7F; }
+
+    /** Tempo of the current TEMPO event, in microseconds per quarter note. */
+    public int microsPerQuarter() { return current.payload; }
+
+    /**
+     * The current SYSEX event as a new array: the status byte ({@code F0}, or
+     * {@code F7} for escape events) followed by the payload.
+     */
+    public byte[] sysexMessage() { return current.sysexMessage(); }
+
+    private void push(int index) {
+        int i = heapSize++;
+        heap[i] = index;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!before(heap[i], heap[parent])) break;
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int left  = 2 * i + 1;
+            if (left >= heapSize) return;
+            int right = left + 1;
+            int child = right < heapSize && before(heap[right], heap[left]) ? right : left;
+            if (!before(heap[child], heap[i])) return;
+            swap(i, child);
+            i = child;
+        }
+    }
+
+    /** Whether the current event of track {@code a} comes before that of track {@code b}. */
+    private boolean before(int a, int b) {
+        long ta = cursors[a].eventTick;
+        long tb = cursors[b].eventTick;
+        return ta < tb || (ta == tb && a < b);
+    }
+
+    private void swap(int i, int j) {
+        int t = heap[i];
+        heap[i] = heap[j];
+        heap[j] = t;
+    }
+}
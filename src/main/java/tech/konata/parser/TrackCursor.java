@@ -0,0 +1,159 @@
+package tech.konata.parser;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Forward-only decoder of one {@code MTrk} body, {@code data[start, end)},
+ * that stops at each event {@link MidiParser} acts on.
+ *
+ * <p>It holds no per-event state beyond the current one: {@link SmfDecoder}
+ * copies the events into a {@link TrackEvents} buffer, while
+ * {@link SmfEventStream} merges the cursors of all tracks directly. SysEx
+ * payloads are not copied; {@link #sysexMessage()} builds the message on
+ * demand.
+ *
+ * <p>Offsets in error messages are positions in {@code data}, i.e. in the
+ * file when the whole file is wrapped or mapped.
+ */
+final class TrackCursor {
+
+    private static final int META_TEMPO = 0x51;
+
+    private final ByteBuffer data;
+    private final int        start;
+    private final int        end;
+
+    private int  pos;
+    private long tick;
+    private int  runningStatus;
+
+    /** Events decoded so far, including the ones not kept. */
+    long rawEvents;
+
+    /** The current event: tick, kind ({@link TrackEvents#SHORT} …) and payload as in a {@link TrackEvents} word. */
+    long eventTick;
+    int  kind;
+    int  payload;
+
+    /** SysEx status byte ({@code F0} or {@code F7}), payload offset and length of the current SYSEX event. */
+    private int sysexStatus;
+    private int sysexOffset;
+    private int sysexLength;
+
+    TrackCursor(ByteBuffer data, int start, int end) {
+        this.data  = data;
+        this.start = start;
+        this.end   = end;
+        rewind();
+    }
+
+    /** Restarts the cursor at the first event of the track. */
+    void rewind() {
+        pos           = start;
+        tick          = 0L;
+        runningStatus = 0;
+        rawEvents     = 0L;
+    }
+
+    /**
+     * Advances to the next tempo, channel or SysEx event.
+     *
+     * @return {@code false} at the end of the track
+     * @throws IllegalArgumentException if the track data is malformed
+     */
+    boolean next() {
+        while (pos < end) {
+            tick += readVarLength("delta time");
+
+            if (pos >= end) throw new IllegalArgumentException("Missing event after delta time at offset " + pos);
+            int status = data.get(pos) & 0xFF;
+            if (status < 0x80) {
+                if (runningStatus == 0) {
+                    throw new IllegalArgumentException("Data byte without running status at offset " + pos);
+                }
+                status = runningStatus;
+            } else {
+                pos++;
+            }
+            rawEvents++;
+
+            if (status == 0xFF) {
+                if (pos >= end) throw new IllegalArgumentException("Truncated meta event at offset " + pos);
+                int type   = data.get(pos++) & 0xFF;
+                int length = readVarLength("meta length");
+                if (length > end - pos) throw new IllegalArgumentException("Truncated meta event at offset " + pos);
+
+                int metaPos = pos;
+                pos += length;
+                if (type == META_TEMPO && length >= 3) {
+                    eventTick = tick;
+                    kind      = TrackEvents.TEMPO;
+                    payload   = (data.get(metaPos) & 0xFF) << 16 | (data.get(metaPos + 1) & 0xFF) << 8
+                              | (data.get(metaPos + 2) & 0xFF);
+                    return true;
+                }
+
+            } else if (status == 0xF0 || status == 0xF7) {
+                int length = readVarLength("SysEx length");
+                if (length > end - pos) throw new IllegalArgumentException("Truncated SysEx event at offset " + pos);
+
+                eventTick   = tick;
+                kind        = TrackEvents.SYSEX;
+                payload     = 0;
+                sysexStatus = status;
+                sysexOffset = pos;
+                sysexLength = length;
+                pos += length;
+                return true;
+
+            } else if (status >= 0x80 && status < 0xF0) {
+                runningStatus = status;
+                int command   = status & 0xF0;
+                int dataBytes = (command == 0xC0 || command == 0xD0) ? 1 : 2;
+                if (pos + dataBytes > end) throw new IllegalArgumentException("Truncated channel event at offset " + pos);
+
+                int data1 = data.get(pos) & 0x7F;
+                int data2 = dataBytes == 2 ? data.get(pos + 1) & 0x7F : 0;
+                pos += dataBytes;
+
+                eventTick = tick;
+                kind      = TrackEvents.SHORT;
+                payload   = status << 16 | data1 << 8 | data2;
+                return true;
+
+            } else {
+                throw new IllegalArgumentException(String.format("Invalid status byte %02X at offset %d", status, pos - 1));
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads a variable-length quantity of at most 4 bytes, the SMF limit, so
+     * the result fits in 28 bits and is never negative.
+     *
+     * @param what name of the field for error messages
+     * @throws IllegalArgumentException if the quantity is truncated or longer than 4 bytes
+     */
+    private int readVarLength(String what) {
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            if (pos >= end) throw new IllegalArgumentException("Truncated " + what + " at offset " + pos);
+            int b = data.get(pos++) & 0xFF;
+            value = (value << 7) | (b & 0x7F);
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IllegalArgumentException("Variable-length " + what + " longer than 4 bytes at offset " + (pos - 4));
+    }
+
+    /**
+     * The current SYSEX event as a complete message: the status byte followed
+     * by the payload, the same bytes {@code SysexMessage.getMessage()} returns.
+     */
+    byte[] sysexMessage() {
+        byte[] message = new byte[sysexLength + 1];
+        message[0] = (byte) sysexStatus;
+        data.get(sysexOffset, message, 1, sysexLength);
+        return message;
+    }
+}
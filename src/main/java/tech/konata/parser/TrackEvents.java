@@ -0,0 +1,109 @@
+package tech.konata.parser;
+
+import java.util.Arrays;
+
+/**
+ * Primitive, tick-sorted event buffer for one decoded SMF track, or for the
+ * merge of several.
+ *
+ * <p>Only the events {@link MidiParser} acts on are kept. Each one is a tick
+ * plus a packed {@code int} word:
+ * <pre>
+ *   bits 31–24  kind ({@link #SHORT}, {@link #TEMPO}, {@link #SYSEX})
+ *   bits 23–0   SHORT: status &lt;&lt; 16 | data1 &lt;&lt; 8 | data2
+ *               TEMPO: microseconds per quarter note
+ *               SYSEX: index into {@link #sysex}
+ * </pre>
+ * SysEx payloads are kept as the full message, including the leading
+ * {@code F0} (or {@code F7} for escape events), the same bytes
+ * {@code SysexMessage.getMessage()} returns.
+ */
+final class TrackEvents {
+
+    static final int SHORT = 0;
+    static final int TEMPO = 1;
+    static final int SYSEX = 2;
+
+    private static final int PAYLOAD_MASK = 0xFFFFFF;
+
+    long[]   ticks;
+    int[]    words;
+    byte[][] sysex;
+    int      size;
+    int      sysexCount;
+
+    /** Number of events in the source track(s), including the dropped ones. */
+    long     rawEvents;
+
+    TrackEvents(int capacity) {
+        this.ticks = new long[Math.max(capacity, 16)];
+        this.words = new int[ticks.length];
+        this.sysex = new byte[16][];
+    }
+
+    static int kind(int word) {
+        return word >>> 24;
+    }
+
+    static int payload(int word) {
+        return word & PAYLOAD_MASK;
+    }
+
+    void addShort(long tick, int status, int data1, int data2) {
+        add(tick, SHORT << 24 | status << 16 | data1 << 8 | data2);
+    }
+
+    void addTempo(long tick, int microsPerQuarter) {
+        add(tick, TEMPO << 24 | (microsPerQuarter & PAYLOAD_MASK));
+    }
+
+    void addSysex(long tick, byte[] message) {
+        if (sysexCount > PAYLOAD_MASK) {
+            throw new IllegalStateException("Too many SysEx events in one buffer: " + sysexCount);
+        }
+        if (sysexCount == sysex.length) {
+            sysex = Arrays.copyOf(sysex, sysex.length * 2);
+        }
+        sysex[sysexCount] = message;
+        add(tick, SYSEX << 24 | sysexCount++);
+    }
+
+    private void add(long tick, int word) {
+        if (size == ticks.length) {
+            ticks = Arrays.copyOf(ticks, size * 2);
+            words = Arrays.copyOf(words, size * 2);
+        }
+        ticks[size] = tick;
+        words[size] = word;
+        size++;
+    }
+
+    /**
+     * Stable two-way merge by tick: on equal ticks every event of {@code left}
+     * precedes those of {@code right}, so merging tracks in index order keeps
+     * the file's track order for simultaneous events.
+     */
+    static TrackEvents merge(TrackEvents left, TrackEvents right) {
+        TrackEvents out = new TrackEvents(left.size + right.size);
+        out.sysex     = new byte[Math.max(left.sysexCount + right.sysexCount, 16)][];
+        out.rawEvents = left.rawEvents + right.rawEvents;
+
+        int i = 0, j = 0;
+        while (i < left.size && j < right.size) {
+            if (right.ticks[j] < left.ticks[i]) out.copyFrom(right, j++);
+            else                                out.copyFrom(left,  i++);
+        }
+        while (i < left.size)  out.copyFrom(left,  i++);
+        while (j < right.size) out.copyFrom(right, j++);
+        return out;
+    }
+
+    private void copyFrom(TrackEvents source, int index) {
+        int word = source.words[index];
+        if (kind(word) == SYSEX) {
+            addSysex(source.ticks[index], source.sysex[payload(word)]);
+        } else {
+            add(source.ticks[index], word);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package tech.konata.tools;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Streams one {@code MTrk} chunk of a PLG100-SG Standard MIDI File; its length
+ * is patched in by {@link #end(long)}.
+ *
+ * <p>{@code out} must write through to {@code channel}, which is used to
+ * patch the chunk length once the track is complete. Channel messages are
+ * written without running status; pitch bends and notes go to MIDI channel 0,
+ * the PLG100-SG's default part.
+ */
+final class SmfTrackWriter {
+
+    private static final int    CHANNEL         = 0;
+    private static final byte[] PHONESEQ_HEADER = { 0x43, 0x10, 0x5D, 0x03, 0x00, 0x00 };
+    private static final int    BREATH_CODE     = 0x7E;
+
+    private final DataOutputStream out;
+    private final FileChannel      channel;
+    private long lengthPosition;
+    private long trackStart;
+    private long lastTick;
+
+    SmfTrackWriter(DataOutputStream out, FileChannel channel) {
+        this.out     = out;
+        this.channel = channel;
+    }
+
+    /** Writes a format-1 {@code MThd} chunk. */
+    static void writeHeader(DataOutputStream out, int tracks, int resolution) throws IOException {
+        out.writeBytes("MThd");
+        out.writeInt(6);
+        out.writeShort(1);          // format 1
+        out.writeShort(tracks);
+        out.writeShort(resolution);
+    }
+
+    void begin() throws IOException {
+        out.writeBytes("MTrk");
+        lengthPosition = out.size();
+        out.writeInt(0);
+        trackStart = out.size();
+        lastTick   = 0L;
+    }
+
+    void shortMessage(long tick, int status, int data1, int data2) throws IOException {
+        delta(tick);
+        out.write(status);
+        out.write(data1);
+        out.write(data2);
+    }
+
+    /** Writes a pitch bend; {@code value} is centred on 0, in {@code [-8192, 8191]}. */
+    void pitchBend(long tick, int value) throws IOException {
+        int raw = value + 8192;
+        shortMessage(tick, 0xE0 | CHANNEL, raw & 0x7F, (raw >> 7) & 0x7F);
+    }
+
+    /** Writes a PhoneSEQ SysEx carrying {@code body}, optionally followed by a breath mark. */
+    void sysex(long tick, byte[] body, boolean breath) throws IOException {
+        delta(tick);
+        int length = PHONESEQ_HEADER.length + body.length + (breath ? 1 : 0) + 1;
+        out.write(0xF0);
+        writeVarLen(length);
+        out.write(PHONESEQ_HEADER);
+        out.write(body);
+        if (breath) out.write(BREATH_CODE);
+        out.write(0xF7);
+    }
+
+    /** Writes a SET_TEMPO meta event. */
+    void tempo(long tick, int microsPerQuarter) throws IOException {
+        meta(tick, 0x51, new byte[] {
+                (byte) (microsPerQuarter >> 16), (byte) (microsPerQuarter >> 8), (byte) microsPerQuarter });
+    }
+
+    void meta(long tick, int type, byte[] data) throws IOException {
+        delta(tick);
+        out.write(0xFF);
+        out.write(type);
+        writeVarLen(data.length);
+        out.write(data);
+    }
+
+    void end(long tick) throws IOException {
+        meta(Math.max(tick, lastTick), 0x2F, new byte[0]);
+        out.flush();
+        long length = out.size() - trackStart;
+        ByteBuffer buf = ByteBuffer.allocate(4).putInt((int) length);
+        buf.flip();
+        channel.write(buf, lengthPosition);
+    }
+
+    private void delta(long tick) throws IOException {
+        if (tick < lastTick) {
+            throw new IllegalArgumentException("Event at tick " + tick + " after an event at tick " + lastTick);
+        }
+        writeVarLen(tick - lastTick);
+        lastTick = tick;
+    }
+
+    private void writeVarLen(long value) throws IOException {
+        long buffer = value & 0x7F;
+        while ((value >>= 7) > 0) {
+            buffer <<= 8;
+            buffer |= ((value & 0x7F) | 0x80);
+        }
+        while (true) {
+            out.write((int) (buffer & 0xFF));
+            if ((buffer & 0x80) != 0) buffer >>= 8;
+            else break;
+        }
+    }
+}
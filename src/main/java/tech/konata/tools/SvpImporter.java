@@ -0,0 +1,844 @@
+package tech.konata.tools;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import tech.konata.convert.Pair;
+import tech.konata.convert.Tempo;
+import tech.konata.convert.impl.SVP;
+import tech.konata.convert.pitch.AdaptiveSampler;
+import tech.konata.convert.pitch.PitchConverter;
+import tech.konata.convert.pitch.PitchCurve;
+import tech.konata.convert.pitch.SvpPitchProcessor;
+import tech.konata.convert.pitch.SvpPitchProcessor.SvpDefaultVibratoParameters;
+import tech.konata.convert.pitch.SvpPitchProcessor.SvpNoteWithVibrato;
+import tech.konata.convert.pitch.TickTimeTransformer;
+import tech.konata.parser.SgData;
+import tech.konata.parser.SgTableLoader;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Imports a Synthesizer V {@code .svp} project and writes it out as a
+ * PLG100-SG Standard MIDI File: PhoneSEQ SysEx for every lyric, notes on
+ * channel 0 and pitch bends for the pitch curve.
+ *
+ * <h2>Streaming</h2>
+ * The project is read with a {@link JsonReader}; no JSON tree is built. A
+ * first pass keeps, of the first track with notes, only the tempo map, the
+ * notes and the track's default vibrato, and checks that the
+ * {@code pitchDelta} and {@code vibratoEnv} points are in time order without
+ * keeping them. All other parameter curves ({@code loudness},
+ * {@code tension}, …) are skipped without being materialised, as are the
+ * remaining tracks and note groups. While the MIDI file is written, each of
+ * the two curves is read again by its own reader, phrase by phrase, alongside
+ * the notes.
+ *
+ * <h2>Pitch</h2>
+ * The pitch curve is turned into a lazy {@link PitchCurve} by
+ * {@link SvpPitchProcessor#buildSvpPitchCurve} one phrase (a run of notes
+ * without gaps) at a time, with the control points just outside the phrase
+ * included for interpolation, and bends are written straight from its
+ * samples. Only the control points of the current phrase are held, so the
+ * working set is bounded by the longest phrase, not by the length of the
+ * project or its sample count. Synthesizer V writes its points in time order;
+ * a curve that is not is read whole and sorted instead.
+ * Semitone offsets are written as pitch bends at
+ * {@value #BEND_UNITS_PER_SEMITONE} units per semitone, the scaling the
+ * converters use when reading them back, and each phrase ends with a
+ * pitch-bend reset.
+ *
+ * <p>The curve is sampled on the processor's fixed tick grid – once per flat
+ * stretch – unless a maximum error is given
+ * ({@code -D}{@value #MAX_ERROR_CENTS_PROPERTY}{@code =<cents>} for
+ * {@link #main}): then an {@link AdaptiveSampler} places the bends, held
+ * until the next one as the PLG100-SG does, only as densely as that error and
+ * the tempo require, between {@value #MIN_SAMPLE_INTERVAL_MS} and
+ * {@value #MAX_SAMPLE_INTERVAL_MS} ms apart. The {@link Summary} reports the
+ * resulting pitch points per second either way.
+ *
+ * <h2>Lyrics</h2>
+ * Lyrics are looked up in the SG table by display form, then by input text.
+ * {@code "-"} (extend the previous vowel) writes no SysEx, so the PLG100-SG
+ * keeps the previous syllable; {@code "br"} notes are dropped and put a breath
+ * mark on the preceding syllable. Unknown lyrics fall back to
+ * {@value PitchConverter#DEFAULT_LYRIC}.
+ */
+public final class SvpImporter {
+
+    private static final int    RESOLUTION              = PitchConverter.TICKS_IN_BEAT;
+    private static final double BEND_UNITS_PER_SEMITONE = 768.0;
+    private static final double CENTS_PER_SEMITONE      = 100.0;
+    private static final int    VELOCITY                = 100;
+    private static final String EXTEND_LYRIC            = "-";
+    private static final String BREATH_LYRIC            = "br";
+    private static final double MIN_SAMPLE_INTERVAL_MS  = 1.0;
+    private static final double MAX_SAMPLE_INTERVAL_MS  = 100.0;
+
+    /** System property read by {@link #main}: maximum pitch error in cents, enabling adaptive sampling. */
+    public static final String MAX_ERROR_CENTS_PROPERTY = "plg.svp.maxErrorCents";
+
+    private final Map<String, byte[]> phoneSeqByLyric = new HashMap<>();
+    private final byte[]              defaultPhoneSeq;
+    private final double              maxErrorCents;
+
+    public SvpImporter(List<SgData> table) {
+        this(table, 0.0);
+    }
+
+    /**
+     * @param maxErrorCents largest pitch error the adaptively sampled bends may
+     *                      leave, in cents; {@code 0} samples on the fixed grid
+     */
+    public SvpImporter(List<SgData> table, double maxErrorCents) {
+        if (!(maxErrorCents >= 0.0)) {
+            throw new IllegalArgumentException("maxErrorCents must not be negative: " + maxErrorCents);
+        }
+        this.maxErrorCents = maxErrorCents;
+
+        // Display forms take precedence over input texts; first row wins
+        for (SgData row : table) {
+            byte[] body = toBody(row);
+            if (body != null) phoneSeqByLyric.putIfAbsent(row.lyricsRepresentation, body);
+        }
+        for (SgData row : table) {
+            byte[] body = toBody(row);
+            if (body != null) phoneSeqByLyric.putIfAbsent(row.inputText, body);
+        }
+        defaultPhoneSeq = phoneSeqByLyric.get(PitchConverter.DEFAULT_LYRIC);
+        if (defaultPhoneSeq == null) {
+            throw new IllegalArgumentException("SG table has no row for " + PitchConverter.DEFAULT_LYRIC);
+        }
+    }
+
+    /**
+     * Usage: {@code SvpImporter <input.svp> [output.mid]}; the output defaults
+     * to the input name with a {@code .mid} extension.
+     */
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("Usage: SvpImporter <input.svp> [output.mid]");
+            System.exit(1);
+        }
+        File input  = new File(args[0]);
+        File output = args.length > 1 ? new File(args[1]) : new File(stripExtension(args[0]) + ".mid");
+
+        String maxError = System.getProperty(MAX_ERROR_CENTS_PROPERTY);
+        double maxErrorCents;
+        try {
+            maxErrorCents = maxError == null || maxError.isBlank() ? 0.0 : Double.parseDouble(maxError.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value for -D" + MAX_ERROR_CENTS_PROPERTY + ": " + maxError, e);
+        }
+
+        Summary summary = new SvpImporter(SgTableLoader.load(), maxErrorCents).importFile(input, output);
+        System.out.println("Wrote " + output + ": " + summary);
+    }
+
+    /**
+     * Summary of an import.
+     */
+    public static final class Summary {
+        public final int  notes;
+        public final int  tempoChanges;
+        public final long   pitchBends;
+        public final int    unknownLyrics;
+
+        /** Pitch samples per second of phrase, before bends that repeat a value are dropped. */
+        public final double pitchPointsPerSecond;
+
+        Summary(int notes, int tempoChanges, long pitchBends, int unknownLyrics, double pitchPointsPerSecond) {
+            this.notes                = notes;
+            this.tempoChanges         = tempoChanges;
+            this.pitchBends           = pitchBends;
+            this.unknownLyrics        = unknownLyrics;
+            this.pitchPointsPerSecond = pitchPointsPerSecond;
+        }
+
+        @Override
+        public String toString() {
+            return "Summary{notes=" + notes + ", tempos=" + tempoChanges + ", pitchBends=" + pitchBends
+                    + ", unknownLyrics=" + unknownLyrics
+                    + ", pitchPointsPerSecond=" + Math.round(pitchPointsPerSecond * 10.0) / 10.0 + "}";
+        }
+    }
+
+    /**
+     * Converts {@code svpFile} into the PLG100-SG MIDI file {@code midiFile}.
+     *
+     * @throws RuntimeException if the project cannot be read or the file cannot be written
+     */
+    public Summary importFile(File svpFile, File midiFile) {
+        Project project;
+        try (JsonReader reader = openReader(svpFile)) {
+            project = readProject(reader);
+        } catch (IOException | IllegalStateException | NumberFormatException e) {
+            throw new RuntimeException("Failed to read SVP file: " + svpFile, e);
+        }
+
+        try (RandomAccessFile raf = new RandomAccessFile(midiFile, "rw")) {
+            raf.setLength(0L);
+            FileChannel channel = raf.getChannel();
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+            Summary summary = write(svpFile, project, out, channel);
+            out.flush();
+            return summary;
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to write MIDI file: " + midiFile, e);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------
+    // Reading
+    // ---------------------------------------------------------------------------------
+
+    /** What the first pass learns about a {@code {"mode": …, "points": […]}} curve. */
+    private static final class CurveInfo {
+        final String name;
+        String       mode;
+        int          points;
+        boolean      sorted = true;
+
+        CurveInfo(String name) {
+            this.name = name;
+        }
+    }
+
+    /**
+     * Growable {@code (tick, value)} buffer kept in primitive arrays, holding a
+     * whole curve in tick order.
+     */
+    private static class PointBuffer implements Closeable {
+        long[]   ticks  = new long[64];
+        double[] values = new double[64];
+        int      size;
+        String   mode;
+
+        void add(long tick, double value) {
+            if (size == ticks.length) {
+                ticks  = Arrays.copyOf(ticks,  size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            ticks[size]  = tick;
+            values[size] = value;
+            size++;
+        }
+
+        /** Stable bottom-up merge sort by tick, on the primitive arrays. */
+        void sortByTick() {
+            long[]   t = new long[size];
+            double[] v = new double[size];
+            for (int width = 1; width < size; width *= 2) {
+                for (int lo = 0; lo < size; lo += 2 * width) {
+                    int mid = Math.min(lo + width, size);
+                    int hi  = Math.min(lo + 2 * width, size);
+                    int i = lo, j = mid, k = lo;
+                    while (k < hi) {
+                        int from = (j >= hi || (i < mid && ticks[i] <= ticks[j])) ? i++ : j++;
+                        t[k] = ticks[from];
+                        v[k] = values[from];
+                        k++;
+                    }
+                }
+                long[]   swapT = ticks;  ticks  = t; t = swapT;
+                double[] swapV = values; values = v; v = swapV;
+            }
+        }
+
+        /** Index of the first point with {@code tick >= target}. */
+        int lowerBound(long target) {
+            int lo = 0, hi = size;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (ticks[mid] < target) lo = mid + 1;
+                else                     hi = mid;
+            }
+            return lo;
+        }
+
+        /**
+         * Points in {@code [from, to]} plus the nearest point on either side, so
+         * interpolation across the window edges matches the whole curve.
+         * Windows are requested in increasing order.
+         */
+        List<Pair<Long, Double>> window(long from, long to) throws IOException {
+            int start = Math.max(0, lowerBound(from) - 1);
+            int end   = Math.min(size, lowerBound(to + 1) + 1);
+            List<Pair<Long, Double>> list = new ArrayList<>(Math.max(0, end - start));
+            for (int i = start; i < end; i++) {
+                list.add(new Pair<>(ticks[i], values[i]));
+            }
+            return list;
+        }
+
+        @Override
+        public void close() throws IOException {
+            // nothing to release
+        }
+    }
+
+    /**
+     * A curve whose points are in tick order, read from the file as the
+     * windows move forward: the buffer only holds the current window and the
+     * point before it.
+     */
+    private static final class PointStream extends PointBuffer {
+        private final JsonReader reader;   // inside the points array
+        private final long       blickOffset;
+        private final double     scale;
+        private boolean          exhausted;
+
+        PointStream(JsonReader reader, String mode, long blickOffset, double scale) {
+            this.reader      = reader;
+            this.mode        = mode;
+            this.blickOffset = blickOffset;
+            this.scale       = scale;
+        }
+
+        @Override
+        List<Pair<Long, Double>> window(long from, long to) throws IOException {
+            // Drop what earlier windows needed, keeping the last point before this one
+            int first = Math.max(0, lowerBound(from) - 1);
+            if (first > 0) {
+                System.arraycopy(ticks,  first, ticks,  0, size - first);
+                System.arraycopy(values, first, values, 0, size - first);
+                size -= first;
+            }
+            // Read up to the first point after the window
+            while (!exhausted && (size == 0 || ticks[size - 1] <= to)) {
+                if (!reader.hasNext()) {
+                    exhausted = true;
+                    break;
+                }
+                long position = Math.round(reader.nextDouble());
+                if (!reader.hasNext()) {
+                    exhausted = true;
+                    break;
+                }
+                double value = reader.nextDouble();
+                long   tick  = toTick(position + blickOffset);
+                if (tick < from) size = 0;   // in order, so every buffered point is before the window too
+                add(tick, value * scale);
+            }
+            return super.window(from, to);
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+
+    private static final class ImportedNote {
+        long   onsetBlicks;
+        long   durationBlicks;
+        int     key = PitchConverter.DEFAULT_KEY;
+        String  lyric = "";
+        boolean breath;   // followed by a "br" note
+        Double vibratoStart, easeIn, easeOut, depth, frequency, phase;
+
+        SvpNoteWithVibrato toVibratoNote(long onsetTick, long endTick) {
+            return new SvpNoteWithVibrato(onsetTick, endTick - onsetTick,
+                    vibratoStart, easeIn, easeOut, depth, frequency, phase);
+        }
+    }
+
+    private static final class Track {
+        final List<ImportedNote> notes      = new ArrayList<>();
+        final CurveInfo          pitch      = new CurveInfo("pitchDelta");   // blicks → cents
+        final CurveInfo          vibratoEnv = new CurveInfo("vibratoEnv");   // blicks → amplitude
+        long   blickOffset;
+        int    pitchOffset;
+        Double vibratoStart, easeIn, easeOut, depth, frequency;
+    }
+
+    private static final class Project {
+        final List<Tempo> tempos = new ArrayList<>();
+        Track track;
+        int   trackIndex;   // of the track in the "tracks" array
+    }
+
+    private static JsonReader openReader(File svpFile) throws IOException {
+        JsonReader reader = new JsonReader(new BufferedReader(
+                new InputStreamReader(new FileInputStream(svpFile), StandardCharsets.UTF_8), 1 << 16));
+        // Synthesizer V pads its files with a trailing NUL; stop after the root object
+        reader.setLenient(true);
+        return reader;
+    }
+
+    private static Project readProject(JsonReader reader) throws IOException {
+        Project project = new Project();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "time":
+                    readTime(reader, project.tempos);
+                    break;
+                case "tracks":
+                    reader.beginArray();
+                    for (int index = 0; reader.hasNext(); index++) {
+                        if (project.track != null) {
+                            reader.skipValue();
+                            continue;
+                        }
+                        Track track = readTrack(reader);
+                        if (!track.notes.isEmpty()) {
+                            project.track      = track;
+                            project.trackIndex = index;
+                        }
+                    }
+                    reader.endArray();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        if (project.track == null) {
+            throw new IllegalStateException("Project has no track with notes");
+        }
+        return project;
+    }
+
+    private static void readTime(JsonReader reader, List<Tempo> tempos) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (!reader.nextName().equals("tempo")) {
+                reader.skipValue();
+                continue;
+            }
+            reader.beginArray();
+            while (reader.hasNext()) {
+                long   position = 0L;
+                double bpm      = PitchConverter.DEFAULT_BPM;
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    switch (reader.nextName()) {
+                        case "position": position = Math.round(reader.nextDouble()); break;
+                        case "bpm":      bpm      = reader.nextDouble();             break;
+                        default:         reader.skipValue();                        break;
+                    }
+                }
+                reader.endObject();
+                tempos.add(new Tempo(Math.max(0L, toTick(position)), bpm));
+            }
+            reader.endArray();
+        }
+        reader.endObject();
+    }
+
+    private static Track readTrack(JsonReader reader) throws IOException {
+        Track track = new Track();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "mainGroup": readGroup(reader, track); break;
+                case "mainRef":   readRef(reader, track);   break;
+                default:          reader.skipValue();       break;
+            }
+        }
+        reader.endObject();
+        return track;
+    }
+
+    private static void readGroup(JsonReader reader, Track track) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "notes":
+                    reader.beginArray();
+                    while (reader.hasNext()) track.notes.add(readNote(reader));
+                    reader.endArray();
+                    break;
+                case "parameters":
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        switch (reader.nextName()) {
+                            case "pitchDelta": readCurve(reader, track.pitch);      break;
+                            case "vibratoEnv": readCurve(reader, track.vibratoEnv); break;
+                            default:           reader.skipValue();                  break;
+                        }
+                    }
+                    reader.endObject();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Reads the mode of {@code {"mode": …, "points": [pos0, val0, pos1, val1, …]}}
+     * and counts the points, checking that they are in time order.
+     */
+    private static void readCurve(JsonReader reader, CurveInfo curve) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "mode":
+                    curve.mode = reader.nextString();
+                    break;
+                case "points":
+                    reader.beginArray();
+                    long previous = Long.MIN_VALUE;
+                    while (reader.hasNext()) {
+                        long position = Math.round(reader.nextDouble());
+                        if (!reader.hasNext()) break;
+                        reader.nextDouble();
+                        if (position < previous) curve.sorted = false;
+                        previous = position;
+                        curve.points++;
+                    }
+                    reader.endArray();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+    }
+
+    private static ImportedNote readNote(JsonReader reader) throws IOException {
+        ImportedNote note = new ImportedNote();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "onset":    note.onsetBlicks    = Math.round(reader.nextDouble()); break;
+                case "duration": note.durationBlicks = Math.round(reader.nextDouble()); break;
+                case "pitch":    note.key            = reader.nextInt();                break;
+                case "lyrics":   note.lyric          = reader.nextString().trim();      break;
+                case "attributes":
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        switch (reader.nextName()) {
+                            case "tF0VbrStart": note.vibratoStart = nextDouble(reader); break;
+                            case "tF0VbrLeft":  note.easeIn       = nextDouble(reader); break;
+                            case "tF0VbrRight": note.easeOut      = nextDouble(reader); break;
+                            case "dF0Vbr":      note.depth        = nextDouble(reader); break;
+                            case "fF0Vbr":      note.frequency    = nextDouble(reader); break;
+                            case "pF0Vbr":      note.phase        = nextDouble(reader); break;
+                            default:            reader.skipValue();                    break;
+                        }
+                    }
+                    reader.endObject();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        return note;
+    }
+
+    private static void readRef(JsonReader reader, Track track) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "blickOffset": track.blickOffset = Math.round(reader.nextDouble()); break;
+                case "pitchOffset": track.pitchOffset = reader.nextInt();                break;
+                case "voice":
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        switch (reader.nextName()) {
+                            case "tF0VbrStart": track.vibratoStart = nextDouble(reader); break;
+                            case "tF0VbrLeft":  track.easeIn       = nextDouble(reader); break;
+                            case "tF0VbrRight": track.easeOut      = nextDouble(reader); break;
+                            case "dF0Vbr":      track.depth        = nextDouble(reader); break;
+                            case "fF0Vbr":      track.frequency    = nextDouble(reader); break;
+                            default:            reader.skipValue();                     break;
+                        }
+                    }
+                    reader.endObject();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Opens {@code curve} of the imported track for the second pass, in absolute
+     * ticks with its values multiplied by {@code scale}: streamed if its points
+     * are in order, otherwise read whole and sorted.
+     */
+    private static PointBuffer openCurve(File svpFile, Project project, CurveInfo curve, double scale)
+            throws IOException {
+        if (curve.points == 0) {
+            PointBuffer empty = new PointBuffer();
+            empty.mode = curve.mode;
+            return empty;
+        }
+
+        long       blickOffset = project.track.blickOffset;
+        JsonReader reader      = openReader(svpFile);
+        try {
+            seekPoints(reader, project.trackIndex, curve.name);
+            if (curve.sorted) return new PointStream(reader, curve.mode, blickOffset, scale);
+
+            PointBuffer buffer = new PointBuffer();
+            buffer.mode = curve.mode;
+            while (reader.hasNext()) {
+                long position = Math.round(reader.nextDouble());
+                if (!reader.hasNext()) break;
+                buffer.add(toTick(position + blickOffset), reader.nextDouble() * scale);
+            }
+            reader.close();
+            buffer.sortByTick();
+            return buffer;
+        } catch (IOException | RuntimeException e) {
+            reader.close();
+            throw e;
+        }
+    }
+
+    /** Moves {@code reader} into the points array of curve {@code name} of track {@code trackIndex}. */
+    private static void seekPoints(JsonReader reader, int trackIndex, String name) throws IOException {
+        reader.beginObject();
+        if (seekMember(reader, "tracks")) {
+            reader.beginArray();
+            for (int i = 0; i < trackIndex && reader.hasNext(); i++) reader.skipValue();
+            if (reader.hasNext()) {
+                reader.beginObject();
+                if (seekMember(reader, "mainGroup")) {
+                    reader.beginObject();
+                    if (seekMember(reader, "parameters")) {
+                        reader.beginObject();
+                        if (seekMember(reader, name)) {
+                            reader.beginObject();
+                            if (seekMember(reader, "points")) {
+                                reader.beginArray();
+                                return;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        throw new IllegalStateException("SVP file changed while importing: " + name + " points not found");
+    }
+
+    /** Skips the members of the current object up to {@code name}; {@code false} if it has none. */
+    private static boolean seekMember(JsonReader reader, String name) throws IOException {
+        while (reader.hasNext()) {
+            if (reader.nextName().equals(name)) return true;
+            reader.skipValue();
+        }
+        return false;
+    }
+
+    /** Reads a number, or returns {@code null} for a JSON null or a non-numeric value. */
+    private static Double nextDouble(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.NUMBER) {
+            reader.skipValue();
+            return null;
+        }
+        return reader.nextDouble();
+    }
+
+    // ---------------------------------------------------------------------------------
+    // Writing
+    // ---------------------------------------------------------------------------------
+
+    private Summary write(File svpFile, Project project, DataOutputStream out, FileChannel channel)
+            throws IOException {
+        Track track = project.track;
+
+        List<Tempo> tempos = new ArrayList<>(project.tempos);
+        tempos.sort(Comparator.comparingLong(t -> t.tickPosition));
+        if (tempos.isEmpty() || tempos.get(0).tickPosition > 0) {
+            tempos.add(0, new Tempo(0L, PitchConverter.DEFAULT_BPM));
+        }
+
+        List<ImportedNote> notes = track.notes;
+        notes.sort(Comparator.comparingLong(n -> n.onsetBlicks));
+        for (int i = 0; i + 1 < notes.size(); i++) {
+            notes.get(i).breath = BREATH_LYRIC.equals(notes.get(i + 1).lyric);
+        }
+
+        SvpDefaultVibratoParameters defaults = new SvpDefaultVibratoParameters(
+                track.vibratoStart, track.easeIn, track.easeOut, track.depth, track.frequency);
+
+        SmfTrackWriter.writeHeader(out, 2, RESOLUTION);   // conductor + vocal part
+
+        SmfTrackWriter conductor = new SmfTrackWriter(out, channel);
+        conductor.begin();
+        conductor.meta(0L, 0x03, "Conductor".getBytes(StandardCharsets.US_ASCII));
+        for (Tempo tempo : tempos) {
+            conductor.tempo(tempo.tickPosition, (int) Math.round(60_000_000.0 / tempo.bpm));
+        }
+        conductor.end(tempos.get(tempos.size() - 1).tickPosition);
+
+        SmfTrackWriter part = new SmfTrackWriter(out, channel);
+        part.begin();
+        part.meta(0L, 0x03, "PLG100-SG".getBytes(StandardCharsets.US_ASCII));
+
+        TickTimeTransformer transformer = new TickTimeTransformer(tempos);
+        AdaptiveSampler     sampler     = maxErrorCents > 0.0
+                ? new AdaptiveSampler(transformer, AdaptiveSampler.Reconstruction.HOLD,
+                        maxErrorCents / CENTS_PER_SEMITONE, MIN_SAMPLE_INTERVAL_MS, MAX_SAMPLE_INTERVAL_MS)
+                : null;
+
+        PhraseWriter writer = new PhraseWriter(part, track.pitchOffset, transformer, sampler);
+        // Curve positions are relative to the group; both are read in absolute ticks
+        try (PointBuffer pitch = openCurve(svpFile, project, track.pitch, 1.0 / CENTS_PER_SEMITONE);
+             PointBuffer env   = openCurve(svpFile, project, track.vibratoEnv, 1.0)) {
+            List<ImportedNote> phrase = new ArrayList<>();
+            long phraseEnd = Long.MIN_VALUE;
+
+            for (ImportedNote note : notes) {
+                if (BREATH_LYRIC.equals(note.lyric)) continue;
+
+                long onset = toTick(note.onsetBlicks + track.blickOffset);
+                long end   = toTick(note.onsetBlicks + note.durationBlicks + track.blickOffset);
+                if (onset < 0 || end <= onset) continue;
+
+                if (!phrase.isEmpty() && onset > phraseEnd) {
+                    writer.writePhrase(phrase, pitch, env, tempos, defaults, track.blickOffset);
+                    phrase.clear();
+                }
+                phrase.add(note);
+                phraseEnd = Math.max(phraseEnd, end);
+            }
+            if (!phrase.isEmpty()) {
+                writer.writePhrase(phrase, pitch, env, tempos, defaults, track.blickOffset);
+            }
+        }
+        part.end(writer.lastTick);
+
+        double pointsPerSecond = writer.seconds > 0.0 ? writer.pitchPoints / writer.seconds : 0.0;
+        return new Summary(writer.notes, tempos.size(), writer.bends, writer.unknownLyrics, pointsPerSecond);
+    }
+
+    /**
+     * Writes notes, PhoneSEQ and pitch bends one phrase at a time.
+     */
+    private final class PhraseWriter {
+        final SmfTrackWriter      track;
+        final int                 pitchOffset;
+        final TickTimeTransformer transformer;
+        final AdaptiveSampler     sampler;   // null = fixed grid
+
+        int    notes;
+        long   bends;
+        int    unknownLyrics;
+        long   lastTick;
+        long   pitchPoints;
+        double seconds;
+        int    lastBend;
+
+        PhraseWriter(SmfTrackWriter track, int pitchOffset, TickTimeTransformer transformer,
+                     AdaptiveSampler sampler) {
+            this.track       = track;
+            this.pitchOffset = pitchOffset;
+            this.transformer = transformer;
+            this.sampler     = sampler;
+        }
+
+        void writePhrase(List<ImportedNote> phrase, PointBuffer pitch, PointBuffer env, List<Tempo> tempos,
+                         SvpDefaultVibratoParameters defaults, long blickOffset) throws IOException {
+            int    count  = phrase.size();
+            long[] onsets = new long[count];
+            long[] ends   = new long[count];
+            List<SvpNoteWithVibrato> vibratoNotes = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                ImportedNote note = phrase.get(i);
+                onsets[i] = toTick(note.onsetBlicks + blickOffset);
+                ends[i]   = toTick(note.onsetBlicks + note.durationBlicks + blickOffset);
+                if (i > 0 && onsets[i] < ends[i - 1]) ends[i - 1] = onsets[i];   // no overlaps
+                vibratoNotes.add(note.toVibratoNote(onsets[i], ends[i]));
+            }
+            long phraseStart = onsets[0];
+            long phraseEnd   = ends[count - 1];
+
+            PitchCurve curve = SvpPitchProcessor.buildSvpPitchCurve(
+                    pitch.window(phraseStart, phraseEnd), pitch.mode, vibratoNotes, tempos,
+                    env.window(phraseStart, phraseEnd), env.mode, defaults);
+            seconds += transformer.tickToSec(phraseEnd) - transformer.tickToSec(phraseStart);
+            lastBend = 0;
+
+            for (int i = 0; i < count; i++) {
+                ImportedNote note = phrase.get(i);
+
+                // Bends up to the previous note's release, the release, then bends up to this onset:
+                // a note inside a longer one ends before the next onset
+                if (i > 0) {
+                    writeBends(curve, onsets[i - 1], ends[i - 1]);
+                    track.shortMessage(ends[i - 1], 0x90, key(phrase.get(i - 1)), 0);
+                    writeBends(curve, ends[i - 1], onsets[i]);
+                }
+
+                if (!EXTEND_LYRIC.equals(note.lyric)) {
+                    byte[] body = phoneSeqByLyric.get(note.lyric);
+                    if (body == null) {
+                        System.out.println("[Warn] Unknown lyric '" + note.lyric + "' at tick " + onsets[i]
+                                + "; using " + PitchConverter.DEFAULT_LYRIC);
+                        body = defaultPhoneSeq;
+                        unknownLyrics++;
+                    }
+                    track.sysex(onsets[i], body, note.breath);
+                }
+                track.shortMessage(onsets[i], 0x90, key(note), VELOCITY);
+                notes++;
+            }
+
+            writeBends(curve, onsets[count - 1], phraseEnd);
+            track.shortMessage(phraseEnd, 0x90, key(phrase.get(count - 1)), 0);
+            if (lastBend != 0) {
+                track.pitchBend(phraseEnd, 0);
+                bends++;
+            }
+            lastTick = phraseEnd;
+        }
+
+        /** Samples {@code [from, to)} of the curve and writes a bend wherever the value changes. */
+        private void writeBends(PitchCurve curve, long from, long to) throws IOException {
+            pitchPoints += sampler != null
+                    ? curve.sample(from, to, sampler, this::writeBend)
+                    : curve.sample(from, to, SvpPitchProcessor.SAMPLING_INTERVAL_TICK, this::writeBend);
+        }
+
+        private void writeBend(long tick, double semitones) throws IOException {
+            int value = (int) Math.round(semitones * BEND_UNITS_PER_SEMITONE);
+            value = Math.max(-8192, Math.min(8191, value));
+            if (value == lastBend) return;
+            track.pitchBend(tick, value);
+            bends++;
+            lastBend = value;
+        }
+
+        private int key(ImportedNote note) {
+            return Math.max(0, Math.min(127, note.key + pitchOffset));
+        }
+    }
+
+    private static long toTick(long blicks) {
+        return Math.round((double) blicks / SVP.BLICKS_PER_TICK);
+    }
+
+    private static byte[] toBody(SgData row) {
+        List<String> codes = row.getPhoneSeqCodes();
+        if (codes.isEmpty()) return null;
+        byte[] body = new byte[codes.size()];
+        for (int i = 0; i < body.length; i++) {
+            body[i] = (byte) Integer.parseInt(codes.get(i), 16);
+        }
+        return body;
+    }
+
+    private static String stripExtension(String path) {
+        int dot = path.lastIndexOf('.');
+        return (dot > path.lastIndexOf(File.separatorChar)) ? path.substring(0, dot) : path;
+    }
+}
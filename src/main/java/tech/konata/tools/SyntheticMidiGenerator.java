@@ -0,0 +1,292 @@
+package tech.konata.tools;
+
+import tech.konata.convert.pitch.PitchConverter;
+import tech.konata.parser.SgData;
+import tech.konata.parser.SgTableLoader;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Writes deterministic, synthetic PLG100-SG Standard MIDI Files of any length.
+ *
+ * <h2>File layout</h2>
+ * A type-1 SMF at {@value #RESOLUTION} ticks per quarter note with two tracks:
+ * <ol>
+ *   <li>a conductor track holding the time signature and a tempo map that
+ *       changes every {@value #BARS_PER_TEMPO_SEGMENT} bars, and</li>
+ *   <li>the vocal part on MIDI channel 0: for every note a PhoneSEQ SysEx
+ *       built from a random {@code SG_TABLE} row, a NOTE_ON, optional
+ *       pitch-bend points and a NOTE_ON with velocity 0.</li>
+ * </ol>
+ *
+ * <p>Notes are grouped into legato phrases separated by rests; the last
+ * syllable of a phrase carries a breath mark ({@code 7E}) with the configured
+ * probability. The same seed and settings always produce byte-identical files.
+ *
+ * <p>Tracks are streamed straight to disk (the track length is patched in
+ * afterwards), so generating a multi-hour file needs no more heap than a
+ * one-minute one.
+ */
+public final class SyntheticMidiGenerator {
+
+    private static final int    RESOLUTION             = PitchConverter.TICKS_IN_BEAT;
+    private static final int    BARS_PER_TEMPO_SEGMENT = 16;
+    private static final long   TICKS_PER_BAR          = PitchConverter.TICKS_IN_FULL_NOTE;
+    private static final double[] TEMPO_CHOICES        = { 72.0, 90.0, 110.0, 128.0, 150.0, 174.0, 200.0 };
+
+    private static final int    CHANNEL        = 0;
+    private static final int    VELOCITY       = 100;
+    private static final int    LOWEST_KEY     = 57;
+    private static final int    HIGHEST_KEY    = 76;
+    private static final long[] NOTE_LENGTHS   = { 240L, 480L, 480L, 720L, 960L };
+    private static final long[] REST_LENGTHS   = { 480L, 960L, 1920L };
+    private static final int    MIN_PHRASE     = 4;
+    private static final int    MAX_PHRASE     = 12;
+
+    /** Pitch-bend units per semitone, matching the converters' scaling. */
+    private static final double BEND_UNITS_PER_SEMITONE = 768.0;
+    private static final double SCOOP_SEMITONES         = -0.5;
+    private static final long   SCOOP_TICKS             = 60L;
+    private static final double VIBRATO_SEMITONES       = 0.3;
+    private static final double VIBRATO_PERIOD_TICKS    = 96.0;
+
+    public static final long   DEFAULT_SEED           = 100L;
+    public static final int    DEFAULT_BENDS_PER_BEAT = 8;
+    public static final double DEFAULT_BREATH_CHANCE  = 0.5;
+
+    private final List<byte[]> phoneSeqBodies;
+    private final long         seed;
+    private final int          bendsPerBeat;
+    private final double       breathChance;
+
+    /**
+     * @param table        SG table the PhoneSEQ messages are drawn from
+     * @param seed         random seed; equal seeds give identical files
+     * @param bendsPerBeat pitch-bend density in points per beat (0 = no pitch bends)
+     * @param breathChance probability in {@code [0, 1]} that a phrase ends with a breath mark
+     */
+    public SyntheticMidiGenerator(List<SgData> table, long seed, int bendsPerBeat, double breathChance) {
+        if (bendsPerBeat < 0 || bendsPerBeat > RESOLUTION) {
+            throw new IllegalArgumentException("bendsPerBeat must be in [0, " + RESOLUTION + "]: " + bendsPerBeat);
+        }
+        if (breathChance < 0.0 || breathChance > 1.0) {
+            throw new IllegalArgumentException("breathChance must be in [0, 1]: " + breathChance);
+        }
+        this.phoneSeqBodies = toPhoneSeqBodies(table);
+        this.seed           = seed;
+        this.bendsPerBeat   = bendsPerBeat;
+        this.breathChance   = breathChance;
+        if (phoneSeqBodies.isEmpty()) {
+            throw new IllegalArgumentException("SG table has no rows with PhoneSEQ data");
+        }
+    }
+
+    /**
+     * Usage: {@code SyntheticMidiGenerator <output.mid> <duration> [bendsPerBeat] [seed]}
+     * where {@code duration} is e.g. {@code 90s}, {@code 10m} or {@code 2h}.
+     */
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println("Usage: SyntheticMidiGenerator <output.mid> <duration, e.g. 10m> [bendsPerBeat] [seed]");
+            System.exit(1);
+        }
+        int  bendsPerBeat = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_BENDS_PER_BEAT;
+        long seed         = args.length > 3 ? Long.parseLong(args[3])    : DEFAULT_SEED;
+
+        SyntheticMidiGenerator generator = new SyntheticMidiGenerator(
+                SgTableLoader.load(), seed, bendsPerBeat, DEFAULT_BREATH_CHANCE);
+        Summary summary = generator.write(new File(args[0]), parseDurationSec(args[1]));
+        System.out.println("Wrote " + args[0] + ": " + summary);
+    }
+
+    /**
+     * Parses a duration such as {@code 45}, {@code 90s}, {@code 10m} or
+     * {@code 2h} into seconds (a bare number means seconds).
+     */
+    public static double parseDurationSec(String text) {
+        String t = text.trim().toLowerCase();
+        double unit = 1.0;
+        if (t.endsWith("h"))      { unit = 3600.0; t = t.substring(0, t.length() - 1); }
+        else if (t.endsWith("m")) { unit = 60.0;   t = t.substring(0, t.length() - 1); }
+        else if (t.endsWith("s")) {                t = t.substring(0, t.length() - 1); }
+        try {
+            return Double.parseDouble(t) * unit;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid duration: " + text, e);
+        }
+    }
+
+    /**
+     * Summary of a generated file.
+     */
+    public static final class Summary {
+        public final long lengthTicks;
+        public final int  tempoChanges;
+        public final long notes;
+        public final long breathMarks;
+        public final long pitchBends;
+
+        Summary(long lengthTicks, int tempoChanges, long notes, long breathMarks, long pitchBends) {
+            this.lengthTicks  = lengthTicks;
+            this.tempoChanges = tempoChanges;
+            this.notes        = notes;
+            this.breathMarks  = breathMarks;
+            this.pitchBends   = pitchBends;
+        }
+
+        @Override
+        public String toString() {
+            return "Summary{ticks=" + lengthTicks + ", tempos=" + tempoChanges + ", notes=" + notes
+                    + ", breaths=" + breathMarks + ", pitchBends=" + pitchBends + "}";
+        }
+    }
+
+    /**
+     * Writes a file holding {@code durationSec} seconds of music.
+     *
+     * @param file        output SMF
+     * @param durationSec length of the song in seconds (must be positive)
+     * @return what was written
+     */
+    public Summary write(File file, double durationSec) {
+        if (durationSec <= 0) {
+            throw new IllegalArgumentException("Duration must be positive: " + durationSec);
+        }
+        Random random = new Random(seed);
+
+        List<long[]> tempoMap  = buildTempoMap(random, durationSec);
+        long         endTick   = tempoMap.get(tempoMap.size() - 1)[0];
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(0L);
+            FileChannel channel = raf.getChannel();
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+
+            SmfTrackWriter.writeHeader(out, 2, RESOLUTION);   // conductor + vocal part
+
+            SmfTrackWriter conductor = new SmfTrackWriter(out, channel);
+            conductor.begin();
+            conductor.meta(0L, 0x03, "Conductor".getBytes());
+            conductor.meta(0L, 0x58, new byte[] { 4, 2, 24, 8 });
+            for (int i = 0; i < tempoMap.size() - 1; i++) {
+                conductor.tempo(tempoMap.get(i)[0], (int) tempoMap.get(i)[1]);
+            }
+            conductor.end(endTick);
+
+            SmfTrackWriter part = new SmfTrackWriter(out, channel);
+            part.begin();
+            part.meta(0L, 0x03, "PLG100-SG".getBytes());
+            long[] counts = writeVocalPart(part, random, endTick);
+            part.end(endTick);
+
+            out.flush();
+            return new Summary(endTick, tempoMap.size() - 1, counts[0], counts[1], counts[2]);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to write synthetic MIDI file: " + file, e);
+        }
+    }
+
+    /**
+     * Returns {@code [tick, microsecondsPerBeat]} entries; the final entry marks
+     * the end of the song and carries no tempo.
+     */
+    private static List<long[]> buildTempoMap(Random random, double durationSec) {
+        List<long[]> map          = new ArrayList<>();
+        long         tick         = 0L;
+        double       remainingSec = durationSec;
+        long         segmentTicks = BARS_PER_TEMPO_SEGMENT * TICKS_PER_BAR;
+
+        while (remainingSec > 0) {
+            double bpm        = TEMPO_CHOICES[random.nextInt(TEMPO_CHOICES.length)];
+            double secPerTick = 60.0 / RESOLUTION / bpm;
+            map.add(new long[] { tick, Math.round(60_000_000.0 / bpm) });
+
+            double segmentSec = segmentTicks * secPerTick;
+            if (segmentSec >= remainingSec) {
+                tick += Math.max(1L, (long) Math.ceil(remainingSec / secPerTick));
+                break;
+            }
+            tick         += segmentTicks;
+            remainingSec -= segmentSec;
+        }
+        map.add(new long[] { tick, 0L });
+        return map;
+    }
+
+    /** Returns {@code [notes, breathMarks, pitchBends]}. */
+    private long[] writeVocalPart(SmfTrackWriter track, Random random, long endTick) throws IOException {
+        long notes = 0L, breaths = 0L, bends = 0L;
+        long bendStep = bendsPerBeat > 0 ? Math.max(1L, RESOLUTION / bendsPerBeat) : 0L;
+        int  key      = (LOWEST_KEY + HIGHEST_KEY) / 2;
+        long tick     = 0L;
+
+        while (true) {
+            int phraseLength = MIN_PHRASE + random.nextInt(MAX_PHRASE - MIN_PHRASE + 1);
+            for (int i = 0; i < phraseLength; i++) {
+                long length = NOTE_LENGTHS[random.nextInt(NOTE_LENGTHS.length)];
+                if (tick + length > endTick) return new long[] { notes, breaths, bends };
+
+                key = Math.max(LOWEST_KEY, Math.min(HIGHEST_KEY, key + random.nextInt(7) - 3));
+                boolean breath = i == phraseLength - 1 && random.nextDouble() < breathChance;
+                byte[]  body   = phoneSeqBodies.get(random.nextInt(phoneSeqBodies.size()));
+
+                track.sysex(tick, body, breath);
+                track.shortMessage(tick, 0x90 | CHANNEL, key, VELOCITY);
+
+                if (bendStep > 0) {
+                    for (long t = tick; t < tick + length; t += bendStep) {
+                        track.pitchBend(t, bendValue(t - tick, length));
+                        bends++;
+                    }
+                }
+
+                track.shortMessage(tick + length, 0x90 | CHANNEL, key, 0);
+                if (breath) breaths++;
+                notes++;
+                tick += length;
+            }
+
+            if (bendStep > 0) {
+                track.pitchBend(tick, 0);
+                bends++;
+            }
+            tick += REST_LENGTHS[random.nextInt(REST_LENGTHS.length)];
+        }
+    }
+
+    /**
+     * Pitch-bend value (14-bit, centred on 0) at {@code offset} ticks into a note:
+     * a short scoop up into the note, then vibrato over the second half of long
+     * notes.
+     */
+    private static int bendValue(long offset, long noteLength) {
+        double semitones = 0.0;
+        if (offset < SCOOP_TICKS) {
+            semitones = SCOOP_SEMITONES * (1.0 - (double) offset / SCOOP_TICKS);
+        } else if (noteLength >= RESOLUTION && offset >= noteLength / 2) {
+            semitones = VIBRATO_SEMITONES * Math.sin(2.0 * Math.PI * offset / VIBRATO_PERIOD_TICKS);
+        }
+        int value = (int) Math.round(semitones * BEND_UNITS_PER_SEMITONE);
+        return Math.max(-8192, Math.min(8191, value));
+    }
+
+    private static List<byte[]> toPhoneSeqBodies(List<SgData> table) {
+        List<byte[]> bodies = new ArrayList<>(table.size());
+        for (SgData row : table) {
+            List<String> codes = row.getPhoneSeqCodes();
+            if (codes.isEmpty()) continue;
+            byte[] body = new byte[codes.size()];
+            for (int i = 0; i < body.length; i++) {
+                body[i] = (byte) Integer.parseInt(codes.get(i), 16);
+            }
+            bodies.add(body);
+        }
+        return bodies;
+    }
+}
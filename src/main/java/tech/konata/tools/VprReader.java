@@ -0,0 +1,429 @@
+package tech.konata.tools;
+
+import com.google.gson.stream.JsonReader;
+import tech.konata.convert.ProjectConverter;
+import tech.konata.convert.impl.SVP;
+import tech.konata.convert.pitch.PitchConverter;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Reads a VOCALOID {@code .vpr} project and feeds it to {@link ProjectConverter}s,
+ * e.g. to transcode a VOCALOID project into Synthesizer V.
+ *
+ * <h2>Streaming</h2>
+ * The archive is walked entry by entry with a {@link ZipInputStream} until
+ * {@code Project/sequence.json}, which is parsed in place with a
+ * {@link JsonReader}: nothing is unpacked to disk and no JSON tree is built.
+ * Tempo events go straight to the converters; a part's notes and its
+ * {@code pitchBend} / {@code pitchBendSens} controllers are buffered in
+ * primitive arrays until the part ends (its {@code pos} offset may come after
+ * them), then dispatched. Audio tracks, effects and every other controller
+ * are skipped.
+ *
+ * <h2>Mapping</h2>
+ * <ul>
+ *   <li>Tempo values are {@code bpm × 100}; without tempo events the global
+ *       tempo is used.</li>
+ *   <li>Notes keep their lyric, key and tick range; all parts of the first
+ *       track with notes are read.</li>
+ *   <li>PIT ({@code pitchBend}, {@code ±8191}) is scaled by the PBS
+ *       ({@code pitchBendSens}, semitones, default {@value #DEFAULT_PBS}) in
+ *       effect, the inverse of {@code VocaloidPitchConverter}, and the result
+ *       is sent as {@link ProjectConverter#onPitchBend} at
+ *       {@value #BEND_UNITS_PER_SEMITONE} units per semitone. The converters
+ *       then run it through the usual {@code PitchConverter} pipeline. A bend
+ *       beyond the 14-bit range (PIT × PBS above about 10.7 semitones) is
+ *       clamped to it, with a warning. Each part whose last bend is not 0 is
+ *       followed by a 0 bend at its end, so the bend does not carry over
+ *       into the gap or the next part.</li>
+ * </ul>
+ */
+public final class VprReader {
+
+    private static final String SEQUENCE_ENTRY          = "Project/sequence.json";
+    private static final int    BPM_SCALE               = 100;
+    private static final int    PITCH_MAX_VALUE         = 8191;
+    private static final int    DEFAULT_PBS             = 2;
+    private static final double BEND_UNITS_PER_SEMITONE = 768.0;
+    private static final String CONTROLLER_PIT          = "pitchBend";
+    private static final String CONTROLLER_PBS          = "pitchBendSens";
+
+    private final List<ProjectConverter> converters;
+
+    private int  notes;
+    private int  tempos;
+    private long pitchBends;
+
+    /** The last bend sent to the converters, across parts. */
+    private int lastBend;
+
+    /**
+     * @param converters loaded converters that receive the project's events
+     */
+    public VprReader(List<ProjectConverter> converters) {
+        this.converters = converters;
+    }
+
+    /**
+     * Usage: {@code VprReader <input.vpr> [output-base]}; writes
+     * {@code output-base.svp}, by default next to the input.
+     */
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("Usage: VprReader <input.vpr> [output-base]");
+            System.exit(1);
+        }
+        String baseName = args.length > 1 ? args[1] : stripExtension(args[0]);
+
+        SVP svp = new SVP();
+        svp.load();
+        VprReader reader = new VprReader(Collections.singletonList(svp));
+        reader.read(new File(args[0]));
+        svp.save(baseName);
+        System.out.println("Wrote " + baseName + ".svp: " + reader);
+    }
+
+    /**
+     * Streams {@code vprFile} into the converters.
+     *
+     * @throws RuntimeException if the file is not a readable VOCALOID project
+     */
+    public void read(File vprFile) {
+        try (ZipInputStream zip = new ZipInputStream(new BufferedInputStream(new FileInputStream(vprFile), 1 << 16),
+                                                     StandardCharsets.UTF_8)) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                if (entry.getName().equals(SEQUENCE_ENTRY)) {
+                    // Not closed: closing the reader would close the whole archive
+                    JsonReader reader = new JsonReader(new InputStreamReader(zip, StandardCharsets.UTF_8));
+                    readSequence(reader);
+                    return;
+                }
+            }
+            throw new IllegalStateException("No " + SEQUENCE_ENTRY + " in archive");
+        } catch (IOException | IllegalStateException | NumberFormatException e) {
+            throw new RuntimeException("Failed to read VPR file: " + vprFile, e);
+        }
+    }
+
+    public int getNoteCount() {
+        return notes;
+    }
+
+    public long getPitchBendCount() {
+        return pitchBends;
+    }
+
+    @Override
+    public String toString() {
+        return "VprReader{notes=" + notes + ", tempos=" + tempos + ", pitchBends=" + pitchBends + "}";
+    }
+
+    // ---------------------------------------------------------------------------------
+    // sequence.json
+    // ---------------------------------------------------------------------------------
+
+    private void readSequence(JsonReader reader) throws IOException {
+        double  globalBpm = PitchConverter.DEFAULT_BPM;
+        boolean trackRead = false;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "masterTrack":
+                    globalBpm = readMasterTrack(reader);
+                    break;
+                case "tracks":
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        if (trackRead) reader.skipValue();
+                        else           trackRead = readTrack(reader);
+                    }
+                    reader.endArray();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        if (tempos == 0) {
+            insertTempo(0L, globalBpm);
+        }
+    }
+
+    /** Sends the tempo events; returns the global tempo. */
+    private double readMasterTrack(JsonReader reader) throws IOException {
+        double globalBpm = PitchConverter.DEFAULT_BPM;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (!reader.nextName().equals("tempo")) {
+                reader.skipValue();
+                continue;
+            }
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "global":
+                        reader.beginObject();
+                        while (reader.hasNext()) {
+                            if (reader.nextName().equals("value")) globalBpm = reader.nextDouble() / BPM_SCALE;
+                            else                                   reader.skipValue();
+                        }
+                        reader.endObject();
+                        break;
+                    case "events":
+                        reader.beginArray();
+                        while (reader.hasNext()) {
+                            long[] event = readEvent(reader);
+                            insertTempo(event[0], (double) event[1] / BPM_SCALE);
+                        }
+                        reader.endArray();
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
+            reader.endObject();
+        }
+        reader.endObject();
+        return globalBpm;
+    }
+
+    /** Reads one track; returns {@code true} if it had notes. */
+    private boolean readTrack(JsonReader reader) throws IOException {
+        boolean hadNotes = false;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (!reader.nextName().equals("parts")) {
+                reader.skipValue();
+                continue;
+            }
+            reader.beginArray();
+            while (reader.hasNext()) {
+                Part part = readPart(reader);
+                hadNotes |= part.noteCount > 0;
+                dispatch(part);
+            }
+            reader.endArray();
+        }
+        reader.endObject();
+        return hadNotes;
+    }
+
+    /** One part's notes and pitch controllers, in part-relative ticks. */
+    private static final class Part {
+        long pos;
+        long duration;
+
+        long[]   noteOn       = new long[64];
+        long[]   noteDuration = new long[64];
+        int[]    noteKey      = new int[64];
+        String[] noteLyric    = new String[64];
+        int      noteCount;
+
+        Events pit = new Events();
+        Events pbs = new Events();
+
+        void addNote(long on, long duration, int key, String lyric) {
+            if (noteCount == noteOn.length) {
+                noteOn       = Arrays.copyOf(noteOn,       noteCount * 2);
+                noteDuration = Arrays.copyOf(noteDuration, noteCount * 2);
+                noteKey      = Arrays.copyOf(noteKey,      noteCount * 2);
+                noteLyric    = Arrays.copyOf(noteLyric,    noteCount * 2);
+            }
+            noteOn[noteCount]       = on;
+            noteDuration[noteCount] = duration;
+            noteKey[noteCount]      = key;
+            noteLyric[noteCount]    = lyric;
+            noteCount++;
+        }
+    }
+
+    /** Controller events as parallel primitive arrays. */
+    private static final class Events {
+        long[] pos    = new long[64];
+        int[]  values = new int[64];
+        int    size;
+
+        void add(long p, int value) {
+            if (size == pos.length) {
+                pos    = Arrays.copyOf(pos,    size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            pos[size]    = p;
+            values[size] = value;
+            size++;
+        }
+    }
+
+    private static Part readPart(JsonReader reader) throws IOException {
+        Part part = new Part();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "pos":
+                    part.pos = reader.nextLong();
+                    break;
+                case "duration":
+                    part.duration = reader.nextLong();
+                    break;
+                case "notes":
+                    reader.beginArray();
+                    while (reader.hasNext()) readNote(reader, part);
+                    reader.endArray();
+                    break;
+                case "controllers":
+                    reader.beginArray();
+                    while (reader.hasNext()) readController(reader, part);
+                    reader.endArray();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        return part;
+    }
+
+    private static void readNote(JsonReader reader, Part part) throws IOException {
+        long   pos      = 0L;
+        long   duration = 0L;
+        int    key      = PitchConverter.DEFAULT_KEY;
+        String lyric    = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "pos":      pos      = reader.nextLong();   break;
+                case "duration": duration = reader.nextLong();   break;
+                case "number":   key      = reader.nextInt();    break;
+                case "lyric":    lyric    = reader.nextString(); break;
+                default:         reader.skipValue();             break;
+            }
+        }
+        reader.endObject();
+
+        if (lyric == null || lyric.isBlank()) lyric = PitchConverter.DEFAULT_LYRIC;
+        part.addNote(pos, duration, key, lyric);
+    }
+
+    private static void readController(JsonReader reader, Part part) throws IOException {
+        String name   = null;
+        Events events = new Events();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "name":
+                    name = reader.nextString();
+                    break;
+                case "events":
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        long[] event = readEvent(reader);
+                        events.add(event[0], (int) event[1]);
+                    }
+                    reader.endArray();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        if (CONTROLLER_PIT.equals(name))      part.pit = events;
+        else if (CONTROLLER_PBS.equals(name)) part.pbs = events;
+    }
+
+    /** Reads {@code {"pos": …, "value": …}} as {@code {pos, value}}. */
+    private static long[] readEvent(JsonReader reader) throws IOException {
+        long[] event = new long[2];
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "pos":   event[0] = reader.nextLong();               break;
+                case "value": event[1] = Math.round(reader.nextDouble()); break;
+                default:      reader.skipValue();                         break;
+            }
+        }
+        reader.endObject();
+        return event;
+    }
+
+    // ---------------------------------------------------------------------------------
+    // Dispatch
+    // ---------------------------------------------------------------------------------
+
+    private void insertTempo(long tick, double bpm) {
+        converters.forEach(c -> c.insertTempo(Math.max(0L, tick), bpm));
+        tempos++;
+    }
+
+    private void dispatch(Part part) {
+        long end = part.pos + part.duration;
+        for (int i = 0; i < part.noteCount; i++) {
+            long   on    = part.pos + part.noteOn[i];
+            long   off   = on + part.noteDuration[i];
+            end = Math.max(end, off);
+            int    key   = part.noteKey[i];
+            String lyric = part.noteLyric[i];
+            if (on < 0 || off <= on) continue;
+            converters.forEach(c -> c.insertNote(lyric, on, off, key));
+            notes++;
+        }
+
+        // Walk PIT and PBS together; PBS rescales the PIT value in effect
+        Events pit = part.pit, pbs = part.pbs;
+        int  i = 0, j = 0;
+        int  curPit = 0, curPbs = DEFAULT_PBS;
+        int  clamped = 0;
+        while (i < pit.size || j < pbs.size) {
+            long pos = Math.min(i < pit.size ? pit.pos[i] : Long.MAX_VALUE,
+                                j < pbs.size ? pbs.pos[j] : Long.MAX_VALUE);
+            while (i < pit.size && pit.pos[i] == pos) curPit = pit.values[i++];
+            while (j < pbs.size && pbs.pos[j] == pos) curPbs = pbs.values[j++];
+
+            double semitones = (double) curPit * curPbs / PITCH_MAX_VALUE;
+            int    bend      = (int) Math.round(semitones * BEND_UNITS_PER_SEMITONE);
+            if (bend < -8192 || bend > 8191) {
+                bend = Math.max(-8192, Math.min(8191, bend));
+                clamped++;
+            }
+
+            long tick = part.pos + pos;
+            end = Math.max(end, tick);
+            if (tick >= 0) sendBend(bend, tick);
+        }
+        if (clamped > 0) {
+            System.out.println("[Warn] " + clamped + " pitch events of the part at tick " + part.pos
+                    + " exceed the pitch-bend range and were clamped");
+        }
+
+        // Release the part's last bend at its end
+        if (end >= 0) sendBend(0, end);
+    }
+
+    private void sendBend(int bend, long tick) {
+        if (bend == lastBend) return;
+        converters.forEach(c -> c.onPitchBend(bend, tick));
+        pitchBends++;
+        lastBend = bend;
+    }
+
+    private static String stripExtension(String path) {
+        int dot = path.lastIndexOf('.');
+        return (dot > path.lastIndexOf(File.separatorChar)) ? path.substring(0, dot) : path;
+    }
+}
@@ -0,0 +1,381 @@
+package tech.konata.watch;
+
+import tech.konata.convert.ConverterSettings;
+import tech.konata.engine.ConversionEngine;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Hot folder: converts every PLG100-SG MIDI file that appears or changes in a
+ * directory, for as long as it runs.
+ *
+ * <h2>Threads</h2>
+ * <ul>
+ *   <li><b>Watcher</b>: takes {@link WatchService} events for {@code .mid} /
+ *       {@code .midi} files and marks the file as settling. An overflow
+ *       rescans the whole directory.</li>
+ *   <li><b>Timer</b>: hands a settling file to the workers once it has had no
+ *       events for {@code settleMillis} and its size and modification time
+ *       have stopped changing, so a file that is still being copied in is
+ *       not converted half-written. Also prints the status line.</li>
+ *   <li><b>Workers</b>: a fixed pool with a bounded queue, converting through
+ *       one shared {@link ConversionEngine}. When the queue is full, files
+ *       simply stay settling until a worker is free. A file is never converted
+ *       by two workers at once.</li>
+ * </ul>
+ *
+ * <h2>Change detection</h2>
+ * Workers hash each file (SHA-256) before converting it and skip it if the
+ * content is the same as at its last successful conversion, so saving a file
+ * unchanged or touching it costs one read. Hashes are kept in memory only:
+ * files already in the folder at start-up are converted once.
+ *
+ * <h2>Status</h2>
+ * Every {@code reportSeconds}, while there is work or something finished
+ * since the last report, a {@code [Watch]} line shows the files settling,
+ * queued and running, the totals so far and the throughput over the last
+ * interval.
+ *
+ * <p>Usage:
+ * <pre>
+ *   HotFolderWatcher &lt;input-dir&gt; [output-dir]
+ * </pre>
+ * Outputs go to {@code output-dir}, or next to the inputs. The watcher runs
+ * until the process is stopped. Subdirectories are not watched.
+ */
+public final class HotFolderWatcher implements AutoCloseable {
+
+    /** System properties read by {@link #main}. */
+    public static final String WORKERS_PROPERTY        = "plg.watch.workers";
+    public static final String SETTLE_MILLIS_PROPERTY  = "plg.watch.settleMillis";
+    public static final String REPORT_SECONDS_PROPERTY = "plg.watch.reportSeconds";
+
+    public static final int  DEFAULT_WORKERS        = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    public static final long DEFAULT_SETTLE_MILLIS  = 1000L;
+    public static final long DEFAULT_REPORT_SECONDS = 10L;
+
+    /** Files a worker may have queued behind it before new ones wait in the settling set. */
+    private static final int QUEUE_PER_WORKER = 2;
+
+    /** A file that has had events and is waiting to stop changing. */
+    private static final class Settling {
+        long     lastChangeNanos;
+        long     size     = -1L;
+        FileTime modified;
+
+        Settling(long nanos) {
+            this.lastChangeNanos = nanos;
+        }
+    }
+
+    private final Path                     inputDir;
+    private final Path                     outputDir;
+    private final ConversionEngine         engine;
+    private final long                     settleNanos;
+    private final WatchService             watchService;
+    private final Thread                   watcher;
+    private final ScheduledExecutorService timer;
+    private final ThreadPoolExecutor       workers;
+
+    private final Map<Path, Settling> settling = new ConcurrentHashMap<>();
+    private final Set<Path>           active   = ConcurrentHashMap.newKeySet();   // queued or running
+    private final Map<Path, String>   hashes   = new ConcurrentHashMap<>();
+
+    private final AtomicLong converted     = new AtomicLong();
+    private final AtomicLong skipped       = new AtomicLong();
+    private final AtomicLong failed        = new AtomicLong();
+    private final AtomicLong convertNanos  = new AtomicLong();
+    private final AtomicLong running       = new AtomicLong();
+    private long             reportedDone;
+    private long             reportedNanos = System.nanoTime();
+    private volatile boolean closed;
+
+    /**
+     * Starts watching {@code inputDir} and queues the MIDI files already in it.
+     *
+     * @param outputDir     directory for the project files; may be {@code inputDir}
+     * @param workers       conversions that may run at once
+     * @param settleMillis  quiet time before a file counts as completely written
+     * @param reportSeconds interval of the status line, or {@code 0} for none
+     * @throws IOException if the directory cannot be watched
+     */
+    public HotFolderWatcher(Path inputDir, Path outputDir, ConversionEngine engine,
+                            int workers, long settleMillis, long reportSeconds) throws IOException {
+        if (workers < 1 || settleMillis < 0L || reportSeconds < 0L) {
+            throw new IllegalArgumentException("Invalid watch settings: workers=" + workers
+                    + ", settleMillis=" + settleMillis + ", reportSeconds=" + reportSeconds);
+        }
+        if (!Files.isDirectory(inputDir)) {
+            throw new IllegalArgumentException("Not a directory: " + inputDir);
+        }
+        this.inputDir     = inputDir.toAbsolutePath();
+        this.outputDir    = outputDir.toAbsolutePath();
+        this.engine       = engine;
+        this.settleNanos  = TimeUnit.MILLISECONDS.toNanos(settleMillis);
+        this.watchService = inputDir.getFileSystem().newWatchService();
+        this.inputDir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+
+        this.workers = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(workers * QUEUE_PER_WORKER), daemonThreads("plg-watch-worker"));
+        this.timer   = Executors.newSingleThreadScheduledExecutor(daemonThreads("plg-watch-timer"));
+        long tick = Math.max(50L, settleMillis / 4);
+        timer.scheduleWithFixedDelay(this::dispatchSettled, tick, tick, TimeUnit.MILLISECONDS);
+        if (reportSeconds > 0L) {
+            timer.scheduleAtFixedRate(() -> report(false), reportSeconds, reportSeconds, TimeUnit.SECONDS);
+        }
+
+        Files.createDirectories(this.outputDir);
+        scan();
+        watcher = new Thread(this::watchLoop, "plg-watch");
+        watcher.setDaemon(true);
+        watcher.start();
+        System.out.println("[Watch] Watching " + this.inputDir + " with " + workers + " workers");
+    }
+
+    /** Successful conversions so far. */
+    public long getConverted() {
+        return converted.get();
+    }
+
+    /** Files skipped because their content had not changed. */
+    public long getSkipped() {
+        return skipped.get();
+    }
+
+    /** Conversions that failed. */
+    public long getFailed() {
+        return failed.get();
+    }
+
+    /** Files waiting to settle, queued or being converted. */
+    public int getQueueDepth() {
+        return settling.size() + active.size();
+    }
+
+    /** Stops watching, finishes the conversions already queued and prints a last report. */
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        watchService.close();
+        timer.shutdownNow();
+        workers.shutdown();
+        try {
+            workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        report(true);
+    }
+
+    // ---------------------------------------------------------------------------------
+    // Watching and settling
+    // ---------------------------------------------------------------------------------
+
+    private void watchLoop() {
+        try {
+            while (!closed) {
+                WatchKey key = watchService.take();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == OVERFLOW) {
+                        scan();
+                        continue;
+                    }
+                    Path file = inputDir.resolve((Path) event.context());
+                    if (!isMidi(file)) continue;
+                    if (event.kind() == ENTRY_DELETE) {
+                        settling.remove(file);
+                        hashes.remove(file);
+                    } else {
+                        touch(file);
+                    }
+                }
+                if (!key.reset()) {
+                    System.out.println("[Err] Watched directory is no longer accessible: " + inputDir);
+                    return;
+                }
+            }
+        } catch (ClosedWatchServiceException | InterruptedException e) {
+            // Closed
+        } catch (IOException e) {
+            System.out.println("[Err] Failed to rescan " + inputDir + ": " + e.getMessage());
+        }
+    }
+
+    private void scan() throws IOException {
+        try (Stream<Path> files = Files.list(inputDir)) {
+            files.filter(HotFolderWatcher::isMidi).forEach(this::touch);
+        }
+    }
+
+    private void touch(Path file) {
+        long now = System.nanoTime();
+        settling.compute(file, (p, s) -> {
+            if (s == null) return new Settling(now);
+            s.lastChangeNanos = now;
+            return s;
+        });
+    }
+
+    /** Timer task: queues every settling file that has stopped changing. */
+    private void dispatchSettled() {
+        long now = System.nanoTime();
+        for (Map.Entry<Path, Settling> entry : settling.entrySet()) {
+            Path     file  = entry.getKey();
+            Settling state = entry.getValue();
+            if (now - state.lastChangeNanos < settleNanos || active.contains(file)) continue;
+
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            } catch (IOException e) {
+                settling.remove(file);   // deleted while settling
+                continue;
+            }
+            if (attributes.size() != state.size || !attributes.lastModifiedTime().equals(state.modified)) {
+                // Still growing (or first look): wait another settle period
+                state.size            = attributes.size();
+                state.modified        = attributes.lastModifiedTime();
+                state.lastChangeNanos = now;
+                continue;
+            }
+
+            if (!settling.remove(file, state)) continue;
+            active.add(file);
+            try {
+                workers.execute(() -> convert(file));
+            } catch (RejectedExecutionException e) {
+                // Queue full: keep settling and try again on the next tick
+                active.remove(file);
+                settling.putIfAbsent(file, state);
+            }
+        }
+    }
+
+    // ---------------------------------------------------------------------------------
+    // Conversion
+    // ---------------------------------------------------------------------------------
+
+    private void convert(Path file) {
+        running.incrementAndGet();
+        String name = file.getFileName().toString();
+        try {
+            String hash = contentHash(file);
+            if (hash.equals(hashes.get(file))) {
+                skipped.incrementAndGet();
+                System.out.println("[Watch] Unchanged: " + name);
+                return;
+            }
+
+            long start = System.nanoTime();
+            engine.convert(file.toFile(), outputDir.resolve(stripExtension(name)).toString());
+            long nanos = System.nanoTime() - start;
+            hashes.put(file, hash);
+            convertNanos.addAndGet(nanos);
+            converted.incrementAndGet();
+            System.out.printf("[Watch] Converted %s in %.0f ms%n", name, nanos / 1e6);
+        } catch (Exception e) {
+            failed.incrementAndGet();
+            System.out.println("[Err] Failed to convert " + name + ": " + e.getMessage()
+                    + (e.getCause() != null ? ": " + e.getCause() : ""));
+        } finally {
+            active.remove(file);
+            running.decrementAndGet();
+        }
+    }
+
+    private static String contentHash(Path file) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        byte[]        buffer = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(file)) {
+            int n;
+            while ((n = in.read(buffer)) > 0) digest.update(buffer, 0, n);
+        }
+        StringBuilder sb = new StringBuilder(64);
+        for (byte b : digest.digest()) sb.append(String.format("%02x", b));
+        return sb.toString();
+    }
+
+    // ---------------------------------------------------------------------------------
+    // Status
+    // ---------------------------------------------------------------------------------
+
+    private synchronized void report(boolean last) {
+        long now     = System.nanoTime();
+        long done    = converted.get() + skipped.get() + failed.get();
+        long running = this.running.get();
+        long queued  = active.size() - running;
+        if (!last && done == reportedDone && settling.isEmpty() && active.isEmpty()) return;
+
+        double seconds     = Math.max(1e-9, (now - reportedNanos) / 1e9);
+        double perMinute   = (done - reportedDone) * 60.0 / seconds;
+        long   conversions = converted.get();
+        double averageMs   = conversions > 0 ? convertNanos.get() / 1e6 / conversions : 0.0;
+        System.out.printf("[Watch] settling %d, queued %d, running %d | converted %d, unchanged %d, failed %d"
+                        + " | %.1f files/min, %.0f ms per conversion%n",
+                settling.size(), queued, running, conversions, skipped.get(), failed.get(), perMinute, averageMs);
+        reportedDone  = done;
+        reportedNanos = now;
+    }
+
+    // ---------------------------------------------------------------------------------
+    // Helpers and entry point
+    // ---------------------------------------------------------------------------------
+
+    private static boolean isMidi(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        return (name.endsWith(".mid") || name.endsWith(".midi")) && !name.startsWith(".");
+    }
+
+    private static String stripExtension(String filename) {
+        int dot = filename.lastIndexOf('.');
+        return (dot > 0) ? filename.substring(0, dot) : filename;
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        return r -> {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: HotFolderWatcher <input-dir> [output-dir]");
+            System.exit(1);
+        }
+        Path inputDir  = Paths.get(args[0]);
+        Path outputDir = args.length > 1 ? Paths.get(args[1]) : inputDir;
+        int  workers   = Integer.getInteger(WORKERS_PROPERTY, DEFAULT_WORKERS);
+
+        ConversionEngine engine  = new ConversionEngine(ConverterSettings.fromSystemProperties(), workers, false);
+        HotFolderWatcher watcher = new HotFolderWatcher(inputDir, outputDir, engine, workers,
+                Long.getLong(SETTLE_MILLIS_PROPERTY, DEFAULT_SETTLE_MILLIS),
+                Long.getLong(REPORT_SECONDS_PROPERTY, DEFAULT_REPORT_SECONDS));
+
+        CountDownLatch stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                watcher.close();
+            } catch (IOException e) {
+                System.out.println("[Err] " + e.getMessage());
+            }
+            stopped.countDown();
+        }, "plg-watch-shutdown"));
+        stopped.await();
+    }
+}